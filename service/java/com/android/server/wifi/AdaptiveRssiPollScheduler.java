@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import android.annotation.NonNull;
+import android.net.wifi.WifiInfo;
+import android.net.wifi.WifiManager;
+import android.net.wifi.WifiManager.DeviceMobilityState;
+
+import com.android.internal.annotations.VisibleForTesting;
+
+/**
+ * Chooses the interval between the RSSI and link layer stats polls of a connected network.
+ *
+ * The interval is doubled after each poll while the link is stable: strong RSSI with a low
+ * variance, idle traffic and a device which isn't moving fast. It goes back to the base interval,
+ * {@link WifiGlobals#getPollRssiIntervalMillis()}, as soon as the RSSI degrades, traffic becomes
+ * active or the device starts moving. The interval never exceeds
+ * {@link WifiGlobals#getAdaptivePollRssiMaxIntervalMillis()}.
+ */
+public class AdaptiveRssiPollScheduler {
+    // Number of the most recent RSSI polls used to evaluate the RSSI stability.
+    @VisibleForTesting
+    static final int RSSI_WINDOW_SIZE = 5;
+    // Maximum variance of the RSSI, in dB^2, for the link to be stable.
+    @VisibleForTesting
+    static final int MAX_STABLE_RSSI_VARIANCE = 4;
+    // Minimum RSSI, in dBm, for the link to be stable.
+    @VisibleForTesting
+    static final int MIN_STABLE_RSSI_DBM = -65;
+    // Drop of the RSSI below the average of the window, in dB, which is a degradation.
+    @VisibleForTesting
+    static final int RSSI_DEGRADATION_DB = 5;
+    // Maximum number of packets per second, tx and rx, for the traffic to be idle.
+    @VisibleForTesting
+    static final double MAX_IDLE_PACKETS_PER_SECOND = 10;
+
+    private final WifiGlobals mWifiGlobals;
+    private final int[] mRssiWindow = new int[RSSI_WINDOW_SIZE];
+    private int mNumRssiSamples = 0;
+    private int mNextRssiIndex = 0;
+    private int mIntervalMillis = 0;
+
+    public AdaptiveRssiPollScheduler(@NonNull WifiGlobals wifiGlobals) {
+        mWifiGlobals = wifiGlobals;
+    }
+
+    /**
+     * Reset the history of the link, e.g. on a new connection or when the polling is restarted.
+     */
+    public void reset() {
+        mNumRssiSamples = 0;
+        mNextRssiIndex = 0;
+        mIntervalMillis = 0;
+    }
+
+    /**
+     * Update the history of the link with the result of a poll and get the interval until the
+     * next poll.
+     *
+     * @param wifiInfo the WifiInfo updated by the poll
+     * @param mobilityState the current device mobility state
+     * @return the interval until the next poll, in milliseconds
+     */
+    public int getNextPollIntervalMillis(@NonNull WifiInfo wifiInfo,
+            @DeviceMobilityState int mobilityState) {
+        int rssi = wifiInfo.getRssi();
+        boolean isDegraded = isRssiDegraded(rssi);
+        addRssiSample(rssi);
+
+        int baseIntervalMillis = mWifiGlobals.getPollRssiIntervalMillis();
+        double packetsPerSecond = wifiInfo.getSuccessfulTxPacketsPerSecond()
+                + wifiInfo.getSuccessfulRxPacketsPerSecond();
+        if (isDegraded || !isRssiStable() || packetsPerSecond > MAX_IDLE_PACKETS_PER_SECOND
+                || mobilityState == WifiManager.DEVICE_MOBILITY_STATE_HIGH_MVMT) {
+            mIntervalMillis = baseIntervalMillis;
+        } else {
+            mIntervalMillis = Math.min(Math.max(mIntervalMillis, baseIntervalMillis) * 2,
+                    mWifiGlobals.getAdaptivePollRssiMaxIntervalMillis());
+        }
+        return mIntervalMillis;
+    }
+
+    private boolean isRssiDegraded(int rssi) {
+        if (rssi == WifiInfo.INVALID_RSSI || rssi < MIN_STABLE_RSSI_DBM) {
+            return true;
+        }
+        return mNumRssiSamples == RSSI_WINDOW_SIZE
+                && getRssiSum() - rssi * RSSI_WINDOW_SIZE >= RSSI_DEGRADATION_DB * RSSI_WINDOW_SIZE;
+    }
+
+    private void addRssiSample(int rssi) {
+        mRssiWindow[mNextRssiIndex] = rssi;
+        mNextRssiIndex = (mNextRssiIndex + 1) % RSSI_WINDOW_SIZE;
+        mNumRssiSamples = Math.min(mNumRssiSamples + 1, RSSI_WINDOW_SIZE);
+    }
+
+    private boolean isRssiStable() {
+        if (mNumRssiSamples < RSSI_WINDOW_SIZE) {
+            return false;
+        }
+        double mean = (double) getRssiSum() / RSSI_WINDOW_SIZE;
+        double variance = 0;
+        for (int rssi : mRssiWindow) {
+            variance += (rssi - mean) * (rssi - mean);
+        }
+        return variance / RSSI_WINDOW_SIZE <= MAX_STABLE_RSSI_VARIANCE;
+    }
+
+    private int getRssiSum() {
+        int sum = 0;
+        for (int rssi : mRssiWindow) {
+            sum += rssi;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.net.wifi.ScanResult;
+import android.net.wifi.WifiConfiguration;
+import android.util.Log;
+import android.util.Pair;
+
+import com.android.server.wifi.hotspot2.ANQPNetworkKey;
+import com.android.server.wifi.hotspot2.NetworkDetail;
+import com.android.server.wifi.hotspot2.PasspointManager;
+import com.android.server.wifi.hotspot2.PasspointMatch;
+import com.android.server.wifi.hotspot2.PasspointProvider;
+import com.android.server.wifi.hotspot2.Utils;
+import com.android.server.wifi.util.ScanResultUtil;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Counts the networks available in a full band scan, for the scan histograms of
+ * {@link WifiMetrics}.
+ *
+ * All the counts are computed in a single pass over the scan results. The sets and maps used to
+ * count the unique SSIDs, Passpoint providers and Passpoint ESSs are cleared and reused by each
+ * call to {@link #aggregate(List, WifiConfigManager, WifiNetworkSelector, PasspointManager)}, so
+ * an instance should be kept and reused across scans.
+ *
+ * This class isn't thread-safe.
+ */
+public class AvailableNetworksAggregator {
+    private static final String TAG = "AvailableNetworksAggregator";
+
+    // Statistics collected for the APs with sufficient signal power.
+    private final Set<ScanResultMatchInfo> mSsids = new HashSet<>();
+    private int mBssids;
+    private final Set<ScanResultMatchInfo> mOpenSsids = new HashSet<>();
+    private int mOpenBssids;
+    private final Set<ScanResultMatchInfo> mSavedSsids = new HashSet<>();
+    private int mSavedBssids;
+    private final Set<ScanResultMatchInfo> mOpenOrSavedSsids = new HashSet<>();
+    private int mOpenOrSavedBssids;
+    private final Set<PasspointProvider> mSavedPasspointProviderProfiles = new HashSet<>();
+    private int mSavedPasspointProviderBssids;
+
+    // Statistics collected for ALL APs, irrespective of signal power.
+    private int mPasspointR1Aps;
+    private int mPasspointR2Aps;
+    private int mPasspointR3Aps;
+    private final Map<ANQPNetworkKey, Integer> mPasspointR1UniqueEss = new HashMap<>();
+    private final Map<ANQPNetworkKey, Integer> mPasspointR2UniqueEss = new HashMap<>();
+    private final Map<ANQPNetworkKey, Integer> mPasspointR3UniqueEss = new HashMap<>();
+    private int mSupporting80211mcAps;
+    private String mCountryCode;
+    private int mCountryCodeCount;
+    private boolean mCountryCodeConflict;
+
+    /**
+     * Computes all the counts for the given scan results, replacing the ones of the previous
+     * call.
+     */
+    public void aggregate(@NonNull List<ScanDetail> scanDetails,
+            @NonNull WifiConfigManager wifiConfigManager,
+            @NonNull WifiNetworkSelector wifiNetworkSelector,
+            @NonNull PasspointManager passpointManager) {
+        clear();
+        for (ScanDetail scanDetail : scanDetails) {
+            NetworkDetail networkDetail = scanDetail.getNetworkDetail();
+            ScanResult scanResult = scanDetail.getScanResult();
+
+            updateCountryCode(networkDetail.getCountryCode());
+            if (networkDetail.is80211McResponderSupport()) {
+                mSupporting80211mcAps++;
+            }
+
+            List<Pair<PasspointProvider, PasspointMatch>> matchedProviders = null;
+            if (networkDetail.isInterworking()) {
+                // Try to match provider, but do not allow new ANQP messages. Use cached data.
+                matchedProviders = passpointManager.matchProvider(scanResult, false);
+                Map<ANQPNetworkKey, Integer> uniqueEssCounts = null;
+                if (networkDetail.getHSRelease() == NetworkDetail.HSRelease.R1) {
+                    mPasspointR1Aps++;
+                    uniqueEssCounts = mPasspointR1UniqueEss;
+                } else if (networkDetail.getHSRelease() == NetworkDetail.HSRelease.R2) {
+                    mPasspointR2Aps++;
+                    uniqueEssCounts = mPasspointR2UniqueEss;
+                } else if (networkDetail.getHSRelease() == NetworkDetail.HSRelease.R3) {
+                    mPasspointR3Aps++;
+                    uniqueEssCounts = mPasspointR3UniqueEss;
+                }
+                countUniqueEss(scanResult, networkDetail, uniqueEssCounts);
+            }
+
+            if (wifiNetworkSelector.isSignalTooWeak(scanResult)) {
+                continue;
+            }
+
+            ScanResultMatchInfo matchInfo = ScanResultMatchInfo.fromScanResult(scanResult);
+            mSsids.add(matchInfo);
+            mBssids++;
+            boolean isOpen = ScanResultUtil.isScanResultForOpenNetwork(scanResult)
+                    || ScanResultUtil.isScanResultForOweNetwork(scanResult);
+            WifiConfiguration config = wifiConfigManager.getSavedNetworkForScanDetail(scanDetail);
+            boolean isSaved = (config != null) && !config.isEphemeral()
+                    && !config.isPasspoint();
+            if (isOpen) {
+                mOpenSsids.add(matchInfo);
+                mOpenBssids++;
+            }
+            if (isSaved) {
+                mSavedSsids.add(matchInfo);
+                mSavedBssids++;
+            }
+            if (isOpen || isSaved) {
+                mOpenOrSavedSsids.add(matchInfo);
+                mOpenOrSavedBssids++;
+            }
+            if (matchedProviders != null && !matchedProviders.isEmpty()) {
+                for (Pair<PasspointProvider, PasspointMatch> passpointProvider :
+                        matchedProviders) {
+                    mSavedPasspointProviderProfiles.add(passpointProvider.first);
+                }
+                mSavedPasspointProviderBssids++;
+            }
+        }
+    }
+
+    private void countUniqueEss(ScanResult scanResult, NetworkDetail networkDetail,
+            @Nullable Map<ANQPNetworkKey, Integer> uniqueEssCounts) {
+        long bssid;
+        try {
+            bssid = Utils.parseMac(scanResult.BSSID);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Invalid BSSID provided in the scan result: " + scanResult.BSSID);
+            return;
+        }
+        if (uniqueEssCounts == null) {
+            return;
+        }
+        ANQPNetworkKey uniqueEss = ANQPNetworkKey.buildKey(scanResult.SSID, bssid,
+                scanResult.hessid, networkDetail.getAnqpDomainID());
+        Integer countObj = uniqueEssCounts.get(uniqueEss);
+        int count = countObj == null ? 0 : countObj;
+        uniqueEssCounts.put(uniqueEss, count + 1);
+    }
+
+    private void updateCountryCode(@Nullable String countryCode) {
+        if (countryCode == null || mCountryCodeConflict) {
+            return;
+        }
+        if (mCountryCode == null) {
+            mCountryCode = countryCode;
+            mCountryCodeCount = 1;
+        } else if (countryCode.equalsIgnoreCase(mCountryCode)) {
+            mCountryCodeCount++;
+        } else {
+            mCountryCodeConflict = true;
+        }
+    }
+
+    private void clear() {
+        mSsids.clear();
+        mBssids = 0;
+        mOpenSsids.clear();
+        mOpenBssids = 0;
+        mSavedSsids.clear();
+        mSavedBssids = 0;
+        mOpenOrSavedSsids.clear();
+        mOpenOrSavedBssids = 0;
+        mSavedPasspointProviderProfiles.clear();
+        mSavedPasspointProviderBssids = 0;
+        mPasspointR1Aps = 0;
+        mPasspointR2Aps = 0;
+        mPasspointR3Aps = 0;
+        mPasspointR1UniqueEss.clear();
+        mPasspointR2UniqueEss.clear();
+        mPasspointR3UniqueEss.clear();
+        mSupporting80211mcAps = 0;
+        mCountryCode = null;
+        mCountryCodeCount = 0;
+        mCountryCodeConflict = false;
+    }
+
+    /** Number of unique SSIDs with sufficient signal power. */
+    public int getSsids() {
+        return mSsids.size();
+    }
+
+    /** Number of BSSIDs with sufficient signal power. */
+    public int getBssids() {
+        return mBssids;
+    }
+
+    /** Number of unique open SSIDs with sufficient signal power. */
+    public int getOpenSsids() {
+        return mOpenSsids.size();
+    }
+
+    /** Number of open BSSIDs with sufficient signal power. */
+    public int getOpenBssids() {
+        return mOpenBssids;
+    }
+
+    /** Number of unique saved SSIDs with sufficient signal power. */
+    public int getSavedSsids() {
+        return mSavedSsids.size();
+    }
+
+    /** Number of saved BSSIDs with sufficient signal power. */
+    public int getSavedBssids() {
+        return mSavedBssids;
+    }
+
+    /** Number of unique SSIDs which are open or saved, with sufficient signal power. */
+    public int getOpenOrSavedSsids() {
+        return mOpenOrSavedSsids.size();
+    }
+
+    /** Number of BSSIDs which are open or saved, with sufficient signal power. */
+    public int getOpenOrSavedBssids() {
+        return mOpenOrSavedBssids;
+    }
+
+    /** Number of unique saved Passpoint providers matched by the APs with sufficient signal. */
+    public int getSavedPasspointProviderProfiles() {
+        return mSavedPasspointProviderProfiles.size();
+    }
+
+    /** Number of BSSIDs with sufficient signal power matching a saved Passpoint provider. */
+    public int getSavedPasspointProviderBssids() {
+        return mSavedPasspointProviderBssids;
+    }
+
+    /** Number of Passpoint APs of the given release. */
+    public int getPasspointAps(NetworkDetail.HSRelease release) {
+        switch (release) {
+            case R1:
+                return mPasspointR1Aps;
+            case R2:
+                return mPasspointR2Aps;
+            case R3:
+                return mPasspointR3Aps;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Number of APs of each unique Passpoint ESS of the given release, keyed by ESS. The
+     * returned map is reused by the next aggregation.
+     */
+    @NonNull
+    public Map<ANQPNetworkKey, Integer> getPasspointUniqueEss(NetworkDetail.HSRelease release) {
+        switch (release) {
+            case R1:
+                return mPasspointR1UniqueEss;
+            case R2:
+                return mPasspointR2UniqueEss;
+            case R3:
+                return mPasspointR3UniqueEss;
+            default:
+                return Collections.emptyMap();
+        }
+    }
+
+    /** Number of APs supporting 802.11mc responder. */
+    public int getSupporting80211mcAps() {
+        return mSupporting80211mcAps;
+    }
+
+    /** Country code advertised by the APs, or null if none or if they conflict. */
+    @Nullable
+    public String getCountryCode() {
+        return mCountryCodeConflict ? null : mCountryCode;
+    }
+
+    /** Number of APs advertising {@link #getCountryCode()}. */
+    public int getCountryCodeCount() {
+        return mCountryCodeConflict ? 0 : mCountryCodeCount;
+    }
+
+    /** Whether the APs advertise different country codes. */
+    public boolean hasCountryCodeConflict() {
+        return mCountryCodeConflict;
+    }
+}
@@ -253,6 +253,8 @@ public class ClientModeImpl extends StateMachine implements ClientMode {
     private final WifiLockManager mWifiLockManager;
     private final WifiP2pConnection mWifiP2pConnection;
     private final WifiGlobals mWifiGlobals;
+    private final AdaptiveRssiPollScheduler mRssiPollScheduler;
+    private final WifiLinkLayerStatsHolder mLinkLayerStatsHolder = new WifiLinkLayerStatsHolder();
     private final ClientModeManagerBroadcastQueue mBroadcastQueue;
     private final TelephonyManager mTelephonyManager;
     private final WifiSettingsConfigStore mSettingsConfigStore;
@@ -797,6 +799,7 @@ public class ClientModeImpl extends StateMachine implements ClientMode {
         mWifiHealthMonitor = wifiHealthMonitor;
         mWifiP2pConnection = wifiP2pConnection;
         mWifiGlobals = wifiGlobals;
+        mRssiPollScheduler = new AdaptiveRssiPollScheduler(wifiGlobals);
 
         mInterfaceName = ifaceName;
         mClientModeManager = clientModeManager;
@@ -1405,6 +1408,14 @@ public class ClientModeImpl extends StateMachine implements ClientMode {
     }
 
     public WifiLinkLayerStats getWifiLinkLayerStats() {
+        return getWifiLinkLayerStats(null);
+    }
+
+    /**
+     * Get the link layer stats, filling the given stats if not null, see
+     * {@link WifiNative#getWifiLinkLayerStats(String, WifiLinkLayerStats)}.
+     */
+    private WifiLinkLayerStats getWifiLinkLayerStats(@Nullable WifiLinkLayerStats reuse) {
         if (mInterfaceName == null) {
             loge("getWifiLinkLayerStats called without an interface");
             return null;
@@ -1412,7 +1423,8 @@ public class ClientModeImpl extends StateMachine implements ClientMode {
         mLastLinkLayerStatsUpdate = mClock.getWallClockMillis();
         WifiLinkLayerStats stats = null;
         if (isPrimary()) {
-            stats = mWifiNative.getWifiLinkLayerStats(mInterfaceName);
+            stats = reuse == null ? mWifiNative.getWifiLinkLayerStats(mInterfaceName)
+                    : mWifiNative.getWifiLinkLayerStats(mInterfaceName, reuse);
         } else {
             if (mVerboseLoggingEnabled) {
                 Log.w(getTag(), "Can't getWifiLinkLayerStats on secondary iface");
@@ -2438,7 +2450,15 @@ public class ClientModeImpl extends StateMachine implements ClientMode {
      */
     private WifiLinkLayerStats updateLinkLayerStatsRssiSpeedFrequencyCapabilities(long txBytes,
             long rxBytes) {
-        WifiLinkLayerStats stats = getWifiLinkLayerStats();
+        return updateLinkLayerStatsRssiSpeedFrequencyCapabilities(txBytes, rxBytes, null);
+    }
+
+    /*
+     * Same as above, filling the given link layer stats if not null.
+     */
+    private WifiLinkLayerStats updateLinkLayerStatsRssiSpeedFrequencyCapabilities(long txBytes,
+            long rxBytes, @Nullable WifiLinkLayerStats reuse) {
+        WifiLinkLayerStats stats = getWifiLinkLayerStats(reuse);
         WifiNl80211Manager.SignalPollResult pollResult = mWifiNative.signalPoll(mInterfaceName);
         if (pollResult == null) {
             return stats;
@@ -5411,6 +5431,7 @@ public class ClientModeImpl extends StateMachine implements ClientMode {
                 if (isPrimary()) {
                     mLinkProbeManager.resetOnNewConnection();
                 }
+                mRssiPollScheduler.reset();
                 sendMessage(CMD_RSSI_POLL, mRssiPollToken, 0);
             }
             sendNetworkChangeBroadcast(DetailedState.CONNECTING);
@@ -5611,7 +5632,7 @@ public class ClientModeImpl extends StateMachine implements ClientMode {
                             mLinkProbeManager.updateConnectionStats(mWifiInfo, mInterfaceName);
                         }
                         sendMessageDelayed(obtainMessage(CMD_RSSI_POLL, mRssiPollToken, 0),
-                                mWifiGlobals.getPollRssiIntervalMillis());
+                                getNextRssiPollIntervalMillis());
                         if (mVerboseLoggingEnabled) sendRssiChangeBroadcast(mWifiInfo.getRssi());
                         if (isPrimary()) {
                             mWifiTrafficPoller.notifyOnDataActivity(
@@ -5629,6 +5650,7 @@ public class ClientModeImpl extends StateMachine implements ClientMode {
                     if (mEnableRssiPolling) {
                         // First poll
                         mLastSignalLevel = -1;
+                        mRssiPollScheduler.reset();
                         if (isPrimary()) {
                             mLinkProbeManager.resetOnScreenTurnedOn();
                         }
@@ -5774,6 +5796,20 @@ public class ClientModeImpl extends StateMachine implements ClientMode {
             return handleStatus;
         }
 
+        /**
+         * Get the interval until the next RSSI poll, and report it to metrics when it is
+         * adaptive.
+         */
+        private int getNextRssiPollIntervalMillis() {
+            if (!mWifiGlobals.isAdaptivePollRssiIntervalEnabled()) {
+                return mWifiGlobals.getPollRssiIntervalMillis();
+            }
+            int intervalMillis = mRssiPollScheduler.getNextPollIntervalMillis(mWifiInfo,
+                    mWifiDataStall.getDeviceMobilityState());
+            mWifiMetrics.incrementRssiPollIntervalHistogram(intervalMillis);
+            return intervalMillis;
+        }
+
         /**
          * Fetches link stats, updates Wifi Data Stall, Score Card and Score Report.
          */
@@ -5781,8 +5817,12 @@ public class ClientModeImpl extends StateMachine implements ClientMode {
             // Get Info and continue polling
             long txBytes = mFacade.getTotalTxBytes() - mFacade.getMobileTxBytes();
             long rxBytes = mFacade.getTotalRxBytes() - mFacade.getMobileRxBytes();
+            // The stats of the periodic poll are only kept until the next poll, so they can be
+            // filled into recycled objects.
+            WifiLinkLayerStats reuse = mWifiGlobals.isLinkLayerStatsRecyclingEnabled()
+                    ? mLinkLayerStatsHolder.obtain(mLastLinkLayerStats) : null;
             WifiLinkLayerStats stats = updateLinkLayerStatsRssiSpeedFrequencyCapabilities(txBytes,
-                    rxBytes);
+                    rxBytes, reuse);
             mWifiMetrics.updateWifiUsabilityStatsEntries(mInterfaceName, mWifiInfo, stats);
             // checkDataStallAndThroughputSufficiency() should be called before
             // mWifiScoreReport.calculateAndReportScore() which needs the latest throughput
@@ -19,7 +19,6 @@ package com.android.server.wifi;
 import android.net.wifi.ScanResult;
 import android.net.wifi.WifiConfiguration;
 import android.os.UserHandle;
-import android.text.TextUtils;
 
 import androidx.annotation.NonNull;
 
@@ -28,9 +27,12 @@ import com.android.server.wifi.util.WifiPermissionsUtil;
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 public class ConfigurationMap {
     private final Map<Integer, WifiConfiguration> mPerID = new HashMap<>();
@@ -38,6 +40,18 @@ public class ConfigurationMap {
     private final Map<Integer, WifiConfiguration> mPerIDForCurrentUser = new HashMap<>();
     private final Map<ScanResultMatchInfo, WifiConfiguration>
             mScanResultMatchInfoMapForCurrentUser = new HashMap<>();
+    // Reverse index of |mScanResultMatchInfoMapForCurrentUser| keyed by network ID.
+    private final Map<Integer, ScanResultMatchInfo>
+            mScanResultMatchInfoPerIDForCurrentUser = new HashMap<>();
+    // Index of |mPerIDForCurrentUser| keyed by the profile key computed when the network was put.
+    // The profile key is derived from mutable fields, so any change to them must be followed by
+    // another put() of the network to re-index it.
+    private final Map<String, WifiConfiguration> mPerProfileKeyForCurrentUser = new HashMap<>();
+    private final Map<Integer, String> mProfileKeyPerIDForCurrentUser = new HashMap<>();
+    // Network IDs of |mPerIDForCurrentUser| keyed by lower case default gateway MAC address.
+    private final Map<String, Set<Integer>> mIDsPerDefaultGwMacAddressForCurrentUser =
+            new HashMap<>();
+    private final Map<Integer, String> mDefaultGwMacAddressPerIDForCurrentUser = new HashMap<>();
 
     @NonNull private final WifiPermissionsUtil mWifiPermissionsUtil;
 
@@ -57,18 +71,31 @@ public class ConfigurationMap {
     }
 
     // RW methods:
+    /**
+     * Adds the network, or replaces the network with the same ID, and indexes it. Putting a
+     * network already in the map re-indexes it, which is required after any in-place change to
+     * the fields its profile key or scan result match info is derived from.
+     */
     public WifiConfiguration put(WifiConfiguration config) {
         final WifiConfiguration current = mPerID.put(config.networkId, config);
+        if (current != null) {
+            removeFromIndexesForCurrentUser(config.networkId);
+        }
         if (config.shared || mWifiPermissionsUtil
                 .doesUidBelongToCurrentUserOrDeviceOwner(config.creatorUid)) {
             mPerIDForCurrentUser.put(config.networkId, config);
+            String profileKey = config.getProfileKey();
+            mPerProfileKeyForCurrentUser.put(profileKey, config);
+            mProfileKeyPerIDForCurrentUser.put(config.networkId, profileKey);
             // TODO (b/142035508): Add a more generic fix. This cache should only hold saved
             // networks.
             if (!config.fromWifiNetworkSpecifier && !config.fromWifiNetworkSuggestion
                     && !config.isPasspoint()) {
-                mScanResultMatchInfoMapForCurrentUser.put(
-                        ScanResultMatchInfo.fromWifiConfiguration(config), config);
+                ScanResultMatchInfo matchInfo = ScanResultMatchInfo.fromWifiConfiguration(config);
+                mScanResultMatchInfoMapForCurrentUser.put(matchInfo, config);
+                mScanResultMatchInfoPerIDForCurrentUser.put(config.networkId, matchInfo);
             }
+            addDefaultGwMacAddressForCurrentUser(config);
         }
         return current;
     }
@@ -80,22 +107,77 @@ public class ConfigurationMap {
         }
 
         mPerIDForCurrentUser.remove(netID);
+        removeFromIndexesForCurrentUser(netID);
+        return config;
+    }
 
-        Iterator<Map.Entry<ScanResultMatchInfo, WifiConfiguration>> scanResultMatchInfoEntries =
-                mScanResultMatchInfoMapForCurrentUser.entrySet().iterator();
-        while (scanResultMatchInfoEntries.hasNext()) {
-            if (scanResultMatchInfoEntries.next().getValue().networkId == netID) {
-                scanResultMatchInfoEntries.remove();
-                break;
+    /**
+     * Remove the index entries of the network with the provided ID. An index entry is only
+     * removed if it still refers to this network, since another network with the same key may
+     * have been put after it.
+     */
+    private void removeFromIndexesForCurrentUser(int netID) {
+        String profileKey = mProfileKeyPerIDForCurrentUser.remove(netID);
+        if (profileKey != null) {
+            WifiConfiguration indexed = mPerProfileKeyForCurrentUser.get(profileKey);
+            if (indexed != null && indexed.networkId == netID) {
+                mPerProfileKeyForCurrentUser.remove(profileKey);
             }
         }
-        return config;
+        ScanResultMatchInfo matchInfo = mScanResultMatchInfoPerIDForCurrentUser.remove(netID);
+        if (matchInfo != null) {
+            WifiConfiguration indexed = mScanResultMatchInfoMapForCurrentUser.get(matchInfo);
+            if (indexed != null && indexed.networkId == netID) {
+                mScanResultMatchInfoMapForCurrentUser.remove(matchInfo);
+            }
+        }
+        removeDefaultGwMacAddressForCurrentUser(netID);
+    }
+
+    private void addDefaultGwMacAddressForCurrentUser(WifiConfiguration config) {
+        if (config.defaultGwMacAddress == null) {
+            return;
+        }
+        String macAddress = config.defaultGwMacAddress.toLowerCase(Locale.ROOT);
+        mDefaultGwMacAddressPerIDForCurrentUser.put(config.networkId, macAddress);
+        mIDsPerDefaultGwMacAddressForCurrentUser
+                .computeIfAbsent(macAddress, k -> new HashSet<>()).add(config.networkId);
+    }
+
+    private void removeDefaultGwMacAddressForCurrentUser(int netID) {
+        String macAddress = mDefaultGwMacAddressPerIDForCurrentUser.remove(netID);
+        if (macAddress == null) {
+            return;
+        }
+        Set<Integer> netIDs = mIDsPerDefaultGwMacAddressForCurrentUser.get(macAddress);
+        if (netIDs != null) {
+            netIDs.remove(netID);
+            if (netIDs.isEmpty()) {
+                mIDsPerDefaultGwMacAddressForCurrentUser.remove(macAddress);
+            }
+        }
+    }
+
+    /**
+     * Re-index the default gateway MAC address of the provided network. Must be invoked whenever
+     * {@link WifiConfiguration#defaultGwMacAddress} of a network in this map is changed in place.
+     */
+    public void updateDefaultGwMacAddress(WifiConfiguration config) {
+        removeDefaultGwMacAddressForCurrentUser(config.networkId);
+        if (mPerIDForCurrentUser.get(config.networkId) == config) {
+            addDefaultGwMacAddressForCurrentUser(config);
+        }
     }
 
     public void clear() {
         mPerID.clear();
         mPerIDForCurrentUser.clear();
         mScanResultMatchInfoMapForCurrentUser.clear();
+        mScanResultMatchInfoPerIDForCurrentUser.clear();
+        mPerProfileKeyForCurrentUser.clear();
+        mProfileKeyPerIDForCurrentUser.clear();
+        mIDsPerDefaultGwMacAddressForCurrentUser.clear();
+        mDefaultGwMacAddressPerIDForCurrentUser.clear();
     }
 
     /**
@@ -124,16 +206,16 @@ public class ConfigurationMap {
         return mPerIDForCurrentUser.size();
     }
 
+    /**
+     * Retrieves the |WifiConfiguration| object matching the provided profile key.
+     * The lookup is served from the profile key index only, which holds the profile key each
+     * network had when it was last put. See {@link #put(WifiConfiguration)}.
+     */
     public WifiConfiguration getByConfigKeyForCurrentUser(String key) {
         if (key == null) {
             return null;
         }
-        for (WifiConfiguration config : mPerIDForCurrentUser.values()) {
-            if (TextUtils.equals(config.getProfileKey(), key)) {
-                return config;
-            }
-        }
-        return null;
+        return mPerProfileKeyForCurrentUser.get(key);
     }
 
     /**
@@ -146,6 +228,20 @@ public class ConfigurationMap {
                 ScanResultMatchInfo.fromScanResult(scanResult));
     }
 
+    /**
+     * Retrieves the IDs of the networks visible to the current user whose default gateway MAC
+     * address matches the provided one, ignoring case.
+     */
+    @NonNull
+    public Set<Integer> getNetworkIdsByDefaultGwMacAddressForCurrentUser(String macAddress) {
+        if (macAddress == null) {
+            return Collections.emptySet();
+        }
+        Set<Integer> netIDs = mIDsPerDefaultGwMacAddressForCurrentUser.get(
+                macAddress.toLowerCase(Locale.ROOT));
+        return netIDs == null ? Collections.emptySet() : Collections.unmodifiableSet(netIDs);
+    }
+
     public Collection<WifiConfiguration> valuesForAllUsers() {
         return mPerID.values();
     }
@@ -104,12 +104,22 @@ public class ScanDetail {
      * Create a ScanDetail from a ScanResult
      */
     public ScanDetail(@NonNull ScanResult scanResult) {
+        this(scanResult, NetworkDetail.DECODE_ALL);
+    }
+
+    /**
+     * Create a ScanDetail from a ScanResult, only decoding the Information Elements in the
+     * provided NetworkDetail.DECODE_* groups.
+     */
+    public ScanDetail(@NonNull ScanResult scanResult, int decodeMask) {
         mScanResult = scanResult;
         mNetworkDetail = new NetworkDetail(
                 scanResult.BSSID,
                 scanResult.informationElements,
                 scanResult.anqpLines,
-                scanResult.frequency);
+                scanResult.frequency,
+                decodeMask,
+                null);
         // Only inherit |mScanResult.seen| if it was previously set. This ensures that |mSeen|
         // will always contain a valid timestamp.
         mSeen = (mScanResult.seen == 0) ? System.currentTimeMillis() : mScanResult.seen;
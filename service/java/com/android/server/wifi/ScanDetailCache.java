@@ -17,6 +17,7 @@
 package com.android.server.wifi;
 
 import android.annotation.NonNull;
+import android.annotation.Nullable;
 import android.net.wifi.ScanResult;
 import android.net.wifi.WifiConfiguration;
 
@@ -24,9 +25,8 @@ import com.android.server.wifi.hotspot2.NetworkDetail;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
+import java.util.TreeSet;
 
 /**
  * Maps BSSIDs to their individual ScanDetails for a given WifiConfiguration.
@@ -40,32 +40,110 @@ public class ScanDetailCache {
     private final int mMaxSize;
     private final int mTrimSize;
     private final HashMap<String, ScanDetail> mMap;
+    // Snapshot of the ordering attributes of each cached entry, taken when it was inserted.
+    private final HashMap<String, AgeKey> mAgeKeys;
+    // Entries in ascending order of age key, i.e. oldest scan results first.
+    private final TreeSet<AgeKey> mAgeIndex;
+    // Cached last element of |mAgeIndex|, i.e. the most recent scan result.
+    private AgeKey mMostRecent;
+    @Nullable private final BssidListener mBssidListener;
+
+    /**
+     * Listener notified when a BSSID is added to or removed from the cache, including when it is
+     * evicted by trimming. Replacing the ScanDetail of a cached BSSID doesn't notify it.
+     */
+    interface BssidListener {
+        /** Called when |bssid| is added to the cache. */
+        void onBssidAdded(@NonNull String bssid);
+        /** Called when |bssid| is removed from the cache. */
+        void onBssidRemoved(@NonNull String bssid);
+    }
+
+    /**
+     * Ordering key of an entry: ascending timestamp, then ascending RSSI, then descending BSSID.
+     * The last key is therefore the most recent scan result with the highest RSSI.
+     *
+     * The attributes are copied since the cached ScanResult can be updated in place, in which
+     * case the entry must be put again to update its position.
+     */
+    private static final class AgeKey implements Comparable<AgeKey> {
+        public final long seen;
+        public final int level;
+        public final String bssid;
+        public final ScanDetail scanDetail;
+
+        AgeKey(ScanDetail scanDetail) {
+            this.seen = scanDetail.getSeen();
+            this.level = scanDetail.getScanResult().level;
+            this.bssid = scanDetail.getBSSIDString();
+            this.scanDetail = scanDetail;
+        }
+
+        @Override
+        public int compareTo(AgeKey other) {
+            if (seen != other.seen) {
+                return seen < other.seen ? -1 : 1;
+            }
+            if (level != other.level) {
+                return level < other.level ? -1 : 1;
+            }
+            return other.bssid.compareTo(bssid);
+        }
+    }
 
     /**
      * Scan Detail cache associated with each configured network.
      *
      * The cache size is trimmed down to |trimSize| once it crosses the provided |maxSize|.
-     * Since this operation is relatively expensive, ensure that |maxSize| and |trimSize| are not
-     * too close to each other. |trimSize| should always be <= |maxSize|.
+     * Trimming evicts the oldest entries from an ordered index, so each evicted entry costs
+     * O(log n). |trimSize| should always be <= |maxSize|.
      *
      * @param config   WifiConfiguration object corresponding to the network.
      * @param maxSize  Max size desired for the cache.
      * @param trimSize Size to trim the cache down to once it reaches |maxSize|.
      */
     ScanDetailCache(WifiConfiguration config, int maxSize, int trimSize) {
+        this(config, maxSize, trimSize, null);
+    }
+
+    /**
+     * Same as {@link #ScanDetailCache(WifiConfiguration, int, int)}, with a listener notified of
+     * the BSSIDs added to and removed from the cache.
+     */
+    ScanDetailCache(WifiConfiguration config, int maxSize, int trimSize,
+            @Nullable BssidListener bssidListener) {
         mConfig = config;
+        mBssidListener = bssidListener;
         mMaxSize = maxSize;
         mTrimSize = trimSize;
         mMap = new HashMap(16, 0.75f);
+        mAgeKeys = new HashMap<>(16, 0.75f);
+        mAgeIndex = new TreeSet<>();
     }
 
+    /**
+     * Add or replace the ScanDetail for its BSSID. This must also be called after updating the
+     * timestamp or RSSI of a ScanDetail already in the cache, so that its age is re-indexed.
+     */
     void put(ScanDetail scanDetail) {
+        String bssid = scanDetail.getBSSIDString();
+        removeFromIndex(bssid);
+        boolean isNewBssid = mMap.remove(bssid) == null;
         // First check if we have reached |maxSize|. if yes, trim it down to |trimSize|.
         if (mMap.size() >= mMaxSize) {
             trim();
         }
 
-        mMap.put(scanDetail.getBSSIDString(), scanDetail);
+        mMap.put(bssid, scanDetail);
+        AgeKey key = new AgeKey(scanDetail);
+        mAgeKeys.put(bssid, key);
+        mAgeIndex.add(key);
+        if (mMostRecent == null || key.compareTo(mMostRecent) > 0) {
+            mMostRecent = key;
+        }
+        if (isNewBssid && mBssidListener != null) {
+            mBssidListener.onBssidAdded(bssid);
+        }
     }
 
     /**
@@ -90,7 +168,10 @@ public class ScanDetailCache {
     }
 
     void remove(@NonNull String bssid) {
-        mMap.remove(bssid);
+        removeFromIndex(bssid);
+        if (mMap.remove(bssid) != null && mBssidListener != null) {
+            mBssidListener.onBssidRemoved(bssid);
+        }
     }
 
     int size() {
@@ -109,36 +190,39 @@ public class ScanDetailCache {
         return mMap.values();
     }
 
+    private void removeFromIndex(String bssid) {
+        AgeKey key = mAgeKeys.remove(bssid);
+        if (key == null) {
+            return;
+        }
+        mAgeIndex.remove(key);
+        if (key == mMostRecent) {
+            mMostRecent = mAgeIndex.isEmpty() ? null : mAgeIndex.last();
+        }
+    }
+
     /**
      * Method to reduce the cache to |mTrimSize| size by removing the oldest entries.
-     * TODO: Investigate if this method can be further optimized.
      */
     private void trim() {
         int currentSize = mMap.size();
         if (currentSize < mTrimSize) {
             return; // Nothing to trim
         }
-        ArrayList<ScanDetail> list = new ArrayList<ScanDetail>(mMap.values());
-        if (list.size() != 0) {
-            // Sort by ascending timestamp (oldest scan results first)
-            Collections.sort(list, new Comparator() {
-                public int compare(Object o1, Object o2) {
-                    ScanDetail a = (ScanDetail) o1;
-                    ScanDetail b = (ScanDetail) o2;
-                    if (a.getSeen() > b.getSeen()) {
-                        return 1;
-                    }
-                    if (a.getSeen() < b.getSeen()) {
-                        return -1;
-                    }
-                    return a.getBSSIDString().compareTo(b.getBSSIDString());
-                }
-            });
-        }
         for (int i = 0; i < currentSize - mTrimSize; i++) {
             // Remove oldest results from scan cache
-            ScanDetail result = list.get(i);
-            mMap.remove(result.getBSSIDString());
+            AgeKey oldest = mAgeIndex.pollFirst();
+            if (oldest == null) {
+                break;
+            }
+            mAgeKeys.remove(oldest.bssid);
+            mMap.remove(oldest.bssid);
+            if (oldest == mMostRecent) {
+                mMostRecent = mAgeIndex.isEmpty() ? null : mAgeIndex.last();
+            }
+            if (mBssidListener != null) {
+                mBssidListener.onBssidRemoved(oldest.bssid);
+            }
         }
     }
 
@@ -146,11 +230,7 @@ public class ScanDetailCache {
      * Return the most recent ScanResult for this network, or null if non exists.
      */
     public ScanResult getMostRecentScanResult() {
-        ArrayList<ScanDetail> list = sort();
-        if (list.size() == 0) {
-            return null;
-        }
-        return list.get(0).getScanResult();
+        return mMostRecent == null ? null : mMostRecent.scanDetail.getScanResult();
     }
 
     /**
@@ -159,27 +239,9 @@ public class ScanDetailCache {
      * @hide
      **/
     private ArrayList<ScanDetail> sort() {
-        ArrayList<ScanDetail> list = new ArrayList<ScanDetail>(mMap.values());
-        if (list.size() != 0) {
-            Collections.sort(list, new Comparator() {
-                public int compare(Object o1, Object o2) {
-                    ScanResult a = ((ScanDetail) o1).getScanResult();
-                    ScanResult b = ((ScanDetail) o2).getScanResult();
-                    if (a.seen > b.seen) {
-                        return -1;
-                    }
-                    if (a.seen < b.seen) {
-                        return 1;
-                    }
-                    if (a.level > b.level) {
-                        return -1;
-                    }
-                    if (a.level < b.level) {
-                        return 1;
-                    }
-                    return a.BSSID.compareTo(b.BSSID);
-                }
-            });
+        ArrayList<ScanDetail> list = new ArrayList<ScanDetail>(mAgeIndex.size());
+        for (AgeKey key : mAgeIndex.descendingSet()) {
+            list.add(key.scanDetail);
         }
         return list;
     }
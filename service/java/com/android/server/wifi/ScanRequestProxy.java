@@ -47,6 +47,7 @@ import com.android.wifi.resources.R;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -87,6 +88,15 @@ public class ScanRequestProxy {
     @VisibleForTesting
     public static final int SCAN_REQUEST_THROTTLE_INTERVAL_BG_APPS_MS = 30 * 60 * 1000;
 
+    // Security types tracked per SSID for the "network in range" queries.
+    private static final int SECURITY_IN_RANGE_WPA2_PERSONAL_ONLY = 1 << 0;
+    private static final int SECURITY_IN_RANGE_WPA3_PERSONAL_ONLY = 1 << 1;
+    private static final int SECURITY_IN_RANGE_WPA2_WPA3_PERSONAL_TRANSITION = 1 << 2;
+    private static final int SECURITY_IN_RANGE_OPEN_ONLY = 1 << 3;
+    private static final int SECURITY_IN_RANGE_OWE_ONLY = 1 << 4;
+    private static final int SECURITY_IN_RANGE_WPA2_ENTERPRISE_ONLY = 1 << 5;
+    private static final int SECURITY_IN_RANGE_WPA3_ENTERPRISE_ONLY = 1 << 6;
+
     private final Context mContext;
     private final Handler mHandler;
     private final AppOpsManager mAppOps;
@@ -114,11 +124,37 @@ public class ScanRequestProxy {
     private final ArrayMap<Pair<Integer, String>, LinkedList<Long>> mLastScanTimestampsForFgApps =
             new ArrayMap();
     // Scan results cached from the last full single scan request.
-    // Stored as a map of bssid -> ScanResult to allow other clients to perform ScanResult lookup
-    // for bssid more efficiently.
-    private final Map<String, ScanResult> mLastScanResultsMap = new HashMap<>();
+    // Published as a new immutable snapshot whenever the cached results change, so that it can
+    // be read from any thread without copying.
+    private volatile ScanResultsSnapshot mLastScanResults = ScanResultsSnapshot.EMPTY;
+    // Incremented every time a new snapshot is published.
+    private long mScanResultsGeneration = 0;
+    // Bitmask of the SECURITY_IN_RANGE_* types found in the last scan results, keyed by SSID.
+    // Rebuilt whenever |mLastScanResults| is replaced.
+    private final Map<String, Integer> mLastScanSecurityTypesBySsid = new HashMap<>();
     // external ScanResultCallback tracker
     private final RemoteCallbackList<IScanResultsCallback> mRegisteredScanResultsCallbacks;
+
+    /**
+     * Immutable snapshot of the scan results cached from the last full single scan request.
+     * Stored as a map of bssid -> ScanResult to allow other clients to perform ScanResult lookup
+     * for bssid more efficiently.
+     */
+    private static final class ScanResultsSnapshot {
+        public static final ScanResultsSnapshot EMPTY =
+                new ScanResultsSnapshot(0, Collections.emptyMap());
+
+        public final long generation;
+        public final Map<String, ScanResult> resultsByBssid;
+        public final List<ScanResult> results;
+
+        ScanResultsSnapshot(long generation, Map<String, ScanResult> resultsByBssid) {
+            this.generation = generation;
+            this.resultsByBssid = Collections.unmodifiableMap(resultsByBssid);
+            this.results = Collections.unmodifiableList(new ArrayList<>(resultsByBssid.values()));
+        }
+    }
+
     // Global scan listener for listening to all scan requests.
     private class GlobalScanListener implements WifiScanner.ScanListener {
         @Override
@@ -150,8 +186,10 @@ public class ScanRequestProxy {
             // Only process full band scan results.
             if (WifiScanner.isFullBandScan(scanData.getScannedBandsInternal(), false)) {
                 // Store the last scan results & send out the scan completion broadcast.
-                mLastScanResultsMap.clear();
-                Arrays.stream(scanResults).forEach(s -> mLastScanResultsMap.put(s.BSSID, s));
+                Map<String, ScanResult> scanResultsMap = new HashMap<>();
+                Arrays.stream(scanResults).forEach(s -> scanResultsMap.put(s.BSSID, s));
+                publishScanResults(scanResultsMap);
+                updateScanSecurityTypesBySsid();
                 sendScanResultBroadcast(true);
                 sendScanResultsAvailableToCallbacks();
             }
@@ -500,14 +538,32 @@ public class ScanRequestProxy {
         return true;
     }
 
+    private void publishScanResults(Map<String, ScanResult> scanResultsMap) {
+        mScanResultsGeneration++;
+        mLastScanResults = new ScanResultsSnapshot(mScanResultsGeneration, scanResultsMap);
+    }
+
     /**
      * Return the results of the most recent access point scan, in the form of
      * a list of {@link ScanResult} objects.
+     *
+     * Note: This method is safe to invoke from any thread. The returned list is an immutable
+     * snapshot shared by all callers.
      * @return the list of results
      */
     public List<ScanResult> getScanResults() {
-        // return a copy to prevent external modification
-        return new ArrayList<>(mLastScanResultsMap.values());
+        return mLastScanResults.results;
+    }
+
+    /**
+     * Return the generation of the cached scan results. The generation changes whenever the
+     * results returned by {@link #getScanResults()} change, so that callers can skip work when
+     * nothing has changed.
+     *
+     * Note: This method is safe to invoke from any thread.
+     */
+    public long getScanResultsGeneration() {
+        return mLastScanResults.generation;
     }
 
     /**
@@ -517,7 +573,7 @@ public class ScanRequestProxy {
      * @return ScanResult for the corresponding bssid if found, null otherwise.
      */
     public @Nullable ScanResult getScanResult(@NonNull String bssid) {
-        ScanResult scanResult = mLastScanResultsMap.get(bssid);
+        ScanResult scanResult = mLastScanResults.resultsByBssid.get(bssid);
         if (scanResult == null) return null;
         // return a copy to prevent external modification
         return new ScanResult(scanResult);
@@ -528,7 +584,8 @@ public class ScanRequestProxy {
      * Clear the stored scan results.
      */
     private void clearScanResults() {
-        mLastScanResultsMap.clear();
+        publishScanResults(Collections.emptyMap());
+        mLastScanSecurityTypesBySsid.clear();
         mLastScanTimestampForBgApps = 0;
         mLastScanTimestampsForFgApps.clear();
     }
@@ -597,60 +654,98 @@ public class ScanRequestProxy {
         return mThrottleEnabled;
     }
 
+    /**
+     * Rebuild the SSID to security type index from the last scan results, so that the
+     * "network in range" queries are a single map lookup.
+     */
+    private void updateScanSecurityTypesBySsid() {
+        mLastScanSecurityTypesBySsid.clear();
+        for (ScanResult r : mLastScanResults.results) {
+            if (r.getWifiSsid() != null) {
+                addScanSecurityTypes(r.getWifiSsid().toString(), getScanSecurityTypes(r));
+            }
+            // The transition mode query matches on the quoted SSID string instead.
+            if (ScanResultUtil.isScanResultForPskSaeTransitionNetwork(r)) {
+                addScanSecurityTypes(ScanResultUtil.createQuotedSsid(r.SSID),
+                        SECURITY_IN_RANGE_WPA2_WPA3_PERSONAL_TRANSITION);
+            }
+        }
+    }
+
+    private void addScanSecurityTypes(String ssid, int securityTypes) {
+        if (securityTypes == 0) return;
+        Integer existing = mLastScanSecurityTypesBySsid.get(ssid);
+        mLastScanSecurityTypesBySsid.put(ssid,
+                existing == null ? securityTypes : existing | securityTypes);
+    }
+
+    private static int getScanSecurityTypes(ScanResult r) {
+        boolean isPsk = ScanResultUtil.isScanResultForPskNetwork(r);
+        boolean isSae = ScanResultUtil.isScanResultForSaeNetwork(r);
+        boolean isOwe = ScanResultUtil.isScanResultForOweNetwork(r);
+        boolean isEap = ScanResultUtil.isScanResultForEapNetwork(r);
+        boolean isWpa3EnterpriseOnly = ScanResultUtil.isScanResultForWpa3EnterpriseOnlyNetwork(r);
+        boolean isWpa3EnterpriseTransition =
+                ScanResultUtil.isScanResultForWpa3EnterpriseTransitionNetwork(r);
+        int securityTypes = 0;
+        if (isPsk && !isSae) {
+            securityTypes |= SECURITY_IN_RANGE_WPA2_PERSONAL_ONLY;
+        }
+        if (isSae && !isPsk) {
+            securityTypes |= SECURITY_IN_RANGE_WPA3_PERSONAL_ONLY;
+        }
+        if (ScanResultUtil.isScanResultForOpenNetwork(r) && !isOwe) {
+            securityTypes |= SECURITY_IN_RANGE_OPEN_ONLY;
+        }
+        if (isOwe && !ScanResultUtil.isScanResultForOweTransitionNetwork(r)) {
+            securityTypes |= SECURITY_IN_RANGE_OWE_ONLY;
+        }
+        if (isEap && !isWpa3EnterpriseTransition && !isWpa3EnterpriseOnly) {
+            securityTypes |= SECURITY_IN_RANGE_WPA2_ENTERPRISE_ONLY;
+        }
+        if (isWpa3EnterpriseOnly && !isWpa3EnterpriseTransition && !isEap) {
+            securityTypes |= SECURITY_IN_RANGE_WPA3_ENTERPRISE_ONLY;
+        }
+        return securityTypes;
+    }
+
+    private boolean isSecurityTypeInRange(String ssid, int securityType) {
+        Integer securityTypes = mLastScanSecurityTypesBySsid.get(ssid);
+        return securityTypes != null && (securityTypes & securityType) != 0;
+    }
+
     /** Indicate whether there are WPA2 personal only networks. */
     public boolean isWpa2PersonalOnlyNetworkInRange(String ssid) {
-        return mLastScanResultsMap.values().stream().anyMatch(r ->
-                TextUtils.equals(ssid, r.getWifiSsid().toString())
-                && ScanResultUtil.isScanResultForPskNetwork(r)
-                && !ScanResultUtil.isScanResultForSaeNetwork(r));
+        return isSecurityTypeInRange(ssid, SECURITY_IN_RANGE_WPA2_PERSONAL_ONLY);
     }
 
     /** Indicate whether there are WPA3 only networks. */
     public boolean isWpa3PersonalOnlyNetworkInRange(String ssid) {
-        return mLastScanResultsMap.values().stream().anyMatch(r ->
-                TextUtils.equals(ssid, r.getWifiSsid().toString())
-                && ScanResultUtil.isScanResultForSaeNetwork(r)
-                && !ScanResultUtil.isScanResultForPskNetwork(r));
+        return isSecurityTypeInRange(ssid, SECURITY_IN_RANGE_WPA3_PERSONAL_ONLY);
     }
 
     /** Indicate whether there are WPA2/WPA3 transition mode networks. */
     public boolean isWpa2Wpa3PersonalTransitionNetworkInRange(String ssid) {
-        return mLastScanResultsMap.values().stream().anyMatch(r ->
-                TextUtils.equals(ssid, ScanResultUtil.createQuotedSsid(r.SSID))
-                && ScanResultUtil.isScanResultForPskSaeTransitionNetwork(r));
+        return isSecurityTypeInRange(ssid, SECURITY_IN_RANGE_WPA2_WPA3_PERSONAL_TRANSITION);
     }
 
     /** Indicate whether there are OPEN only networks. */
     public boolean isOpenOnlyNetworkInRange(String ssid) {
-        return mLastScanResultsMap.values().stream().anyMatch(r ->
-                TextUtils.equals(ssid, r.getWifiSsid().toString())
-                && ScanResultUtil.isScanResultForOpenNetwork(r)
-                && !ScanResultUtil.isScanResultForOweNetwork(r));
+        return isSecurityTypeInRange(ssid, SECURITY_IN_RANGE_OPEN_ONLY);
     }
 
     /** Indicate whether there are OWE only networks. */
     public boolean isOweOnlyNetworkInRange(String ssid) {
-        return mLastScanResultsMap.values().stream().anyMatch(r ->
-                TextUtils.equals(ssid, r.getWifiSsid().toString())
-                && ScanResultUtil.isScanResultForOweNetwork(r)
-                && !ScanResultUtil.isScanResultForOweTransitionNetwork(r));
+        return isSecurityTypeInRange(ssid, SECURITY_IN_RANGE_OWE_ONLY);
     }
 
     /** Indicate whether there are WPA2 Enterprise only networks. */
     public boolean isWpa2EnterpriseOnlyNetworkInRange(String ssid) {
-        return mLastScanResultsMap.values().stream().anyMatch(r ->
-                TextUtils.equals(ssid, r.getWifiSsid().toString())
-                && ScanResultUtil.isScanResultForEapNetwork(r)
-                && !ScanResultUtil.isScanResultForWpa3EnterpriseTransitionNetwork(r)
-                && !ScanResultUtil.isScanResultForWpa3EnterpriseOnlyNetwork(r));
+        return isSecurityTypeInRange(ssid, SECURITY_IN_RANGE_WPA2_ENTERPRISE_ONLY);
     }
 
     /** Indicate whether there are WPA3 Enterprise only networks. */
     public boolean isWpa3EnterpriseOnlyNetworkInRange(String ssid) {
-        return mLastScanResultsMap.values().stream().anyMatch(r ->
-                TextUtils.equals(ssid, r.getWifiSsid().toString())
-                && ScanResultUtil.isScanResultForWpa3EnterpriseOnlyNetwork(r)
-                && !ScanResultUtil.isScanResultForWpa3EnterpriseTransitionNetwork(r)
-                && !ScanResultUtil.isScanResultForEapNetwork(r));
+        return isSecurityTypeInRange(ssid, SECURITY_IN_RANGE_WPA3_ENTERPRISE_ONLY);
     }
 }
@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import android.annotation.NonNull;
+
+import com.android.server.wifi.proto.nano.WifiMetricsProto.ConfigInfo;
+import com.android.server.wifi.proto.nano.WifiMetricsProto.StaEvent;
+
+/**
+ * Fixed-capacity ring buffer of the most recent {@link StaEvent}s.
+ *
+ * The fields of the events are stored in arrays of primitives, one array per field, so that
+ * adding an event doesn't allocate anything once each slot was used once. When the buffer is
+ * full, adding an event overwrites the oldest one. {@link StaEvent} protos are only built back
+ * by {@link #get(int)}, e.g. when the metrics are dumped or serialized.
+ *
+ * This class isn't thread-safe.
+ */
+public class StaEventRingBuffer {
+    private final int mCapacity;
+    // Index of the oldest event.
+    private int mHead = 0;
+    private int mSize = 0;
+
+    private final long[] mWallClockMillis;
+    private final int[] mType;
+    private final int[] mReason;
+    private final int[] mStatus;
+    private final boolean[] mLocalGen;
+    private final int[] mLastRssi;
+    private final int[] mLastLinkSpeed;
+    private final int[] mLastFreq;
+    private final int[] mSupplicantStateChangesBitmask;
+    private final long[] mStartTimeMillis;
+    private final int[] mFrameworkDisconnectReason;
+    private final boolean[] mAssociationTimedOut;
+    private final int[] mAuthFailureReason;
+    private final int[] mLastScore;
+    private final int[] mLastWifiUsabilityScore;
+    private final int[] mLastPredictionHorizonSec;
+    private final boolean[] mLinkProbeWasSuccess;
+    private final int[] mLinkProbeSuccessElapsedTimeMs;
+    private final int[] mLinkProbeFailureReason;
+    private final long[] mMobileTxBytes;
+    private final long[] mMobileRxBytes;
+    private final long[] mTotalTxBytes;
+    private final long[] mTotalRxBytes;
+    private final boolean[] mScreenOn;
+    private final boolean[] mIsCellularDataAvailable;
+    private final boolean[] mIsAdaptiveConnectivityEnabled;
+    private final String[] mInterfaceName;
+    private final int[] mInterfaceRole;
+    // Config info of each slot, allocated the first time the slot has one and reused after.
+    private final boolean[] mHasConfigInfo;
+    private final ConfigInfo[] mConfigInfo;
+
+    public StaEventRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        mCapacity = capacity;
+        mWallClockMillis = new long[capacity];
+        mType = new int[capacity];
+        mReason = new int[capacity];
+        mStatus = new int[capacity];
+        mLocalGen = new boolean[capacity];
+        mLastRssi = new int[capacity];
+        mLastLinkSpeed = new int[capacity];
+        mLastFreq = new int[capacity];
+        mSupplicantStateChangesBitmask = new int[capacity];
+        mStartTimeMillis = new long[capacity];
+        mFrameworkDisconnectReason = new int[capacity];
+        mAssociationTimedOut = new boolean[capacity];
+        mAuthFailureReason = new int[capacity];
+        mLastScore = new int[capacity];
+        mLastWifiUsabilityScore = new int[capacity];
+        mLastPredictionHorizonSec = new int[capacity];
+        mLinkProbeWasSuccess = new boolean[capacity];
+        mLinkProbeSuccessElapsedTimeMs = new int[capacity];
+        mLinkProbeFailureReason = new int[capacity];
+        mMobileTxBytes = new long[capacity];
+        mMobileRxBytes = new long[capacity];
+        mTotalTxBytes = new long[capacity];
+        mTotalRxBytes = new long[capacity];
+        mScreenOn = new boolean[capacity];
+        mIsCellularDataAvailable = new boolean[capacity];
+        mIsAdaptiveConnectivityEnabled = new boolean[capacity];
+        mInterfaceName = new String[capacity];
+        mInterfaceRole = new int[capacity];
+        mHasConfigInfo = new boolean[capacity];
+        mConfigInfo = new ConfigInfo[capacity];
+    }
+
+    /** Returns the number of events in the buffer. */
+    public int size() {
+        return mSize;
+    }
+
+    /** Removes all the events. */
+    public void clear() {
+        mHead = 0;
+        mSize = 0;
+        for (int i = 0; i < mCapacity; i++) {
+            mInterfaceName[i] = null;
+        }
+    }
+
+    /**
+     * Adds a copy of the given event, overwriting the oldest event if the buffer is full. The
+     * given event isn't retained and can be reused by the caller.
+     *
+     * @param event the event to copy
+     * @param wallClockMillis wall clock time of the event, for debugging only
+     */
+    public void add(@NonNull StaEvent event, long wallClockMillis) {
+        int slot;
+        if (mSize < mCapacity) {
+            slot = (mHead + mSize) % mCapacity;
+            mSize++;
+        } else {
+            slot = mHead;
+            mHead = (mHead + 1) % mCapacity;
+        }
+        mWallClockMillis[slot] = wallClockMillis;
+        mType[slot] = event.type;
+        mReason[slot] = event.reason;
+        mStatus[slot] = event.status;
+        mLocalGen[slot] = event.localGen;
+        mLastRssi[slot] = event.lastRssi;
+        mLastLinkSpeed[slot] = event.lastLinkSpeed;
+        mLastFreq[slot] = event.lastFreq;
+        mSupplicantStateChangesBitmask[slot] = event.supplicantStateChangesBitmask;
+        mStartTimeMillis[slot] = event.startTimeMillis;
+        mFrameworkDisconnectReason[slot] = event.frameworkDisconnectReason;
+        mAssociationTimedOut[slot] = event.associationTimedOut;
+        mAuthFailureReason[slot] = event.authFailureReason;
+        mLastScore[slot] = event.lastScore;
+        mLastWifiUsabilityScore[slot] = event.lastWifiUsabilityScore;
+        mLastPredictionHorizonSec[slot] = event.lastPredictionHorizonSec;
+        mLinkProbeWasSuccess[slot] = event.linkProbeWasSuccess;
+        mLinkProbeSuccessElapsedTimeMs[slot] = event.linkProbeSuccessElapsedTimeMs;
+        mLinkProbeFailureReason[slot] = event.linkProbeFailureReason;
+        mMobileTxBytes[slot] = event.mobileTxBytes;
+        mMobileRxBytes[slot] = event.mobileRxBytes;
+        mTotalTxBytes[slot] = event.totalTxBytes;
+        mTotalRxBytes[slot] = event.totalRxBytes;
+        mScreenOn[slot] = event.screenOn;
+        mIsCellularDataAvailable[slot] = event.isCellularDataAvailable;
+        mIsAdaptiveConnectivityEnabled[slot] = event.isAdaptiveConnectivityEnabled;
+        mInterfaceName[slot] = event.interfaceName;
+        mInterfaceRole[slot] = event.interfaceRole;
+        mHasConfigInfo[slot] = event.configInfo != null;
+        if (event.configInfo != null) {
+            if (mConfigInfo[slot] == null) {
+                mConfigInfo[slot] = new ConfigInfo();
+            }
+            copyConfigInfo(event.configInfo, mConfigInfo[slot]);
+        }
+    }
+
+    /**
+     * Builds the event at the given index, 0 being the oldest event.
+     */
+    @NonNull
+    public StaEvent get(int index) {
+        int slot = getSlot(index);
+        StaEvent event = new StaEvent();
+        event.type = mType[slot];
+        event.reason = mReason[slot];
+        event.status = mStatus[slot];
+        event.localGen = mLocalGen[slot];
+        event.lastRssi = mLastRssi[slot];
+        event.lastLinkSpeed = mLastLinkSpeed[slot];
+        event.lastFreq = mLastFreq[slot];
+        event.supplicantStateChangesBitmask = mSupplicantStateChangesBitmask[slot];
+        event.startTimeMillis = mStartTimeMillis[slot];
+        event.frameworkDisconnectReason = mFrameworkDisconnectReason[slot];
+        event.associationTimedOut = mAssociationTimedOut[slot];
+        event.authFailureReason = mAuthFailureReason[slot];
+        event.lastScore = mLastScore[slot];
+        event.lastWifiUsabilityScore = mLastWifiUsabilityScore[slot];
+        event.lastPredictionHorizonSec = mLastPredictionHorizonSec[slot];
+        event.linkProbeWasSuccess = mLinkProbeWasSuccess[slot];
+        event.linkProbeSuccessElapsedTimeMs = mLinkProbeSuccessElapsedTimeMs[slot];
+        event.linkProbeFailureReason = mLinkProbeFailureReason[slot];
+        event.mobileTxBytes = mMobileTxBytes[slot];
+        event.mobileRxBytes = mMobileRxBytes[slot];
+        event.totalTxBytes = mTotalTxBytes[slot];
+        event.totalRxBytes = mTotalRxBytes[slot];
+        event.screenOn = mScreenOn[slot];
+        event.isCellularDataAvailable = mIsCellularDataAvailable[slot];
+        event.isAdaptiveConnectivityEnabled = mIsAdaptiveConnectivityEnabled[slot];
+        event.interfaceName = mInterfaceName[slot];
+        event.interfaceRole = mInterfaceRole[slot];
+        if (mHasConfigInfo[slot]) {
+            event.configInfo = new ConfigInfo();
+            copyConfigInfo(mConfigInfo[slot], event.configInfo);
+        }
+        return event;
+    }
+
+    /**
+     * Returns the wall clock time of the event at the given index, 0 being the oldest event.
+     */
+    public long getWallClockMillis(int index) {
+        return mWallClockMillis[getSlot(index)];
+    }
+
+    private int getSlot(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("index=" + index + " size=" + mSize);
+        }
+        return (mHead + index) % mCapacity;
+    }
+
+    private static void copyConfigInfo(ConfigInfo from, ConfigInfo to) {
+        to.allowedKeyManagement = from.allowedKeyManagement;
+        to.allowedProtocols = from.allowedProtocols;
+        to.allowedAuthAlgorithms = from.allowedAuthAlgorithms;
+        to.allowedPairwiseCiphers = from.allowedPairwiseCiphers;
+        to.allowedGroupCiphers = from.allowedGroupCiphers;
+        to.hiddenSsid = from.hiddenSsid;
+        to.isPasspoint = from.isPasspoint;
+        to.isEphemeral = from.isEphemeral;
+        to.hasEverConnected = from.hasEverConnected;
+        to.scanRssi = from.scanRssi;
+        to.scanFreq = from.scanFreq;
+    }
+}
@@ -74,7 +74,6 @@ import com.android.server.wifi.util.NativeUtil;
 
 import java.io.IOException;
 import java.nio.BufferUnderflowException;
-import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -192,9 +191,7 @@ class SupplicantStaIfaceCallbackAidlImpl extends ISupplicantStaIfaceCallback.Stu
     private ANQPElement parseAnqpElement(Constants.ANQPElementType infoID, byte[] payload) {
         synchronized (mLock) {
             try {
-                return Constants.getANQPElementID(infoID) != null
-                        ? ANQPParser.parseElement(infoID, ByteBuffer.wrap(payload))
-                        : ANQPParser.parseHS20Element(infoID, ByteBuffer.wrap(payload));
+                return ANQPParser.parseElementPayload(infoID, payload);
             } catch (IOException | BufferUnderflowException e) {
                 Log.e(TAG, "Failed parsing ANQP element payload: " + infoID, e);
                 return null;
@@ -48,7 +48,6 @@ import com.android.server.wifi.util.NativeUtil;
 
 import java.io.IOException;
 import java.nio.BufferUnderflowException;
-import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
@@ -115,11 +114,8 @@ abstract class SupplicantStaIfaceCallbackHidlImpl extends ISupplicantStaIfaceCal
                                          ArrayList<Byte> payload) {
         synchronized (mLock) {
             try {
-                return Constants.getANQPElementID(infoID) != null
-                        ? ANQPParser.parseElement(
-                        infoID, ByteBuffer.wrap(NativeUtil.byteArrayFromArrayList(payload)))
-                        : ANQPParser.parseHS20Element(
-                        infoID, ByteBuffer.wrap(NativeUtil.byteArrayFromArrayList(payload)));
+                return ANQPParser.parseElementPayload(
+                        infoID, NativeUtil.byteArrayFromArrayList(payload));
             } catch (IOException | BufferUnderflowException e) {
                 Log.e(TAG, "Failed parsing ANQP element payload: " + infoID, e);
                 return null;
@@ -21,14 +21,19 @@ import static com.android.server.wifi.util.InformationElementUtil.BssLoad.MIN_CH
 
 import android.annotation.NonNull;
 import android.content.Context;
+import android.content.res.Resources;
 import android.net.wifi.ScanResult;
 import android.net.wifi.WifiAnnotations.WifiStandard;
 import android.net.wifi.WifiInfo;
 import android.net.wifi.nl80211.DeviceWiphyCapabilities;
 import android.util.Log;
+import android.util.LruCache;
 
 import com.android.wifi.resources.R;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
 /**
  * A class that predicts network throughput based on RSSI, channel utilization, channel width,
  * WiFi standard (PHY/MAC mode), Nss and other radio information.
@@ -105,7 +110,22 @@ public class ThroughputPredictor {
     private static final int MAX_NUM_SPATIAL_STREAM_LEGACY = 1;
 
     private static final int B_MODE_MAX_MBPS = 11;
+
+    // Maximum number of memoized throughput predictions.
+    private static final int PREDICTION_CACHE_SIZE = 512;
+    private static final long NO_CACHE_KEY = -1;
+
     private final Context mContext;
+    // Memoized results of predictThroughput(), keyed by the inputs of the prediction once
+    // combined with the device capabilities, see getPredictionCacheKey().
+    private final LruCache<Long, Integer> mPredictionCache =
+            new LruCache<>(PREDICTION_CACHE_SIZE);
+    // Overlay values, read once per Resources instance. The Resources instance changes when the
+    // overlay is reloaded.
+    private Resources mCachedResources;
+    private boolean mMaxNumSpatialStreamDeviceOverrideEnabled;
+    private int mMaxNumSpatialStreamDeviceOverrideValue;
+    private int mPredictionCacheInvalidations;
 
     ThroughputPredictor(Context context) {
         mContext = context;
@@ -192,13 +212,12 @@ public class ThroughputPredictor {
             return 0;
         }
 
+        updateCachedResources();
         int maxNumSpatialStreamDevice = Math.min(deviceCapabilities.getMaxNumberTxSpatialStreams(),
                 deviceCapabilities.getMaxNumberRxSpatialStreams());
 
-        if (mContext.getResources().getBoolean(
-                R.bool.config_wifiFrameworkMaxNumSpatialStreamDeviceOverrideEnable)) {
-            maxNumSpatialStreamDevice = mContext.getResources().getInteger(
-                    R.integer.config_wifiFrameworkMaxNumSpatialStreamDeviceOverrideValue);
+        if (mMaxNumSpatialStreamDeviceOverrideEnabled) {
+            maxNumSpatialStreamDevice = mMaxNumSpatialStreamDeviceOverrideValue;
         }
 
         int maxNumSpatialStream = Math.min(maxNumSpatialStreamDevice, maxNumSpatialStreamAp);
@@ -278,8 +297,80 @@ public class ThroughputPredictor {
                 channelUtilizationLinkLayerStats,
                 isBluetoothConnected);
 
-        return predictThroughputInternal(wifiStandard, false/* is11bMode */, channelWidth,
-                rssiDbm, maxNumSpatialStream, channelUtilization, frequency);
+        // Skip the cache in verbose mode so that every prediction is logged.
+        long cacheKey = mVerboseLoggingEnabled ? NO_CACHE_KEY : getPredictionCacheKey(
+                wifiStandard, channelWidth, rssiDbm, maxNumSpatialStream, channelUtilization,
+                is6GhzRssiBoostApplicable(frequency));
+        if (cacheKey != NO_CACHE_KEY) {
+            Integer cachedThroughputMbps = mPredictionCache.get(cacheKey);
+            if (cachedThroughputMbps != null) {
+                return cachedThroughputMbps;
+            }
+        }
+        int throughputMbps = predictThroughputInternal(wifiStandard, false/* is11bMode */,
+                channelWidth, rssiDbm, maxNumSpatialStream, channelUtilization, frequency);
+        if (cacheKey != NO_CACHE_KEY) {
+            mPredictionCache.put(cacheKey, throughputMbps);
+        }
+        return throughputMbps;
+    }
+
+    /**
+     * Returns the key of a prediction in the prediction cache, or {@link #NO_CACHE_KEY} if the
+     * prediction cannot be cached. The key covers all the inputs of predictThroughputInternal(),
+     * the frequency only matters through the 6GHz RSSI boost.
+     */
+    private static long getPredictionCacheKey(@WifiStandard int wifiStandard, int channelWidth,
+            int rssiDbm, int maxNumSpatialStream, int channelUtilization,
+            boolean is6GhzRssiBoostApplicable) {
+        if (wifiStandard < 0 || wifiStandard > 0xF || channelWidth < 0 || channelWidth > 0xF
+                || rssiDbm < Byte.MIN_VALUE || rssiDbm > Byte.MAX_VALUE
+                || maxNumSpatialStream < 0 || maxNumSpatialStream > 0xFF
+                || channelUtilization < 0 || channelUtilization > 0x7FFF) {
+            return NO_CACHE_KEY;
+        }
+        return ((long) wifiStandard << 36) | ((long) channelWidth << 32)
+                | ((long) (rssiDbm & 0xFF) << 24) | (maxNumSpatialStream << 16)
+                | (channelUtilization << 1) | (is6GhzRssiBoostApplicable ? 1 : 0);
+    }
+
+    private boolean is6GhzRssiBoostApplicable(int frequency) {
+        return ScanResult.is6GHz(frequency) && mContext.getResources().getBoolean(
+                R.bool.config_wifiEnable6GhzBeaconRssiBoost);
+    }
+
+    /**
+     * Read the overlay values used for every prediction, and drop the memoized predictions, if the
+     * resources have changed since the last prediction.
+     */
+    private void updateCachedResources() {
+        Resources resources = mContext.getResources();
+        if (resources == mCachedResources) {
+            return;
+        }
+        mCachedResources = resources;
+        mMaxNumSpatialStreamDeviceOverrideEnabled = resources.getBoolean(
+                R.bool.config_wifiFrameworkMaxNumSpatialStreamDeviceOverrideEnable);
+        mMaxNumSpatialStreamDeviceOverrideValue = resources.getInteger(
+                R.integer.config_wifiFrameworkMaxNumSpatialStreamDeviceOverrideValue);
+        if (mPredictionCache.size() > 0) {
+            mPredictionCache.evictAll();
+            mPredictionCacheInvalidations++;
+        }
+    }
+
+    /**
+     * Dump the throughput prediction cache statistics.
+     */
+    public void dump(FileDescriptor fd, PrintWriter pw, String[] args) {
+        pw.println("Dump of ThroughputPredictor");
+        int hits = mPredictionCache.hitCount();
+        int lookups = hits + mPredictionCache.missCount();
+        pw.println("Prediction cache: size=" + mPredictionCache.size()
+                + " hits=" + hits
+                + " lookups=" + lookups
+                + " hitRate=" + (lookups == 0 ? 0 : (100L * hits / lookups)) + "%"
+                + " invalidations=" + mPredictionCacheInvalidations);
     }
 
     private int predictThroughputInternal(@WifiStandard int wifiStandard, boolean is11bMode,
@@ -372,8 +463,7 @@ public class ThroughputPredictor {
         }
 
         // 6Ghz RSSI boost
-        if (mContext.getResources().getBoolean(R.bool.config_wifiEnable6GhzBeaconRssiBoost)
-                && ScanResult.is6GHz(frequency)) {
+        if (is6GhzRssiBoostApplicable(frequency)) {
             switch (channelWidth) {
                 case ScanResult.CHANNEL_WIDTH_40MHZ:
                     rssiDbm += 3;
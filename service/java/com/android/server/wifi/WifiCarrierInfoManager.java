@@ -199,6 +199,8 @@ public class WifiCarrierInfoManager {
             new ArrayList<>();
     private final List<OnCarrierOffloadDisabledListener> mOnCarrierOffloadDisabledListeners =
             new ArrayList<>();
+    private final List<OnActiveSubscriptionsChangedListener>
+            mOnActiveSubscriptionsChangedListeners = new ArrayList<>();
     private final SparseArray<SimInfo> mSubIdToSimInfoSparseArray = new SparseArray<>();
     private final Map<ParcelUuid, List<Integer>> mSubscriptionGroupMap = new HashMap<>();
     private List<WifiCarrierPrivilegeCallback> mCarrierPrivilegeCallbacks;
@@ -310,6 +312,17 @@ public class WifiCarrierInfoManager {
         void onCarrierOffloadDisabled(int subscriptionId, boolean merged);
     }
 
+    /**
+     * Interface for other modules to listen to the active subscriptions changes.
+     */
+    public interface OnActiveSubscriptionsChangedListener {
+
+        /**
+         * Invoke when the active subscriptions changed.
+         */
+        void onActiveSubscriptionsChanged();
+    }
+
     /**
      * Module to interact with the wifi config store.
      */
@@ -457,6 +470,10 @@ public class WifiCarrierInfoManager {
             if (mVerboseLogEnabled) {
                 Log.v(TAG, "active subscription changes: " + mActiveSubInfos);
             }
+            for (OnActiveSubscriptionsChangedListener listener :
+                    mOnActiveSubscriptionsChangedListeners) {
+                listener.onActiveSubscriptionsChanged();
+            }
             if (SdkLevel.isAtLeastT()) {
                 for (int simSlot = 0; simSlot < mTelephonyManager.getActiveModemCount();
                         simSlot++) {
@@ -1709,6 +1726,14 @@ public class WifiCarrierInfoManager {
         mOnCarrierOffloadDisabledListeners.add(listener);
     }
 
+    /**
+     * Add a listener to monitor the active subscriptions changes.
+     */
+    public void addOnActiveSubscriptionsChangedListener(
+            OnActiveSubscriptionsChangedListener listener) {
+        mOnActiveSubscriptionsChangedListeners.add(listener);
+    }
+
     /**
      * remove a {@link OnCarrierOffloadDisabledListener}.
      */
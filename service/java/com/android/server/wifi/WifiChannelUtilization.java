@@ -103,7 +103,7 @@ public class WifiChannelUtilization {
             mChannelStatsMapCache.addFirst(new SparseArray<>());
         }
         if (wifiLinkLayerStats != null) {
-            mChannelStatsMapCache.addFirst(wifiLinkLayerStats.channelStatsMap);
+            mChannelStatsMapCache.addFirst(copyChannelStatsMap(wifiLinkLayerStats.channelStatsMap));
         } else {
             mChannelStatsMapCache.addFirst(new SparseArray<>());
         }
@@ -279,13 +279,31 @@ public class WifiChannelUtilization {
         boolean isLongTimeSinceLastUpdate =
                 (currTimeStamp - mLastChannelStatsMapTimeStamp) >= mCacheUpdateIntervalMinMs;
         if ((isLongTimeSinceLastUpdate && !remainStationary) || isChannelStatsMapCacheEmpty(freq)) {
-            mChannelStatsMapCache.addFirst(channelStatsMap);
+            mChannelStatsMapCache.addFirst(copyChannelStatsMap(channelStatsMap));
             mChannelStatsMapCache.removeLast();
             mLastChannelStatsMapTimeStamp = currTimeStamp;
             mLastChannelStatsMapMobilityState = mDeviceMobilityState;
         }
     }
 
+    /**
+     * Copy the channel stats to be cached, since the link layer stats of the RSSI poll, and so
+     * their ChannelStats, may be recycled, see {@link WifiLinkLayerStatsHolder}.
+     */
+    private static SparseArray<ChannelStats> copyChannelStatsMap(
+            SparseArray<ChannelStats> channelStatsMap) {
+        SparseArray<ChannelStats> copy = new SparseArray<>(channelStatsMap.size());
+        for (int i = 0; i < channelStatsMap.size(); i++) {
+            ChannelStats channelStats = channelStatsMap.valueAt(i);
+            ChannelStats channelStatsCopy = new ChannelStats();
+            channelStatsCopy.frequency = channelStats.frequency;
+            channelStatsCopy.radioOnTimeMs = channelStats.radioOnTimeMs;
+            channelStatsCopy.ccaBusyTimeMs = channelStats.ccaBusyTimeMs;
+            copy.append(channelStatsMap.keyAt(i), channelStatsCopy);
+        }
+        return copy;
+    }
+
     private boolean isChannelStatsMapCacheEmpty(int freq) {
         SparseArray<ChannelStats> channelStatsMap = mChannelStatsMapCache.peekFirst();
         if (channelStatsMap == null || channelStatsMap.size() == 0) return true;
@@ -77,6 +77,7 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
@@ -295,6 +296,14 @@ public class WifiConfigManager {
      * Stores a map of NetworkId to ScanDetailCache.
      */
     private final Map<Integer, ScanDetailCache> mScanDetailCaches;
+    /**
+     * Stores a map of lower case BSSID prefix ({@link #LINK_CONFIGURATION_BSSID_MATCH_LENGTH}
+     * chars) to the IDs of the networks whose ScanDetailCache contains a matching BSSID, each
+     * with the number of such BSSIDs. It is kept in sync with the ScanDetailCaches, including
+     * their evictions, see {@link BssidPrefixIndexUpdater}.
+     */
+    private final Map<String, Map<Integer, Integer>> mNetworkIdsPerBssidPrefix =
+            new HashMap<>();
     /**
      * Framework keeps a list of networks that where temporarily disabled by user,
      * framework knows not to autoconnect again even if the app/scorer recommends it.
@@ -1682,6 +1691,7 @@ public class WifiConfigManager {
                 .collect(Collectors.toList());
         for (WifiConfiguration config : configsToDelete) {
             mConfiguredNetworks.remove(config.networkId);
+            removeScanDetailCacheForNetwork(config.networkId);
             localLog("removeExcessNetworks: removed config."
                     + " netId=" + config.networkId
                     + " configKey=" + config.getProfileKey());
@@ -1714,7 +1724,7 @@ public class WifiConfigManager {
             removeConnectChoiceFromAllNetworks(config.getProfileKey());
         }
         mConfiguredNetworks.remove(config.networkId);
-        mScanDetailCaches.remove(config.networkId);
+        removeScanDetailCacheForNetwork(config.networkId);
         // Stage the backup of the SettingsProvider package which backs this up.
         mBackupManagerProxy.notifyDataChanged();
         mWifiBlocklistMonitor.handleNetworkRemoved(config.SSID);
@@ -2271,6 +2281,7 @@ public class WifiConfigManager {
             return false;
         }
         config.defaultGwMacAddress = macAddress;
+        mConfiguredNetworks.updateDefaultGwMacAddress(config);
         return true;
     }
 
@@ -2517,7 +2528,8 @@ public class WifiConfigManager {
         ScanDetailCache cache = getScanDetailCacheForNetwork(config.networkId);
         if (cache == null && config.networkId != WifiConfiguration.INVALID_NETWORK_ID) {
             cache = new ScanDetailCache(
-                    config, SCAN_CACHE_ENTRIES_MAX_SIZE, SCAN_CACHE_ENTRIES_TRIM_SIZE);
+                    config, SCAN_CACHE_ENTRIES_MAX_SIZE, SCAN_CACHE_ENTRIES_TRIM_SIZE,
+                    new BssidPrefixIndexUpdater(config.networkId));
             mScanDetailCaches.put(config.networkId, cache);
         }
         return cache;
@@ -2553,6 +2565,82 @@ public class WifiConfigManager {
         scanDetailCache.put(scanDetail);
     }
 
+    /**
+     * Keeps {@link #mNetworkIdsPerBssidPrefix} in sync with the ScanDetailCache of a network.
+     */
+    private class BssidPrefixIndexUpdater implements ScanDetailCache.BssidListener {
+        private final int mNetworkId;
+
+        BssidPrefixIndexUpdater(int networkId) {
+            mNetworkId = networkId;
+        }
+
+        @Override
+        public void onBssidAdded(String bssid) {
+            String bssidPrefix = getBssidPrefixForLinking(bssid);
+            if (bssidPrefix == null) {
+                return;
+            }
+            mNetworkIdsPerBssidPrefix.computeIfAbsent(bssidPrefix, k -> new HashMap<>())
+                    .merge(mNetworkId, 1, Integer::sum);
+        }
+
+        @Override
+        public void onBssidRemoved(String bssid) {
+            String bssidPrefix = getBssidPrefixForLinking(bssid);
+            Map<Integer, Integer> networkIds = mNetworkIdsPerBssidPrefix.get(bssidPrefix);
+            if (networkIds == null) {
+                return;
+            }
+            Integer count = networkIds.get(mNetworkId);
+            if (count == null) {
+                return;
+            }
+            if (count > 1) {
+                networkIds.put(mNetworkId, count - 1);
+                return;
+            }
+            networkIds.remove(mNetworkId);
+            if (networkIds.isEmpty()) {
+                mNetworkIdsPerBssidPrefix.remove(bssidPrefix);
+            }
+        }
+    }
+
+    /**
+     * Removes the scan detail cache entry {@link #mScanDetailCaches} for the provided network,
+     * along with its BSSID prefixes in {@link #mNetworkIdsPerBssidPrefix}.
+     *
+     * @param networkId network ID corresponding to the network.
+     */
+    private void removeScanDetailCacheForNetwork(int networkId) {
+        ScanDetailCache scanDetailCache = mScanDetailCaches.remove(networkId);
+        if (scanDetailCache == null) {
+            return;
+        }
+        for (String bssid : scanDetailCache.keySet()) {
+            String bssidPrefix = getBssidPrefixForLinking(bssid);
+            Map<Integer, Integer> networkIds = mNetworkIdsPerBssidPrefix.get(bssidPrefix);
+            if (networkIds != null) {
+                networkIds.remove(networkId);
+                if (networkIds.isEmpty()) {
+                    mNetworkIdsPerBssidPrefix.remove(bssidPrefix);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the key used in {@link #mNetworkIdsPerBssidPrefix} for the provided BSSID, or null
+     * if the BSSID is too short to ever match another one.
+     */
+    private static String getBssidPrefixForLinking(String bssid) {
+        if (bssid == null || bssid.length() < LINK_CONFIGURATION_BSSID_MATCH_LENGTH) {
+            return null;
+        }
+        return bssid.substring(0, LINK_CONFIGURATION_BSSID_MATCH_LENGTH).toLowerCase(Locale.ROOT);
+    }
+
     /**
      * Retrieves a configured network corresponding to the provided scan detail if one exists.
      *
@@ -2660,6 +2748,8 @@ public class WifiConfigManager {
                     result.level = (int) ((double) result.level * (1 - alpha)
                                         + (double) previousRssi * alpha);
                 }
+                // Re-index the entry since its timestamp and RSSI were updated in place.
+                scanDetailCache.put(scanDetail);
                 if (mVerboseLoggingEnabled) {
                     Log.v(TAG, "Updating scan detail cache freq=" + result.frequency
                             + " BSSID=" + result.BSSID
@@ -2808,8 +2898,9 @@ public class WifiConfigManager {
     }
 
     /**
-     * This method runs through all the saved networks and checks if the provided network can be
-     * linked with any of them.
+     * This method checks if the provided network can be linked with any of the saved networks.
+     * Only the networks sharing its default gateway or one of its BSSID prefixes are evaluated,
+     * the other saved networks are unlinked from it.
      *
      * @param config WifiConfiguration object corresponding to the network that needs to be
      *               checked for potential links.
@@ -2825,36 +2916,78 @@ public class WifiConfigManager {
                 && scanDetailCache.size() > LINK_CONFIGURATION_MAX_SCAN_CACHE_ENTRIES) {
             return;
         }
-        for (WifiConfiguration linkConfig : getInternalConfiguredNetworks()) {
-            if (linkConfig.getProfileKey().equals(config.getProfileKey())) {
-                continue;
-            }
-            if (linkConfig.ephemeral) {
-                continue;
-            }
-            if (!linkConfig.getNetworkSelectionStatus().isNetworkEnabled()) {
-                continue;
-            }
-            // Network Selector will be allowed to dynamically jump from a linked configuration
-            // to another, hence only link configurations that have WPA_PSK security type.
-            if (!linkConfig.isSecurityType(WifiConfiguration.SECURITY_TYPE_PSK)) {
-                continue;
-            }
-            ScanDetailCache linkScanDetailCache =
-                    getScanDetailCacheForNetwork(linkConfig.networkId);
-            // Ignore configurations with large number of BSSIDs.
-            if (linkScanDetailCache != null
-                    && linkScanDetailCache.size() > LINK_CONFIGURATION_MAX_SCAN_CACHE_ENTRIES) {
+        String configKey = config.getProfileKey();
+        Set<Integer> candidateNetworkIds = getLinkingCandidateNetworkIds(config, scanDetailCache);
+        for (int networkId : candidateNetworkIds) {
+            WifiConfiguration linkConfig = mConfiguredNetworks.getForCurrentUser(networkId);
+            if (linkConfig == null || !canNetworksBeLinked(configKey, linkConfig)) {
                 continue;
             }
             // Check if the networks should be linked/unlinked.
-            if (shouldNetworksBeLinked(
-                    config, linkConfig, scanDetailCache, linkScanDetailCache)) {
+            if (shouldNetworksBeLinked(config, linkConfig, scanDetailCache,
+                    getScanDetailCacheForNetwork(linkConfig.networkId))) {
                 linkNetworks(config, linkConfig);
             } else {
                 unlinkNetworks(config, linkConfig);
             }
         }
+        // The remaining networks share neither the default gateway nor a BSSID prefix with this
+        // network, so any existing link to it is stale.
+        for (WifiConfiguration linkConfig : getInternalConfiguredNetworks()) {
+            if (linkConfig.linkedConfigurations == null
+                    || !linkConfig.linkedConfigurations.containsKey(configKey)
+                    || candidateNetworkIds.contains(linkConfig.networkId)
+                    || !canNetworksBeLinked(configKey, linkConfig)) {
+                continue;
+            }
+            unlinkNetworks(config, linkConfig);
+        }
+    }
+
+    /**
+     * Helper method to check if the provided saved network is eligible for linking with the
+     * network identified by |configKey|.
+     */
+    private boolean canNetworksBeLinked(String configKey, WifiConfiguration linkConfig) {
+        if (linkConfig.getProfileKey().equals(configKey)) {
+            return false;
+        }
+        if (linkConfig.ephemeral) {
+            return false;
+        }
+        if (!linkConfig.getNetworkSelectionStatus().isNetworkEnabled()) {
+            return false;
+        }
+        // Network Selector will be allowed to dynamically jump from a linked configuration
+        // to another, hence only link configurations that have WPA_PSK security type.
+        if (!linkConfig.isSecurityType(WifiConfiguration.SECURITY_TYPE_PSK)) {
+            return false;
+        }
+        ScanDetailCache linkScanDetailCache = getScanDetailCacheForNetwork(linkConfig.networkId);
+        // Ignore configurations with large number of BSSIDs.
+        return linkScanDetailCache == null
+                || linkScanDetailCache.size() <= LINK_CONFIGURATION_MAX_SCAN_CACHE_ENTRIES;
+    }
+
+    /**
+     * Retrieves the IDs of the networks which may be linked with the provided network, i.e. the
+     * networks with the same default gateway or with a BSSID matching the first
+     * {@link #LINK_CONFIGURATION_BSSID_MATCH_LENGTH} chars of one in |scanDetailCache|.
+     */
+    private Set<Integer> getLinkingCandidateNetworkIds(
+            WifiConfiguration config, ScanDetailCache scanDetailCache) {
+        Set<Integer> networkIds = new HashSet<>(mConfiguredNetworks
+                .getNetworkIdsByDefaultGwMacAddressForCurrentUser(config.defaultGwMacAddress));
+        if (scanDetailCache != null) {
+            for (String bssid : scanDetailCache.keySet()) {
+                Map<Integer, Integer> bssidNetworkIds =
+                        mNetworkIdsPerBssidPrefix.get(getBssidPrefixForLinking(bssid));
+                if (bssidNetworkIds != null) {
+                    networkIds.addAll(bssidNetworkIds.keySet());
+                }
+            }
+        }
+        return networkIds;
     }
 
     /**
@@ -3231,6 +3364,7 @@ public class WifiConfigManager {
         mNonCarrierMergedNetworksStatusTracker.clear();
         mRandomizedMacAddressMapping.clear();
         mScanDetailCaches.clear();
+        mNetworkIdsPerBssidPrefix.clear();
         clearLastSelectedNetwork();
     }
 
@@ -3269,6 +3403,7 @@ public class WifiConfigManager {
         mUserTemporarilyDisabledList.clear();
         mNonCarrierMergedNetworksStatusTracker.clear();
         mScanDetailCaches.clear();
+        mNetworkIdsPerBssidPrefix.clear();
         clearLastSelectedNetwork();
         return removedNetworkIds;
     }
@@ -3298,6 +3433,8 @@ public class WifiConfigManager {
                 Log.d(TAG, "Merging network from shared store "
                         + configuration.getProfileKey());
                 mergeWithInternalWifiConfiguration(existingConfiguration, configuration);
+                // The merge may change fields of the profile key, re-index the network.
+                mConfiguredNetworks.put(existingConfiguration);
                 continue;
             }
 
@@ -3337,6 +3474,8 @@ public class WifiConfigManager {
                 Log.d(TAG, "Merging network from user store "
                         + configuration.getProfileKey());
                 mergeWithInternalWifiConfiguration(existingConfiguration, configuration);
+                // The merge may change fields of the profile key, re-index the network.
+                mConfiguredNetworks.put(existingConfiguration);
                 continue;
             }
 
@@ -3565,6 +3704,7 @@ public class WifiConfigManager {
         // Remove the configurations for migrated Passpoint configurations.
         for (int networkId : legacyPasspointNetId) {
             mConfiguredNetworks.remove(networkId);
+            removeScanDetailCacheForNetwork(networkId);
         }
 
         // Setup store data for write.
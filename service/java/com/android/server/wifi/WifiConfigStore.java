@@ -37,6 +37,8 @@ import com.android.internal.util.FastXmlSerializer;
 import com.android.internal.util.Preconditions;
 import com.android.server.wifi.util.EncryptedData;
 import com.android.server.wifi.util.FileUtils;
+import com.android.server.wifi.util.WifiBinaryXmlPullParser;
+import com.android.server.wifi.util.WifiBinaryXmlSerializer;
 import com.android.server.wifi.util.WifiConfigStoreEncryptionUtil;
 import com.android.server.wifi.util.XmlUtil;
 
@@ -46,6 +48,8 @@ import org.xmlpull.v1.XmlSerializer;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileDescriptor;
 import java.io.FileNotFoundException;
@@ -63,6 +67,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -77,7 +82,8 @@ import java.util.stream.Stream;
  * use {@link WifiConfigManager#saveToStore(boolean)} for any writes.</li>
  * <li>{@link WifiConfigManager} controls {@link WifiConfigStore} and initiates read at bootup and
  * store file changes on user switch.</li>
- * <li>Not thread safe!</li>
+ * <li>Not thread safe! All the methods must be invoked on the thread of the provided handler.
+ * The buffered writes to the store files are performed on the provided I/O handler.</li>
  */
 public class WifiConfigStore {
     /**
@@ -109,6 +115,19 @@ public class WifiConfigStore {
     private static final String XML_TAG_DOCUMENT_HEADER = "WifiConfigStoreData";
     private static final String XML_TAG_VERSION = "Version";
     private static final String XML_TAG_HEADER_INTEGRITY = "Integrity";
+    /**
+     * Magic bytes at the start of a store file written in the binary format.
+     * A store file in the binary format is laid out as:
+     * <ul>
+     * <li>{@link #BINARY_FORMAT_MAGIC}</li>
+     * <li>Binary format version (byte), see {@link #BINARY_FORMAT_VERSION}</li>
+     * <li>Config store data version (int), see {@link Version}</li>
+     * <li>For each section: section name (modified UTF-8), length (int) and section data encoded
+     * using {@link WifiBinaryXmlSerializer}</li>
+     * </ul>
+     */
+    private static final byte[] BINARY_FORMAT_MAGIC = new byte[] {'W', 'C', 'S', 'B'};
+    private static final int BINARY_FORMAT_VERSION = 1;
     /**
      * Current config store data version. This will be incremented for any additions.
      */
@@ -184,6 +203,15 @@ public class WifiConfigStore {
      * Handler instance to post alarm timeouts to
      */
     private final Handler mEventHandler;
+    /**
+     * Handler instance on which the buffered writes to the store files are performed.
+     */
+    private final Handler mIoHandler;
+    /**
+     * Flag to indicate if a buffered write has been posted to |mIoHandler| and not yet started.
+     * Any data stored to the store files until then is written by that pending write.
+     */
+    private final AtomicBoolean mIoWritePending = new AtomicBoolean(false);
     /**
      * Alarm manager instance to start buffer timeout alarms.
      */
@@ -217,11 +245,8 @@ public class WifiConfigStore {
     private final AlarmManager.OnAlarmListener mBufferedWriteListener =
             new AlarmManager.OnAlarmListener() {
                 public void onAlarm() {
-                    try {
-                        writeBufferedData();
-                    } catch (IOException e) {
-                        Log.wtf(TAG, "Buffered write failed", e);
-                    }
+                    mBufferedWritePending = false;
+                    postBufferedDataWrite();
                 }
             };
 
@@ -229,6 +254,15 @@ public class WifiConfigStore {
      * List of data containers.
      */
     private final List<StoreData> mStoreDataList;
+    /**
+     * Flag to indicate if the store files are written in the binary format instead of XML.
+     */
+    private boolean mBinaryFormatEnabled = false;
+    /**
+     * Store files read in a different format than the one currently enabled. These are written
+     * on the next write even if none of their StoreData has new data to serialize.
+     */
+    private final Set<StoreFile> mStoreFilesToMigrate = new HashSet<>();
 
     /**
      * Create a new instance of WifiConfigStore.
@@ -244,9 +278,28 @@ public class WifiConfigStore {
      */
     public WifiConfigStore(Context context, Handler handler, Clock clock, WifiMetrics wifiMetrics,
             List<StoreFile> sharedStores) {
+        this(context, handler, handler, clock, wifiMetrics, sharedStores);
+    }
+
+    /**
+     * Create a new instance of WifiConfigStore which performs the buffered writes on a separate
+     * handler.
+     *
+     * @param context     context to use for retrieving the alarm manager.
+     * @param handler     handler instance to post alarm timeouts to.
+     * @param ioHandler   handler instance to perform the buffered writes on.
+     * @param clock       clock instance to retrieve timestamps for alarms.
+     * @param wifiMetrics Metrics instance.
+     * @param sharedStores List of {@link StoreFile} instances pointing to the shared store files.
+     *                     This should be retrieved using {@link #createSharedFiles(boolean)}
+     *                     method.
+     */
+    public WifiConfigStore(Context context, Handler handler, Handler ioHandler, Clock clock,
+            WifiMetrics wifiMetrics, List<StoreFile> sharedStores) {
 
         mAlarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
         mEventHandler = handler;
+        mIoHandler = ioHandler;
         mClock = clock;
         mWifiMetrics = wifiMetrics;
         mStoreDataList = new ArrayList<>();
@@ -373,6 +426,17 @@ public class WifiConfigStore {
         mVerboseLoggingEnabled = verbose;
     }
 
+    /**
+     * Enable writing the store files in the compact binary format instead of XML. Store files are
+     * read in either format, and are migrated to the enabled format on the next write.
+     */
+    public void setBinaryFormatEnabled(boolean enabled) {
+        if (mBinaryFormatEnabled == enabled) {
+            return;
+        }
+        mBinaryFormatEnabled = enabled;
+    }
+
     /**
      * Retrieve the list of {@link StoreData} instances registered for the provided
      * {@link StoreFile}.
@@ -404,26 +468,29 @@ public class WifiConfigStore {
     public void write(boolean forceSync)
             throws XmlPullParserException, IOException {
         boolean hasAnyNewData = false;
+        int serializedBytes = 0;
+        long serializeStartTime = mClock.getElapsedSinceBootMillis();
         // Serialize the provided data and send it to the respective stores. The actual write will
-        // be performed later depending on the |forceSync| flag .
-        for (StoreFile sharedStoreFile : mSharedStores) {
-            if (hasNewDataToSerialize(sharedStoreFile)) {
-                byte[] sharedDataBytes = serializeData(sharedStoreFile);
-                sharedStoreFile.storeRawDataToWrite(sharedDataBytes);
+        // be performed later depending on the |forceSync| flag. The serialized data is the
+        // snapshot persisted by the write, so it replaces any data not yet written.
+        for (StoreFile storeFile : getAllStoreFiles()) {
+            boolean needsMigration = mStoreFilesToMigrate.remove(storeFile);
+            if (hasNewDataToSerialize(storeFile) || needsMigration) {
+                byte[] dataBytes = serializeData(storeFile);
+                storeFile.storeRawDataToWrite(dataBytes);
+                serializedBytes += dataBytes.length;
                 hasAnyNewData = true;
             }
         }
-        if (mUserStores != null) {
-            for (StoreFile userStoreFile : mUserStores) {
-                if (hasNewDataToSerialize(userStoreFile)) {
-                    byte[] userDataBytes = serializeData(userStoreFile);
-                    userStoreFile.storeRawDataToWrite(userDataBytes);
-                    hasAnyNewData = true;
-                }
-            }
-        }
 
         if (hasAnyNewData) {
+            long serializeTime = mClock.getElapsedSinceBootMillis() - serializeStartTime;
+            try {
+                mWifiMetrics.noteWifiConfigStoreSerialization(
+                        toIntExact(serializeTime), serializedBytes);
+            } catch (ArithmeticException e) {
+                // Silently ignore on any overflow errors.
+            }
             // Every write provides a new snapshot to be persisted, so |forceSync| flag overrides
             // any pending buffer writes.
             if (forceSync) {
@@ -453,6 +520,9 @@ public class WifiConfigStore {
     private byte[] serializeData(@NonNull StoreFile storeFile)
             throws XmlPullParserException, IOException {
         List<StoreData> storeDataList = retrieveStoreDataListForStoreFile(storeFile);
+        if (mBinaryFormatEnabled) {
+            return serializeBinaryData(storeFile, storeDataList);
+        }
 
         final XmlSerializer out = new FastXmlSerializer();
         final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
@@ -472,6 +542,45 @@ public class WifiConfigStore {
         return outputStream.toByteArray();
     }
 
+    /**
+     * Serialize all the data from all the provided {@link StoreData} clients in the binary
+     * format. See {@link #BINARY_FORMAT_MAGIC} for the layout.
+     */
+    private byte[] serializeBinaryData(@NonNull StoreFile storeFile,
+            @NonNull List<StoreData> storeDataList)
+            throws XmlPullParserException, IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(outputStream);
+        out.write(BINARY_FORMAT_MAGIC);
+        out.writeByte(BINARY_FORMAT_VERSION);
+        out.writeInt(CURRENT_CONFIG_STORE_DATA_VERSION);
+        for (StoreData storeData : storeDataList) {
+            byte[] section = serializeBinarySection(storeData, storeFile.getEncryptionUtil());
+            out.writeUTF(storeData.getName());
+            out.writeInt(section.length);
+            out.write(section);
+        }
+        out.flush();
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Serialize the section of the provided {@link StoreData} in the binary format.
+     */
+    private static byte[] serializeBinarySection(@NonNull StoreData storeData,
+            @Nullable WifiConfigStoreEncryptionUtil encryptionUtil)
+            throws XmlPullParserException, IOException {
+        final XmlSerializer out = new WifiBinaryXmlSerializer();
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        out.setOutput(outputStream, StandardCharsets.UTF_8.name());
+        String tag = storeData.getName();
+        XmlUtil.writeNextSectionStart(out, tag);
+        storeData.serializeData(out, encryptionUtil);
+        XmlUtil.writeNextSectionEnd(out, tag);
+        out.flush();
+        return outputStream.toByteArray();
+    }
+
     /**
      * Helper method to start a buffered write alarm if one doesn't already exist.
      */
@@ -494,21 +603,53 @@ public class WifiConfigStore {
         }
     }
 
+    /**
+     * Retrieve the list of all the current store files, shared and user specific.
+     */
+    private List<StoreFile> getAllStoreFiles() {
+        List<StoreFile> storeFiles = new ArrayList<>(mSharedStores);
+        if (mUserStores != null) {
+            storeFiles.addAll(mUserStores);
+        }
+        return storeFiles;
+    }
+
+    /**
+     * Helper method to post the write of the data buffered in the current store files to
+     * |mIoHandler|. Back-to-back writes are coalesced into the one already pending.
+     */
+    private void postBufferedDataWrite() {
+        if (!mIoWritePending.compareAndSet(false, true)) {
+            return;
+        }
+        final List<StoreFile> storeFiles = getAllStoreFiles();
+        mIoHandler.post(() -> {
+            mIoWritePending.set(false);
+            try {
+                writeBufferedDataToStoreFiles(storeFiles);
+            } catch (IOException e) {
+                Log.wtf(TAG, "Buffered write failed", e);
+            }
+        });
+    }
+
     /**
      * Helper method to actually perform the writes to the file. This flushes out any write data
      * being buffered in the respective stores and cancels any pending buffer write alarms.
      */
     private void writeBufferedData() throws IOException {
         stopBufferedWriteAlarm();
+        writeBufferedDataToStoreFiles(getAllStoreFiles());
+    }
 
+    /**
+     * Helper method to write the data buffered in the provided store files. This may be invoked
+     * either on the thread of |mEventHandler| or |mIoHandler|.
+     */
+    private void writeBufferedDataToStoreFiles(List<StoreFile> storeFiles) throws IOException {
         long writeStartTime = mClock.getElapsedSinceBootMillis();
-        for (StoreFile sharedStoreFile : mSharedStores) {
-            sharedStoreFile.writeBufferedRawData();
-        }
-        if (mUserStores != null) {
-            for (StoreFile userStoreFile : mUserStores) {
-                userStoreFile.writeBufferedRawData();
-            }
+        for (StoreFile storeFile : storeFiles) {
+            storeFile.writeBufferedRawData();
         }
         long writeTime = mClock.getElapsedSinceBootMillis() - writeStartTime;
         try {
@@ -703,6 +844,7 @@ public class WifiConfigStore {
      * Reset data for all {@link StoreData} instances registered for this {@link StoreFile}.
      */
     private void resetStoreData(@NonNull StoreFile storeFile) {
+        mStoreFilesToMigrate.remove(storeFile);
         for (StoreData storeData: retrieveStoreDataListForStoreFile(storeFile)) {
             storeData.resetData();
         }
@@ -739,6 +881,16 @@ public class WifiConfigStore {
                     storeFile.getEncryptionUtil());
             return;
         }
+        boolean isBinaryFormat = isBinaryFormat(dataBytes);
+        if (isBinaryFormat != mBinaryFormatEnabled) {
+            Log.i(TAG, "Migrating " + storeFile.getName() + " to the "
+                    + (mBinaryFormatEnabled ? "binary" : "XML") + " format on the next write");
+            mStoreFilesToMigrate.add(storeFile);
+        }
+        if (isBinaryFormat) {
+            deserializeBinaryData(dataBytes, storeFile, storeDataList);
+            return;
+        }
         final XmlPullParser in = Xml.newPullParser();
         final ByteArrayInputStream inputStream = new ByteArrayInputStream(dataBytes);
         in.setInput(inputStream, StandardCharsets.UTF_8.name());
@@ -756,15 +908,8 @@ public class WifiConfigStore {
         String[] headerName = new String[1];
         Set<StoreData> storeDatasInvoked = new HashSet<>();
         while (XmlUtil.gotoNextSectionOrEnd(in, headerName, rootTagDepth)) {
-            // There can only be 1 store data matching the tag, O indicates a previous StoreData
-            // module that no longer exists (ignore this XML section).
-            StoreData storeData = storeDataList.stream()
-                    .filter(s -> s.getSectionsToParse().contains(headerName[0]))
-                    .findAny()
-                    .orElse(null);
+            StoreData storeData = findStoreDataForSection(storeDataList, headerName[0]);
             if (storeData == null) {
-                Log.e(TAG, "Unknown store data: " + headerName[0] + ". List of store data: "
-                        + storeDataList);
                 continue;
             }
             storeData.deserializeDataForSection(in, rootTagDepth + 1, version,
@@ -778,6 +923,88 @@ public class WifiConfigStore {
         indicateNoDataForStoreDatas(storeDatasNotInvoked, version, storeFile.getEncryptionUtil());
     }
 
+    /**
+     * Deserialize data in the binary format from a {@link StoreFile} for all {@link StoreData}
+     * instances registered. See {@link #BINARY_FORMAT_MAGIC} for the layout.
+     */
+    private void deserializeBinaryData(@NonNull byte[] dataBytes, @NonNull StoreFile storeFile,
+            @NonNull List<StoreData> storeDataList) throws XmlPullParserException, IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(dataBytes));
+        in.skipBytes(BINARY_FORMAT_MAGIC.length);
+        int binaryFormatVersion = in.readUnsignedByte();
+        if (binaryFormatVersion != BINARY_FORMAT_VERSION) {
+            throw new XmlPullParserException(
+                    "Invalid version of binary format: " + binaryFormatVersion);
+        }
+        @Version int version = in.readInt();
+        if (version < INITIAL_CONFIG_STORE_DATA_VERSION
+                || version > CURRENT_CONFIG_STORE_DATA_VERSION) {
+            throw new XmlPullParserException("Invalid version of data: " + version);
+        }
+
+        Set<StoreData> storeDatasInvoked = new HashSet<>();
+        while (in.available() > 0) {
+            String sectionName = in.readUTF();
+            int sectionLength = in.readInt();
+            if (sectionLength < 0 || sectionLength > in.available()) {
+                throw new XmlPullParserException("Invalid length of section " + sectionName
+                        + ": " + sectionLength);
+            }
+            StoreData storeData = findStoreDataForSection(storeDataList, sectionName);
+            if (storeData == null) {
+                in.skipBytes(sectionLength);
+                continue;
+            }
+            final XmlPullParser sectionIn = new WifiBinaryXmlPullParser();
+            sectionIn.setInput(new ByteArrayInputStream(dataBytes,
+                    dataBytes.length - in.available(), sectionLength), null);
+            in.skipBytes(sectionLength);
+            // Move to the section start tag, the section data is at depth 1.
+            sectionIn.next();
+            storeData.deserializeDataForSection(sectionIn, 1, version,
+                    storeFile.getEncryptionUtil(), sectionName);
+            storeDatasInvoked.add(storeData);
+        }
+        // Inform all the other registered store data clients that there is nothing in the store
+        // for them.
+        Set<StoreData> storeDatasNotInvoked = new HashSet<>(storeDataList);
+        storeDatasNotInvoked.removeAll(storeDatasInvoked);
+        indicateNoDataForStoreDatas(storeDatasNotInvoked, version, storeFile.getEncryptionUtil());
+    }
+
+    /**
+     * Check if the provided store file data is in the binary format.
+     */
+    private static boolean isBinaryFormat(@NonNull byte[] dataBytes) {
+        if (dataBytes.length < BINARY_FORMAT_MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < BINARY_FORMAT_MAGIC.length; i++) {
+            if (dataBytes[i] != BINARY_FORMAT_MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find the {@link StoreData} parsing the provided section, or null if there is none.
+     */
+    private static @Nullable StoreData findStoreDataForSection(
+            @NonNull List<StoreData> storeDataList, @NonNull String sectionName) {
+        // There can only be 1 store data matching the tag, O indicates a previous StoreData
+        // module that no longer exists (ignore this XML section).
+        StoreData storeData = storeDataList.stream()
+                .filter(s -> s.getSectionsToParse().contains(sectionName))
+                .findAny()
+                .orElse(null);
+        if (storeData == null) {
+            Log.e(TAG, "Unknown store data: " + sectionName + ". List of store data: "
+                    + storeDataList);
+        }
+        return storeData;
+    }
+
     /**
      * Parse the version from the XML stream.
      * This is used for both the shared and user config store data.
@@ -833,6 +1060,7 @@ public class WifiConfigStore {
             pw.println("File Name: " + STORE_ID_TO_FILE_NAME.get(storeData.getStoreFileId()));
         }
         pw.println("WifiConfigStore - Store Data End ----");
+        pw.println("Binary format enabled: " + mBinaryFormatEnabled);
     }
 
     /**
@@ -852,9 +1080,15 @@ public class WifiConfigStore {
          */
         private final AtomicFile mAtomicFile;
         /**
-         * This is an intermediate buffer to store the data to be written.
+         * This is an intermediate buffer to store the data to be written. Guarded by |this| since
+         * the data may be written on a different thread than the one storing it.
          */
         private byte[] mWriteData;
+        /**
+         * Lock held while reading or writing the file, to serialize the file accesses performed
+         * on different threads.
+         */
+        private final Object mFileLock = new Object();
         /**
          * Store the file name for setting the file permissions/logging purposes.
          */
@@ -907,10 +1141,12 @@ public class WifiConfigStore {
          */
         public byte[] readRawData() throws IOException {
             byte[] bytes = null;
-            try {
-                bytes = mAtomicFile.readFully();
-            } catch (FileNotFoundException e) {
-                return null;
+            synchronized (mFileLock) {
+                try {
+                    bytes = mAtomicFile.readFully();
+                } catch (FileNotFoundException e) {
+                    return null;
+                }
             }
             return bytes;
         }
@@ -922,33 +1158,44 @@ public class WifiConfigStore {
          *
          * @param data raw data to be written to the file.
          */
-        public void storeRawDataToWrite(byte[] data) {
+        public synchronized void storeRawDataToWrite(byte[] data) {
             mWriteData = data;
         }
 
         /**
          * Write the stored raw data to the store file.
-         * After the write to file, the mWriteData member is reset.
+         * After the write to file, the mWriteData member is reset, unless newer data was stored
+         * while the write was in progress.
          * @throws IOException if an error occurs. The output stream is always closed by the method
          * even when an exception is encountered.
          */
         public void writeBufferedRawData() throws IOException {
-            if (mWriteData == null) return; // No data to write for this file.
-            // Write the data to the atomic file.
-            FileOutputStream out = null;
-            try {
-                out = mAtomicFile.startWrite();
-                FileUtils.chmod(mFileName, FILE_MODE);
-                out.write(mWriteData);
-                mAtomicFile.finishWrite(out);
-            } catch (IOException e) {
-                if (out != null) {
-                    mAtomicFile.failWrite(out);
+            synchronized (mFileLock) {
+                byte[] writeData;
+                synchronized (this) {
+                    writeData = mWriteData;
+                }
+                if (writeData == null) return; // No data to write for this file.
+                // Write the data to the atomic file.
+                FileOutputStream out = null;
+                try {
+                    out = mAtomicFile.startWrite();
+                    FileUtils.chmod(mFileName, FILE_MODE);
+                    out.write(writeData);
+                    mAtomicFile.finishWrite(out);
+                } catch (IOException e) {
+                    if (out != null) {
+                        mAtomicFile.failWrite(out);
+                    }
+                    throw e;
+                }
+                // Reset the pending write data after write.
+                synchronized (this) {
+                    if (mWriteData == writeData) {
+                        mWriteData = null;
+                    }
                 }
-                throw e;
             }
-            // Reset the pending write data after write.
-            mWriteData = null;
         }
     }
 
@@ -23,6 +23,7 @@ import android.annotation.NonNull;
 import android.annotation.Nullable;
 import android.content.Context;
 import android.net.wifi.WifiInfo;
+import android.net.wifi.WifiManager;
 import android.net.wifi.WifiManager.DeviceMobilityState;
 import android.os.Handler;
 import android.telephony.PhoneStateListener;
@@ -84,6 +85,8 @@ public class WifiDataStall {
     private boolean mPhoneStateListenerEnabled = false;
     private int mTxTputKbps = INVALID_THROUGHPUT;
     private int mRxTputKbps = INVALID_THROUGHPUT;
+    private @DeviceMobilityState int mDeviceMobilityState =
+            WifiManager.DEVICE_MOBILITY_STATE_UNKNOWN;
 
     /** @hide */
     @IntDef(prefix = { "CELLULAR_DATA_" }, value = {
@@ -264,9 +267,18 @@ public class WifiDataStall {
      * @param newState the new device mobility state
      */
     public void setDeviceMobilityState(@DeviceMobilityState int newState) {
+        mDeviceMobilityState = newState;
         mWifiChannelUtilization.setDeviceMobilityState(newState);
     }
 
+    /**
+     * Get the last device mobility state
+     * @return the device mobility state set by {@link #setDeviceMobilityState(int)}
+     */
+    public @DeviceMobilityState int getDeviceMobilityState() {
+        return mDeviceMobilityState;
+    }
+
     /**
      * Check if current link layer throughput is sufficient.
      * This should be called after checkDataStallAndThroughputSufficiency().
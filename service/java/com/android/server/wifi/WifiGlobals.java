@@ -55,6 +55,14 @@ public class WifiGlobals {
     // This is read from the overlay, cache it after boot up.
     private final boolean mFlushAnqpCacheOnWifiToggleOffEvent;
     // This is read from the overlay, cache it after boot up.
+    private final boolean mAnqpCachePersistenceEnabled;
+    // This is read from the overlay, cache it after boot up.
+    private final boolean mAdaptivePollRssiIntervalEnabled;
+    // This is read from the overlay, cache it after boot up.
+    private final int mAdaptivePollRssiMaxIntervalMillis;
+    // This is read from the overlay, cache it after boot up.
+    private final boolean mLinkLayerStatsRecyclingEnabled;
+    // This is read from the overlay, cache it after boot up.
     private final boolean mIsWpa3SaeH2eSupported;
     // This is read from the overlay, cache it after boot up.
     private final String mP2pDeviceNamePrefix;
@@ -84,6 +92,14 @@ public class WifiGlobals {
                 .getBoolean(R.bool.config_wifiOweUpgradeEnabled);
         mFlushAnqpCacheOnWifiToggleOffEvent = mContext.getResources()
                 .getBoolean(R.bool.config_wifiFlushAnqpCacheOnWifiToggleOffEvent);
+        mAnqpCachePersistenceEnabled = mContext.getResources()
+                .getBoolean(R.bool.config_wifiPasspointAnqpCachePersistenceEnabled);
+        mAdaptivePollRssiIntervalEnabled = mContext.getResources()
+                .getBoolean(R.bool.config_wifiAdaptivePollRssiIntervalEnabled);
+        mAdaptivePollRssiMaxIntervalMillis = mContext.getResources()
+                .getInteger(R.integer.config_wifiAdaptivePollRssiMaxIntervalMilliseconds);
+        mLinkLayerStatsRecyclingEnabled = mContext.getResources()
+                .getBoolean(R.bool.config_wifiLinkLayerStatsRecyclingEnabled);
         mIsWpa3SaeH2eSupported = mContext.getResources()
                 .getBoolean(R.bool.config_wifiSaeH2eSupported);
         mP2pDeviceNamePrefix = mContext.getResources()
@@ -120,6 +136,30 @@ public class WifiGlobals {
         mPollRssiIntervalMillis.set(newPollIntervalMillis);
     }
 
+    /**
+     * Returns whether the interval between RSSI polls is widened while the link is stable, see
+     * {@link AdaptiveRssiPollScheduler}.
+     */
+    public boolean isAdaptivePollRssiIntervalEnabled() {
+        return mAdaptivePollRssiIntervalEnabled;
+    }
+
+    /**
+     * Get the maximum interval between RSSI polls when the interval is adaptive, in
+     * milliseconds. Never less than {@link #getPollRssiIntervalMillis()}.
+     */
+    public int getAdaptivePollRssiMaxIntervalMillis() {
+        return Math.max(mAdaptivePollRssiMaxIntervalMillis, getPollRssiIntervalMillis());
+    }
+
+    /**
+     * Returns whether the link layer stats fetched by the RSSI poll are filled into recycled
+     * objects instead of newly allocated ones, see {@link WifiLinkLayerStatsHolder}.
+     */
+    public boolean isLinkLayerStatsRecyclingEnabled() {
+        return mLinkLayerStatsRecyclingEnabled;
+    }
+
     /** Returns whether CMD_IP_REACHABILITY_LOST events should trigger disconnects. */
     public boolean getIpReachabilityDisconnectEnabled() {
         return mIpReachabilityDisconnectEnabled.get();
@@ -198,6 +238,15 @@ public class WifiGlobals {
         return mFlushAnqpCacheOnWifiToggleOffEvent;
     }
 
+    /**
+     * Help method to check if the ANQP cache is persisted across Wi-Fi restarts and reboots.
+     *
+     * @return boolean true to persist the ANQP cache, false otherwise.
+     */
+    public boolean isAnqpCachePersistenceEnabled() {
+        return mAnqpCachePersistenceEnabled;
+    }
+
     /*
      * Help method to check if WPA3 SAE Hash-to-Element is supported on this device.
      *
@@ -272,6 +321,10 @@ public class WifiGlobals {
         pw.println("mIsWpa3SaeUpgradeOffloadEnabled=" + mIsWpa3SaeUpgradeOffloadEnabled);
         pw.println("mIsOweUpgradeEnabled=" + mIsOweUpgradeEnabled);
         pw.println("mFlushAnqpCacheOnWifiToggleOffEvent=" + mFlushAnqpCacheOnWifiToggleOffEvent);
+        pw.println("mAnqpCachePersistenceEnabled=" + mAnqpCachePersistenceEnabled);
+        pw.println("mAdaptivePollRssiIntervalEnabled=" + mAdaptivePollRssiIntervalEnabled);
+        pw.println("mAdaptivePollRssiMaxIntervalMillis=" + mAdaptivePollRssiMaxIntervalMillis);
+        pw.println("mLinkLayerStatsRecyclingEnabled=" + mLinkLayerStatsRecyclingEnabled);
         pw.println("mIsWpa3SaeH2eSupported=" + mIsWpa3SaeH2eSupported);
         pw.println("mP2pDeviceNamePrefix=" + mP2pDeviceNamePrefix);
         pw.println("mP2pDeviceNamePostfixNumDigits=" + mP2pDeviceNamePostfixNumDigits);
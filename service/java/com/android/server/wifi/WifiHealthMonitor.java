@@ -40,6 +40,7 @@ import com.android.internal.annotations.VisibleForTesting;
 import com.android.server.wifi.WifiScoreCard.MemoryStore;
 import com.android.server.wifi.WifiScoreCard.MemoryStoreAccessBase;
 import com.android.server.wifi.WifiScoreCard.PerNetwork;
+import com.android.server.wifi.hotspot2.NetworkDetail;
 import com.android.server.wifi.proto.WifiScoreCardProto.SoftwareBuildInfo;
 import com.android.server.wifi.proto.WifiScoreCardProto.SystemInfoStats;
 import com.android.server.wifi.proto.WifiStatsLog;
@@ -1094,7 +1095,8 @@ public class WifiHealthMonitor {
             if (!mWifiEnabled) {
                 return;
             }
-            mScanDetails.add(new ScanDetail(fullScanResult));
+            // Only the band of each BSS is used, skip decoding the optional elements.
+            mScanDetails.add(new ScanDetail(fullScanResult, NetworkDetail.DECODE_MANDATORY));
         }
     }
 }
@@ -147,6 +147,7 @@ public class WifiInjector {
     private final HandlerThread mWifiP2pServiceHandlerThread;
     private final HandlerThread mPasspointProvisionerHandlerThread;
     private final HandlerThread mWifiDiagnosticsHandlerThread;
+    private final HandlerThread mWifiConfigStoreHandlerThread;
     private final WifiTrafficPoller mWifiTrafficPoller;
     private final WifiCountryCode mCountryCode;
     private final BackupManagerProxy mBackupManagerProxy = new BackupManagerProxy();
@@ -265,6 +266,8 @@ public class WifiInjector {
         Handler wifiHandler = new Handler(wifiLooper);
         mWifiDiagnosticsHandlerThread = new HandlerThread("WifiDiagnostics");
         mWifiDiagnosticsHandlerThread.start();
+        mWifiConfigStoreHandlerThread = new HandlerThread("WifiConfigStore");
+        mWifiConfigStoreHandlerThread.start();
 
         mContext = context;
         mWifiNotificationManager = new WifiNotificationManager(mContext);
@@ -342,8 +345,11 @@ public class WifiInjector {
         mKeyStore = keyStore;
         mWifiKeyStore = new WifiKeyStore(mContext, mKeyStore, mFrameworkFacade);
         // New config store
-        mWifiConfigStore = new WifiConfigStore(mContext, wifiHandler, mClock, mWifiMetrics,
+        mWifiConfigStore = new WifiConfigStore(mContext, wifiHandler,
+                new Handler(mWifiConfigStoreHandlerThread.getLooper()), mClock, mWifiMetrics,
                 WifiConfigStore.createSharedFiles(mFrameworkFacade.isNiapModeOn(mContext)));
+        mWifiConfigStore.setBinaryFormatEnabled(mContext.getResources().getBoolean(
+                R.bool.config_wifiConfigStoreBinaryFormatEnabled));
         mWifiCarrierInfoManager = new WifiCarrierInfoManager(makeTelephonyManager(),
                 subscriptionManager, this, mFrameworkFacade, mContext,
                 mWifiConfigStore, wifiHandler, mWifiMetrics, mClock);
@@ -1067,6 +1073,10 @@ public class WifiInjector {
         return mWifiGlobals;
     }
 
+    public ThroughputPredictor getThroughputPredictor() {
+        return mThroughputPredictor;
+    }
+
     public SimRequiredNotifier getSimRequiredNotifier() {
         return mSimRequiredNotifier;
     }
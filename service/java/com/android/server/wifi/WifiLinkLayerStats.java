@@ -18,6 +18,7 @@ package com.android.server.wifi;
 
 import android.util.SparseArray;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 
 /**
@@ -329,6 +330,171 @@ public class WifiLinkLayerStats {
      */
     public RadioStat[] radioStats;
 
+    // Objects released by reset() and reused when the stats are filled again.
+    private final ArrayList<ChannelStats> mRecycledChannelStats = new ArrayList<>();
+    private PeerInfo[] mRecycledPeerInfo;
+    private RadioStat[] mRecycledRadioStats;
+    private int[] mRecycledTxTimePerLevel;
+
+    /**
+     * Reset all the statistics to their initial value, so that this object can be filled again
+     * by the HAL conversion, see {@link WifiVendorHal#getWifiLinkLayerStats(String,
+     * WifiLinkLayerStats)}. The per-peer, per-radio and per-channel objects are kept and returned
+     * by the obtain methods instead of being allocated again.
+     */
+    public void reset() {
+        version = null;
+        beacon_rx = 0;
+        rssi_mgmt = 0;
+        rxmpdu_be = 0;
+        txmpdu_be = 0;
+        lostmpdu_be = 0;
+        retries_be = 0;
+        contentionTimeMinBeInUsec = 0;
+        contentionTimeMaxBeInUsec = 0;
+        contentionTimeAvgBeInUsec = 0;
+        contentionNumSamplesBe = 0;
+        rxmpdu_bk = 0;
+        txmpdu_bk = 0;
+        lostmpdu_bk = 0;
+        retries_bk = 0;
+        contentionTimeMinBkInUsec = 0;
+        contentionTimeMaxBkInUsec = 0;
+        contentionTimeAvgBkInUsec = 0;
+        contentionNumSamplesBk = 0;
+        rxmpdu_vi = 0;
+        txmpdu_vi = 0;
+        lostmpdu_vi = 0;
+        retries_vi = 0;
+        contentionTimeMinViInUsec = 0;
+        contentionTimeMaxViInUsec = 0;
+        contentionTimeAvgViInUsec = 0;
+        contentionNumSamplesVi = 0;
+        rxmpdu_vo = 0;
+        txmpdu_vo = 0;
+        lostmpdu_vo = 0;
+        retries_vo = 0;
+        contentionTimeMinVoInUsec = 0;
+        contentionTimeMaxVoInUsec = 0;
+        contentionTimeAvgVoInUsec = 0;
+        contentionNumSamplesVo = 0;
+        on_time = 0;
+        tx_time = 0;
+        rx_time = 0;
+        on_time_scan = 0;
+        on_time_nan_scan = 0;
+        on_time_background_scan = 0;
+        on_time_roam_scan = 0;
+        on_time_pno_scan = 0;
+        on_time_hs20_scan = 0;
+        numRadios = 0;
+        timeStampInMs = 0;
+        timeSliceDutyCycleInPercent = -1;
+
+        recycleChannelStats(channelStatsMap);
+        if (radioStats != null) {
+            for (RadioStat radio : radioStats) {
+                recycleChannelStats(radio.channelStatsMap);
+            }
+            mRecycledRadioStats = radioStats;
+            radioStats = null;
+        }
+        if (peerInfo != null) {
+            mRecycledPeerInfo = peerInfo;
+            peerInfo = null;
+        }
+        if (tx_time_per_level != null) {
+            mRecycledTxTimePerLevel = tx_time_per_level;
+            tx_time_per_level = null;
+        }
+    }
+
+    private void recycleChannelStats(SparseArray<ChannelStats> map) {
+        for (int i = 0; i < map.size(); i++) {
+            mRecycledChannelStats.add(map.valueAt(i));
+        }
+        map.clear();
+    }
+
+    /**
+     * Get a ChannelStats with all its values set to 0, reusing one released by
+     * {@link #reset()} if any.
+     */
+    public ChannelStats obtainChannelStats() {
+        if (mRecycledChannelStats.isEmpty()) {
+            return new ChannelStats();
+        }
+        ChannelStats channelStats = mRecycledChannelStats.remove(mRecycledChannelStats.size() - 1);
+        channelStats.frequency = 0;
+        channelStats.radioOnTimeMs = 0;
+        channelStats.ccaBusyTimeMs = 0;
+        return channelStats;
+    }
+
+    /**
+     * Get an array of the given length of PeerInfo, with a RateStat array of unspecified length,
+     * reusing the one released by {@link #reset()} if it has the same length. The values of the
+     * PeerInfo are unspecified and must all be set by the caller.
+     */
+    public PeerInfo[] obtainPeerInfo(int length) {
+        PeerInfo[] peers = mRecycledPeerInfo;
+        mRecycledPeerInfo = null;
+        if (peers == null || peers.length != length) {
+            peers = new PeerInfo[length];
+            for (int i = 0; i < length; i++) {
+                peers[i] = new PeerInfo();
+            }
+        }
+        return peers;
+    }
+
+    /**
+     * Get an array of the given length of RateStat for the given peer, reusing its current one
+     * if it has the same length. The values of the RateStat are unspecified and must all be set
+     * by the caller.
+     */
+    public static RateStat[] obtainRateStats(PeerInfo peer, int length) {
+        RateStat[] rateStats = peer.rateStats;
+        if (rateStats == null || rateStats.length != length) {
+            rateStats = new RateStat[length];
+            for (int i = 0; i < length; i++) {
+                rateStats[i] = new RateStat();
+            }
+        }
+        return rateStats;
+    }
+
+    /**
+     * Get an array of the given length of RadioStat with empty channel stats, reusing the one
+     * released by {@link #reset()} if it has the same length. The other values of the RadioStat
+     * are unspecified and must all be set by the caller.
+     */
+    public RadioStat[] obtainRadioStats(int length) {
+        RadioStat[] radios = mRecycledRadioStats;
+        mRecycledRadioStats = null;
+        if (radios == null || radios.length != length) {
+            radios = new RadioStat[length];
+            for (int i = 0; i < length; i++) {
+                radios[i] = new RadioStat();
+            }
+        }
+        return radios;
+    }
+
+    /**
+     * Get an array of the given length filled with 0, reusing the tx_time_per_level array
+     * released by {@link #reset()} if it has the same length.
+     */
+    public int[] obtainTxTimePerLevel(int length) {
+        int[] txTimePerLevel = mRecycledTxTimePerLevel;
+        mRecycledTxTimePerLevel = null;
+        if (txTimePerLevel == null || txTimePerLevel.length != length) {
+            return new int[length];
+        }
+        Arrays.fill(txTimePerLevel, 0);
+        return txTimePerLevel;
+    }
+
     @Override
     public String toString() {
         StringBuilder sbuf = new StringBuilder();
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+
+/**
+ * Two recycled {@link WifiLinkLayerStats} used alternately by the RSSI poll.
+ *
+ * Each poll compares the stats it fetches with the stats of the previous poll, so the stats
+ * returned by {@link #obtain(WifiLinkLayerStats)} are never the ones of the previous poll. The
+ * stats must not be kept by anyone after the next poll, since they will be filled again.
+ */
+public class WifiLinkLayerStatsHolder {
+    private final WifiLinkLayerStats[] mSlots = {
+            new WifiLinkLayerStats(), new WifiLinkLayerStats()};
+    private int mNextSlot = 0;
+
+    /**
+     * Get the stats to be filled by the next poll.
+     *
+     * @param inUse the stats of the previous poll which are still in use, or null
+     * @return stats which aren't the last ones returned nor {@code inUse}
+     */
+    @NonNull
+    public WifiLinkLayerStats obtain(@Nullable WifiLinkLayerStats inUse) {
+        WifiLinkLayerStats stats = mSlots[mNextSlot];
+        if (stats == inUse) {
+            mNextSlot = 1 - mNextSlot;
+            stats = mSlots[mNextSlot];
+        }
+        mNextSlot = 1 - mNextSlot;
+        return stats;
+    }
+}
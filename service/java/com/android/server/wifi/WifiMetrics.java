@@ -76,9 +76,7 @@ import com.android.server.wifi.aware.WifiAwareMetrics;
 import com.android.server.wifi.hotspot2.ANQPNetworkKey;
 import com.android.server.wifi.hotspot2.NetworkDetail;
 import com.android.server.wifi.hotspot2.PasspointManager;
-import com.android.server.wifi.hotspot2.PasspointMatch;
 import com.android.server.wifi.hotspot2.PasspointProvider;
-import com.android.server.wifi.hotspot2.Utils;
 import com.android.server.wifi.p2p.WifiP2pMetrics;
 import com.android.server.wifi.proto.WifiStatsLog;
 import com.android.server.wifi.proto.nano.WifiMetricsProto;
@@ -144,12 +142,12 @@ import java.util.BitSet;
 import java.util.Calendar;
 import java.util.Deque;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Provides storage for wireless connectivity metrics, as they are generated.
@@ -275,8 +273,12 @@ public class WifiMetrics {
 
     public static final int MAX_STA_EVENTS = 768;
     @VisibleForTesting static final int MAX_USER_ACTION_EVENTS = 200;
-    private LinkedList<StaEventWithTime> mStaEventList = new LinkedList<>();
-    private LinkedList<UserActionEventWithTime> mUserActionEventList = new LinkedList<>();
+    private final StaEventRingBuffer mStaEventList = new StaEventRingBuffer(MAX_STA_EVENTS);
+    // Reused to build each StaEvent before it is copied into mStaEventList, guarded by mLock.
+    private final StaEvent mScratchStaEvent = new StaEvent();
+    private final ConfigInfo mScratchConfigInfo = new ConfigInfo();
+    private final ArrayDeque<UserActionEventWithTime> mUserActionEventList =
+            new ArrayDeque<>(MAX_USER_ACTION_EVENTS + 1);
     private WifiStatusBuilder mWifiStatusBuilder = new WifiStatusBuilder();
     private int mLastPollRssi = -127;
     private int mLastPollLinkSpeed = -1;
@@ -359,18 +361,29 @@ public class WifiMetrics {
     /** Mapping of SoftApManager start SoftAp return codes to counts */
     private final SparseIntArray mSoftApManagerReturnCodeCounts = new SparseIntArray();
 
-    private final SparseIntArray mTotalSsidsInScanHistogram = new SparseIntArray();
-    private final SparseIntArray mTotalBssidsInScanHistogram = new SparseIntArray();
-    private final SparseIntArray mAvailableOpenSsidsInScanHistogram = new SparseIntArray();
-    private final SparseIntArray mAvailableOpenBssidsInScanHistogram = new SparseIntArray();
-    private final SparseIntArray mAvailableSavedSsidsInScanHistogram = new SparseIntArray();
-    private final SparseIntArray mAvailableSavedBssidsInScanHistogram = new SparseIntArray();
-    private final SparseIntArray mAvailableOpenOrSavedSsidsInScanHistogram = new SparseIntArray();
-    private final SparseIntArray mAvailableOpenOrSavedBssidsInScanHistogram = new SparseIntArray();
-    private final SparseIntArray mAvailableSavedPasspointProviderProfilesInScanHistogram =
-            new SparseIntArray();
-    private final SparseIntArray mAvailableSavedPasspointProviderBssidsInScanHistogram =
-            new SparseIntArray();
+    // Guards the scan histograms below instead of mLock, so that binder threads logging other
+    // metrics under mLock (e.g. Wi-Fi toggles and user actions) don't wait while the Wi-Fi
+    // thread, their only writer, counts the results of a scan. Only the increments themselves
+    // are done under this lock. dump(), consolidateProto() and clear() take it inside mLock.
+    private final Object mScanHistogramsLock = new Object();
+    private int mPartialAllSingleScanListenerResults = 0;
+    private int mFullBandAllSingleScanListenerResults = 0;
+    // Reused by the full band scans to count the available networks, see
+    // incrementAvailableNetworksHistograms(). Null while it is in use.
+    private final AtomicReference<AvailableNetworksAggregator> mAvailableNetworksAggregator =
+            new AtomicReference<>(new AvailableNetworksAggregator());
+    private final IntCounter mTotalSsidsInScanHistogram = new IntCounter();
+    private final IntCounter mTotalBssidsInScanHistogram = new IntCounter();
+    private final IntCounter mAvailableOpenSsidsInScanHistogram = new IntCounter();
+    private final IntCounter mAvailableOpenBssidsInScanHistogram = new IntCounter();
+    private final IntCounter mAvailableSavedSsidsInScanHistogram = new IntCounter();
+    private final IntCounter mAvailableSavedBssidsInScanHistogram = new IntCounter();
+    private final IntCounter mAvailableOpenOrSavedSsidsInScanHistogram = new IntCounter();
+    private final IntCounter mAvailableOpenOrSavedBssidsInScanHistogram = new IntCounter();
+    private final IntCounter mAvailableSavedPasspointProviderProfilesInScanHistogram =
+            new IntCounter();
+    private final IntCounter mAvailableSavedPasspointProviderBssidsInScanHistogram =
+            new IntCounter();
 
     private final IntCounter mInstalledPasspointProfileTypeForR1 = new IntCounter();
     private final IntCounter mInstalledPasspointProfileTypeForR2 = new IntCounter();
@@ -388,18 +401,24 @@ public class WifiMetrics {
     /** List of soft AP events related to number of connected clients in local only mode */
     private final List<SoftApConnectedClientsEvent> mSoftApEventListLocalOnly = new ArrayList<>();
 
-    private final SparseIntArray mObservedHotspotR1ApInScanHistogram = new SparseIntArray();
-    private final SparseIntArray mObservedHotspotR2ApInScanHistogram = new SparseIntArray();
-    private final SparseIntArray mObservedHotspotR3ApInScanHistogram = new SparseIntArray();
-    private final SparseIntArray mObservedHotspotR1EssInScanHistogram = new SparseIntArray();
-    private final SparseIntArray mObservedHotspotR2EssInScanHistogram = new SparseIntArray();
-    private final SparseIntArray mObservedHotspotR3EssInScanHistogram = new SparseIntArray();
-    private final SparseIntArray mObservedHotspotR1ApsPerEssInScanHistogram = new SparseIntArray();
-    private final SparseIntArray mObservedHotspotR2ApsPerEssInScanHistogram = new SparseIntArray();
-    private final SparseIntArray mObservedHotspotR3ApsPerEssInScanHistogram = new SparseIntArray();
-
-    private final SparseIntArray mObserved80211mcApInScanHistogram = new SparseIntArray();
+    private final IntCounter mObservedHotspotR1ApInScanHistogram = new IntCounter();
+    private final IntCounter mObservedHotspotR2ApInScanHistogram = new IntCounter();
+    private final IntCounter mObservedHotspotR3ApInScanHistogram = new IntCounter();
+    private final IntCounter mObservedHotspotR1EssInScanHistogram = new IntCounter();
+    private final IntCounter mObservedHotspotR2EssInScanHistogram = new IntCounter();
+    private final IntCounter mObservedHotspotR3EssInScanHistogram = new IntCounter();
+    private final IntCounter mObservedHotspotR1ApsPerEssInScanHistogram = new IntCounter();
+    private final IntCounter mObservedHotspotR2ApsPerEssInScanHistogram = new IntCounter();
+    private final IntCounter mObservedHotspotR3ApsPerEssInScanHistogram = new IntCounter();
+
+    private final IntCounter mObserved80211mcApInScanHistogram = new IntCounter();
     private final IntCounter mCountryCodeScanHistogram = new IntCounter();
+    private final IntCounter mRssiPollIntervalHistogram = new IntCounter();
+    // Counters of the ANQP cache when the metrics were last cleared. The counters of the cache
+    // are cumulative since boot, while the proto only reports the counts since the last clear.
+    private long mAnqpCacheHitCountAtClear;
+    private long mAnqpCacheMissCountAtClear;
+    private long mAnqpCacheEvictionCountAtClear;
 
     // link probing stats
     private final IntCounter mLinkProbeSuccessRssiCounts = new IntCounter(-85, -65);
@@ -430,8 +449,8 @@ public class WifiMetrics {
     private int mLinkProbeStaEventCount = 0;
     @VisibleForTesting static final int MAX_LINK_PROBE_STA_EVENTS = MAX_STA_EVENTS / 4;
 
-    private final LinkedList<WifiUsabilityStatsEntry> mWifiUsabilityStatsEntriesList =
-            new LinkedList<>();
+    private final ArrayDeque<WifiUsabilityStatsEntry> mWifiUsabilityStatsEntriesList =
+            new ArrayDeque<>(MAX_WIFI_USABILITY_STATS_ENTRIES_LIST_SIZE + 1);
     private final LinkedList<WifiUsabilityStats> mWifiUsabilityStatsListBad = new LinkedList<>();
     private final LinkedList<WifiUsabilityStats> mWifiUsabilityStatsListGood = new LinkedList<>();
     private int mWifiUsabilityStatsCounter = 0;
@@ -472,6 +491,12 @@ public class WifiMetrics {
     /** WifiConfigStore write duration histogram. */
     private SparseIntArray mWifiConfigStoreWriteDurationHistogram = new SparseIntArray();
 
+    /** WifiConfigStore serialization duration histogram. */
+    private SparseIntArray mWifiConfigStoreSerializationDurationHistogram = new SparseIntArray();
+
+    /** Total number of bytes serialized to be written to the WifiConfigStore files. */
+    private long mWifiConfigStoreSerializedBytes = 0;
+
     /** New  API surface metrics */
     private final WifiNetworkRequestApiLog mWifiNetworkRequestApiLog =
             new WifiNetworkRequestApiLog();
@@ -2957,7 +2982,7 @@ public class WifiMetrics {
             mLastScoreNoReset = score;
             if (wifiWins != mWifiWins) {
                 mWifiWins = wifiWins;
-                StaEvent event = new StaEvent();
+                StaEvent event = obtainStaEvent();
                 event.type = StaEvent.TYPE_SCORE_BREACH;
                 addStaEvent(ifaceName, event);
                 // Only record the first score breach by checking whether mScoreBreachLowTimeMillis
@@ -3417,185 +3442,88 @@ public class WifiMetrics {
      * of that size for the associated histogram. There are ten histograms generated for each
      * combination of: {SSID, BSSID} *{Total, Saved, Open, Saved_or_Open, Passpoint}
      * Only performs this count if isFullBand is true, otherwise, increments the partial scan count
+     * The scan results are counted without holding any lock, only the histograms are updated
+     * under mScanHistogramsLock.
      */
     public void incrementAvailableNetworksHistograms(List<ScanDetail> scanDetails,
             boolean isFullBand) {
-        synchronized (mLock) {
-            if (mWifiConfigManager == null || mWifiNetworkSelector == null
-                    || mPasspointManager == null) {
-                return;
-            }
-            if (!isFullBand) {
-                mWifiLogProto.partialAllSingleScanListenerResults++;
-                return;
-            }
-            updateCountryCodeScanStats(scanDetails);
-
-            Set<ScanResultMatchInfo> ssids = new HashSet<ScanResultMatchInfo>();
-            int bssids = 0;
-            Set<ScanResultMatchInfo> openSsids = new HashSet<ScanResultMatchInfo>();
-            int openBssids = 0;
-            Set<ScanResultMatchInfo> savedSsids = new HashSet<ScanResultMatchInfo>();
-            int savedBssids = 0;
-            // openOrSavedSsids calculated from union of savedSsids & openSsids
-            int openOrSavedBssids = 0;
-            Set<PasspointProvider> savedPasspointProviderProfiles =
-                    new HashSet<PasspointProvider>();
-            int savedPasspointProviderBssids = 0;
-            int passpointR1Aps = 0;
-            int passpointR2Aps = 0;
-            int passpointR3Aps = 0;
-            Map<ANQPNetworkKey, Integer> passpointR1UniqueEss = new HashMap<>();
-            Map<ANQPNetworkKey, Integer> passpointR2UniqueEss = new HashMap<>();
-            Map<ANQPNetworkKey, Integer> passpointR3UniqueEss = new HashMap<>();
-            int supporting80211mcAps = 0;
-            for (ScanDetail scanDetail : scanDetails) {
-                NetworkDetail networkDetail = scanDetail.getNetworkDetail();
-                ScanResult scanResult = scanDetail.getScanResult();
-
-                // statistics to be collected for ALL APs (irrespective of signal power)
-                if (networkDetail.is80211McResponderSupport()) {
-                    supporting80211mcAps++;
-                }
-
-                ScanResultMatchInfo matchInfo = ScanResultMatchInfo.fromScanResult(scanResult);
-                List<Pair<PasspointProvider, PasspointMatch>> matchedProviders = null;
-                if (networkDetail.isInterworking()) {
-                    // Try to match provider, but do not allow new ANQP messages. Use cached data.
-                    matchedProviders = mPasspointManager.matchProvider(scanResult, false);
-                    if (networkDetail.getHSRelease() == NetworkDetail.HSRelease.R1) {
-                        passpointR1Aps++;
-                    } else if (networkDetail.getHSRelease() == NetworkDetail.HSRelease.R2) {
-                        passpointR2Aps++;
-                    } else if (networkDetail.getHSRelease() == NetworkDetail.HSRelease.R3) {
-                        passpointR3Aps++;
-                    }
-
-                    long bssid = 0;
-                    boolean validBssid = false;
-                    try {
-                        bssid = Utils.parseMac(scanResult.BSSID);
-                        validBssid = true;
-                    } catch (IllegalArgumentException e) {
-                        Log.e(TAG,
-                                "Invalid BSSID provided in the scan result: " + scanResult.BSSID);
-                    }
-                    if (validBssid) {
-                        ANQPNetworkKey uniqueEss = ANQPNetworkKey.buildKey(scanResult.SSID, bssid,
-                                scanResult.hessid, networkDetail.getAnqpDomainID());
-                        if (networkDetail.getHSRelease() == NetworkDetail.HSRelease.R1) {
-                            Integer countObj = passpointR1UniqueEss.get(uniqueEss);
-                            int count = countObj == null ? 0 : countObj;
-                            passpointR1UniqueEss.put(uniqueEss, count + 1);
-                        } else if (networkDetail.getHSRelease() == NetworkDetail.HSRelease.R2) {
-                            Integer countObj = passpointR2UniqueEss.get(uniqueEss);
-                            int count = countObj == null ? 0 : countObj;
-                            passpointR2UniqueEss.put(uniqueEss, count + 1);
-                        } else if (networkDetail.getHSRelease() == NetworkDetail.HSRelease.R3) {
-                            Integer countObj = passpointR3UniqueEss.get(uniqueEss);
-                            int count = countObj == null ? 0 : countObj;
-                            passpointR3UniqueEss.put(uniqueEss, count + 1);
-                        }
-                    }
-                }
-
-                if (mWifiNetworkSelector.isSignalTooWeak(scanResult)) {
-                    continue;
-                }
-
-                // statistics to be collected ONLY for those APs with sufficient signal power
-
-                ssids.add(matchInfo);
-                bssids++;
-                boolean isOpen = ScanResultUtil.isScanResultForOpenNetwork(scanResult)
-                        || ScanResultUtil.isScanResultForOweNetwork(scanResult);
-                WifiConfiguration config =
-                        mWifiConfigManager.getSavedNetworkForScanDetail(scanDetail);
-                boolean isSaved = (config != null) && !config.isEphemeral()
-                        && !config.isPasspoint();
-                if (isOpen) {
-                    openSsids.add(matchInfo);
-                    openBssids++;
-                }
-                if (isSaved) {
-                    savedSsids.add(matchInfo);
-                    savedBssids++;
-                }
-                if (isOpen || isSaved) {
-                    openOrSavedBssids++;
-                    // Calculate openOrSavedSsids union later
-                }
-                if (matchedProviders != null && !matchedProviders.isEmpty()) {
-                    for (Pair<PasspointProvider, PasspointMatch> passpointProvider :
-                            matchedProviders) {
-                        savedPasspointProviderProfiles.add(passpointProvider.first);
-                    }
-                    savedPasspointProviderBssids++;
-                }
-            }
-            mWifiLogProto.fullBandAllSingleScanListenerResults++;
-            incrementTotalScanSsids(mTotalSsidsInScanHistogram, ssids.size());
-            incrementTotalScanResults(mTotalBssidsInScanHistogram, bssids);
-            incrementSsid(mAvailableOpenSsidsInScanHistogram, openSsids.size());
-            incrementBssid(mAvailableOpenBssidsInScanHistogram, openBssids);
-            incrementSsid(mAvailableSavedSsidsInScanHistogram, savedSsids.size());
-            incrementBssid(mAvailableSavedBssidsInScanHistogram, savedBssids);
-            openSsids.addAll(savedSsids); // openSsids = Union(openSsids, savedSsids)
-            incrementSsid(mAvailableOpenOrSavedSsidsInScanHistogram, openSsids.size());
-            incrementBssid(mAvailableOpenOrSavedBssidsInScanHistogram, openOrSavedBssids);
-            incrementSsid(mAvailableSavedPasspointProviderProfilesInScanHistogram,
-                    savedPasspointProviderProfiles.size());
-            incrementBssid(mAvailableSavedPasspointProviderBssidsInScanHistogram,
-                    savedPasspointProviderBssids);
-            incrementTotalPasspointAps(mObservedHotspotR1ApInScanHistogram, passpointR1Aps);
-            incrementTotalPasspointAps(mObservedHotspotR2ApInScanHistogram, passpointR2Aps);
-            incrementTotalPasspointAps(mObservedHotspotR3ApInScanHistogram, passpointR3Aps);
-            incrementTotalUniquePasspointEss(mObservedHotspotR1EssInScanHistogram,
-                    passpointR1UniqueEss.size());
-            incrementTotalUniquePasspointEss(mObservedHotspotR2EssInScanHistogram,
-                    passpointR2UniqueEss.size());
-            incrementTotalUniquePasspointEss(mObservedHotspotR3EssInScanHistogram,
-                    passpointR3UniqueEss.size());
-            for (Integer count : passpointR1UniqueEss.values()) {
-                incrementPasspointPerUniqueEss(mObservedHotspotR1ApsPerEssInScanHistogram, count);
-            }
-            for (Integer count : passpointR2UniqueEss.values()) {
-                incrementPasspointPerUniqueEss(mObservedHotspotR2ApsPerEssInScanHistogram, count);
-            }
-            for (Integer count : passpointR3UniqueEss.values()) {
-                incrementPasspointPerUniqueEss(mObservedHotspotR3ApsPerEssInScanHistogram, count);
-            }
-            increment80211mcAps(mObserved80211mcApInScanHistogram, supporting80211mcAps);
-        }
-    }
-
-    private void updateCountryCodeScanStats(List<ScanDetail> scanDetails) {
-        String countryCode = null;
-        int countryCodeCount = 0;
-        for (ScanDetail scanDetail : scanDetails) {
-            NetworkDetail networkDetail = scanDetail.getNetworkDetail();
-            String countryCodeCurr = networkDetail.getCountryCode();
-            if (countryCodeCurr == null) {
-                continue;
-            }
-            if (countryCode == null) {
-                countryCode = countryCodeCurr;
-                countryCodeCount = 1;
-                continue;
-            }
-            if (!countryCodeCurr.equalsIgnoreCase(countryCode)) {
-                mCountryCodeScanHistogram.increment(COUNTRY_CODE_CONFLICT_WIFI_SCAN);
-                return;
+        if (mWifiConfigManager == null || mWifiNetworkSelector == null
+                || mPasspointManager == null) {
+            return;
+        }
+        if (!isFullBand) {
+            synchronized (mScanHistogramsLock) {
+                mPartialAllSingleScanListenerResults++;
             }
-            countryCodeCount++;
+            return;
         }
+        // Reuse the pooled aggregator, unless another scan is being aggregated concurrently.
+        AvailableNetworksAggregator aggregator = mAvailableNetworksAggregator.getAndSet(null);
+        if (aggregator == null) {
+            aggregator = new AvailableNetworksAggregator();
+        }
+        try {
+            aggregator.aggregate(scanDetails, mWifiConfigManager, mWifiNetworkSelector,
+                    mPasspointManager);
+            int countryCodeScanBucket = getCountryCodeScanBucket(aggregator);
+            synchronized (mScanHistogramsLock) {
+                mCountryCodeScanHistogram.increment(countryCodeScanBucket);
+                mFullBandAllSingleScanListenerResults++;
+                incrementTotalScanSsids(mTotalSsidsInScanHistogram, aggregator.getSsids());
+                incrementTotalScanResults(mTotalBssidsInScanHistogram, aggregator.getBssids());
+                incrementSsid(mAvailableOpenSsidsInScanHistogram, aggregator.getOpenSsids());
+                incrementBssid(mAvailableOpenBssidsInScanHistogram, aggregator.getOpenBssids());
+                incrementSsid(mAvailableSavedSsidsInScanHistogram, aggregator.getSavedSsids());
+                incrementBssid(mAvailableSavedBssidsInScanHistogram, aggregator.getSavedBssids());
+                incrementSsid(mAvailableOpenOrSavedSsidsInScanHistogram,
+                        aggregator.getOpenOrSavedSsids());
+                incrementBssid(mAvailableOpenOrSavedBssidsInScanHistogram,
+                        aggregator.getOpenOrSavedBssids());
+                incrementSsid(mAvailableSavedPasspointProviderProfilesInScanHistogram,
+                        aggregator.getSavedPasspointProviderProfiles());
+                incrementBssid(mAvailableSavedPasspointProviderBssidsInScanHistogram,
+                        aggregator.getSavedPasspointProviderBssids());
+                incrementPasspointHistograms(aggregator, NetworkDetail.HSRelease.R1,
+                        mObservedHotspotR1ApInScanHistogram, mObservedHotspotR1EssInScanHistogram,
+                        mObservedHotspotR1ApsPerEssInScanHistogram);
+                incrementPasspointHistograms(aggregator, NetworkDetail.HSRelease.R2,
+                        mObservedHotspotR2ApInScanHistogram, mObservedHotspotR2EssInScanHistogram,
+                        mObservedHotspotR2ApsPerEssInScanHistogram);
+                incrementPasspointHistograms(aggregator, NetworkDetail.HSRelease.R3,
+                        mObservedHotspotR3ApInScanHistogram, mObservedHotspotR3EssInScanHistogram,
+                        mObservedHotspotR3ApsPerEssInScanHistogram);
+                increment80211mcAps(mObserved80211mcApInScanHistogram,
+                        aggregator.getSupporting80211mcAps());
+            }
+        } finally {
+            // Return the aggregator to the pool even if aggregating the scan results threw.
+            mAvailableNetworksAggregator.set(aggregator);
+        }
+    }
+
+    private void incrementPasspointHistograms(AvailableNetworksAggregator aggregator,
+            NetworkDetail.HSRelease release, IntCounter apHistogram, IntCounter essHistogram,
+            IntCounter apsPerEssHistogram) {
+        incrementTotalPasspointAps(apHistogram, aggregator.getPasspointAps(release));
+        Map<ANQPNetworkKey, Integer> uniqueEss = aggregator.getPasspointUniqueEss(release);
+        incrementTotalUniquePasspointEss(essHistogram, uniqueEss.size());
+        for (Integer count : uniqueEss.values()) {
+            incrementPasspointPerUniqueEss(apsPerEssHistogram, count);
+        }
+    }
+
+    private int getCountryCodeScanBucket(AvailableNetworksAggregator aggregator) {
+        if (aggregator.hasCountryCodeConflict()) {
+            return COUNTRY_CODE_CONFLICT_WIFI_SCAN;
+        }
+        String countryCode = aggregator.getCountryCode();
+        int countryCodeCount = aggregator.getCountryCodeCount();
         String countryCodeTelephony = mTelephonyManager.getNetworkCountryIso();
         if (countryCodeCount > 0 && !TextUtils.isEmpty(countryCodeTelephony)
                 && !countryCodeTelephony.equalsIgnoreCase(countryCode)) {
-            mCountryCodeScanHistogram.increment(COUNTRY_CODE_CONFLICT_WIFI_SCAN_TELEPHONY);
-            return;
+            return COUNTRY_CODE_CONFLICT_WIFI_SCAN_TELEPHONY;
         }
-        mCountryCodeScanHistogram.increment(Math.min(countryCodeCount, MAX_COUNTRY_CODE_COUNT));
+        return Math.min(countryCodeCount, MAX_COUNTRY_CODE_COUNT);
     }
 
     /** Increments the occurence of a "Connect to Network" notification. */
@@ -3979,8 +3907,9 @@ public class WifiMetrics {
                 pw.println("mWifiLogProto.numSetupSoftApInterfaceFailureDueToHostapd="
                         + mWifiLogProto.numSetupSoftApInterfaceFailureDueToHostapd);
                 pw.println("StaEventList:");
-                for (StaEventWithTime event : mStaEventList) {
-                    pw.println(event);
+                for (int i = 0; i < mStaEventList.size(); i++) {
+                    pw.println(staEventWithTimeToString(mStaEventList.get(i),
+                            mStaEventList.getWallClockMillis(i)));
                 }
                 pw.println("UserActionEvents:");
                 for (UserActionEventWithTime event : mUserActionEventList) {
@@ -4005,6 +3934,9 @@ public class WifiMetrics {
                 pw.println("mWifiLogProto.installedPasspointProfileTypeForR2:"
                         + mInstalledPasspointProfileTypeForR2);
 
+                if (mPasspointManager != null) {
+                    mPasspointManager.dumpAnqpCacheCounters(pw);
+                }
                 pw.println("mWifiLogProto.passpointProvisionStats.numProvisionSuccess="
                         + mNumProvisionSuccess);
                 pw.println("mWifiLogProto.passpointProvisionStats.provisionFailureCount:"
@@ -4035,30 +3967,32 @@ public class WifiMetrics {
                         + mWifiLogProto.numRadioModeChangeToDbs);
                 pw.println("mWifiLogProto.numSoftApUserBandPreferenceUnsatisfied="
                         + mWifiLogProto.numSoftApUserBandPreferenceUnsatisfied);
-                pw.println("mTotalSsidsInScanHistogram:"
-                        + mTotalSsidsInScanHistogram.toString());
-                pw.println("mTotalBssidsInScanHistogram:"
-                        + mTotalBssidsInScanHistogram.toString());
-                pw.println("mAvailableOpenSsidsInScanHistogram:"
-                        + mAvailableOpenSsidsInScanHistogram.toString());
-                pw.println("mAvailableOpenBssidsInScanHistogram:"
-                        + mAvailableOpenBssidsInScanHistogram.toString());
-                pw.println("mAvailableSavedSsidsInScanHistogram:"
-                        + mAvailableSavedSsidsInScanHistogram.toString());
-                pw.println("mAvailableSavedBssidsInScanHistogram:"
-                        + mAvailableSavedBssidsInScanHistogram.toString());
-                pw.println("mAvailableOpenOrSavedSsidsInScanHistogram:"
-                        + mAvailableOpenOrSavedSsidsInScanHistogram.toString());
-                pw.println("mAvailableOpenOrSavedBssidsInScanHistogram:"
-                        + mAvailableOpenOrSavedBssidsInScanHistogram.toString());
-                pw.println("mAvailableSavedPasspointProviderProfilesInScanHistogram:"
-                        + mAvailableSavedPasspointProviderProfilesInScanHistogram.toString());
-                pw.println("mAvailableSavedPasspointProviderBssidsInScanHistogram:"
-                        + mAvailableSavedPasspointProviderBssidsInScanHistogram.toString());
-                pw.println("mWifiLogProto.partialAllSingleScanListenerResults="
-                        + mWifiLogProto.partialAllSingleScanListenerResults);
-                pw.println("mWifiLogProto.fullBandAllSingleScanListenerResults="
-                        + mWifiLogProto.fullBandAllSingleScanListenerResults);
+                synchronized (mScanHistogramsLock) {
+                    pw.println("mTotalSsidsInScanHistogram:"
+                            + mTotalSsidsInScanHistogram.toString());
+                    pw.println("mTotalBssidsInScanHistogram:"
+                            + mTotalBssidsInScanHistogram.toString());
+                    pw.println("mAvailableOpenSsidsInScanHistogram:"
+                            + mAvailableOpenSsidsInScanHistogram.toString());
+                    pw.println("mAvailableOpenBssidsInScanHistogram:"
+                            + mAvailableOpenBssidsInScanHistogram.toString());
+                    pw.println("mAvailableSavedSsidsInScanHistogram:"
+                            + mAvailableSavedSsidsInScanHistogram.toString());
+                    pw.println("mAvailableSavedBssidsInScanHistogram:"
+                            + mAvailableSavedBssidsInScanHistogram.toString());
+                    pw.println("mAvailableOpenOrSavedSsidsInScanHistogram:"
+                            + mAvailableOpenOrSavedSsidsInScanHistogram.toString());
+                    pw.println("mAvailableOpenOrSavedBssidsInScanHistogram:"
+                            + mAvailableOpenOrSavedBssidsInScanHistogram.toString());
+                    pw.println("mAvailableSavedPasspointProviderProfilesInScanHistogram:"
+                            + mAvailableSavedPasspointProviderProfilesInScanHistogram.toString());
+                    pw.println("mAvailableSavedPasspointProviderBssidsInScanHistogram:"
+                            + mAvailableSavedPasspointProviderBssidsInScanHistogram.toString());
+                    pw.println("mWifiLogProto.partialAllSingleScanListenerResults="
+                            + mPartialAllSingleScanListenerResults);
+                    pw.println("mWifiLogProto.fullBandAllSingleScanListenerResults="
+                            + mFullBandAllSingleScanListenerResults);
+                }
                 pw.println("mWifiAwareMetrics:");
                 mWifiAwareMetrics.dump(fd, pw, args);
                 pw.println("mRttMetrics:");
@@ -4123,29 +4057,33 @@ public class WifiMetrics {
                 pw.println("mWifiLogProto.numOpenNetworkConnectMessageFailedToSend="
                         + mNumOpenNetworkConnectMessageFailedToSend);
 
-                pw.println("mWifiLogProto.observedHotspotR1ApInScanHistogram="
-                        + mObservedHotspotR1ApInScanHistogram);
-                pw.println("mWifiLogProto.observedHotspotR2ApInScanHistogram="
-                        + mObservedHotspotR2ApInScanHistogram);
-                pw.println("mWifiLogProto.observedHotspotR3ApInScanHistogram="
-                        + mObservedHotspotR3ApInScanHistogram);
-                pw.println("mWifiLogProto.observedHotspotR1EssInScanHistogram="
-                        + mObservedHotspotR1EssInScanHistogram);
-                pw.println("mWifiLogProto.observedHotspotR2EssInScanHistogram="
-                        + mObservedHotspotR2EssInScanHistogram);
-                pw.println("mWifiLogProto.observedHotspotR3EssInScanHistogram="
-                        + mObservedHotspotR3EssInScanHistogram);
-                pw.println("mWifiLogProto.observedHotspotR1ApsPerEssInScanHistogram="
-                        + mObservedHotspotR1ApsPerEssInScanHistogram);
-                pw.println("mWifiLogProto.observedHotspotR2ApsPerEssInScanHistogram="
-                        + mObservedHotspotR2ApsPerEssInScanHistogram);
-                pw.println("mWifiLogProto.observedHotspotR3ApsPerEssInScanHistogram="
-                        + mObservedHotspotR3ApsPerEssInScanHistogram);
-
-                pw.println("mWifiLogProto.observed80211mcSupportingApsInScanHistogram"
-                        + mObserved80211mcApInScanHistogram);
-                pw.println("mWifiLogProto.CountryCodeScanHistogram="
-                        + mCountryCodeScanHistogram.toString());
+                synchronized (mScanHistogramsLock) {
+                    pw.println("mWifiLogProto.observedHotspotR1ApInScanHistogram="
+                            + mObservedHotspotR1ApInScanHistogram);
+                    pw.println("mWifiLogProto.observedHotspotR2ApInScanHistogram="
+                            + mObservedHotspotR2ApInScanHistogram);
+                    pw.println("mWifiLogProto.observedHotspotR3ApInScanHistogram="
+                            + mObservedHotspotR3ApInScanHistogram);
+                    pw.println("mWifiLogProto.observedHotspotR1EssInScanHistogram="
+                            + mObservedHotspotR1EssInScanHistogram);
+                    pw.println("mWifiLogProto.observedHotspotR2EssInScanHistogram="
+                            + mObservedHotspotR2EssInScanHistogram);
+                    pw.println("mWifiLogProto.observedHotspotR3EssInScanHistogram="
+                            + mObservedHotspotR3EssInScanHistogram);
+                    pw.println("mWifiLogProto.observedHotspotR1ApsPerEssInScanHistogram="
+                            + mObservedHotspotR1ApsPerEssInScanHistogram);
+                    pw.println("mWifiLogProto.observedHotspotR2ApsPerEssInScanHistogram="
+                            + mObservedHotspotR2ApsPerEssInScanHistogram);
+                    pw.println("mWifiLogProto.observedHotspotR3ApsPerEssInScanHistogram="
+                            + mObservedHotspotR3ApsPerEssInScanHistogram);
+
+                    pw.println("mWifiLogProto.observed80211mcSupportingApsInScanHistogram"
+                            + mObserved80211mcApInScanHistogram);
+                    pw.println("mWifiLogProto.CountryCodeScanHistogram="
+                            + mCountryCodeScanHistogram.toString());
+                    pw.println("mWifiLogProto.rssiPollIntervalHistogram="
+                            + mRssiPollIntervalHistogram.toString());
+                }
                 pw.println("mWifiLogProto.bssidBlocklistStats:");
                 pw.println(mBssidBlocklistStats.toString());
 
@@ -4264,6 +4202,9 @@ public class WifiMetrics {
                         + mWifiConfigStoreReadDurationHistogram.toString());
                 pw.println("mWifiConfigStoreWriteDurationHistogram:"
                         + mWifiConfigStoreWriteDurationHistogram.toString());
+                pw.println("mWifiConfigStoreSerializationDurationHistogram:"
+                        + mWifiConfigStoreSerializationDurationHistogram.toString());
+                pw.println("mWifiConfigStoreSerializedBytes:" + mWifiConfigStoreSerializedBytes);
 
                 pw.println("mLinkProbeSuccessRssiCounts:" + mLinkProbeSuccessRssiCounts);
                 pw.println("mLinkProbeFailureRssiCounts:" + mLinkProbeFailureRssiCounts);
@@ -4771,36 +4712,43 @@ public class WifiMetrics {
              */
             mWifiLogProto.staEventList = new StaEvent[mStaEventList.size()];
             for (int i = 0; i < mStaEventList.size(); i++) {
-                mWifiLogProto.staEventList[i] = mStaEventList.get(i).staEvent;
+                mWifiLogProto.staEventList[i] = mStaEventList.get(i);
             }
             mWifiLogProto.userActionEvents = new UserActionEvent[mUserActionEventList.size()];
-            for (int i = 0; i < mUserActionEventList.size(); i++) {
-                mWifiLogProto.userActionEvents[i] = mUserActionEventList.get(i).toProto();
-            }
-            mWifiLogProto.totalSsidsInScanHistogram =
-                    makeNumConnectableNetworksBucketArray(mTotalSsidsInScanHistogram);
-            mWifiLogProto.totalBssidsInScanHistogram =
-                    makeNumConnectableNetworksBucketArray(mTotalBssidsInScanHistogram);
-            mWifiLogProto.availableOpenSsidsInScanHistogram =
-                    makeNumConnectableNetworksBucketArray(mAvailableOpenSsidsInScanHistogram);
-            mWifiLogProto.availableOpenBssidsInScanHistogram =
-                    makeNumConnectableNetworksBucketArray(mAvailableOpenBssidsInScanHistogram);
-            mWifiLogProto.availableSavedSsidsInScanHistogram =
-                    makeNumConnectableNetworksBucketArray(mAvailableSavedSsidsInScanHistogram);
-            mWifiLogProto.availableSavedBssidsInScanHistogram =
-                    makeNumConnectableNetworksBucketArray(mAvailableSavedBssidsInScanHistogram);
-            mWifiLogProto.availableOpenOrSavedSsidsInScanHistogram =
-                    makeNumConnectableNetworksBucketArray(
-                    mAvailableOpenOrSavedSsidsInScanHistogram);
-            mWifiLogProto.availableOpenOrSavedBssidsInScanHistogram =
-                    makeNumConnectableNetworksBucketArray(
-                    mAvailableOpenOrSavedBssidsInScanHistogram);
-            mWifiLogProto.availableSavedPasspointProviderProfilesInScanHistogram =
-                    makeNumConnectableNetworksBucketArray(
-                    mAvailableSavedPasspointProviderProfilesInScanHistogram);
-            mWifiLogProto.availableSavedPasspointProviderBssidsInScanHistogram =
-                    makeNumConnectableNetworksBucketArray(
-                    mAvailableSavedPasspointProviderBssidsInScanHistogram);
+            int userActionEventIndex = 0;
+            for (UserActionEventWithTime event : mUserActionEventList) {
+                mWifiLogProto.userActionEvents[userActionEventIndex++] = event.toProto();
+            }
+            synchronized (mScanHistogramsLock) {
+                mWifiLogProto.partialAllSingleScanListenerResults =
+                        mPartialAllSingleScanListenerResults;
+                mWifiLogProto.fullBandAllSingleScanListenerResults =
+                        mFullBandAllSingleScanListenerResults;
+                mWifiLogProto.totalSsidsInScanHistogram =
+                        makeNumConnectableNetworksBucketArray(mTotalSsidsInScanHistogram);
+                mWifiLogProto.totalBssidsInScanHistogram =
+                        makeNumConnectableNetworksBucketArray(mTotalBssidsInScanHistogram);
+                mWifiLogProto.availableOpenSsidsInScanHistogram =
+                        makeNumConnectableNetworksBucketArray(mAvailableOpenSsidsInScanHistogram);
+                mWifiLogProto.availableOpenBssidsInScanHistogram =
+                        makeNumConnectableNetworksBucketArray(mAvailableOpenBssidsInScanHistogram);
+                mWifiLogProto.availableSavedSsidsInScanHistogram =
+                        makeNumConnectableNetworksBucketArray(mAvailableSavedSsidsInScanHistogram);
+                mWifiLogProto.availableSavedBssidsInScanHistogram =
+                        makeNumConnectableNetworksBucketArray(mAvailableSavedBssidsInScanHistogram);
+                mWifiLogProto.availableOpenOrSavedSsidsInScanHistogram =
+                        makeNumConnectableNetworksBucketArray(
+                        mAvailableOpenOrSavedSsidsInScanHistogram);
+                mWifiLogProto.availableOpenOrSavedBssidsInScanHistogram =
+                        makeNumConnectableNetworksBucketArray(
+                        mAvailableOpenOrSavedBssidsInScanHistogram);
+                mWifiLogProto.availableSavedPasspointProviderProfilesInScanHistogram =
+                        makeNumConnectableNetworksBucketArray(
+                        mAvailableSavedPasspointProviderProfilesInScanHistogram);
+                mWifiLogProto.availableSavedPasspointProviderBssidsInScanHistogram =
+                        makeNumConnectableNetworksBucketArray(
+                        mAvailableSavedPasspointProviderBssidsInScanHistogram);
+            }
             mWifiLogProto.wifiAwareLog = mWifiAwareMetrics.consolidateProto();
             mWifiLogProto.wifiRttLog = mRttMetrics.consolidateProto();
 
@@ -4865,30 +4813,32 @@ public class WifiMetrics {
             mWifiLogProto.numOpenNetworkConnectMessageFailedToSend =
                     mNumOpenNetworkConnectMessageFailedToSend;
 
-            mWifiLogProto.observedHotspotR1ApsInScanHistogram =
-                    makeNumConnectableNetworksBucketArray(mObservedHotspotR1ApInScanHistogram);
-            mWifiLogProto.observedHotspotR2ApsInScanHistogram =
-                    makeNumConnectableNetworksBucketArray(mObservedHotspotR2ApInScanHistogram);
-            mWifiLogProto.observedHotspotR3ApsInScanHistogram =
-                makeNumConnectableNetworksBucketArray(mObservedHotspotR3ApInScanHistogram);
-            mWifiLogProto.observedHotspotR1EssInScanHistogram =
-                    makeNumConnectableNetworksBucketArray(mObservedHotspotR1EssInScanHistogram);
-            mWifiLogProto.observedHotspotR2EssInScanHistogram =
-                    makeNumConnectableNetworksBucketArray(mObservedHotspotR2EssInScanHistogram);
-            mWifiLogProto.observedHotspotR3EssInScanHistogram =
-                    makeNumConnectableNetworksBucketArray(mObservedHotspotR3EssInScanHistogram);
-            mWifiLogProto.observedHotspotR1ApsPerEssInScanHistogram =
-                    makeNumConnectableNetworksBucketArray(
-                            mObservedHotspotR1ApsPerEssInScanHistogram);
-            mWifiLogProto.observedHotspotR2ApsPerEssInScanHistogram =
-                    makeNumConnectableNetworksBucketArray(
-                            mObservedHotspotR2ApsPerEssInScanHistogram);
-            mWifiLogProto.observedHotspotR3ApsPerEssInScanHistogram =
-                makeNumConnectableNetworksBucketArray(
-                    mObservedHotspotR3ApsPerEssInScanHistogram);
-
-            mWifiLogProto.observed80211McSupportingApsInScanHistogram =
-                    makeNumConnectableNetworksBucketArray(mObserved80211mcApInScanHistogram);
+            synchronized (mScanHistogramsLock) {
+                mWifiLogProto.observedHotspotR1ApsInScanHistogram =
+                        makeNumConnectableNetworksBucketArray(mObservedHotspotR1ApInScanHistogram);
+                mWifiLogProto.observedHotspotR2ApsInScanHistogram =
+                        makeNumConnectableNetworksBucketArray(mObservedHotspotR2ApInScanHistogram);
+                mWifiLogProto.observedHotspotR3ApsInScanHistogram =
+                        makeNumConnectableNetworksBucketArray(mObservedHotspotR3ApInScanHistogram);
+                mWifiLogProto.observedHotspotR1EssInScanHistogram =
+                        makeNumConnectableNetworksBucketArray(mObservedHotspotR1EssInScanHistogram);
+                mWifiLogProto.observedHotspotR2EssInScanHistogram =
+                        makeNumConnectableNetworksBucketArray(mObservedHotspotR2EssInScanHistogram);
+                mWifiLogProto.observedHotspotR3EssInScanHistogram =
+                        makeNumConnectableNetworksBucketArray(mObservedHotspotR3EssInScanHistogram);
+                mWifiLogProto.observedHotspotR1ApsPerEssInScanHistogram =
+                        makeNumConnectableNetworksBucketArray(
+                                mObservedHotspotR1ApsPerEssInScanHistogram);
+                mWifiLogProto.observedHotspotR2ApsPerEssInScanHistogram =
+                        makeNumConnectableNetworksBucketArray(
+                                mObservedHotspotR2ApsPerEssInScanHistogram);
+                mWifiLogProto.observedHotspotR3ApsPerEssInScanHistogram =
+                        makeNumConnectableNetworksBucketArray(
+                                mObservedHotspotR3ApsPerEssInScanHistogram);
+
+                mWifiLogProto.observed80211McSupportingApsInScanHistogram =
+                        makeNumConnectableNetworksBucketArray(mObserved80211mcApInScanHistogram);
+            }
 
             if (mSoftApEventListTethered.size() > 0) {
                 mWifiLogProto.softApConnectedClientsEventsTethered =
@@ -4953,6 +4903,10 @@ public class WifiMetrics {
             mWifiLogProto.wifiConfigStoreIo.writeDurations =
                     makeWifiConfigStoreIODurationBucketArray(
                             mWifiConfigStoreWriteDurationHistogram);
+            mWifiLogProto.wifiConfigStoreIo.serializationDurations =
+                    makeWifiConfigStoreIODurationBucketArray(
+                            mWifiConfigStoreSerializationDurationHistogram);
+            mWifiLogProto.wifiConfigStoreIo.serializedBytes = mWifiConfigStoreSerializedBytes;
 
             LinkProbeStats linkProbeStats = new LinkProbeStats();
             linkProbeStats.successRssiCounts = mLinkProbeSuccessRssiCounts.toProto();
@@ -5109,7 +5063,19 @@ public class WifiMetrics {
             mWifiLogProto.passpointDeauthImminentScope = mPasspointDeauthImminentScope.toProto();
             mWifiLogProto.recentFailureAssociationStatus =
                     mRecentFailureAssociationStatus.toProto();
-            mWifiLogProto.countryCodeScanHistogram = mCountryCodeScanHistogram.toProto();
+            synchronized (mScanHistogramsLock) {
+                mWifiLogProto.countryCodeScanHistogram = mCountryCodeScanHistogram.toProto();
+                mWifiLogProto.rssiPollIntervalHistogram = mRssiPollIntervalHistogram.toProto();
+            }
+            if (mPasspointManager != null) {
+                mWifiLogProto.numAnqpCacheHits = (int) (mPasspointManager.getAnqpCacheHitCount()
+                        - mAnqpCacheHitCountAtClear);
+                mWifiLogProto.numAnqpCacheMisses = (int) (
+                        mPasspointManager.getAnqpCacheMissCount() - mAnqpCacheMissCountAtClear);
+                mWifiLogProto.numAnqpCacheEvictions = (int) (
+                        mPasspointManager.getAnqpCacheEvictionCount()
+                                - mAnqpCacheEvictionCountAtClear);
+            }
         }
     }
 
@@ -5243,16 +5209,32 @@ public class WifiMetrics {
             mUserActionEventList.clear();
             mWifiAwareMetrics.clear();
             mRttMetrics.clear();
-            mTotalSsidsInScanHistogram.clear();
-            mTotalBssidsInScanHistogram.clear();
-            mAvailableOpenSsidsInScanHistogram.clear();
-            mAvailableOpenBssidsInScanHistogram.clear();
-            mAvailableSavedSsidsInScanHistogram.clear();
-            mAvailableSavedBssidsInScanHistogram.clear();
-            mAvailableOpenOrSavedSsidsInScanHistogram.clear();
-            mAvailableOpenOrSavedBssidsInScanHistogram.clear();
-            mAvailableSavedPasspointProviderProfilesInScanHistogram.clear();
-            mAvailableSavedPasspointProviderBssidsInScanHistogram.clear();
+            synchronized (mScanHistogramsLock) {
+                mPartialAllSingleScanListenerResults = 0;
+                mFullBandAllSingleScanListenerResults = 0;
+                mTotalSsidsInScanHistogram.clear();
+                mTotalBssidsInScanHistogram.clear();
+                mAvailableOpenSsidsInScanHistogram.clear();
+                mAvailableOpenBssidsInScanHistogram.clear();
+                mAvailableSavedSsidsInScanHistogram.clear();
+                mAvailableSavedBssidsInScanHistogram.clear();
+                mAvailableOpenOrSavedSsidsInScanHistogram.clear();
+                mAvailableOpenOrSavedBssidsInScanHistogram.clear();
+                mAvailableSavedPasspointProviderProfilesInScanHistogram.clear();
+                mAvailableSavedPasspointProviderBssidsInScanHistogram.clear();
+                mObservedHotspotR1ApInScanHistogram.clear();
+                mObservedHotspotR2ApInScanHistogram.clear();
+                mObservedHotspotR3ApInScanHistogram.clear();
+                mObservedHotspotR1EssInScanHistogram.clear();
+                mObservedHotspotR2EssInScanHistogram.clear();
+                mObservedHotspotR3EssInScanHistogram.clear();
+                mObservedHotspotR1ApsPerEssInScanHistogram.clear();
+                mObservedHotspotR2ApsPerEssInScanHistogram.clear();
+                mObservedHotspotR3ApsPerEssInScanHistogram.clear();
+                mObserved80211mcApInScanHistogram.clear();
+                mCountryCodeScanHistogram.clear();
+                mRssiPollIntervalHistogram.clear();
+            }
             mPnoScanMetrics.clear();
             mWifiLinkLayerUsageStats.clear();
             mRadioStats.clear();
@@ -5260,20 +5242,14 @@ public class WifiMetrics {
             mConnectToNetworkNotificationActionCount.clear();
             mNumOpenNetworkRecommendationUpdates = 0;
             mNumOpenNetworkConnectMessageFailedToSend = 0;
-            mObservedHotspotR1ApInScanHistogram.clear();
-            mObservedHotspotR2ApInScanHistogram.clear();
-            mObservedHotspotR3ApInScanHistogram.clear();
-            mObservedHotspotR1EssInScanHistogram.clear();
-            mObservedHotspotR2EssInScanHistogram.clear();
-            mObservedHotspotR3EssInScanHistogram.clear();
-            mObservedHotspotR1ApsPerEssInScanHistogram.clear();
-            mObservedHotspotR2ApsPerEssInScanHistogram.clear();
-            mObservedHotspotR3ApsPerEssInScanHistogram.clear();
-            mCountryCodeScanHistogram.clear();
+            if (mPasspointManager != null) {
+                mAnqpCacheHitCountAtClear = mPasspointManager.getAnqpCacheHitCount();
+                mAnqpCacheMissCountAtClear = mPasspointManager.getAnqpCacheMissCount();
+                mAnqpCacheEvictionCountAtClear = mPasspointManager.getAnqpCacheEvictionCount();
+            }
             mSoftApEventListTethered.clear();
             mSoftApEventListLocalOnly.clear();
             mWifiWakeMetrics.clear();
-            mObserved80211mcApInScanHistogram.clear();
             mWifiIsUnusableList.clear();
             mInstalledPasspointProfileTypeForR1.clear();
             mInstalledPasspointProfileTypeForR2.clear();
@@ -5300,6 +5276,8 @@ public class WifiMetrics {
             mMeteredNetworkStatsBuilder.clear();
             mWifiConfigStoreReadDurationHistogram.clear();
             mWifiConfigStoreWriteDurationHistogram.clear();
+            mWifiConfigStoreSerializationDurationHistogram.clear();
+            mWifiConfigStoreSerializedBytes = 0;
             mLinkProbeSuccessRssiCounts.clear();
             mLinkProbeFailureRssiCounts.clear();
             mLinkProbeSuccessLinkSpeedCounts.clear();
@@ -5392,61 +5370,63 @@ public class WifiMetrics {
     private void processMessage(Message msg) {
         String ifaceName = msg.getData().getString(WifiMonitor.KEY_IFACE);
 
-        StaEvent event = new StaEvent();
-        boolean logEvent = true;
-        switch (msg.what) {
-            case WifiMonitor.ASSOCIATION_REJECTION_EVENT:
-                event.type = StaEvent.TYPE_ASSOCIATION_REJECTION_EVENT;
-                AssocRejectEventInfo assocRejectEventInfo = (AssocRejectEventInfo) msg.obj;
-                event.associationTimedOut = assocRejectEventInfo.timedOut;
-                event.status = assocRejectEventInfo.statusCode;
-                break;
-            case WifiMonitor.AUTHENTICATION_FAILURE_EVENT:
-                event.type = StaEvent.TYPE_AUTHENTICATION_FAILURE_EVENT;
-                AuthenticationFailureEventInfo authenticationFailureEventInfo =
-                        (AuthenticationFailureEventInfo) msg.obj;
-                switch (authenticationFailureEventInfo.reasonCode) {
-                    case WifiManager.ERROR_AUTH_FAILURE_NONE:
-                        event.authFailureReason = StaEvent.AUTH_FAILURE_NONE;
-                        break;
-                    case WifiManager.ERROR_AUTH_FAILURE_TIMEOUT:
-                        event.authFailureReason = StaEvent.AUTH_FAILURE_TIMEOUT;
-                        break;
-                    case WifiManager.ERROR_AUTH_FAILURE_WRONG_PSWD:
-                        event.authFailureReason = StaEvent.AUTH_FAILURE_WRONG_PSWD;
-                        break;
-                    case WifiManager.ERROR_AUTH_FAILURE_EAP_FAILURE:
-                        event.authFailureReason = StaEvent.AUTH_FAILURE_EAP_FAILURE;
-                        break;
-                    default:
-                        break;
-                }
-                break;
-            case WifiMonitor.NETWORK_CONNECTION_EVENT:
-                event.type = StaEvent.TYPE_NETWORK_CONNECTION_EVENT;
-                break;
-            case WifiMonitor.NETWORK_DISCONNECTION_EVENT:
-                event.type = StaEvent.TYPE_NETWORK_DISCONNECTION_EVENT;
-                DisconnectEventInfo disconnectEventInfo = (DisconnectEventInfo) msg.obj;
-                event.reason = disconnectEventInfo.reasonCode;
-                event.localGen = disconnectEventInfo.locallyGenerated;
-                break;
-            case WifiMonitor.SUPPLICANT_STATE_CHANGE_EVENT:
-                logEvent = false;
-                StateChangeResult stateChangeResult = (StateChangeResult) msg.obj;
-                mSupplicantStateChangeBitmask |= supplicantStateToBit(stateChangeResult.state);
-                break;
-            case WifiMonitor.ASSOCIATED_BSSID_EVENT:
-                event.type = StaEvent.TYPE_CMD_ASSOCIATED_BSSID;
-                break;
-            case WifiMonitor.TARGET_BSSID_EVENT:
-                event.type = StaEvent.TYPE_CMD_TARGET_BSSID;
-                break;
-            default:
-                return;
-        }
-        if (logEvent) {
-            addStaEvent(ifaceName, event);
+        synchronized (mLock) {
+            StaEvent event = obtainStaEvent();
+            boolean logEvent = true;
+            switch (msg.what) {
+                case WifiMonitor.ASSOCIATION_REJECTION_EVENT:
+                    event.type = StaEvent.TYPE_ASSOCIATION_REJECTION_EVENT;
+                    AssocRejectEventInfo assocRejectEventInfo = (AssocRejectEventInfo) msg.obj;
+                    event.associationTimedOut = assocRejectEventInfo.timedOut;
+                    event.status = assocRejectEventInfo.statusCode;
+                    break;
+                case WifiMonitor.AUTHENTICATION_FAILURE_EVENT:
+                    event.type = StaEvent.TYPE_AUTHENTICATION_FAILURE_EVENT;
+                    AuthenticationFailureEventInfo authenticationFailureEventInfo =
+                            (AuthenticationFailureEventInfo) msg.obj;
+                    switch (authenticationFailureEventInfo.reasonCode) {
+                        case WifiManager.ERROR_AUTH_FAILURE_NONE:
+                            event.authFailureReason = StaEvent.AUTH_FAILURE_NONE;
+                            break;
+                        case WifiManager.ERROR_AUTH_FAILURE_TIMEOUT:
+                            event.authFailureReason = StaEvent.AUTH_FAILURE_TIMEOUT;
+                            break;
+                        case WifiManager.ERROR_AUTH_FAILURE_WRONG_PSWD:
+                            event.authFailureReason = StaEvent.AUTH_FAILURE_WRONG_PSWD;
+                            break;
+                        case WifiManager.ERROR_AUTH_FAILURE_EAP_FAILURE:
+                            event.authFailureReason = StaEvent.AUTH_FAILURE_EAP_FAILURE;
+                            break;
+                        default:
+                            break;
+                    }
+                    break;
+                case WifiMonitor.NETWORK_CONNECTION_EVENT:
+                    event.type = StaEvent.TYPE_NETWORK_CONNECTION_EVENT;
+                    break;
+                case WifiMonitor.NETWORK_DISCONNECTION_EVENT:
+                    event.type = StaEvent.TYPE_NETWORK_DISCONNECTION_EVENT;
+                    DisconnectEventInfo disconnectEventInfo = (DisconnectEventInfo) msg.obj;
+                    event.reason = disconnectEventInfo.reasonCode;
+                    event.localGen = disconnectEventInfo.locallyGenerated;
+                    break;
+                case WifiMonitor.SUPPLICANT_STATE_CHANGE_EVENT:
+                    logEvent = false;
+                    StateChangeResult stateChangeResult = (StateChangeResult) msg.obj;
+                    mSupplicantStateChangeBitmask |= supplicantStateToBit(stateChangeResult.state);
+                    break;
+                case WifiMonitor.ASSOCIATED_BSSID_EVENT:
+                    event.type = StaEvent.TYPE_CMD_ASSOCIATED_BSSID;
+                    break;
+                case WifiMonitor.TARGET_BSSID_EVENT:
+                    event.type = StaEvent.TYPE_CMD_TARGET_BSSID;
+                    break;
+                default:
+                    return;
+            }
+            if (logEvent) {
+                addStaEvent(ifaceName, event);
+            }
         }
     }
     /**
@@ -5506,13 +5486,27 @@ public class WifiMetrics {
                 Log.e(TAG, "Unknown StaEvent:" + type);
                 return;
         }
-        StaEvent event = new StaEvent();
-        event.type = type;
-        if (frameworkDisconnectReason != StaEvent.DISCONNECT_UNKNOWN) {
-            event.frameworkDisconnectReason = frameworkDisconnectReason;
+        synchronized (mLock) {
+            StaEvent event = obtainStaEvent();
+            event.type = type;
+            if (frameworkDisconnectReason != StaEvent.DISCONNECT_UNKNOWN) {
+                event.frameworkDisconnectReason = frameworkDisconnectReason;
+            }
+            if (config != null) {
+                fillConfigInfo(config, mScratchConfigInfo);
+                event.configInfo = mScratchConfigInfo;
+            }
+            addStaEvent(ifaceName, event);
         }
-        event.configInfo = createConfigInfo(config);
-        addStaEvent(ifaceName, event);
+    }
+
+    /**
+     * Returns the cleared scratch StaEvent, to be filled and passed to
+     * {@link #addStaEvent(String, StaEvent)} while still holding mLock.
+     */
+    private StaEvent obtainStaEvent() {
+        mScratchStaEvent.clear();
+        return mScratchStaEvent;
     }
 
     private void addStaEvent(String ifaceName, StaEvent staEvent) {
@@ -5549,15 +5543,13 @@ public class WifiMetrics {
         mLastWifiUsabilityScore = -1;
         mLastPredictionHorizonSec = -1;
         synchronized (mLock) {
-            mStaEventList.add(new StaEventWithTime(staEvent, mClock.getWallClockMillis()));
-            // Prune StaEventList if it gets too long
-            if (mStaEventList.size() > MAX_STA_EVENTS) mStaEventList.remove();
+            // Overwrites the oldest event once MAX_STA_EVENTS is reached
+            mStaEventList.add(staEvent, mClock.getWallClockMillis());
         }
     }
 
-    private ConfigInfo createConfigInfo(WifiConfiguration config) {
-        if (config == null) return null;
-        ConfigInfo info = new ConfigInfo();
+    private void fillConfigInfo(@NonNull WifiConfiguration config, ConfigInfo info) {
+        info.clear();
         info.allowedKeyManagement = bitSetToInt(config.allowedKeyManagement);
         info.allowedProtocols = bitSetToInt(config.allowedProtocols);
         info.allowedAuthAlgorithms = bitSetToInt(config.allowedAuthAlgorithms);
@@ -5572,7 +5564,6 @@ public class WifiMetrics {
             info.scanRssi = candidate.level;
             info.scanFreq = candidate.frequency;
         }
-        return info;
     }
 
     private static final int[] WIFI_MONITOR_EVENTS = {
@@ -5900,56 +5891,42 @@ public class WifiMetrics {
         }
         return value;
     }
-    private void incrementSsid(SparseIntArray sia, int element) {
-        increment(sia, Math.min(element, MAX_CONNECTABLE_SSID_NETWORK_BUCKET));
+    private void incrementSsid(IntCounter counter, int element) {
+        counter.increment(Math.min(element, MAX_CONNECTABLE_SSID_NETWORK_BUCKET));
     }
-    private void incrementBssid(SparseIntArray sia, int element) {
-        increment(sia, Math.min(element, MAX_CONNECTABLE_BSSID_NETWORK_BUCKET));
+    private void incrementBssid(IntCounter counter, int element) {
+        counter.increment(Math.min(element, MAX_CONNECTABLE_BSSID_NETWORK_BUCKET));
     }
-    private void incrementTotalScanResults(SparseIntArray sia, int element) {
-        increment(sia, Math.min(element, MAX_TOTAL_SCAN_RESULTS_BUCKET));
+    private void incrementTotalScanResults(IntCounter counter, int element) {
+        counter.increment(Math.min(element, MAX_TOTAL_SCAN_RESULTS_BUCKET));
     }
-    private void incrementTotalScanSsids(SparseIntArray sia, int element) {
-        increment(sia, Math.min(element, MAX_TOTAL_SCAN_RESULT_SSIDS_BUCKET));
+    private void incrementTotalScanSsids(IntCounter counter, int element) {
+        counter.increment(Math.min(element, MAX_TOTAL_SCAN_RESULT_SSIDS_BUCKET));
     }
-    private void incrementTotalPasspointAps(SparseIntArray sia, int element) {
-        increment(sia, Math.min(element, MAX_TOTAL_PASSPOINT_APS_BUCKET));
+    private void incrementTotalPasspointAps(IntCounter counter, int element) {
+        counter.increment(Math.min(element, MAX_TOTAL_PASSPOINT_APS_BUCKET));
     }
-    private void incrementTotalUniquePasspointEss(SparseIntArray sia, int element) {
-        increment(sia, Math.min(element, MAX_TOTAL_PASSPOINT_UNIQUE_ESS_BUCKET));
+    private void incrementTotalUniquePasspointEss(IntCounter counter, int element) {
+        counter.increment(Math.min(element, MAX_TOTAL_PASSPOINT_UNIQUE_ESS_BUCKET));
     }
-    private void incrementPasspointPerUniqueEss(SparseIntArray sia, int element) {
-        increment(sia, Math.min(element, MAX_PASSPOINT_APS_PER_UNIQUE_ESS_BUCKET));
+    private void incrementPasspointPerUniqueEss(IntCounter counter, int element) {
+        counter.increment(Math.min(element, MAX_PASSPOINT_APS_PER_UNIQUE_ESS_BUCKET));
     }
-    private void increment80211mcAps(SparseIntArray sia, int element) {
-        increment(sia, Math.min(element, MAX_TOTAL_80211MC_APS_BUCKET));
+    private void increment80211mcAps(IntCounter counter, int element) {
+        counter.increment(Math.min(element, MAX_TOTAL_80211MC_APS_BUCKET));
     }
-    private void increment(SparseIntArray sia, int element) {
-        int count = sia.get(element);
-        sia.put(element, count + 1);
-    }
-
-    private static class StaEventWithTime {
-        public StaEvent staEvent;
-        public long wallClockMillis;
-
-        StaEventWithTime(StaEvent event, long wallClockMillis) {
-            staEvent = event;
-            this.wallClockMillis = wallClockMillis;
-        }
 
-        public String toString() {
-            StringBuilder sb = new StringBuilder();
-            Calendar c = Calendar.getInstance();
-            c.setTimeInMillis(wallClockMillis);
-            if (wallClockMillis != 0) {
-                sb.append(String.format("%tm-%td %tH:%tM:%tS.%tL", c, c, c, c, c, c));
-            } else {
-                sb.append("                  ");
-            }
-            sb.append(" ").append(staEventToString(staEvent));
-            return sb.toString();
+    private static String staEventWithTimeToString(StaEvent staEvent, long wallClockMillis) {
+        StringBuilder sb = new StringBuilder();
+        Calendar c = Calendar.getInstance();
+        c.setTimeInMillis(wallClockMillis);
+        if (wallClockMillis != 0) {
+            sb.append(String.format("%tm-%td %tH:%tM:%tS.%tL", c, c, c, c, c, c));
+        } else {
+            sb.append("                  ");
         }
+        sb.append(" ").append(staEventToString(staEvent));
+        return sb.toString();
     }
 
     private LinkedList<WifiIsUnusableWithTime> mWifiIsUnusableList =
@@ -6137,7 +6114,7 @@ public class WifiMetrics {
         synchronized (mLock) {
             mUserActionEventList.add(new UserActionEventWithTime(eventType, networkId));
             if (mUserActionEventList.size() > MAX_USER_ACTION_EVENTS) {
-                mUserActionEventList.remove();
+                mUserActionEventList.removeFirst();
             }
         }
     }
@@ -6155,7 +6132,7 @@ public class WifiMetrics {
             networkInfo.isPasspoint = isPasspoint;
             mUserActionEventList.add(new UserActionEventWithTime(eventType, networkInfo));
             if (mUserActionEventList.size() > MAX_USER_ACTION_EVENTS) {
-                mUserActionEventList.remove();
+                mUserActionEventList.removeFirst();
             }
         }
     }
@@ -6755,9 +6732,9 @@ public class WifiMetrics {
         wifiUsabilityStats.timeStampMs = mClock.getElapsedSinceBootMillis();
         wifiUsabilityStats.stats =
                 new WifiUsabilityStatsEntry[mWifiUsabilityStatsEntriesList.size()];
-        for (int i = 0; i < mWifiUsabilityStatsEntriesList.size(); i++) {
-            wifiUsabilityStats.stats[i] =
-                    createNewWifiUsabilityStatsEntry(mWifiUsabilityStatsEntriesList.get(i));
+        int i = 0;
+        for (WifiUsabilityStatsEntry entry : mWifiUsabilityStatsEntriesList) {
+            wifiUsabilityStats.stats[i++] = createNewWifiUsabilityStatsEntry(entry);
         }
         return wifiUsabilityStats;
     }
@@ -6984,7 +6961,7 @@ public class WifiMetrics {
 
             if (wifiWins != mWifiWinsUsabilityScore) {
                 mWifiWinsUsabilityScore = wifiWins;
-                StaEvent event = new StaEvent();
+                StaEvent event = obtainStaEvent();
                 event.type = StaEvent.TYPE_WIFI_USABILITY_SCORE_BREACH;
                 addStaEvent(ifaceName, event);
                 // Only record the first score breach by checking whether mScoreBreachLowTimeMillis
@@ -7023,7 +7000,7 @@ public class WifiMetrics {
             mLinkProbeSuccessElapsedTimeMsHistogram.increment(elapsedTimeMs);
 
             if (mLinkProbeStaEventCount < MAX_LINK_PROBE_STA_EVENTS) {
-                StaEvent event = new StaEvent();
+                StaEvent event = obtainStaEvent();
                 event.type = StaEvent.TYPE_LINK_PROBE;
                 event.linkProbeWasSuccess = true;
                 event.linkProbeSuccessElapsedTimeMs = elapsedTimeMs;
@@ -7058,7 +7035,7 @@ public class WifiMetrics {
             mLinkProbeFailureReasonCounts.increment(reason);
 
             if (mLinkProbeStaEventCount < MAX_LINK_PROBE_STA_EVENTS) {
-                StaEvent event = new StaEvent();
+                StaEvent event = obtainStaEvent();
                 event.type = StaEvent.TYPE_LINK_PROBE;
                 event.linkProbeWasSuccess = false;
                 event.linkProbeFailureReason = linkProbeFailureReasonToProto(reason);
@@ -7101,6 +7078,21 @@ public class WifiMetrics {
         }
     }
 
+    /**
+     * Update wifi config store serialization duration and size.
+     *
+     * @param timeMs Time it took to serialize the store data, in milliseconds
+     * @param numBytes Number of bytes serialized to be written to the store files
+     */
+    public void noteWifiConfigStoreSerialization(int timeMs, int numBytes) {
+        synchronized (mLock) {
+            MetricsUtils.addValueToLinearHistogram(timeMs,
+                    mWifiConfigStoreSerializationDurationHistogram,
+                    WIFI_CONFIG_STORE_IO_DURATION_BUCKET_RANGES_MS);
+            mWifiConfigStoreSerializedBytes += numBytes;
+        }
+    }
+
     /**
      * Logs the decision of a network selection algorithm when compared against another network
      * selection algorithm.
@@ -8385,6 +8377,16 @@ public class WifiMetrics {
         }
     }
 
+    /**
+     * Increment the number of RSSI polls scheduled with the given interval
+     * @param intervalMillis interval until the next RSSI poll, in milliseconds
+     */
+    public void incrementRssiPollIntervalHistogram(int intervalMillis) {
+        synchronized (mScanHistogramsLock) {
+            mRssiPollIntervalHistogram.increment(intervalMillis);
+        }
+    }
+
     /**
      * Increment number of Passpoint Deauth-Imminent notification scope
      */
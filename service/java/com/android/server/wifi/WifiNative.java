@@ -85,6 +85,14 @@ import java.util.Objects;
 import java.util.Random;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Native calls for bring up/shut down of the supplicant daemon and for
@@ -94,6 +102,10 @@ import java.util.TimeZone;
  */
 public class WifiNative {
     private static final String TAG = "WifiNative";
+    // Scan result conversion workers, in addition to the calling thread.
+    private static final int SCAN_CONVERSION_WORKER_COUNT =
+            Math.min(3, Runtime.getRuntime().availableProcessors() - 1);
+    private static final long SCAN_CONVERSION_WORKER_KEEP_ALIVE_MS = 10_000;
 
     private final SupplicantStaIfaceHal mSupplicantStaIfaceHal;
     private final HostapdHal mHostapdHal;
@@ -115,6 +127,7 @@ public class WifiNative {
     private CountryCodeChangeListenerInternal mCountryCodeChangeListener;
     private boolean mUseFakeScanDetails;
     private final ArrayList<ScanDetail> mFakeScanDetails = new ArrayList<>();
+    private final ExecutorService mScanConversionExecutor = createScanConversionExecutor();
     private long mCachedFeatureSet;
 
     public WifiNative(WifiVendorHal vendorHal,
@@ -1764,8 +1777,104 @@ public class WifiNative {
 
     private ArrayList<ScanDetail> convertNativeScanResults(@NonNull String ifaceName,
             List<NativeScanResult> nativeResults) {
-        ArrayList<ScanDetail> results = new ArrayList<>();
-        for (NativeScanResult result : nativeResults) {
+        int parallelThreshold = mContext.getResources().getInteger(
+                R.integer.config_wifiParallelScanResultConversionThreshold);
+        ArrayList<ScanDetail> results;
+        if (parallelThreshold > 0 && nativeResults.size() >= parallelThreshold
+                && mScanConversionExecutor != null) {
+            results = convertNativeScanResultsInParallel(ifaceName, nativeResults);
+        } else {
+            results = new ArrayList<>(nativeResults.size());
+            convertNativeScanResultsInRange(ifaceName, nativeResults, 0, nativeResults.size(),
+                    results);
+        }
+        if (mVerboseLoggingEnabled) {
+            Log.d(TAG, "get " + results.size() + " scan results from wificond");
+        }
+
+        return results;
+    }
+
+    /**
+     * Convert the scan results in chunks on the scan conversion worker pool. The first chunk is
+     * converted on the calling thread. The order of |nativeResults| is preserved.
+     */
+    private ArrayList<ScanDetail> convertNativeScanResultsInParallel(@NonNull String ifaceName,
+            List<NativeScanResult> nativeResults) {
+        int numResults = nativeResults.size();
+        int numChunks = SCAN_CONVERSION_WORKER_COUNT + 1;
+        int chunkSize = (numResults + numChunks - 1) / numChunks;
+        List<ArrayList<ScanDetail>> chunkResults = new ArrayList<>(numChunks);
+        List<Future<?>> futures = new ArrayList<>(numChunks - 1);
+        for (int start = chunkSize; start < numResults; start += chunkSize) {
+            int chunkStart = start;
+            int chunkEnd = Math.min(numResults, start + chunkSize);
+            ArrayList<ScanDetail> chunk = new ArrayList<>(chunkEnd - chunkStart);
+            chunkResults.add(chunk);
+            futures.add(mScanConversionExecutor.submit(() ->
+                    convertNativeScanResultsInRange(ifaceName, nativeResults, chunkStart,
+                            chunkEnd, chunk)));
+        }
+        ArrayList<ScanDetail> results = new ArrayList<>(numResults);
+        convertNativeScanResultsInRange(ifaceName, nativeResults, 0,
+                Math.min(numResults, chunkSize), results);
+        boolean interrupted = false;
+        for (int i = 0; i < futures.size(); i++) {
+            while (true) {
+                try {
+                    futures.get(i).get();
+                    break;
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    throw new IllegalStateException(e.getCause());
+                } catch (InterruptedException e) {
+                    // The chunk is still being written by the worker, keep waiting for it.
+                    interrupted = true;
+                }
+            }
+            results.addAll(chunkResults.get(i));
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return results;
+    }
+
+    private static ExecutorService createScanConversionExecutor() {
+        if (SCAN_CONVERSION_WORKER_COUNT <= 0) {
+            return null;
+        }
+        // Worker threads are only started on the first parallel conversion.
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(SCAN_CONVERSION_WORKER_COUNT,
+                SCAN_CONVERSION_WORKER_COUNT, SCAN_CONVERSION_WORKER_KEEP_ALIVE_MS,
+                TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                new ThreadFactory() {
+                    private final AtomicInteger mCount = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r,
+                                "WifiScanConversion-" + mCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        // Scans are sparse, do not keep the workers around in between.
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Convert the scan results of |nativeResults| in [start, end) and append them to |results|.
+     * This may be invoked concurrently from different threads and must not modify any state.
+     */
+    private void convertNativeScanResultsInRange(@NonNull String ifaceName,
+            List<NativeScanResult> nativeResults, int start, int end,
+            List<ScanDetail> results) {
+        for (int i = start; i < end; i++) {
+            NativeScanResult result = nativeResults.get(i);
             WifiSsid wifiSsid = WifiSsid.fromBytes(result.getSsid());
             MacAddress bssidMac = result.getBssid();
             if (bssidMac == null) {
@@ -1777,16 +1886,18 @@ public class WifiNative {
                     InformationElementUtil.parseInformationElements(result.getInformationElements());
             InformationElementUtil.Capabilities capabilities =
                     new InformationElementUtil.Capabilities();
-            capabilities.from(ies, result.getCapabilities(), mIsEnhancedOpenSupported,
-                              result.getFrequencyMhz());
-            String flags = capabilities.generateCapabilitiesString();
+            capabilities.init(result.getCapabilities(), mIsEnhancedOpenSupported,
+                    result.getFrequencyMhz());
             NetworkDetail networkDetail;
             try {
-                networkDetail = new NetworkDetail(bssid, ies, null, result.getFrequencyMhz());
+                // Capabilities are built in the same traversal of the IEs as the NetworkDetail.
+                networkDetail = new NetworkDetail(bssid, ies, null, result.getFrequencyMhz(),
+                        NetworkDetail.DECODE_ALL, capabilities);
             } catch (IllegalArgumentException e) {
                 Log.e(TAG, "Illegal argument for scan result with bssid: " + bssid, e);
                 continue;
             }
+            String flags = capabilities.generateCapabilitiesString();
 
             ScanDetail scanDetail = new ScanDetail(networkDetail, wifiSsid, bssid, flags,
                     result.getSignalMbm() / 100, result.getFrequencyMhz(), result.getTsf(), ies,
@@ -1813,11 +1924,6 @@ public class WifiNative {
 
             results.add(scanDetail);
         }
-        if (mVerboseLoggingEnabled) {
-            Log.d(TAG, "get " + results.size() + " scan results from wificond");
-        }
-
-        return results;
     }
 
     @WifiAnnotations.WifiStandard
@@ -3313,6 +3419,16 @@ public class WifiNative {
         return mWifiVendorHal.getWifiLinkLayerStats(ifaceName);
     }
 
+    /**
+     * Gets the latest link layer stats, filling the given stats instead of allocating new ones.
+     * @param ifaceName Name of the interface.
+     * @param reuse stats to reset and fill, or null to allocate new stats.
+     */
+    public WifiLinkLayerStats getWifiLinkLayerStats(@NonNull String ifaceName,
+            @Nullable WifiLinkLayerStats reuse) {
+        return mWifiVendorHal.getWifiLinkLayerStats(ifaceName, reuse);
+    }
+
     /**
      * Gets the usable channels
      * @param band one of the {@code WifiScanner#WIFI_BAND_*} constants.
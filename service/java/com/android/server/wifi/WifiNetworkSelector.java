@@ -33,6 +33,7 @@ import android.net.wifi.WifiConfiguration;
 import android.net.wifi.WifiInfo;
 import android.net.wifi.WifiSsid;
 import android.net.wifi.util.ScanResultUtil;
+import android.os.Handler;
 import android.telephony.TelephonyManager;
 import android.text.TextUtils;
 import android.util.ArrayMap;
@@ -54,6 +55,7 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -107,7 +109,8 @@ public class WifiNetworkSelector {
     // WifiConfiguration (if any).
     private final List<Pair<ScanDetail, WifiConfiguration>> mConnectableNetworks =
             new ArrayList<>();
-    private List<ScanDetail> mFilteredNetworks = new ArrayList<>();
+    // Immutable, shared with the nominators.
+    private List<ScanDetail> mFilteredNetworks = Collections.emptyList();
     private final WifiScoreCard mWifiScoreCard;
     private final ScoringParams mScoringParams;
     private final WifiInjector mWifiInjector;
@@ -117,6 +120,8 @@ public class WifiNetworkSelector {
     private final ScanRequestProxy mScanRequestProxy;
 
     private final Map<String, WifiCandidates.CandidateScorer> mCandidateScorers = new ArrayMap<>();
+    // Runs the experimental CandidateScorers after the network selection, created on first use.
+    private Handler mShadowScoringHandler;
     private boolean mIsEnhancedOpenSupportedInitialized = false;
     private boolean mIsEnhancedOpenSupported;
 
@@ -412,18 +417,75 @@ public class WifiNetworkSelector {
         return (scanResult.level < mScoringParams.getEntryRssi(scanResult.frequency));
     }
 
+    /**
+     * Stage of the scan result filter pipeline run by {@link #filterScanResults}. The scan
+     * results filtered out by the stage are only recorded for logging in verbose mode.
+     */
+    private static class ScanResultFilter {
+        interface Condition {
+            /** Returns true if the scan result should be filtered out. */
+            boolean shouldFilter(ScanDetail scanDetail, ScanResult scanResult);
+        }
+
+        interface Describer {
+            /** Appends a description of the filtered out scan result to |sb|. */
+            void describe(StringBuilder sb, ScanDetail scanDetail);
+        }
+
+        private final String mReason;
+        private final Condition mCondition;
+        private final Describer mDescriber;
+        // Only allocated in verbose mode.
+        @Nullable private final StringBuilder mFilteredScanResults;
+        private int mNumFiltered;
+
+        ScanResultFilter(String reason, Condition condition, boolean verbose) {
+            this(reason, condition,
+                    (sb, scanDetail) -> sb.append(toScanId(scanDetail.getScanResult())), verbose);
+        }
+
+        ScanResultFilter(String reason, Condition condition, Describer describer,
+                boolean verbose) {
+            mReason = reason;
+            mCondition = condition;
+            mDescriber = describer;
+            mFilteredScanResults = verbose ? new StringBuilder() : null;
+        }
+
+        /** Returns true and records the scan result if it is filtered out by this stage. */
+        boolean filter(ScanDetail scanDetail, ScanResult scanResult) {
+            if (!mCondition.shouldFilter(scanDetail, scanResult)) {
+                return false;
+            }
+            mNumFiltered++;
+            if (mFilteredScanResults != null) {
+                mDescriber.describe(mFilteredScanResults, scanDetail);
+                mFilteredScanResults.append(" / ");
+            }
+            return true;
+        }
+
+        int getNumFiltered() {
+            return mNumFiltered;
+        }
+
+        /** Returns the log of the filtered out scan results, or null if there is none. */
+        @Nullable String getLog() {
+            if (mFilteredScanResults == null || mFilteredScanResults.length() == 0) {
+                return null;
+            }
+            return "Networks filtered out due to " + mReason + ": " + mFilteredScanResults;
+        }
+    }
+
     @SuppressLint("NewApi")
     private List<ScanDetail> filterScanResults(List<ScanDetail> scanDetails,
             Set<String> bssidBlocklist, List<ClientModeManagerState> cmmStates) {
-        List<ScanDetail> validScanDetails = new ArrayList<>();
-        StringBuffer noValidSsid = new StringBuffer();
-        StringBuffer blockedBssid = new StringBuffer();
-        StringBuffer lowRssi = new StringBuffer();
-        StringBuffer mboAssociationDisallowedBssid = new StringBuffer();
-        StringBuffer adminRestrictedSsid = new StringBuffer();
-        List<String> currentBssids = cmmStates.stream()
-                .map(cmmState -> cmmState.wifiInfo.getBSSID())
-                .collect(Collectors.toList());
+        List<ScanDetail> validScanDetails = new ArrayList<>(scanDetails.size());
+        Set<String> currentBssids = new ArraySet<>(cmmStates.size());
+        for (ClientModeManagerState cmmState : cmmStates) {
+            currentBssids.add(cmmState.wifiInfo.getBSSID());
+        }
         Set<String> scanResultPresentForCurrentBssids = new ArraySet<>();
 
         int adminMinimumSecurityLevel = 0;
@@ -431,8 +493,6 @@ public class WifiNetworkSelector {
         Set<WifiSsid> adminSsidAllowlist = new ArraySet<>();
         Set<WifiSsid> admindSsidDenylist = new ArraySet<>();
 
-        int numBssidFiltered = 0;
-
         DevicePolicyManager devicePolicyManager =
                 WifiPermissionsUtil.retrieveDevicePolicyManagerFromContext(mContext);
 
@@ -450,11 +510,64 @@ public class WifiNetworkSelector {
             }
         }
 
+        // Scan results with an invalid SSID are filtered out before the current BSSIDs are
+        // accepted, all the other filters only apply to the non current BSSIDs.
+        ScanResultFilter invalidSsidFilter = new ScanResultFilter("invalid SSID",
+                (scanDetail, scanResult) -> TextUtils.isEmpty(scanResult.SSID),
+                (sb, scanDetail) -> sb.append(scanDetail.getScanResult().BSSID),
+                mVerboseLoggingEnabled);
+        ScanResultFilter blocklistFilter = new ScanResultFilter("blocklist",
+                (scanDetail, scanResult) -> bssidBlocklist.contains(scanResult.BSSID),
+                mVerboseLoggingEnabled);
+        List<ScanResultFilter> filters = new ArrayList<>();
+        filters.add(blocklistFilter);
+        // Skip network with too weak signals.
+        filters.add(new ScanResultFilter("low signal strength",
+                (scanDetail, scanResult) -> isSignalTooWeak(scanResult),
+                (sb, scanDetail) -> {
+                    ScanResult scanResult = scanDetail.getScanResult();
+                    sb.append(toScanId(scanResult));
+                    if (scanResult.is24GHz()) {
+                        sb.append("(2.4GHz)");
+                    } else if (scanResult.is5GHz()) {
+                        sb.append("(5GHz)");
+                    } else if (scanResult.is6GHz()) {
+                        sb.append("(6GHz)");
+                    }
+                    sb.append(scanResult.level);
+                }, mVerboseLoggingEnabled));
+        // Skip BSS which is not accepting new connections.
+        filters.add(new ScanResultFilter("mbo association disallowed indication",
+                (scanDetail, scanResult) -> {
+                    NetworkDetail networkDetail = scanDetail.getNetworkDetail();
+                    if (networkDetail == null
+                            || networkDetail.getMboAssociationDisallowedReasonCode()
+                            == MboOceConstants.MBO_OCE_ATTRIBUTE_NOT_PRESENT) {
+                        return false;
+                    }
+                    mWifiMetrics
+                            .incrementNetworkSelectionFilteredBssidCountDueToMboAssocDisallowInd();
+                    return true;
+                },
+                (sb, scanDetail) -> sb.append(toScanId(scanDetail.getScanResult())).append("(")
+                        .append(scanDetail.getNetworkDetail()
+                                .getMboAssociationDisallowedReasonCode()).append(")"),
+                mVerboseLoggingEnabled));
+        // The admin restrictions are only checked when set.
+        if (adminSsidRestrictionSet || adminMinimumSecurityLevel != 0) {
+            final Set<WifiSsid> allowlist = adminSsidAllowlist;
+            final Set<WifiSsid> denylist = admindSsidDenylist;
+            final int minimumSecurityLevel = adminMinimumSecurityLevel;
+            filters.add(new ScanResultFilter("admin restrictions",
+                    (scanDetail, scanResult) -> !isAllowedByAdminSsidPolicy(scanResult,
+                            allowlist, denylist)
+                            || !meetsAdminMinimumSecurityLevel(scanResult, minimumSecurityLevel),
+                    mVerboseLoggingEnabled));
+        }
+
         for (ScanDetail scanDetail : scanDetails) {
             ScanResult scanResult = scanDetail.getScanResult();
-
-            if (TextUtils.isEmpty(scanResult.SSID)) {
-                noValidSsid.append(scanResult.BSSID).append(" / ");
+            if (invalidSsidFilter.filter(scanDetail, scanResult)) {
                 continue;
             }
 
@@ -465,83 +578,16 @@ public class WifiNetworkSelector {
                 continue;
             }
 
-            final String scanId = toScanId(scanResult);
-
-            if (bssidBlocklist.contains(scanResult.BSSID)) {
-                blockedBssid.append(scanId).append(" / ");
-                numBssidFiltered++;
-                continue;
-            }
-
-            // Skip network with too weak signals.
-            if (isSignalTooWeak(scanResult)) {
-                lowRssi.append(scanId);
-                if (scanResult.is24GHz()) {
-                    lowRssi.append("(2.4GHz)");
-                } else if (scanResult.is5GHz()) {
-                    lowRssi.append("(5GHz)");
-                } else if (scanResult.is6GHz()) {
-                    lowRssi.append("(6GHz)");
-                }
-                lowRssi.append(scanResult.level).append(" / ");
-                continue;
-            }
-
-            // Skip BSS which is not accepting new connections.
-            NetworkDetail networkDetail = scanDetail.getNetworkDetail();
-            if (networkDetail != null) {
-                if (networkDetail.getMboAssociationDisallowedReasonCode()
-                        != MboOceConstants.MBO_OCE_ATTRIBUTE_NOT_PRESENT) {
-                    mWifiMetrics
-                            .incrementNetworkSelectionFilteredBssidCountDueToMboAssocDisallowInd();
-                    mboAssociationDisallowedBssid.append(scanId).append("(")
-                            .append(networkDetail.getMboAssociationDisallowedReasonCode())
-                            .append(")").append(" / ");
-                    continue;
-                }
-            }
-
-            // Skip network that does not meet the admin set SSID restriction
-            if (adminSsidRestrictionSet) {
-                WifiSsid ssid = scanResult.getWifiSsid();
-                // Allowlist policy set but network is not present in the list
-                if (!adminSsidAllowlist.isEmpty() && !adminSsidAllowlist.contains(ssid)) {
-                    adminRestrictedSsid.append(scanId).append(" / ");
-                    continue;
-                }
-                // Denylist policy set but network is present in the list
-                if (!admindSsidDenylist.isEmpty() && admindSsidDenylist.contains(ssid)) {
-                    adminRestrictedSsid.append(scanId).append(" / ");
-                    continue;
-                }
+            boolean filtered = false;
+            for (int i = 0; i < filters.size() && !filtered; i++) {
+                filtered = filters.get(i).filter(scanDetail, scanResult);
             }
-
-            // Skip network that does not meet the admin set minimum security level restriction
-            if (adminMinimumSecurityLevel != 0) {
-                boolean securityRestrictionPassed = false;
-                @WifiInfo.SecurityType int[] securityTypes = scanResult.getSecurityTypes();
-                for (int type : securityTypes) {
-                    int securityLevel = WifiInfo.convertSecurityTypeToDpmWifiSecurity(type);
-
-                    // Skip unknown security type since security level cannot be determined.
-                    // If all the security types are unknown when the minimum security level
-                    // restriction is set, the scan result is ignored.
-                    if (securityLevel == WifiInfo.DPM_SECURITY_TYPE_UNKNOWN) continue;
-
-                    if (adminMinimumSecurityLevel <= securityLevel) {
-                        securityRestrictionPassed = true;
-                        break;
-                    }
-                }
-                if (!securityRestrictionPassed) {
-                    adminRestrictedSsid.append(scanId).append(" / ");
-                    continue;
-                }
+            if (!filtered) {
+                validScanDetails.add(scanDetail);
             }
-
-            validScanDetails.add(scanDetail);
         }
-        mWifiMetrics.incrementNetworkSelectionFilteredBssidCount(numBssidFiltered);
+        mWifiMetrics.incrementNetworkSelectionFilteredBssidCount(
+                blocklistFilter.getNumFiltered());
 
         // WNS listens to all single scan results. Some scan requests may not include
         // the channel of the currently connected network, so the currently connected
@@ -559,28 +605,51 @@ public class WifiNetworkSelector {
             }
         }
 
-        if (noValidSsid.length() != 0) {
-            localLog("Networks filtered out due to invalid SSID: " + noValidSsid);
+        String log = invalidSsidFilter.getLog();
+        if (log != null) {
+            localLog(log);
         }
-
-        if (blockedBssid.length() != 0) {
-            localLog("Networks filtered out due to blocklist: " + blockedBssid);
+        for (ScanResultFilter filter : filters) {
+            log = filter.getLog();
+            if (log != null) {
+                localLog(log);
+            }
         }
 
-        if (lowRssi.length() != 0) {
-            localLog("Networks filtered out due to low signal strength: " + lowRssi);
-        }
+        return validScanDetails;
+    }
 
-        if (mboAssociationDisallowedBssid.length() != 0) {
-            localLog("Networks filtered out due to mbo association disallowed indication: "
-                    + mboAssociationDisallowedBssid);
+    private static boolean isAllowedByAdminSsidPolicy(ScanResult scanResult,
+            Set<WifiSsid> allowlist, Set<WifiSsid> denylist) {
+        WifiSsid ssid = scanResult.getWifiSsid();
+        // Allowlist policy set but network is not present in the list
+        if (!allowlist.isEmpty() && !allowlist.contains(ssid)) {
+            return false;
         }
+        // Denylist policy set but network is present in the list
+        return denylist.isEmpty() || !denylist.contains(ssid);
+    }
 
-        if (adminRestrictedSsid.length() != 0) {
-            localLog("Networks filtered out due to admin restrictions: " + adminRestrictedSsid);
+    @SuppressLint("NewApi")
+    private static boolean meetsAdminMinimumSecurityLevel(ScanResult scanResult,
+            int minimumSecurityLevel) {
+        if (minimumSecurityLevel == 0) {
+            return true;
         }
+        @WifiInfo.SecurityType int[] securityTypes = scanResult.getSecurityTypes();
+        for (int type : securityTypes) {
+            int securityLevel = WifiInfo.convertSecurityTypeToDpmWifiSecurity(type);
 
-        return validScanDetails;
+            // Skip unknown security type since security level cannot be determined.
+            // If all the security types are unknown when the minimum security level
+            // restriction is set, the scan result is ignored.
+            if (securityLevel == WifiInfo.DPM_SECURITY_TYPE_UNKNOWN) continue;
+
+            if (minimumSecurityLevel <= securityLevel) {
+                return true;
+            }
+        }
+        return false;
     }
 
     private ScanDetail findScanDetailForBssid(List<ScanDetail> scanDetails,
@@ -912,7 +981,7 @@ public class WifiNetworkSelector {
             @NonNull List<ClientModeManagerState> cmmStates, boolean untrustedNetworkAllowed,
             boolean oemPaidNetworkAllowed, boolean oemPrivateNetworkAllowed,
             Set<Integer> restrictedNetworkAllowedUids, boolean multiInternetNetworkAllowed) {
-        mFilteredNetworks.clear();
+        mFilteredNetworks = Collections.emptyList();
         mConnectableNetworks.clear();
         if (scanDetails.size() == 0) {
             localLog("Empty connectivity scan result");
@@ -933,7 +1002,8 @@ public class WifiNetworkSelector {
         }
 
         // Filter out unwanted networks.
-        mFilteredNetworks = filterScanResults(scanDetails, bssidBlocklist, cmmStates);
+        mFilteredNetworks = Collections.unmodifiableList(
+                filterScanResults(scanDetails, bssidBlocklist, cmmStates));
         if (mFilteredNetworks.size() == 0) {
             return null;
         }
@@ -981,7 +1051,7 @@ public class WifiNetworkSelector {
         for (NetworkNominator registeredNominator : mNominators) {
             localLog("About to run " + registeredNominator.getName() + " :");
             registeredNominator.nominateNetworks(
-                    new ArrayList<>(mFilteredNetworks),
+                    mFilteredNetworks,
                     untrustedNetworkAllowed, oemPaidNetworkAllowed, oemPrivateNetworkAllowed,
                     restrictedNetworkAllowedUids, (scanDetail, config) -> {
                         WifiCandidates.Key key = wifiCandidates.keyFromScanDetailAndConfig(
@@ -1237,47 +1307,31 @@ public class WifiNetworkSelector {
             }
         }
 
-        ArrayMap<Integer, Integer> experimentNetworkSelections = new ArrayMap<>(); // for metrics
-
         int selectedNetworkId = WifiConfiguration.INVALID_NETWORK_ID;
-
-        // Run all the CandidateScorers
         boolean legacyOverrideWanted = true;
-        for (WifiCandidates.CandidateScorer candidateScorer : mCandidateScorers.values()) {
-            WifiCandidates.ScoredCandidate choice;
-            try {
-                choice = wifiCandidates.choose(candidateScorer);
-            } catch (RuntimeException e) {
-                Log.wtf(TAG, "Exception running a CandidateScorer", e);
-                continue;
-            }
-            int networkId = choice.candidateKey == null
-                    ? WifiConfiguration.INVALID_NETWORK_ID
-                    : choice.candidateKey.networkId;
-            String chooses = " would choose ";
-            if (candidateScorer == activeScorer) {
-                chooses = " chooses ";
-                legacyOverrideWanted = choice.userConnectChoiceOverride;
-                selectedNetworkId = networkId;
-                updateChosenPasspointNetwork(choice);
-            }
-            String id = candidateScorer.getIdentifier();
-            int expid = experimentIdFromIdentifier(id);
-            localLog(id + chooses + networkId
-                    + " score " + choice.value + "+/-" + choice.err
-                    + " expid " + expid);
-            experimentNetworkSelections.put(expid, networkId);
-        }
 
-        // Update metrics about differences in the selections made by various methods
-        final int activeExperimentId = experimentIdFromIdentifier(activeScorer.getIdentifier());
-        for (Map.Entry<Integer, Integer> entry :
-                experimentNetworkSelections.entrySet()) {
-            int experimentId = entry.getKey();
-            if (experimentId == activeExperimentId) continue;
-            int thisSelectedNetworkId = entry.getValue();
-            mWifiMetrics.logNetworkSelectionDecision(experimentId, activeExperimentId,
-                    selectedNetworkId == thisSelectedNetworkId,
+        // Run the active CandidateScorer, its choice is the selected network
+        WifiCandidates.ScoredCandidate activeChoice =
+                runCandidateScorer(wifiCandidates, activeScorer, true);
+        if (activeChoice != null) {
+            legacyOverrideWanted = activeChoice.userConnectChoiceOverride;
+            selectedNetworkId = getNetworkIdFromChoice(activeChoice);
+            updateChosenPasspointNetwork(activeChoice);
+        }
+
+        // Run the other CandidateScorers, only used for metrics
+        if (mContext.getResources().getBoolean(
+                R.bool.config_wifiNetworkSelectionAsyncShadowScoringEnabled)) {
+            // The candidates are immutable, the snapshot only protects against changes to the
+            // provided list.
+            WifiCandidates candidatesSnapshot = new WifiCandidates(mWifiScoreCard, mContext,
+                    new ArrayList<>(candidates));
+            final int finalSelectedNetworkId = selectedNetworkId;
+            final int numGroups = groupedCandidates.size();
+            getShadowScoringHandler().post(() -> runShadowCandidateScorers(candidatesSnapshot,
+                    activeScorer, finalSelectedNetworkId, numGroups));
+        } else {
+            runShadowCandidateScorers(wifiCandidates, activeScorer, selectedNetworkId,
                     groupedCandidates.size());
         }
 
@@ -1293,6 +1347,72 @@ public class WifiNetworkSelector {
         return selectedNetwork;
     }
 
+    private static int getNetworkIdFromChoice(@NonNull WifiCandidates.ScoredCandidate choice) {
+        return choice.candidateKey == null
+                ? WifiConfiguration.INVALID_NETWORK_ID
+                : choice.candidateKey.networkId;
+    }
+
+    /**
+     * Runs a CandidateScorer over the candidates and logs its choice.
+     *
+     * @return the choice of the scorer, or null if the scorer failed.
+     */
+    @Nullable
+    private WifiCandidates.ScoredCandidate runCandidateScorer(
+            @NonNull WifiCandidates wifiCandidates,
+            @NonNull WifiCandidates.CandidateScorer candidateScorer, boolean isActive) {
+        WifiCandidates.ScoredCandidate choice;
+        try {
+            choice = wifiCandidates.choose(candidateScorer);
+        } catch (RuntimeException e) {
+            Log.wtf(TAG, "Exception running a CandidateScorer", e);
+            return null;
+        }
+        String id = candidateScorer.getIdentifier();
+        localLog(id + (isActive ? " chooses " : " would choose ") + getNetworkIdFromChoice(choice)
+                + " score " + choice.value + "+/-" + choice.err
+                + " expid " + experimentIdFromIdentifier(id));
+        return choice;
+    }
+
+    /**
+     * Runs all the CandidateScorers other than the active one, and updates the metrics about
+     * the differences between their selections and the one made by the active scorer.
+     */
+    private void runShadowCandidateScorers(@NonNull WifiCandidates wifiCandidates,
+            @NonNull WifiCandidates.CandidateScorer activeScorer, int selectedNetworkId,
+            int numGroups) {
+        ArrayMap<Integer, Integer> experimentNetworkSelections = new ArrayMap<>();
+        for (WifiCandidates.CandidateScorer candidateScorer : mCandidateScorers.values()) {
+            if (candidateScorer == activeScorer) continue;
+            WifiCandidates.ScoredCandidate choice =
+                    runCandidateScorer(wifiCandidates, candidateScorer, false);
+            if (choice == null) continue;
+            experimentNetworkSelections.put(
+                    experimentIdFromIdentifier(candidateScorer.getIdentifier()),
+                    getNetworkIdFromChoice(choice));
+        }
+
+        // Update metrics about differences in the selections made by various methods
+        final int activeExperimentId = experimentIdFromIdentifier(activeScorer.getIdentifier());
+        for (Map.Entry<Integer, Integer> entry :
+                experimentNetworkSelections.entrySet()) {
+            int experimentId = entry.getKey();
+            if (experimentId == activeExperimentId) continue;
+            int thisSelectedNetworkId = entry.getValue();
+            mWifiMetrics.logNetworkSelectionDecision(experimentId, activeExperimentId,
+                    selectedNetworkId == thisSelectedNetworkId, numGroups);
+        }
+    }
+
+    private Handler getShadowScoringHandler() {
+        if (mShadowScoringHandler == null) {
+            mShadowScoringHandler = new Handler(mWifiInjector.getWifiHandlerThread().getLooper());
+        }
+        return mShadowScoringHandler;
+    }
+
     /**
      * Returns the ScanDetail given the candidate key, using the saved list of connectible networks.
      */
@@ -46,6 +46,7 @@ import android.net.wifi.WifiEnterpriseConfig;
 import android.net.wifi.WifiManager;
 import android.net.wifi.WifiNetworkSuggestion;
 import android.net.wifi.WifiScanner;
+import android.net.wifi.WifiSsid;
 import android.net.wifi.hotspot2.PasspointConfiguration;
 import android.os.Handler;
 import android.os.Process;
@@ -74,6 +75,7 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -422,6 +424,16 @@ public class WifiNetworkSuggestionsManager {
      */
     private final Map<Pair<ScanResultMatchInfo, MacAddress>, Set<ExtendedWifiNetworkSuggestion>>
             mActiveScanResultMatchInfoWithBssid = new HashMap<>();
+    /**
+     * Number of keys of {@link #mActiveScanResultMatchInfoWithNoBssid} and
+     * {@link #mActiveScanResultMatchInfoWithBssid} per SSID.
+     * Note:
+     * <li>This is used to skip the lookup of scan results which cannot match any network
+     * suggestion. It is keyed by {@link WifiSsid} rather than by
+     * {@link ScanResultMatchInfo#networkSsid}, so that the SSID of a scan result can be looked
+     * up without converting it to a string.</li>
+     */
+    private final Map<WifiSsid, Integer> mActiveScanResultMatchInfoSsids = new HashMap<>();
 
     private final Map<String, Set<ExtendedWifiNetworkSuggestion>>
             mPasspointInfo = new HashMap<>();
@@ -562,6 +574,7 @@ public class WifiNetworkSuggestionsManager {
             mActiveNetworkSuggestionsPerApp.clear();
             mActiveScanResultMatchInfoWithBssid.clear();
             mActiveScanResultMatchInfoWithNoBssid.clear();
+            mActiveScanResultMatchInfoSsids.clear();
             mPasspointInfo.clear();
         }
 
@@ -726,6 +739,7 @@ public class WifiNetworkSuggestionsManager {
                 extNetworkSuggestionsForScanResultMatchInfo = new HashSet<>();
                 mActiveScanResultMatchInfoWithBssid.put(
                         lookupPair, extNetworkSuggestionsForScanResultMatchInfo);
+                addToScanResultMatchInfoSsids(scanResultMatchInfo.networkSsid);
             }
         } else {
             extNetworkSuggestionsForScanResultMatchInfo =
@@ -734,6 +748,7 @@ public class WifiNetworkSuggestionsManager {
                 extNetworkSuggestionsForScanResultMatchInfo = new HashSet<>();
                 mActiveScanResultMatchInfoWithNoBssid.put(
                         scanResultMatchInfo, extNetworkSuggestionsForScanResultMatchInfo);
+                addToScanResultMatchInfoSsids(scanResultMatchInfo.networkSsid);
             }
         }
         extNetworkSuggestionsForScanResultMatchInfo.remove(extNetworkSuggestion);
@@ -763,6 +778,7 @@ public class WifiNetworkSuggestionsManager {
             // Remove the set from map if empty.
             if (extNetworkSuggestionsForScanResultMatchInfo.isEmpty()) {
                 mActiveScanResultMatchInfoWithBssid.remove(lookupPair);
+                removeFromScanResultMatchInfoSsids(scanResultMatchInfo.networkSsid);
                 if (!mActiveScanResultMatchInfoWithNoBssid.containsKey(scanResultMatchInfo)) {
                     if (removeScoreCard) {
                         removeNetworkFromScoreCard(extNetworkSuggestion.wns.wifiConfiguration);
@@ -784,6 +800,7 @@ public class WifiNetworkSuggestionsManager {
             // Remove the set from map if empty.
             if (extNetworkSuggestionsForScanResultMatchInfo.isEmpty()) {
                 mActiveScanResultMatchInfoWithNoBssid.remove(scanResultMatchInfo);
+                removeFromScanResultMatchInfoSsids(scanResultMatchInfo.networkSsid);
                 if (removeScoreCard) {
                     removeNetworkFromScoreCard(extNetworkSuggestion.wns.wifiConfiguration);
                 }
@@ -793,6 +810,33 @@ public class WifiNetworkSuggestionsManager {
         }
     }
 
+    private void addToScanResultMatchInfoSsids(String networkSsid) {
+        WifiSsid wifiSsid = toWifiSsid(networkSsid);
+        if (wifiSsid != null) {
+            mActiveScanResultMatchInfoSsids.merge(wifiSsid, 1, Integer::sum);
+        }
+    }
+
+    private void removeFromScanResultMatchInfoSsids(String networkSsid) {
+        WifiSsid wifiSsid = toWifiSsid(networkSsid);
+        if (wifiSsid != null) {
+            mActiveScanResultMatchInfoSsids.computeIfPresent(wifiSsid,
+                    (ssid, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    /**
+     * Convert a {@link ScanResultMatchInfo#networkSsid} to a {@link WifiSsid}, or return null if
+     * it is malformed, in which case it cannot match the SSID of any scan result.
+     */
+    private static @Nullable WifiSsid toWifiSsid(String networkSsid) {
+        try {
+            return WifiSsid.fromString(networkSsid);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
     private void removeNetworkFromScoreCard(WifiConfiguration wifiConfiguration) {
         WifiConfiguration existing =
                 mWifiConfigManager.getConfiguredNetwork(wifiConfiguration.getProfileKey());
@@ -1768,6 +1812,9 @@ public class WifiNetworkSuggestionsManager {
 
     /**
      * Returns a set of all network suggestions matching the provided scan detail.
+     * Only the negative lookup is short-circuited: a scan result whose SSID isn't suggested
+     * returns without any allocation, while the approval, carrier and IMSI protection checks
+     * still run on every matching suggestion.
      */
     public @NonNull Set<ExtendedWifiNetworkSuggestion> getNetworkSuggestionsForScanDetail(
             @NonNull ScanDetail scanDetail) {
@@ -1776,19 +1823,61 @@ public class WifiNetworkSuggestionsManager {
             Log.e(TAG, "No scan result found in scan detail");
             return Set.of();
         }
-        Set<ExtendedWifiNetworkSuggestion> extNetworkSuggestions = null;
+        // Most scan results do not match any suggestion, skip them before allocating a
+        // ScanResultMatchInfo. Like ScanResultMatchInfo, fall back to the SSID string if the
+        // WifiSsid isn't set.
+        WifiSsid wifiSsid = scanResult.getWifiSsid();
+        if (wifiSsid == null) {
+            wifiSsid = WifiSsid.fromUtf8Text(scanResult.SSID);
+        }
+        if (!mActiveScanResultMatchInfoSsids.containsKey(wifiSsid)) {
+            return Set.of();
+        }
+        Set<ExtendedWifiNetworkSuggestion> extNetworkSuggestionsWithBssid = null;
+        Set<ExtendedWifiNetworkSuggestion> extNetworkSuggestionsWithNoBssid = null;
         try {
             ScanResultMatchInfo scanResultMatchInfo =
                     ScanResultMatchInfo.fromScanResult(scanResult);
-            extNetworkSuggestions = getNetworkSuggestionsForScanResultMatchInfo(
-                    scanResultMatchInfo,  MacAddress.fromString(scanResult.BSSID));
+            MacAddress bssid = MacAddress.fromString(scanResult.BSSID);
+            if (!mActiveScanResultMatchInfoWithBssid.isEmpty()) {
+                extNetworkSuggestionsWithBssid = mActiveScanResultMatchInfoWithBssid.get(
+                        Pair.create(scanResultMatchInfo, bssid));
+            }
+            extNetworkSuggestionsWithNoBssid =
+                    mActiveScanResultMatchInfoWithNoBssid.get(scanResultMatchInfo);
         } catch (IllegalArgumentException e) {
             Log.e(TAG, "Failed to lookup network from scan result match info map", e);
         }
-        if (extNetworkSuggestions == null) {
+        // A suggestion is either in the map with BSSID or in the one with no BSSID, so both sets
+        // are disjoint.
+        Set<ExtendedWifiNetworkSuggestion> approvedExtNetworkSuggestions =
+                addApprovedNetworkSuggestions(extNetworkSuggestionsWithBssid, null);
+        approvedExtNetworkSuggestions = addApprovedNetworkSuggestions(
+                extNetworkSuggestionsWithNoBssid, approvedExtNetworkSuggestions);
+
+        if (approvedExtNetworkSuggestions == null) {
             return Set.of();
         }
-        Set<ExtendedWifiNetworkSuggestion> approvedExtNetworkSuggestions = new HashSet<>();
+        if (mVerboseLoggingEnabled) {
+            Log.v(TAG, "getNetworkSuggestionsForScanDetail Found "
+                    + approvedExtNetworkSuggestions + " for " + scanResult.SSID
+                    + "[" + scanResult.capabilities + "]");
+        }
+        return approvedExtNetworkSuggestions;
+    }
+
+    /**
+     * Add the suggestions which are allowed to be used for network selection to the provided set,
+     * and send the approval notifications needed for the others.
+     *
+     * @return the provided set, or a new set if it was null and there is an approved suggestion.
+     */
+    private @Nullable Set<ExtendedWifiNetworkSuggestion> addApprovedNetworkSuggestions(
+            @Nullable Set<ExtendedWifiNetworkSuggestion> extNetworkSuggestions,
+            @Nullable Set<ExtendedWifiNetworkSuggestion> approvedExtNetworkSuggestions) {
+        if (extNetworkSuggestions == null) {
+            return approvedExtNetworkSuggestions;
+        }
         for (ExtendedWifiNetworkSuggestion ewns : extNetworkSuggestions) {
             if (!ewns.perAppInfo.isApproved()) {
                 sendUserApprovalNotificationIfNotApproved(ewns.perAppInfo.packageName,
@@ -1803,17 +1892,11 @@ public class WifiNetworkSuggestionsManager {
                 mWifiCarrierInfoManager.sendImsiProtectionExemptionNotificationIfRequired(
                         getCarrierIdFromSuggestion(ewns));
             }
+            if (approvedExtNetworkSuggestions == null) {
+                approvedExtNetworkSuggestions = new HashSet<>();
+            }
             approvedExtNetworkSuggestions.add(ewns);
         }
-
-        if (approvedExtNetworkSuggestions.isEmpty()) {
-            return Set.of();
-        }
-        if (mVerboseLoggingEnabled) {
-            Log.v(TAG, "getNetworkSuggestionsForScanDetail Found "
-                    + approvedExtNetworkSuggestions + " for " + scanResult.SSID
-                    + "[" + scanResult.capabilities + "]");
-        }
         return approvedExtNetworkSuggestions;
     }
 
@@ -2446,17 +2529,77 @@ public class WifiNetworkSuggestionsManager {
                 || scanResults == null || scanResults.isEmpty()) {
             return filteredScanResults;
         }
+        List<PasspointConfiguration> passpointConfigurations = new ArrayList<>();
+        // Non Passpoint suggestions are joined against the scan results indexed by their SSID,
+        // the index is only built if there is any such suggestion.
+        Map<String, List<Pair<ScanResultMatchInfo, ScanResult>>> scanResultsBySsid = null;
         for (WifiNetworkSuggestion suggestion : wifiNetworkSuggestions) {
             if (suggestion == null || suggestion.wifiConfiguration == null) {
                 continue;
             }
-            filteredScanResults.put(suggestion,
-                    getMatchingScanResultsForSuggestion(suggestion, scanResults));
+            if (suggestion.passpointConfiguration != null) {
+                passpointConfigurations.add(suggestion.passpointConfiguration);
+                continue;
+            }
+            ScanResultMatchInfo matchInfoFromConfiguration =
+                    ScanResultMatchInfo.fromWifiConfiguration(suggestion.wifiConfiguration);
+            if (matchInfoFromConfiguration == null) {
+                filteredScanResults.put(suggestion, new ArrayList<>());
+                continue;
+            }
+            if (scanResultsBySsid == null) {
+                scanResultsBySsid = indexScanResultsBySsid(scanResults);
+            }
+            List<ScanResult> matchingScanResults = new ArrayList<>();
+            for (Pair<ScanResultMatchInfo, ScanResult> entry : scanResultsBySsid.getOrDefault(
+                    matchInfoFromConfiguration.networkSsid, Collections.emptyList())) {
+                if (matchInfoFromConfiguration.equals(entry.first)) {
+                    matchingScanResults.add(entry.second);
+                }
+            }
+            filteredScanResults.put(suggestion, matchingScanResults);
+        }
+        if (passpointConfigurations.isEmpty()) {
+            return filteredScanResults;
         }
 
+        Map<PasspointConfiguration, List<ScanResult>> passpointScanResults =
+                mWifiInjector.getPasspointManager().getMatchingScanResults(
+                        passpointConfigurations, scanResults);
+        for (WifiNetworkSuggestion suggestion : wifiNetworkSuggestions) {
+            if (suggestion == null || suggestion.wifiConfiguration == null
+                    || suggestion.passpointConfiguration == null) {
+                continue;
+            }
+            filteredScanResults.put(suggestion, new ArrayList<>(
+                    passpointScanResults.get(suggestion.passpointConfiguration)));
+        }
         return filteredScanResults;
     }
 
+    /**
+     * Index the {@link ScanResultMatchInfo} of the ScanResults by their SSID, the ScanResults
+     * of each SSID are kept in their original order.
+     */
+    @NonNull
+    private static Map<String, List<Pair<ScanResultMatchInfo, ScanResult>>>
+            indexScanResultsBySsid(@NonNull List<ScanResult> scanResults) {
+        Map<String, List<Pair<ScanResultMatchInfo, ScanResult>>> scanResultsBySsid =
+                new HashMap<>();
+        for (ScanResult scanResult : scanResults) {
+            if (scanResult == null) {
+                continue;
+            }
+            ScanResultMatchInfo matchInfo = ScanResultMatchInfo.fromScanResult(scanResult);
+            if (matchInfo == null) {
+                continue;
+            }
+            scanResultsBySsid.computeIfAbsent(matchInfo.networkSsid, k -> new ArrayList<>())
+                    .add(Pair.create(matchInfo, scanResult));
+        }
+        return scanResultsBySsid;
+    }
+
     private List<ScanResult> getMatchingScanResultsForSuggestion(WifiNetworkSuggestion suggestion,
             List<ScanResult> scanResults) {
         if (suggestion.passpointConfiguration != null) {
@@ -4027,9 +4027,10 @@ public class WifiServiceImpl extends BaseWifiService {
         try {
             mWifiPermissionsUtil.enforceCanAccessScanResults(callingPackage, callingFeatureId,
                     uid, null);
-            List<ScanResult> scanResults = mWifiThreadRunner.call(
-                    mScanRequestProxy::getScanResults, Collections.emptyList());
-            return scanResults;
+            // The cached scan results are published as an immutable snapshot, so they can be
+            // read without posting to the Wi-Fi thread. Return a mutable copy since in-process
+            // callers receive the list without it being parceled.
+            return new ArrayList<>(mScanRequestProxy.getScanResults());
         } catch (SecurityException e) {
             Log.w(TAG, "Permission violation - getScanResults not allowed for uid="
                     + uid + ", packageName=" + callingPackage + ", reason=" + e);
@@ -4808,6 +4809,7 @@ public class WifiServiceImpl extends BaseWifiService {
                 mWifiInjector.getWifiLastResortWatchdog().dump(fd, pw, args);
                 mWifiInjector.getAdaptiveConnectivityEnabledSettingObserver().dump(fd, pw, args);
                 mWifiInjector.getWifiGlobals().dump(fd, pw, args);
+                mWifiInjector.getThroughputPredictor().dump(fd, pw, args);
                 mWifiInjector.getSarManager().dump(fd, pw, args);
                 pw.println();
                 mLastCallerInfoManager.dump(pw);
@@ -1106,18 +1106,32 @@ public class WifiVendorHal {
      * @return the statistics, or null if unable to do so
      */
     public WifiLinkLayerStats getWifiLinkLayerStats(@NonNull String ifaceName) {
+        return getWifiLinkLayerStats(ifaceName, null);
+    }
+
+    /**
+     * Get the link layer statistics, filling the given object instead of allocating a new one.
+     *
+     * @param ifaceName Name of the interface.
+     * @param reuse statistics to reset and fill, see {@link WifiLinkLayerStats#reset()}, or null
+     *              to allocate new statistics
+     * @return the statistics, or null if unable to do so
+     */
+    public WifiLinkLayerStats getWifiLinkLayerStats(@NonNull String ifaceName,
+            @Nullable WifiLinkLayerStats reuse) {
         if (getWifiStaIfaceForV1_6Mockable(ifaceName) != null) {
-            return getWifiLinkLayerStats_1_6_Internal(ifaceName);
+            return getWifiLinkLayerStats_1_6_Internal(ifaceName, reuse);
         } else if (getWifiStaIfaceForV1_5Mockable(ifaceName) != null) {
-            return getWifiLinkLayerStats_1_5_Internal(ifaceName);
+            return getWifiLinkLayerStats_1_5_Internal(ifaceName, reuse);
         } else if (getWifiStaIfaceForV1_3Mockable(ifaceName) != null) {
-            return getWifiLinkLayerStats_1_3_Internal(ifaceName);
+            return getWifiLinkLayerStats_1_3_Internal(ifaceName, reuse);
         } else {
-            return getWifiLinkLayerStats_internal(ifaceName);
+            return getWifiLinkLayerStats_internal(ifaceName, reuse);
         }
     }
 
-    private WifiLinkLayerStats getWifiLinkLayerStats_internal(@NonNull String ifaceName) {
+    private WifiLinkLayerStats getWifiLinkLayerStats_internal(@NonNull String ifaceName,
+            @Nullable WifiLinkLayerStats reuse) {
         class AnswerBox {
             public StaLinkLayerStats value = null;
         }
@@ -1135,11 +1149,12 @@ public class WifiVendorHal {
                 return null;
             }
         }
-        WifiLinkLayerStats stats = frameworkFromHalLinkLayerStats(answer.value);
+        WifiLinkLayerStats stats = frameworkFromHalLinkLayerStats(answer.value, reuse);
         return stats;
     }
 
-    private WifiLinkLayerStats getWifiLinkLayerStats_1_3_Internal(@NonNull String ifaceName) {
+    private WifiLinkLayerStats getWifiLinkLayerStats_1_3_Internal(@NonNull String ifaceName,
+            @Nullable WifiLinkLayerStats reuse) {
         class AnswerBox {
             public android.hardware.wifi.V1_3.StaLinkLayerStats value = null;
         }
@@ -1158,11 +1173,12 @@ public class WifiVendorHal {
                 return null;
             }
         }
-        WifiLinkLayerStats stats = frameworkFromHalLinkLayerStats_1_3(answer.value);
+        WifiLinkLayerStats stats = frameworkFromHalLinkLayerStats_1_3(answer.value, reuse);
         return stats;
     }
 
-    private WifiLinkLayerStats getWifiLinkLayerStats_1_5_Internal(@NonNull String ifaceName) {
+    private WifiLinkLayerStats getWifiLinkLayerStats_1_5_Internal(@NonNull String ifaceName,
+            @Nullable WifiLinkLayerStats reuse) {
         class AnswerBox {
             public android.hardware.wifi.V1_5.StaLinkLayerStats value = null;
         }
@@ -1181,11 +1197,12 @@ public class WifiVendorHal {
                 return null;
             }
         }
-        WifiLinkLayerStats stats = frameworkFromHalLinkLayerStats_1_5(answer.value);
+        WifiLinkLayerStats stats = frameworkFromHalLinkLayerStats_1_5(answer.value, reuse);
         return stats;
     }
 
-    private WifiLinkLayerStats getWifiLinkLayerStats_1_6_Internal(@NonNull String ifaceName) {
+    private WifiLinkLayerStats getWifiLinkLayerStats_1_6_Internal(@NonNull String ifaceName,
+            @Nullable WifiLinkLayerStats reuse) {
         class AnswerBox {
             public android.hardware.wifi.V1_6.StaLinkLayerStats value = null;
         }
@@ -1204,7 +1221,7 @@ public class WifiVendorHal {
                 return null;
             }
         }
-        WifiLinkLayerStats stats = frameworkFromHalLinkLayerStats_1_6(answer.value);
+        WifiLinkLayerStats stats = frameworkFromHalLinkLayerStats_1_6(answer.value, reuse);
         return stats;
     }
 
@@ -1213,8 +1230,18 @@ public class WifiVendorHal {
      */
     @VisibleForTesting
     static WifiLinkLayerStats frameworkFromHalLinkLayerStats(StaLinkLayerStats stats) {
+        return frameworkFromHalLinkLayerStats(stats, null);
+    }
+
+    /**
+     * Makes the framework version of link layer stats from the hal version, filling the given
+     * stats if not null.
+     */
+    @VisibleForTesting
+    static WifiLinkLayerStats frameworkFromHalLinkLayerStats(StaLinkLayerStats stats,
+            @Nullable WifiLinkLayerStats reuse) {
         if (stats == null) return null;
-        WifiLinkLayerStats out = new WifiLinkLayerStats();
+        WifiLinkLayerStats out = obtainLinkLayerStats(reuse);
         setIfaceStats(out, stats.iface);
         setRadioStats(out, stats.radios);
         setTimeStamp(out, stats.timeStampInMs);
@@ -1228,8 +1255,19 @@ public class WifiVendorHal {
     @VisibleForTesting
     static WifiLinkLayerStats frameworkFromHalLinkLayerStats_1_3(
             android.hardware.wifi.V1_3.StaLinkLayerStats stats) {
+        return frameworkFromHalLinkLayerStats_1_3(stats, null);
+    }
+
+    /**
+     * Makes the framework version of link layer stats from the hal version, filling the given
+     * stats if not null.
+     */
+    @VisibleForTesting
+    static WifiLinkLayerStats frameworkFromHalLinkLayerStats_1_3(
+            android.hardware.wifi.V1_3.StaLinkLayerStats stats,
+            @Nullable WifiLinkLayerStats reuse) {
         if (stats == null) return null;
-        WifiLinkLayerStats out = new WifiLinkLayerStats();
+        WifiLinkLayerStats out = obtainLinkLayerStats(reuse);
         setIfaceStats(out, stats.iface);
         setRadioStats_1_3(out, stats.radios);
         setTimeStamp(out, stats.timeStampInMs);
@@ -1243,8 +1281,19 @@ public class WifiVendorHal {
     @VisibleForTesting
     static WifiLinkLayerStats frameworkFromHalLinkLayerStats_1_5(
             android.hardware.wifi.V1_5.StaLinkLayerStats stats) {
+        return frameworkFromHalLinkLayerStats_1_5(stats, null);
+    }
+
+    /**
+     * Makes the framework version of link layer stats from the hal version, filling the given
+     * stats if not null.
+     */
+    @VisibleForTesting
+    static WifiLinkLayerStats frameworkFromHalLinkLayerStats_1_5(
+            android.hardware.wifi.V1_5.StaLinkLayerStats stats,
+            @Nullable WifiLinkLayerStats reuse) {
         if (stats == null) return null;
-        WifiLinkLayerStats out = new WifiLinkLayerStats();
+        WifiLinkLayerStats out = obtainLinkLayerStats(reuse);
         setIfaceStats_1_5(out, stats.iface);
         setRadioStats_1_5(out, stats.radios);
         setTimeStamp(out, stats.timeStampInMs);
@@ -1258,8 +1307,19 @@ public class WifiVendorHal {
     @VisibleForTesting
     static WifiLinkLayerStats frameworkFromHalLinkLayerStats_1_6(
             android.hardware.wifi.V1_6.StaLinkLayerStats stats) {
+        return frameworkFromHalLinkLayerStats_1_6(stats, null);
+    }
+
+    /**
+     * Makes the framework version of link layer stats from the hal version, filling the given
+     * stats if not null.
+     */
+    @VisibleForTesting
+    static WifiLinkLayerStats frameworkFromHalLinkLayerStats_1_6(
+            android.hardware.wifi.V1_6.StaLinkLayerStats stats,
+            @Nullable WifiLinkLayerStats reuse) {
         if (stats == null) return null;
-        WifiLinkLayerStats out = new WifiLinkLayerStats();
+        WifiLinkLayerStats out = obtainLinkLayerStats(reuse);
         setIfaceStats_1_6(out, stats.iface);
         setRadioStats_1_6(out, stats.radios);
         setTimeStamp(out, stats.timeStampInMs);
@@ -1267,6 +1327,14 @@ public class WifiVendorHal {
         return out;
     }
 
+    private static WifiLinkLayerStats obtainLinkLayerStats(@Nullable WifiLinkLayerStats reuse) {
+        if (reuse == null) {
+            return new WifiLinkLayerStats();
+        }
+        reuse.reset();
+        return reuse;
+    }
+
     private static void setIfaceStats(WifiLinkLayerStats stats, StaLinkLayerIfaceStats iface) {
         if (iface == null) return;
         stats.beacon_rx = iface.beaconRx;
@@ -1320,15 +1388,15 @@ public class WifiVendorHal {
         stats.contentionTimeAvgVoInUsec = iface.wmeVoContentionTimeStats.contentionTimeAvgInUsec;
         stats.contentionNumSamplesVo = iface.wmeVoContentionTimeStats.contentionNumSamples;
         // Peer information statistics
-        stats.peerInfo = new PeerInfo[iface.peers.size()];
+        stats.peerInfo = stats.obtainPeerInfo(iface.peers.size());
         for (int i = 0; i < stats.peerInfo.length; i++) {
-            PeerInfo peer = new PeerInfo();
+            PeerInfo peer = stats.peerInfo[i];
             android.hardware.wifi.V1_5.StaPeerInfo staPeerInfo = iface.peers.get(i);
             peer.staCount = staPeerInfo.staCount;
             peer.chanUtil = staPeerInfo.chanUtil;
-            RateStat[] rateStats = new RateStat[staPeerInfo.rateStats.size()];
+            RateStat[] rateStats =
+                    WifiLinkLayerStats.obtainRateStats(peer, staPeerInfo.rateStats.size());
             for (int j = 0; j < staPeerInfo.rateStats.size(); j++) {
-                rateStats[j] = new RateStat();
                 android.hardware.wifi.V1_5.StaRateStat staRateStat = staPeerInfo.rateStats.get(j);
                 rateStats[j].preamble = staRateStat.rateInfo.preamble;
                 rateStats[j].nss = staRateStat.rateInfo.nss;
@@ -1341,7 +1409,6 @@ public class WifiVendorHal {
                 rateStats[j].retries = staRateStat.retries;
             }
             peer.rateStats = rateStats;
-            stats.peerInfo[i] = peer;
         }
     }
 
@@ -1371,15 +1438,15 @@ public class WifiVendorHal {
         stats.contentionTimeAvgVoInUsec = iface.wmeVoContentionTimeStats.contentionTimeAvgInUsec;
         stats.contentionNumSamplesVo = iface.wmeVoContentionTimeStats.contentionNumSamples;
         // Peer information statistics
-        stats.peerInfo = new PeerInfo[iface.peers.size()];
+        stats.peerInfo = stats.obtainPeerInfo(iface.peers.size());
         for (int i = 0; i < stats.peerInfo.length; i++) {
-            PeerInfo peer = new PeerInfo();
+            PeerInfo peer = stats.peerInfo[i];
             android.hardware.wifi.V1_6.StaPeerInfo staPeerInfo = iface.peers.get(i);
             peer.staCount = staPeerInfo.staCount;
             peer.chanUtil = staPeerInfo.chanUtil;
-            RateStat[] rateStats = new RateStat[staPeerInfo.rateStats.size()];
+            RateStat[] rateStats =
+                    WifiLinkLayerStats.obtainRateStats(peer, staPeerInfo.rateStats.size());
             for (int j = 0; j < staPeerInfo.rateStats.size(); j++) {
-                rateStats[j] = new RateStat();
                 android.hardware.wifi.V1_6.StaRateStat staRateStat = staPeerInfo.rateStats.get(j);
                 rateStats[j].preamble = staRateStat.rateInfo.preamble;
                 rateStats[j].nss = staRateStat.rateInfo.nss;
@@ -1392,7 +1459,6 @@ public class WifiVendorHal {
                 rateStats[j].retries = staRateStat.retries;
             }
             peer.rateStats = rateStats;
-            stats.peerInfo[i] = peer;
         }
     }
 
@@ -1404,7 +1470,8 @@ public class WifiVendorHal {
             StaLinkLayerRadioStats radioStats = radios.get(0);
             stats.on_time = radioStats.onTimeInMs;
             stats.tx_time = radioStats.txTimeInMs;
-            stats.tx_time_per_level = new int[radioStats.txTimeInMsPerLevel.size()];
+            stats.tx_time_per_level =
+                    stats.obtainTxTimePerLevel(radioStats.txTimeInMsPerLevel.size());
             for (int i = 0; i < stats.tx_time_per_level.length; i++) {
                 stats.tx_time_per_level[i] = radioStats.txTimeInMsPerLevel.get(i);
             }
@@ -1417,7 +1484,8 @@ public class WifiVendorHal {
     /**
      * Set individual radio stats from the hal radio stats for V1_3
      */
-    private static void setFrameworkPerRadioStatsFromHidl_1_3(int radioId, RadioStat radio,
+    private static void setFrameworkPerRadioStatsFromHidl_1_3(WifiLinkLayerStats stats,
+            int radioId, RadioStat radio,
             android.hardware.wifi.V1_3.StaLinkLayerRadioStats hidlRadioStats) {
         radio.radio_id = radioId;
         radio.on_time = hidlRadioStats.V1_0.onTimeInMs;
@@ -1432,7 +1500,7 @@ public class WifiVendorHal {
         /* Copy list of channel stats */
         for (android.hardware.wifi.V1_3.WifiChannelStats channelStats
                 : hidlRadioStats.channelStats) {
-            ChannelStats channelStatsEntry = new ChannelStats();
+            ChannelStats channelStatsEntry = stats.obtainChannelStats();
             channelStatsEntry.frequency = channelStats.channel.centerFreq;
             channelStatsEntry.radioOnTimeMs = channelStats.onTimeInMs;
             channelStatsEntry.ccaBusyTimeMs = channelStats.ccaBusyTimeInMs;
@@ -1443,8 +1511,8 @@ public class WifiVendorHal {
     /**
      * Set individual radio stats from the hal radio stats for V1_6
      */
-    private static void setFrameworkPerRadioStatsFromHidl_1_6(RadioStat radio,
-            android.hardware.wifi.V1_6.StaLinkLayerRadioStats hidlRadioStats) {
+    private static void setFrameworkPerRadioStatsFromHidl_1_6(WifiLinkLayerStats stats,
+            RadioStat radio, android.hardware.wifi.V1_6.StaLinkLayerRadioStats hidlRadioStats) {
         radio.radio_id = hidlRadioStats.radioId;
         radio.on_time = hidlRadioStats.V1_0.onTimeInMs;
         radio.tx_time = hidlRadioStats.V1_0.txTimeInMs;
@@ -1458,7 +1526,7 @@ public class WifiVendorHal {
         /* Copy list of channel stats */
         for (android.hardware.wifi.V1_6.WifiChannelStats channelStats
                 : hidlRadioStats.channelStats) {
-            ChannelStats channelStatsEntry = new ChannelStats();
+            ChannelStats channelStatsEntry = stats.obtainChannelStats();
             channelStatsEntry.frequency = channelStats.channel.centerFreq;
             channelStatsEntry.radioOnTimeMs = channelStats.onTimeInMs;
             channelStatsEntry.ccaBusyTimeMs = channelStats.ccaBusyTimeInMs;
@@ -1486,7 +1554,8 @@ public class WifiVendorHal {
         // txTimeInMsPerLevel is the same across all radios. So txTimeInMsPerLevel on other
         // radios at array indices greater than the length of first radio will be dropped.
         if (stats.tx_time_per_level == null) {
-            stats.tx_time_per_level = new int[hidlRadioStats.V1_0.txTimeInMsPerLevel.size()];
+            stats.tx_time_per_level =
+                    stats.obtainTxTimePerLevel(hidlRadioStats.V1_0.txTimeInMsPerLevel.size());
         }
         for (int i = 0; i < hidlRadioStats.V1_0.txTimeInMsPerLevel.size()
                 && i < stats.tx_time_per_level.length; i++) {
@@ -1505,7 +1574,7 @@ public class WifiVendorHal {
             ChannelStats channelStatsEntry =
                     stats.channelStatsMap.get(channelStats.channel.centerFreq);
             if (channelStatsEntry == null) {
-                channelStatsEntry = new ChannelStats();
+                channelStatsEntry = stats.obtainChannelStats();
                 channelStatsEntry.frequency = channelStats.channel.centerFreq;
                 stats.channelStatsMap.put(channelStats.channel.centerFreq, channelStatsEntry);
             }
@@ -1535,7 +1604,8 @@ public class WifiVendorHal {
         // txTimeInMsPerLevel is the same across all radios. So txTimeInMsPerLevel on other
         // radios at array indices greater than the length of first radio will be dropped.
         if (stats.tx_time_per_level == null) {
-            stats.tx_time_per_level = new int[hidlRadioStats.V1_0.txTimeInMsPerLevel.size()];
+            stats.tx_time_per_level =
+                    stats.obtainTxTimePerLevel(hidlRadioStats.V1_0.txTimeInMsPerLevel.size());
         }
         for (int i = 0; i < hidlRadioStats.V1_0.txTimeInMsPerLevel.size()
                 && i < stats.tx_time_per_level.length; i++) {
@@ -1554,7 +1624,7 @@ public class WifiVendorHal {
             ChannelStats channelStatsEntry =
                     stats.channelStatsMap.get(channelStats.channel.centerFreq);
             if (channelStatsEntry == null) {
-                channelStatsEntry = new ChannelStats();
+                channelStatsEntry = stats.obtainChannelStats();
                 channelStatsEntry.frequency = channelStats.channel.centerFreq;
                 stats.channelStatsMap.put(channelStats.channel.centerFreq, channelStatsEntry);
             }
@@ -1578,11 +1648,11 @@ public class WifiVendorHal {
             List<android.hardware.wifi.V1_5.StaLinkLayerRadioStats> radios) {
         if (radios == null) return;
         int radioIndex = 0;
-        stats.radioStats = new RadioStat[radios.size()];
+        stats.radioStats = stats.obtainRadioStats(radios.size());
         for (android.hardware.wifi.V1_5.StaLinkLayerRadioStats radioStats : radios) {
-            RadioStat radio = new RadioStat();
-            setFrameworkPerRadioStatsFromHidl_1_3(radioStats.radioId, radio, radioStats.V1_3);
-            stats.radioStats[radioIndex] = radio;
+            RadioStat radio = stats.radioStats[radioIndex];
+            setFrameworkPerRadioStatsFromHidl_1_3(stats, radioStats.radioId, radio,
+                    radioStats.V1_3);
             aggregateFrameworkRadioStatsFromHidl_1_3(radioIndex, stats, radioStats.V1_3);
             radioIndex++;
         }
@@ -1592,11 +1662,10 @@ public class WifiVendorHal {
             List<android.hardware.wifi.V1_6.StaLinkLayerRadioStats> radios) {
         if (radios == null) return;
         int radioIndex = 0;
-        stats.radioStats = new RadioStat[radios.size()];
+        stats.radioStats = stats.obtainRadioStats(radios.size());
         for (android.hardware.wifi.V1_6.StaLinkLayerRadioStats radioStats : radios) {
-            RadioStat radio = new RadioStat();
-            setFrameworkPerRadioStatsFromHidl_1_6(radio, radioStats);
-            stats.radioStats[radioIndex] = radio;
+            RadioStat radio = stats.radioStats[radioIndex];
+            setFrameworkPerRadioStatsFromHidl_1_6(stats, radio, radioStats);
             aggregateFrameworkRadioStatsFromHidl_1_6(radioIndex, stats, radioStats);
             radioIndex++;
         }
@@ -66,6 +66,23 @@ public class ANQPData {
         mExpiryTime = mClock.getElapsedSinceBootMillis() + dataLifetime;
     }
 
+    /**
+     * Create an entry with the given expiry time, e.g. for an entry restored from storage.
+     *
+     * @param clock The clock used to check the expiry
+     * @param anqpElements ANQP elements of the entry
+     * @param expiryTime Expiry time in milliseconds since boot
+     */
+    public ANQPData(Clock clock, Map<Constants.ANQPElementType, ANQPElement> anqpElements,
+            long expiryTime) {
+        mClock = clock;
+        mANQPElements = new HashMap<>();
+        if (anqpElements != null) {
+            mANQPElements.putAll(anqpElements);
+        }
+        mExpiryTime = expiryTime;
+    }
+
     /**
      * Update an entry with post association ANQP elelemtns
      *
@@ -85,6 +102,15 @@ public class ANQPData {
         return Collections.unmodifiableMap(mANQPElements);
     }
 
+    /**
+     * Return the time at which this entry expires.
+     *
+     * @return time in milliseconds since boot
+     */
+    public long getExpiryTime() {
+        return mExpiryTime;
+    }
+
     /**
      * Check if this entry is expired at the specified time.
      *
@@ -22,27 +22,56 @@ import com.android.server.wifi.hotspot2.anqp.ANQPElement;
 import com.android.server.wifi.hotspot2.anqp.Constants;
 
 import java.io.PrintWriter;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Cache for storing ANQP data.  This is simply a data cache, all the logic related to
  * ANQP data query will be handled elsewhere (e.g. the consumer of the cache).
+ *
+ * The cache holds at most {@link #CACHE_MAX_SIZE} entries, the least recently used entry is
+ * evicted when it is full. Entries are grouped by expiry time in buckets of
+ * {@link #CACHE_SWEEP_INTERVAL_MILLISECONDS}, so that a sweep only visits the entries which
+ * expire before the sweep time instead of the whole cache.
  */
 public class AnqpCache {
     @VisibleForTesting
     public static final long CACHE_SWEEP_INTERVAL_MILLISECONDS = 60000L;
+    @VisibleForTesting
+    public static final int CACHE_MAX_SIZE = 1000;
 
     private long mLastSweep;
     private Clock mClock;
 
+    // Entries in access order, the eldest entry is the least recently used one.
     private final Map<ANQPNetworkKey, ANQPData> mANQPCache;
+    // Entries by expiry bucket, see getExpiryBucket(). Looking up the entries here does not
+    // change the access order of mANQPCache.
+    private final TreeMap<Long, Map<ANQPNetworkKey, ANQPData>> mExpiryBuckets = new TreeMap<>();
+
+    // Whether entries were added, updated or flushed since the last snapshot.
+    private boolean mChangedSinceSnapshot;
+
+    private long mHitCount;
+    private long mMissCount;
+    private long mEvictionCount;
 
     public AnqpCache(Clock clock) {
         mClock = clock;
-        mANQPCache = new HashMap<>();
+        mANQPCache = new LinkedHashMap<ANQPNetworkKey, ANQPData>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ANQPNetworkKey, ANQPData> eldest) {
+                if (size() <= CACHE_MAX_SIZE) {
+                    return false;
+                }
+                removeFromExpiryBucket(eldest.getKey(), eldest.getValue());
+                mEvictionCount++;
+                return true;
+            }
+        };
         mLastSweep = mClock.getElapsedSinceBootMillis();
     }
 
@@ -55,7 +84,12 @@ public class AnqpCache {
     public void addEntry(ANQPNetworkKey key,
             Map<Constants.ANQPElementType, ANQPElement> anqpElements) {
         ANQPData data = new ANQPData(mClock, anqpElements);
-        mANQPCache.put(key, data);
+        ANQPData oldData = mANQPCache.put(key, data);
+        if (oldData != null) {
+            removeFromExpiryBucket(key, oldData);
+        }
+        addToExpiryBucket(key, data);
+        mChangedSinceSnapshot = true;
     }
 
     /**
@@ -68,12 +102,60 @@ public class AnqpCache {
      */
     public void addOrUpdateEntry(ANQPNetworkKey key,
             Map<Constants.ANQPElementType, ANQPElement> anqpElements) {
-        if (!mANQPCache.containsKey(key)) {
+        ANQPData data = mANQPCache.get(key);
+        if (data == null) {
             // Create a new entry
             addEntry(key, anqpElements);
             return;
         }
-        mANQPCache.get(key).update(anqpElements);
+        // The update extends the lifetime of the entry.
+        removeFromExpiryBucket(key, data);
+        data.update(anqpElements);
+        addToExpiryBucket(key, data);
+        mChangedSinceSnapshot = true;
+    }
+
+    /**
+     * Restore an ANQP entry, e.g. from storage, unless there is already an entry associated with
+     * the given key.
+     *
+     * @param key The key that's associated with the entry
+     * @param anqpElements The ANQP elements of the entry
+     * @param expiryTime Expiry time of the entry in milliseconds since boot
+     */
+    public void restoreEntry(ANQPNetworkKey key,
+            Map<Constants.ANQPElementType, ANQPElement> anqpElements, long expiryTime) {
+        if (mANQPCache.containsKey(key)) {
+            return;
+        }
+        ANQPData data = new ANQPData(mClock, anqpElements, expiryTime);
+        mANQPCache.put(key, data);
+        addToExpiryBucket(key, data);
+    }
+
+    /**
+     * Check whether entries were added, updated or flushed since the last snapshot.
+     */
+    public boolean hasChangedSinceSnapshot() {
+        return mChangedSinceSnapshot;
+    }
+
+    /**
+     * Get a snapshot of the entries which are not expired, from the least to the most recently
+     * used.
+     *
+     * @return a map of the entries by key
+     */
+    public Map<ANQPNetworkKey, ANQPData> getSnapshot() {
+        long now = mClock.getElapsedSinceBootMillis();
+        Map<ANQPNetworkKey, ANQPData> snapshot = new LinkedHashMap<>();
+        for (Map.Entry<ANQPNetworkKey, ANQPData> entry : mANQPCache.entrySet()) {
+            if (!entry.getValue().expired(now)) {
+                snapshot.put(entry.getKey(), entry.getValue());
+            }
+        }
+        mChangedSinceSnapshot = false;
+        return snapshot;
     }
 
     /**
@@ -83,7 +165,13 @@ public class AnqpCache {
      * @return {@link ANQPData}
      */
     public ANQPData getEntry(ANQPNetworkKey key) {
-        return mANQPCache.get(key);
+        ANQPData data = mANQPCache.get(key);
+        if (data == null) {
+            mMissCount++;
+        } else {
+            mHitCount++;
+        }
+        return data;
     }
 
     /**
@@ -96,24 +184,59 @@ public class AnqpCache {
             return;
         }
 
-        // Get all expired keys.
-        List<ANQPNetworkKey> expiredKeys = new ArrayList<>();
-        for (Map.Entry<ANQPNetworkKey, ANQPData> entry : mANQPCache.entrySet()) {
-            if (entry.getValue().expired(now)) {
-                expiredKeys.add(entry.getKey());
+        // Only the buckets up to the current one can contain expired entries.
+        Iterator<Map<ANQPNetworkKey, ANQPData>> buckets =
+                mExpiryBuckets.headMap(getExpiryBucket(now), true).values().iterator();
+        while (buckets.hasNext()) {
+            Map<ANQPNetworkKey, ANQPData> bucket = buckets.next();
+            Iterator<Map.Entry<ANQPNetworkKey, ANQPData>> entries = bucket.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<ANQPNetworkKey, ANQPData> entry = entries.next();
+                if (entry.getValue().expired(now)) {
+                    mANQPCache.remove(entry.getKey());
+                    entries.remove();
+                }
+            }
+            if (bucket.isEmpty()) {
+                buckets.remove();
             }
-        }
-
-        // Remove all expired entries.
-        for (ANQPNetworkKey key : expiredKeys) {
-            mANQPCache.remove(key);
         }
         mLastSweep = now;
     }
 
+    /**
+     * Get the number of lookups which found an entry.
+     */
+    public long getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * Get the number of lookups which did not find an entry.
+     */
+    public long getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * Get the number of entries evicted because the cache was full.
+     */
+    public long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    /**
+     * Dump the cache counters.
+     */
+    public void dumpCounters(PrintWriter out) {
+        out.println("ANQP cache size=" + mANQPCache.size() + " hits=" + mHitCount
+                + " misses=" + mMissCount + " evictions=" + mEvictionCount);
+    }
+
     public void dump(PrintWriter out) {
         out.println("Last sweep " + Utils.toHMS(mClock.getElapsedSinceBootMillis() - mLastSweep)
                 + " ago.");
+        dumpCounters(out);
         for (Map.Entry<ANQPNetworkKey, ANQPData> entry : mANQPCache.entrySet()) {
             out.println(entry.getKey() + ": " + entry.getValue());
         }
@@ -124,6 +247,29 @@ public class AnqpCache {
      */
     public void flush() {
         mANQPCache.clear();
+        mExpiryBuckets.clear();
         mLastSweep = mClock.getElapsedSinceBootMillis();
+        mChangedSinceSnapshot = true;
+    }
+
+    private void addToExpiryBucket(ANQPNetworkKey key, ANQPData data) {
+        mExpiryBuckets.computeIfAbsent(getExpiryBucket(data.getExpiryTime()),
+                k -> new HashMap<>()).put(key, data);
+    }
+
+    private void removeFromExpiryBucket(ANQPNetworkKey key, ANQPData data) {
+        long bucket = getExpiryBucket(data.getExpiryTime());
+        Map<ANQPNetworkKey, ANQPData> entries = mExpiryBuckets.get(bucket);
+        if (entries == null) {
+            return;
+        }
+        entries.remove(key);
+        if (entries.isEmpty()) {
+            mExpiryBuckets.remove(bucket);
+        }
+    }
+
+    private static long getExpiryBucket(long time) {
+        return time / CACHE_SWEEP_INTERVAL_MILLISECONDS;
     }
 }
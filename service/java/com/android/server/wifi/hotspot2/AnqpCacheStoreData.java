@@ -0,0 +1,324 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.hotspot2;
+
+import android.annotation.Nullable;
+import android.util.Log;
+
+import com.android.server.wifi.Clock;
+import com.android.server.wifi.WifiConfigStore;
+import com.android.server.wifi.hotspot2.anqp.ANQPElement;
+import com.android.server.wifi.hotspot2.anqp.ANQPParser;
+import com.android.server.wifi.hotspot2.anqp.Constants;
+import com.android.server.wifi.util.WifiConfigStoreEncryptionUtil;
+import com.android.server.wifi.util.XmlUtil;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlSerializer;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Responsible for persisting a snapshot of the ANQP cache in the shared store, so that the ANQP
+ * data of the nearby APs does not need to be queried again after a Wi-Fi restart or a reboot.
+ *
+ * Each entry is stored with the raw payloads of its ANQP elements and its remaining lifetime.
+ * The time spent between the snapshot and the load is deducted from the remaining lifetime of
+ * the entries when they are restored.
+ */
+public class AnqpCacheStoreData implements WifiConfigStore.StoreData {
+    private static final String TAG = "AnqpCacheStoreData";
+    private static final String XML_TAG_SECTION_HEADER_ANQP_CACHE_DATA = "AnqpCacheData";
+    private static final String XML_TAG_SECTION_HEADER_ANQP_ENTRY_LIST = "AnqpEntryList";
+    private static final String XML_TAG_SECTION_HEADER_ANQP_ENTRY = "AnqpEntry";
+    private static final String XML_TAG_SECTION_HEADER_ANQP_ELEMENT = "AnqpElement";
+    private static final String XML_TAG_SNAPSHOT_TIME = "SnapshotTime";
+    private static final String XML_TAG_SSID = "SSID";
+    private static final String XML_TAG_BSSID = "BSSID";
+    private static final String XML_TAG_HESSID = "HESSID";
+    private static final String XML_TAG_ANQP_DOMAIN_ID = "AnqpDomainId";
+    private static final String XML_TAG_REMAINING_LIFETIME = "RemainingLifetime";
+    private static final String XML_TAG_ELEMENT_TYPE = "Type";
+    private static final String XML_TAG_ELEMENT_PAYLOAD = "Payload";
+
+    private final DataSource mDataSource;
+    private final Clock mClock;
+
+    /**
+     * Interface define the data source for the ANQP cache store data.
+     */
+    public interface DataSource {
+        /**
+         * Retrieve the ANQP entries to persist.
+         *
+         * @return map of the entries by key, empty if the ANQP cache should not be persisted
+         */
+        Map<ANQPNetworkKey, ANQPData> getAnqpEntries();
+
+        /**
+         * Restore an ANQP entry read from the store.
+         *
+         * @param key The key that's associated with the entry
+         * @param anqpElements The ANQP elements of the entry
+         * @param expiryTime Expiry time of the entry in milliseconds since boot
+         */
+        void restoreAnqpEntry(ANQPNetworkKey key,
+                Map<Constants.ANQPElementType, ANQPElement> anqpElements, long expiryTime);
+
+        /**
+         * Check whether the ANQP entries changed since they were last retrieved.
+         *
+         * @return true if the entries changed, false otherwise
+         */
+        boolean hasNewAnqpEntries();
+    }
+
+    AnqpCacheStoreData(DataSource dataSource, Clock clock) {
+        mDataSource = dataSource;
+        mClock = clock;
+    }
+
+    @Override
+    public void serializeData(XmlSerializer out,
+            @Nullable WifiConfigStoreEncryptionUtil encryptionUtil)
+            throws XmlPullParserException, IOException {
+        long now = mClock.getElapsedSinceBootMillis();
+        XmlUtil.writeNextValue(out, XML_TAG_SNAPSHOT_TIME, mClock.getWallClockMillis());
+        XmlUtil.writeNextSectionStart(out, XML_TAG_SECTION_HEADER_ANQP_ENTRY_LIST);
+        for (Map.Entry<ANQPNetworkKey, ANQPData> entry : mDataSource.getAnqpEntries().entrySet()) {
+            if (!hasPayloads(entry.getValue())) {
+                continue;
+            }
+            serializeEntry(out, entry.getKey(), entry.getValue(),
+                    entry.getValue().getExpiryTime() - now);
+        }
+        XmlUtil.writeNextSectionEnd(out, XML_TAG_SECTION_HEADER_ANQP_ENTRY_LIST);
+    }
+
+    @Override
+    public void deserializeData(XmlPullParser in, int outerTagDepth,
+            @WifiConfigStore.Version int version,
+            @Nullable WifiConfigStoreEncryptionUtil encryptionUtil)
+            throws XmlPullParserException, IOException {
+        // Ignore empty reads.
+        if (in == null) {
+            return;
+        }
+        long age = 0;
+        while (!XmlUtil.isNextSectionEnd(in, outerTagDepth)) {
+            if (in.getAttributeValue(null, "name") != null) {
+                String[] valueName = new String[1];
+                Object value = XmlUtil.readCurrentValue(in, valueName);
+                if (XML_TAG_SNAPSHOT_TIME.equals(valueName[0])) {
+                    age = Math.max(0, mClock.getWallClockMillis() - (long) value);
+                } else {
+                    Log.w(TAG, "Ignoring unknown value " + valueName[0]);
+                }
+            } else if (XML_TAG_SECTION_HEADER_ANQP_ENTRY_LIST.equals(in.getName())) {
+                deserializeEntryList(in, outerTagDepth + 1, age);
+            } else {
+                Log.w(TAG, "Ignoring unknown section " + in.getName());
+            }
+        }
+    }
+
+    /**
+     * The ANQP cache is kept in memory, so there is nothing to reset.
+     */
+    @Override
+    public void resetData() {
+    }
+
+    @Override
+    public boolean hasNewDataToSerialize() {
+        return mDataSource.hasNewAnqpEntries();
+    }
+
+    @Override
+    public String getName() {
+        return XML_TAG_SECTION_HEADER_ANQP_CACHE_DATA;
+    }
+
+    @Override
+    public @WifiConfigStore.StoreFileId int getStoreFileId() {
+        // Shared general store.
+        return WifiConfigStore.STORE_FILE_SHARED_GENERAL;
+    }
+
+    /**
+     * Check that all the ANQP elements of the entry can be persisted, so that a restored entry
+     * matches the providers like the original one.
+     */
+    private static boolean hasPayloads(ANQPData data) {
+        for (ANQPElement element : data.getElements().values()) {
+            if (element.getPayload() == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Serialize an ANQP entry to a XML block.
+     *
+     * @param out The output stream to serialize data to
+     * @param key The key of the entry
+     * @param data The entry to serialize
+     * @param remainingLifetime The remaining lifetime of the entry in milliseconds
+     * @throws XmlPullParserException
+     * @throws IOException
+     */
+    private void serializeEntry(XmlSerializer out, ANQPNetworkKey key, ANQPData data,
+            long remainingLifetime) throws XmlPullParserException, IOException {
+        XmlUtil.writeNextSectionStart(out, XML_TAG_SECTION_HEADER_ANQP_ENTRY);
+        XmlUtil.writeNextValue(out, XML_TAG_SSID, key.getSsid());
+        XmlUtil.writeNextValue(out, XML_TAG_BSSID, key.getBssid());
+        XmlUtil.writeNextValue(out, XML_TAG_HESSID, key.getHessid());
+        XmlUtil.writeNextValue(out, XML_TAG_ANQP_DOMAIN_ID, key.getAnqpDomainId());
+        XmlUtil.writeNextValue(out, XML_TAG_REMAINING_LIFETIME, remainingLifetime);
+        for (ANQPElement element : data.getElements().values()) {
+            XmlUtil.writeNextSectionStart(out, XML_TAG_SECTION_HEADER_ANQP_ELEMENT);
+            XmlUtil.writeNextValue(out, XML_TAG_ELEMENT_TYPE, element.getID().name());
+            XmlUtil.writeNextValue(out, XML_TAG_ELEMENT_PAYLOAD, element.getPayload());
+            XmlUtil.writeNextSectionEnd(out, XML_TAG_SECTION_HEADER_ANQP_ELEMENT);
+        }
+        XmlUtil.writeNextSectionEnd(out, XML_TAG_SECTION_HEADER_ANQP_ENTRY);
+    }
+
+    /**
+     * Deserialize the list of ANQP entries from the input stream and restore the ones which
+     * are not expired.
+     *
+     * @param in The input stream to read data from
+     * @param outerTagDepth The tag depth of the current XML section
+     * @param age The time elapsed since the entries were persisted in milliseconds
+     * @throws XmlPullParserException
+     * @throws IOException
+     */
+    private void deserializeEntryList(XmlPullParser in, int outerTagDepth, long age)
+            throws XmlPullParserException, IOException {
+        while (XmlUtil.gotoNextSectionWithNameOrEnd(in, XML_TAG_SECTION_HEADER_ANQP_ENTRY,
+                outerTagDepth)) {
+            deserializeEntry(in, outerTagDepth + 1, age);
+        }
+    }
+
+    /**
+     * Deserialize an ANQP entry from the input stream and restore it if it is not expired and
+     * all its ANQP elements can be parsed.
+     *
+     * @param in The input stream to read data from
+     * @param outerTagDepth The tag depth of the current XML section
+     * @param age The time elapsed since the entry was persisted in milliseconds
+     * @throws XmlPullParserException
+     * @throws IOException
+     */
+    private void deserializeEntry(XmlPullParser in, int outerTagDepth, long age)
+            throws XmlPullParserException, IOException {
+        String ssid = null;
+        long bssid = 0;
+        long hessid = 0;
+        int anqpDomainId = 0;
+        long remainingLifetime = 0;
+        Map<Constants.ANQPElementType, ANQPElement> anqpElements = new HashMap<>();
+        boolean valid = true;
+        while (XmlUtil.nextElementWithin(in, outerTagDepth)) {
+            if (in.getAttributeValue(null, "name") != null) {
+                String[] name = new String[1];
+                Object value = XmlUtil.readCurrentValue(in, name);
+                switch (name[0]) {
+                    case XML_TAG_SSID:
+                        ssid = (String) value;
+                        break;
+                    case XML_TAG_BSSID:
+                        bssid = (long) value;
+                        break;
+                    case XML_TAG_HESSID:
+                        hessid = (long) value;
+                        break;
+                    case XML_TAG_ANQP_DOMAIN_ID:
+                        anqpDomainId = (int) value;
+                        break;
+                    case XML_TAG_REMAINING_LIFETIME:
+                        remainingLifetime = (long) value;
+                        break;
+                    default:
+                        Log.w(TAG, "Ignoring unknown value under ANQP entry " + name[0]);
+                        break;
+                }
+            } else if (XML_TAG_SECTION_HEADER_ANQP_ELEMENT.equals(in.getName())) {
+                ANQPElement element = deserializeElement(in, outerTagDepth + 1);
+                if (element == null) {
+                    valid = false;
+                } else {
+                    anqpElements.put(element.getID(), element);
+                }
+            } else {
+                Log.w(TAG, "Ignoring unknown section under ANQP entry " + in.getName());
+            }
+        }
+        if (!valid || remainingLifetime <= age) {
+            return;
+        }
+        mDataSource.restoreAnqpEntry(new ANQPNetworkKey(ssid, bssid, hessid, anqpDomainId),
+                anqpElements, mClock.getElapsedSinceBootMillis() + remainingLifetime - age);
+    }
+
+    /**
+     * Deserialize an ANQP element from the input stream.
+     *
+     * @param in The input stream to read data from
+     * @param outerTagDepth The tag depth of the current XML section
+     * @return the ANQP element, or null if it could not be parsed
+     * @throws XmlPullParserException
+     * @throws IOException
+     */
+    private @Nullable ANQPElement deserializeElement(XmlPullParser in, int outerTagDepth)
+            throws XmlPullParserException, IOException {
+        String type = null;
+        byte[] payload = null;
+        while (!XmlUtil.isNextSectionEnd(in, outerTagDepth)) {
+            String[] name = new String[1];
+            Object value = XmlUtil.readCurrentValue(in, name);
+            switch (name[0]) {
+                case XML_TAG_ELEMENT_TYPE:
+                    type = (String) value;
+                    break;
+                case XML_TAG_ELEMENT_PAYLOAD:
+                    payload = (byte[]) value;
+                    break;
+                default:
+                    Log.w(TAG, "Ignoring unknown value under ANQP element " + name[0]);
+                    break;
+            }
+        }
+        if (type == null || payload == null) {
+            return null;
+        }
+        try {
+            return ANQPParser.parseElementPayload(
+                    Constants.ANQPElementType.valueOf(type), payload);
+        } catch (IllegalArgumentException | IOException | BufferUnderflowException e) {
+            Log.e(TAG, "Failed parsing persisted ANQP element: " + type, e);
+            return null;
+        }
+    }
+}
@@ -136,8 +136,66 @@ public class NetworkDetail {
     private int mMloLinkId = MloLink.INVALID_MLO_LINK_ID;
     private List<MloLink> mAffiliatedMloLinks = Collections.emptyList();
 
+    /**
+     * Decode only the elements that are always needed: SSID, Extended Capabilities and ERP.
+     */
+    public static final int DECODE_MANDATORY = 0;
+    /** Decode the HT/VHT/HE/EHT and rate elements used for channel width and Wi-Fi mode. */
+    public static final int DECODE_PHY = 1 << 0;
+    /** Decode Interworking, Roaming Consortium and vendor specific (HS2.0, MBO-OCE) elements. */
+    public static final int DECODE_INTERWORKING = 1 << 1;
+    /** Decode the Multi-Link and Reduced Neighbor Report elements. */
+    public static final int DECODE_MLO = 1 << 2;
+    /** Decode the BSS Load, Country and TIM elements. */
+    public static final int DECODE_BSS_INFO = 1 << 3;
+    /** Decode all the supported elements. */
+    public static final int DECODE_ALL =
+            DECODE_PHY | DECODE_INTERWORKING | DECODE_MLO | DECODE_BSS_INFO;
+
+    // Dispatch tables mapping an element id (or element id extension) to its DECODE_* group.
+    private static final int[] EID_DECODE_GROUP = new int[256];
+    private static final int[] EID_EXT_DECODE_GROUP = new int[256];
+    static {
+        EID_DECODE_GROUP[ScanResult.InformationElement.EID_BSS_LOAD] = DECODE_BSS_INFO;
+        EID_DECODE_GROUP[ScanResult.InformationElement.EID_COUNTRY] = DECODE_BSS_INFO;
+        EID_DECODE_GROUP[ScanResult.InformationElement.EID_TIM] = DECODE_BSS_INFO;
+        EID_DECODE_GROUP[ScanResult.InformationElement.EID_HT_OPERATION] = DECODE_PHY;
+        EID_DECODE_GROUP[ScanResult.InformationElement.EID_VHT_OPERATION] = DECODE_PHY;
+        EID_DECODE_GROUP[ScanResult.InformationElement.EID_HT_CAPABILITIES] = DECODE_PHY;
+        EID_DECODE_GROUP[ScanResult.InformationElement.EID_VHT_CAPABILITIES] = DECODE_PHY;
+        EID_DECODE_GROUP[ScanResult.InformationElement.EID_SUPPORTED_RATES] = DECODE_PHY;
+        EID_DECODE_GROUP[ScanResult.InformationElement.EID_EXTENDED_SUPPORTED_RATES] =
+                DECODE_PHY;
+        EID_DECODE_GROUP[ScanResult.InformationElement.EID_INTERWORKING] = DECODE_INTERWORKING;
+        EID_DECODE_GROUP[ScanResult.InformationElement.EID_ROAMING_CONSORTIUM] =
+                DECODE_INTERWORKING;
+        EID_DECODE_GROUP[ScanResult.InformationElement.EID_VSA] = DECODE_INTERWORKING;
+        EID_DECODE_GROUP[ScanResult.InformationElement.EID_RNR] = DECODE_MLO;
+        EID_EXT_DECODE_GROUP[ScanResult.InformationElement.EID_EXT_HE_OPERATION] = DECODE_PHY;
+        EID_EXT_DECODE_GROUP[ScanResult.InformationElement.EID_EXT_HE_CAPABILITIES] = DECODE_PHY;
+        EID_EXT_DECODE_GROUP[ScanResult.InformationElement.EID_EXT_EHT_OPERATION] = DECODE_PHY;
+        EID_EXT_DECODE_GROUP[ScanResult.InformationElement.EID_EXT_EHT_CAPABILITIES] =
+                DECODE_PHY;
+        EID_EXT_DECODE_GROUP[ScanResult.InformationElement.EID_EXT_MULTI_LINK] = DECODE_MLO;
+    }
+
     public NetworkDetail(String bssid, ScanResult.InformationElement[] infoElements,
             List<String> anqpLines, int freq) {
+        this(bssid, infoElements, anqpLines, freq, DECODE_ALL, null);
+    }
+
+    /**
+     * Build the network detail from the Information Elements in a single traversal.
+     *
+     * @param decodeMask bitmask of DECODE_* groups to decode. Elements of the groups not in the
+     *                   mask are skipped and the corresponding attributes keep their defaults.
+     * @param capabilities if not null, also fed every element in the same traversal. It must
+     *                     have been initialized with
+     *                     {@link InformationElementUtil.Capabilities#init(int, boolean, int)}.
+     */
+    public NetworkDetail(String bssid, ScanResult.InformationElement[] infoElements,
+            List<String> anqpLines, int freq, int decodeMask,
+            InformationElementUtil.Capabilities capabilities) {
         if (infoElements == null) {
             infoElements = new ScanResult.InformationElement[0];
         }
@@ -193,10 +251,18 @@ public class NetworkDetail {
 
         RuntimeException exception = null;
 
-        ArrayList<Integer> iesFound = new ArrayList<Integer>();
+        boolean foundErp = false;
+        int ieIndex = 0;
         try {
-            for (ScanResult.InformationElement ie : infoElements) {
-                iesFound.add(ie.id);
+            for (; ieIndex < infoElements.length; ieIndex++) {
+                ScanResult.InformationElement ie = infoElements[ieIndex];
+                if (capabilities != null) {
+                    capabilities.parseElement(ie);
+                }
+                int decodeGroup = getDecodeGroup(ie);
+                if ((decodeGroup & decodeMask) != decodeGroup) {
+                    continue;
+                }
                 switch (ie.id) {
                     case ScanResult.InformationElement.EID_SSID:
                         ssidOctets = ie.bytes;
@@ -243,6 +309,9 @@ public class NetworkDetail {
                     case ScanResult.InformationElement.EID_RNR:
                         rnr.from(ie);
                         break;
+                    case ScanResult.InformationElement.EID_ERP:
+                        foundErp = true;
+                        break;
                     case ScanResult.InformationElement.EID_EXTENSION_PRESENT:
                         switch(ie.idExt) {
                             case ScanResult.InformationElement.EID_EXT_HE_OPERATION:
@@ -275,6 +344,12 @@ public class NetworkDetail {
                 throw new IllegalArgumentException("Malformed IE string (no SSID)", e);
             }
             exception = e;
+            if (capabilities != null) {
+                // The security capabilities do not depend on the remaining elements being valid.
+                for (ieIndex++; ieIndex < infoElements.length; ieIndex++) {
+                    capabilities.parseElement(infoElements[ieIndex]);
+                }
+            }
         }
         if (ssidOctets != null) {
             /*
@@ -413,8 +488,7 @@ public class NetworkDetail {
             mMaxRate = maxRateA > maxRateB ? maxRateA : maxRateB;
             mWifiMode = InformationElementUtil.WifiMode.determineMode(mPrimaryFreq, mMaxRate,
                     ehtOperation.isPresent(), heOperation.isPresent(), vhtOperation.isPresent(),
-                    htOperation.isPresent(),
-                    iesFound.contains(ScanResult.InformationElement.EID_ERP));
+                    htOperation.isPresent(), foundErp);
         } else {
             mWifiMode = 0;
             mMaxRate = 0;
@@ -458,13 +532,21 @@ public class NetworkDetail {
                     + ", HE: " + String.valueOf(heOperation.isPresent())
                     + ", VHT: " + String.valueOf(vhtOperation.isPresent())
                     + ", HT: " + String.valueOf(htOperation.isPresent())
-                    + ", ERP: " + String.valueOf(
-                    iesFound.contains(ScanResult.InformationElement.EID_ERP))
+                    + ", ERP: " + String.valueOf(foundErp)
                     + ", SupportedRates: " + supportedRates.toString()
                     + " ExtendedSupportedRates: " + extendedSupportedRates.toString());
         }
     }
 
+    private static int getDecodeGroup(ScanResult.InformationElement ie) {
+        if (ie.id == ScanResult.InformationElement.EID_EXTENSION_PRESENT) {
+            return ie.idExt >= 0 && ie.idExt < EID_EXT_DECODE_GROUP.length
+                    ? EID_EXT_DECODE_GROUP[ie.idExt] : DECODE_MANDATORY;
+        }
+        return ie.id >= 0 && ie.id < EID_DECODE_GROUP.length
+                ? EID_DECODE_GROUP[ie.id] : DECODE_MANDATORY;
+    }
+
     /**
      * Copy constructor
      */
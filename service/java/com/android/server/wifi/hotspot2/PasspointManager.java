@@ -106,6 +106,8 @@ import java.util.stream.Collectors;
  */
 public class PasspointManager {
     private static final String TAG = "PasspointManager";
+    // Minimum interval between two writes of the ANQP cache to the store.
+    private static final long ANQP_CACHE_SAVE_INTERVAL_MILLISECONDS = 600_000L;
 
     /**
      * Handle for the current {@link PasspointManager} instance.  This is needed to avoid
@@ -124,6 +126,8 @@ public class PasspointManager {
     private final PasspointObjectFactory mObjectFactory;
 
     private final Map<String, PasspointProvider> mProviders;
+    private final PasspointProviderMatchIndex mProviderMatchIndex =
+            new PasspointProviderMatchIndex();
     private final AnqpCache mAnqpCache;
     private final ANQPRequestManager mAnqpRequestManager;
     private final WifiConfigManager mWifiConfigManager;
@@ -144,6 +148,7 @@ public class PasspointManager {
 
     // Counter used for assigning unique identifier to each provider.
     private long mProviderIndex;
+    private long mLastAnqpCacheSaveTime;
     private boolean mVerboseLoggingEnabled = false;
     private boolean mEnabled;
 
@@ -210,9 +215,13 @@ public class PasspointManager {
         @Override
         public void setProviders(List<PasspointProvider> providers) {
             mProviders.clear();
+            mProviderMatchIndex.clear();
             for (PasspointProvider provider : providers) {
                 provider.enableVerboseLogging(mVerboseLoggingEnabled);
+                // The updated carrier ID is saved with the next store write.
+                provider.tryUpdateCarrierId();
                 mProviders.put(provider.getConfig().getUniqueId(), provider);
+                mProviderMatchIndex.addProvider(provider);
                 if (provider.getPackageName() != null) {
                     startTrackingAppOpsChange(provider.getPackageName(),
                             provider.getCreatorUid());
@@ -237,6 +246,33 @@ public class PasspointManager {
         }
     }
 
+    /**
+     * Data provider for the ANQP cache store data {@link AnqpCacheStoreData}.
+     */
+    private class AnqpCacheDataSourceHandler implements AnqpCacheStoreData.DataSource {
+        @Override
+        public Map<ANQPNetworkKey, ANQPData> getAnqpEntries() {
+            if (!isAnqpCachePersistenceEnabled()) {
+                return Collections.emptyMap();
+            }
+            return mAnqpCache.getSnapshot();
+        }
+
+        @Override
+        public void restoreAnqpEntry(ANQPNetworkKey key,
+                Map<Constants.ANQPElementType, ANQPElement> anqpElements, long expiryTime) {
+            if (!isAnqpCachePersistenceEnabled()) {
+                return;
+            }
+            mAnqpCache.restoreEntry(key, anqpElements, expiryTime);
+        }
+
+        @Override
+        public boolean hasNewAnqpEntries() {
+            return isAnqpCachePersistenceEnabled() && mAnqpCache.hasChangedSinceSnapshot();
+        }
+    }
+
     /**
      * Listener for app-ops changes for apps to remove the corresponding Passpoint profiles.
      */
@@ -373,10 +409,14 @@ public class PasspointManager {
         mWifiMetrics = wifiMetrics;
         mProviderIndex = 0;
         mWifiCarrierInfoManager = wifiCarrierInfoManager;
+        mWifiCarrierInfoManager.addOnActiveSubscriptionsChangedListener(
+                this::updateCarrierIdForProviders);
         wifiConfigStore.registerStoreData(objectFactory.makePasspointConfigUserStoreData(
                 mKeyStore, mWifiCarrierInfoManager, new UserDataSourceHandler(), clock));
         wifiConfigStore.registerStoreData(objectFactory.makePasspointConfigSharedStoreData(
                 new SharedDataSourceHandler()));
+        wifiConfigStore.registerStoreData(objectFactory.makeAnqpCacheStoreData(
+                new AnqpCacheDataSourceHandler(), clock));
         mPasspointProvisioner = objectFactory.makePasspointProvisioner(context, wifiNative,
                 this, wifiMetrics);
         mAppOps = (AppOpsManager) context.getSystemService(Context.APP_OPS_SERVICE);
@@ -536,6 +576,7 @@ public class PasspointManager {
                     + " and unique ID: " + config.getUniqueId());
             old.uninstallCertsAndKeys();
             mProviders.remove(config.getUniqueId());
+            mProviderMatchIndex.removeProvider(old);
             // Keep the user connect choice and AnonymousIdentity
             newProvider.setUserConnectChoice(old.getConnectChoice(), old.getConnectChoiceRssi());
             newProvider.setAnonymousIdentity(old.getAnonymousIdentity());
@@ -551,6 +592,7 @@ public class PasspointManager {
         }
         newProvider.enableVerboseLogging(mVerboseLoggingEnabled);
         mProviders.put(config.getUniqueId(), newProvider);
+        mProviderMatchIndex.addProvider(newProvider);
         mWifiConfigManager.saveToStore(true /* forceWrite */);
         if (!isFromSuggestion && newProvider.getPackageName() != null) {
             startTrackingAppOpsChange(newProvider.getPackageName(), uid);
@@ -598,6 +640,7 @@ public class PasspointManager {
         }
         String uniqueId = provider.getConfig().getUniqueId();
         mProviders.remove(uniqueId);
+        mProviderMatchIndex.removeProvider(provider);
         mWifiConfigManager.removeConnectChoiceFromAllNetworks(uniqueId);
         mWifiConfigManager.saveToStore(true /* forceWrite */);
 
@@ -849,6 +892,22 @@ public class PasspointManager {
         return allMatches;
     }
 
+    /**
+     * Update the carrier ID of the providers, which may only change when the active subscriptions
+     * change.
+     */
+    private void updateCarrierIdForProviders() {
+        boolean anyProviderUpdated = false;
+        for (PasspointProvider provider : mProviders.values()) {
+            if (provider.tryUpdateCarrierId()) {
+                anyProviderUpdated = true;
+            }
+        }
+        if (anyProviderUpdated) {
+            mWifiConfigManager.saveToStore(true);
+        }
+    }
+
     /**
      * Return a list of all providers that can provide service through the given AP.
      *
@@ -897,11 +956,13 @@ public class PasspointManager {
             Log.d(TAG, "ANQP entry not found for: " + anqpKey);
             return allMatches;
         }
-        boolean anyProviderUpdated = false;
+        // Only match the providers which could match the AP, in the order of mProviders.
+        Set<PasspointProvider> candidateProviders = mProviderMatchIndex.getCandidateProviders(
+                anqpEntry.getElements(), roamingConsortium);
         for (Map.Entry<String, PasspointProvider> entry : mProviders.entrySet()) {
             PasspointProvider provider = entry.getValue();
-            if (provider.tryUpdateCarrierId()) {
-                anyProviderUpdated = true;
+            if (!candidateProviders.contains(provider)) {
+                continue;
             }
             if (mVerboseLoggingEnabled) {
                 Log.d(TAG, "Matching provider " + provider.getConfig().getHomeSp().getFqdn()
@@ -915,9 +976,6 @@ public class PasspointManager {
                 allMatches.add(Pair.create(provider, matchStatus));
             }
         }
-        if (anyProviderUpdated) {
-            mWifiConfigManager.saveToStore(true);
-        }
         if (allMatches.size() != 0) {
             for (Pair<PasspointProvider, PasspointMatch> match : allMatches) {
                 Log.d(TAG, String.format("Matched %s to %s as %s", scanResult.SSID,
@@ -958,6 +1016,45 @@ public class PasspointManager {
      */
     public void sweepCache() {
         mAnqpCache.sweep();
+        // Persist the new ANQP entries with the next buffered write of the store.
+        long now = mClock.getElapsedSinceBootMillis();
+        if (mAnqpCache.hasChangedSinceSnapshot() && isAnqpCachePersistenceEnabled()
+                && now - mLastAnqpCacheSaveTime >= ANQP_CACHE_SAVE_INTERVAL_MILLISECONDS) {
+            mLastAnqpCacheSaveTime = now;
+            mWifiConfigManager.saveToStore(false);
+        }
+    }
+
+    private boolean isAnqpCachePersistenceEnabled() {
+        return mWifiInjector.getWifiGlobals().isAnqpCachePersistenceEnabled();
+    }
+
+    /**
+     * Get the number of lookups in the ANQP cache which found an entry, since boot.
+     */
+    public long getAnqpCacheHitCount() {
+        return mAnqpCache.getHitCount();
+    }
+
+    /**
+     * Get the number of lookups in the ANQP cache which did not find an entry, since boot.
+     */
+    public long getAnqpCacheMissCount() {
+        return mAnqpCache.getMissCount();
+    }
+
+    /**
+     * Get the number of entries evicted from the ANQP cache because it was full, since boot.
+     */
+    public long getAnqpCacheEvictionCount() {
+        return mAnqpCache.getEvictionCount();
+    }
+
+    /**
+     * Dump the hit, miss and eviction counters of the ANQP cache.
+     */
+    public void dumpAnqpCacheCounters(PrintWriter pw) {
+        mAnqpCache.dumpCounters(pw);
     }
 
     /**
@@ -1296,6 +1393,7 @@ public class PasspointManager {
                 enterpriseConfig.getClientCertificateAlias(), null, false, false, mClock);
         provider.enableVerboseLogging(mVerboseLoggingEnabled);
         mProviders.put(passpointConfig.getUniqueId(), provider);
+        mProviderMatchIndex.addProvider(provider);
         return true;
     }
 
@@ -1344,17 +1442,52 @@ public class PasspointManager {
     public List<ScanResult> getMatchingScanResults(
             @NonNull PasspointConfiguration passpointConfiguration,
             @NonNull List<ScanResult> scanResults) {
-        PasspointProvider provider = mObjectFactory.makePasspointProvider(passpointConfiguration,
-                null, mWifiCarrierInfoManager, 0, 0, null, false, mClock);
-        List<ScanResult> filteredScanResults = new ArrayList<>();
+        return getMatchingScanResults(Collections.singletonList(passpointConfiguration),
+                scanResults).get(passpointConfiguration);
+    }
+
+    /**
+     * Get the filtered ScanResults which could be served by each of the
+     * {@link PasspointConfiguration}s. The ANQP elements and the roaming consortium of every
+     * ScanResult are only looked up once for all the configurations.
+     * @param passpointConfigurations The list of {@link PasspointConfiguration}
+     * @param scanResults The list of {@link ScanResult}
+     * @return The filtered ScanResults for each of the configurations
+     */
+    @NonNull
+    public Map<PasspointConfiguration, List<ScanResult>> getMatchingScanResults(
+            @NonNull List<PasspointConfiguration> passpointConfigurations,
+            @NonNull List<ScanResult> scanResults) {
+        Map<PasspointConfiguration, List<ScanResult>> filteredScanResults = new HashMap<>();
+        if (passpointConfigurations.isEmpty()) {
+            return filteredScanResults;
+        }
+        List<Map<Constants.ANQPElementType, ANQPElement>> anqpElementsList =
+                new ArrayList<>(scanResults.size());
+        List<InformationElementUtil.RoamingConsortium> roamingConsortiums =
+                new ArrayList<>(scanResults.size());
         for (ScanResult scanResult : scanResults) {
-            PasspointMatch matchInfo = provider.match(getANQPElements(scanResult),
-                    InformationElementUtil.getRoamingConsortiumIE(scanResult.informationElements),
-                    scanResult);
-            if (matchInfo == PasspointMatch.HomeProvider
-                    || matchInfo == PasspointMatch.RoamingProvider) {
-                filteredScanResults.add(scanResult);
+            anqpElementsList.add(getANQPElements(scanResult));
+            roamingConsortiums.add(
+                    InformationElementUtil.getRoamingConsortiumIE(scanResult.informationElements));
+        }
+        for (PasspointConfiguration passpointConfiguration : passpointConfigurations) {
+            if (filteredScanResults.containsKey(passpointConfiguration)) {
+                continue;
+            }
+            PasspointProvider provider = mObjectFactory.makePasspointProvider(
+                    passpointConfiguration, null, mWifiCarrierInfoManager, 0, 0, null, false,
+                    mClock);
+            List<ScanResult> matchingScanResults = new ArrayList<>();
+            for (int i = 0; i < scanResults.size(); i++) {
+                PasspointMatch matchInfo = provider.match(anqpElementsList.get(i),
+                        roamingConsortiums.get(i), scanResults.get(i));
+                if (matchInfo == PasspointMatch.HomeProvider
+                        || matchInfo == PasspointMatch.RoamingProvider) {
+                    matchingScanResults.add(scanResults.get(i));
+                }
             }
+            filteredScanResults.put(passpointConfiguration, matchingScanResults);
         }
 
         return filteredScanResults;
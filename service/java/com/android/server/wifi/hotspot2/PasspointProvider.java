@@ -385,6 +385,33 @@ public class PasspointProvider {
         }
     }
 
+    /**
+     * Get the values which can lead this provider to match an AP in {@link #match}, so that an AP
+     * is only matched against the providers which could match it.
+     *
+     * @return the values, or null if the provider may match an AP without any of them, so must
+     * always be matched.
+     */
+    public @Nullable PasspointProviderMatchIndex.Keys getMatchIndexKeys() {
+        if (mConfig.getCredential().getSimCredential() != null) {
+            // SIM credentials also match the MCC-MNC of the 3GPP networks advertised by the AP.
+            return null;
+        }
+        PasspointProviderMatchIndex.Keys keys = new PasspointProviderMatchIndex.Keys();
+        HomeSp homeSp = mConfig.getHomeSp();
+        keys.addDomain(homeSp.getFqdn());
+        if (homeSp.getOtherHomePartners() != null) {
+            for (String otherHomePartner : homeSp.getOtherHomePartners()) {
+                keys.addDomain(otherHomePartner);
+            }
+        }
+        keys.addDomain(mConfig.getCredential().getRealm());
+        keys.addOis(homeSp.getMatchAllOis());
+        keys.addOis(homeSp.getMatchAnyOis());
+        keys.addOis(homeSp.getRoamingConsortiumOis());
+        return keys;
+    }
+
     /**
      * Try to update the carrier ID according to the IMSI parameter of passpoint configuration.
      *
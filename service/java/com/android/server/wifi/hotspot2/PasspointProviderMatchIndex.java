@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.hotspot2;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.text.TextUtils;
+import android.util.ArraySet;
+
+import com.android.server.wifi.hotspot2.anqp.ANQPElement;
+import com.android.server.wifi.hotspot2.anqp.Constants.ANQPElementType;
+import com.android.server.wifi.hotspot2.anqp.DomainNameElement;
+import com.android.server.wifi.hotspot2.anqp.NAIRealmData;
+import com.android.server.wifi.hotspot2.anqp.NAIRealmElement;
+import com.android.server.wifi.hotspot2.anqp.RoamingConsortiumElement;
+import com.android.server.wifi.util.InformationElementUtil.RoamingConsortium;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of the installed {@link PasspointProvider}s by the values which can lead them to match
+ * an AP: the domains of their FQDN, Other Home Partners and credential realm, and their roaming
+ * consortium OIs. This is used to only match an AP against the providers which could match it,
+ * see {@link PasspointProvider#match}.
+ */
+public class PasspointProviderMatchIndex {
+    /**
+     * Values of a provider used to index it, see {@link PasspointProvider#getMatchIndexKeys()}.
+     */
+    public static final class Keys {
+        private final Set<String> mDomains = new ArraySet<>();
+        private final Set<Long> mOis = new ArraySet<>();
+
+        /**
+         * Add a domain which matches an AP advertising this domain or any of its sub-domains.
+         */
+        public void addDomain(@Nullable String domain) {
+            if (TextUtils.isEmpty(domain)) {
+                return;
+            }
+            List<String> labels = Utils.splitDomain(domain);
+            mDomains.add(getDomainKey(labels, labels.size()));
+        }
+
+        /**
+         * Add roaming consortium OIs which match an AP advertising any of them.
+         */
+        public void addOis(@Nullable long[] ois) {
+            if (ois == null) {
+                return;
+            }
+            for (long oi : ois) {
+                mOis.add(oi);
+            }
+        }
+    }
+
+    private final Map<String, Set<PasspointProvider>> mProvidersByDomain = new HashMap<>();
+    private final Map<Long, Set<PasspointProvider>> mProvidersByOi = new HashMap<>();
+    // Providers which may match an AP without any of the indexed values, always candidates.
+    private final Set<PasspointProvider> mUnindexedProviders = new ArraySet<>();
+    private final Map<PasspointProvider, Keys> mKeysByProvider = new HashMap<>();
+
+    /**
+     * Add a provider to the index.
+     */
+    public void addProvider(@NonNull PasspointProvider provider) {
+        removeProvider(provider);
+        Keys keys = provider.getMatchIndexKeys();
+        if (keys == null) {
+            mUnindexedProviders.add(provider);
+            return;
+        }
+        mKeysByProvider.put(provider, keys);
+        for (String domain : keys.mDomains) {
+            mProvidersByDomain.computeIfAbsent(domain, k -> new ArraySet<>()).add(provider);
+        }
+        for (long oi : keys.mOis) {
+            mProvidersByOi.computeIfAbsent(oi, k -> new ArraySet<>()).add(provider);
+        }
+    }
+
+    /**
+     * Remove a provider from the index.
+     */
+    public void removeProvider(@NonNull PasspointProvider provider) {
+        if (mUnindexedProviders.remove(provider)) {
+            return;
+        }
+        Keys keys = mKeysByProvider.remove(provider);
+        if (keys == null) {
+            return;
+        }
+        for (String domain : keys.mDomains) {
+            removeFromIndex(mProvidersByDomain, domain, provider);
+        }
+        for (long oi : keys.mOis) {
+            removeFromIndex(mProvidersByOi, oi, provider);
+        }
+    }
+
+    /**
+     * Remove all the providers from the index.
+     */
+    public void clear() {
+        mProvidersByDomain.clear();
+        mProvidersByOi.clear();
+        mUnindexedProviders.clear();
+        mKeysByProvider.clear();
+    }
+
+    /**
+     * Get the providers which could match an AP with the given ANQP elements and Roaming
+     * Consortium information element.
+     *
+     * @param anqpElements ANQP elements from the AP
+     * @param roamingConsortiumFromAp Roaming Consortium information element from the AP
+     * @return the candidate providers, a superset of the providers matching the AP
+     */
+    public @NonNull Set<PasspointProvider> getCandidateProviders(
+            @Nullable Map<ANQPElementType, ANQPElement> anqpElements,
+            @Nullable RoamingConsortium roamingConsortiumFromAp) {
+        Set<PasspointProvider> candidates = new ArraySet<>(mUnindexedProviders);
+        if (anqpElements != null) {
+            DomainNameElement domainNameElement =
+                    (DomainNameElement) anqpElements.get(ANQPElementType.ANQPDomName);
+            if (domainNameElement != null) {
+                for (String domain : domainNameElement.getDomains()) {
+                    addProvidersForDomain(domain, candidates);
+                }
+            }
+            NAIRealmElement naiRealmElement =
+                    (NAIRealmElement) anqpElements.get(ANQPElementType.ANQPNAIRealm);
+            if (naiRealmElement != null) {
+                for (NAIRealmData realmData : naiRealmElement.getRealmDataList()) {
+                    for (String realm : realmData.getRealms()) {
+                        addProvidersForDomain(realm, candidates);
+                    }
+                }
+            }
+            RoamingConsortiumElement roamingConsortiumElement = (RoamingConsortiumElement)
+                    anqpElements.get(ANQPElementType.ANQPRoamingConsortium);
+            if (roamingConsortiumElement != null) {
+                for (long oi : roamingConsortiumElement.getOIs()) {
+                    addAll(mProvidersByOi.get(oi), candidates);
+                }
+            }
+        }
+        if (roamingConsortiumFromAp != null
+                && roamingConsortiumFromAp.getRoamingConsortiums() != null) {
+            for (long oi : roamingConsortiumFromAp.getRoamingConsortiums()) {
+                addAll(mProvidersByOi.get(oi), candidates);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Add the providers with a domain matching the given domain, i.e. the given domain is the
+     * same or a sub-domain of the provider domain. See
+     * {@link DomainMatcher#arg2SubdomainOfArg1(String, String)}.
+     */
+    private void addProvidersForDomain(@Nullable String domain,
+            @NonNull Set<PasspointProvider> candidates) {
+        if (TextUtils.isEmpty(domain) || mProvidersByDomain.isEmpty()) {
+            return;
+        }
+        List<String> labels = Utils.splitDomain(domain);
+        for (int numLabels = 1; numLabels <= labels.size(); numLabels++) {
+            addAll(mProvidersByDomain.get(getDomainKey(labels, numLabels)), candidates);
+        }
+    }
+
+    private static void addAll(@Nullable Set<PasspointProvider> providers,
+            @NonNull Set<PasspointProvider> candidates) {
+        if (providers != null) {
+            candidates.addAll(providers);
+        }
+    }
+
+    private static <K> void removeFromIndex(@NonNull Map<K, Set<PasspointProvider>> index,
+            @NonNull K key, @NonNull PasspointProvider provider) {
+        Set<PasspointProvider> providers = index.get(key);
+        if (providers == null) {
+            return;
+        }
+        providers.remove(provider);
+        if (providers.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    /**
+     * Get the key of the domain made of the first labels, from the top-level domain, of the
+     * labels returned by {@link Utils#splitDomain(String)}.
+     */
+    private static String getDomainKey(@NonNull List<String> labels, int numLabels) {
+        return String.join(".", labels.subList(0, numLabels));
+    }
+}
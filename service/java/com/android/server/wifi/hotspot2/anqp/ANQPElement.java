@@ -5,6 +5,8 @@ package com.android.server.wifi.hotspot2.anqp;
  */
 public abstract class ANQPElement {
     private final Constants.ANQPElementType mID;
+    // Raw payload the element was parsed from, if any, see ANQPParser#parseElementPayload().
+    private byte[] mPayload;
 
     protected ANQPElement(Constants.ANQPElementType id) {
         mID = id;
@@ -13,4 +15,17 @@ public abstract class ANQPElement {
     public Constants.ANQPElementType getID() {
         return mID;
     }
+
+    /**
+     * Get the raw payload this element was parsed from.
+     *
+     * @return the payload, or null if the element was not parsed from a payload
+     */
+    public byte[] getPayload() {
+        return mPayload;
+    }
+
+    void setPayload(byte[] payload) {
+        mPayload = payload;
+    }
 }
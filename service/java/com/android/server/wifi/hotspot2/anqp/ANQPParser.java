@@ -23,6 +23,7 @@ import java.net.ProtocolException;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.Arrays;
 
 /**
  * Factory to build a collection of 802.11u ANQP elements from a byte buffer.
@@ -104,6 +105,40 @@ public class ANQPParser {
         }
     }
 
+    /**
+     * Parse an ANQP or Hotspot 2.0 ANQP element from its raw payload. The payload is kept in the
+     * returned element, see {@link ANQPElement#getPayload()}, so that parsing it again with the
+     * type of the element ({@link ANQPElement#getID()}) returns the same element.
+     *
+     * Note: A Vendor Specific element is parsed into the Hotspot 2.0 element it contains, so the
+     * payload kept for it is the one of the Hotspot 2.0 element, without the vendor specific
+     * header.
+     *
+     * @param infoID The ANQP element type
+     * @param payload The raw payload of the element
+     * @return {@link com.android.server.wifi.hotspot2.anqp.ANQPElement}
+     * @throws BufferUnderflowException
+     * @throws ProtocolException
+     */
+    public static ANQPElement parseElementPayload(Constants.ANQPElementType infoID,
+            byte[] payload) throws ProtocolException {
+        ANQPElement element;
+        if (infoID == Constants.ANQPElementType.ANQPVendorSpec) {
+            ByteBuffer buffer = ByteBuffer.wrap(payload);
+            Constants.ANQPElementType hs20ID = parseVendorSpecificHeader(buffer);
+            payload = Arrays.copyOfRange(payload, buffer.position(), payload.length);
+            element = parseHS20Element(hs20ID, ByteBuffer.wrap(payload));
+        } else if (Constants.getANQPElementID(infoID) != null) {
+            element = parseElement(infoID, ByteBuffer.wrap(payload));
+        } else {
+            element = parseHS20Element(infoID, ByteBuffer.wrap(payload));
+        }
+        if (element != null) {
+            element.setPayload(payload);
+        }
+        return element;
+    }
+
     /**
      * Parse the ANQP vendor specific element.  Currently only supports the vendor specific
      * element that contained Hotspot 2.0 ANQP-element.
@@ -119,6 +154,20 @@ public class ANQPParser {
      */
     private static ANQPElement parseVendorSpecificElement(ByteBuffer payload)
             throws ProtocolException {
+        return parseHS20Element(parseVendorSpecificHeader(payload), payload);
+    }
+
+    /**
+     * Parse the header of an ANQP vendor specific element, leaving the buffer at the start of
+     * the contained Hotspot 2.0 ANQP-element.
+     *
+     * @param payload The buffer to read from
+     * @return The type of the contained Hotspot 2.0 ANQP-element
+     * @throws BufferUnderflowException
+     * @throws ProtocolException
+     */
+    private static Constants.ANQPElementType parseVendorSpecificHeader(ByteBuffer payload)
+            throws ProtocolException {
         int oi = (int) ByteBufferReader.readInteger(payload, ByteOrder.BIG_ENDIAN, 3);
         int type = payload.get() & 0xFF;
 
@@ -132,6 +181,6 @@ public class ANQPParser {
             throw new ProtocolException("Unsupported subtype: " + subType);
         }
         payload.get();     // Skip the reserved byte
-        return parseHS20Element(hs20ID, payload);
+        return hs20ID;
     }
 }
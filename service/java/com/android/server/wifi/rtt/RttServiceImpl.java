@@ -72,11 +72,15 @@ import java.io.FileDescriptor;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Implementation of the IWifiRttManager AIDL interface and of the RttService state manager.
@@ -96,6 +100,7 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
     private ActivityManager mActivityManager;
     private PowerManager mPowerManager;
     private int mBackgroundProcessExecGapMs;
+    private boolean mBatchRangingRequestsEnabled;
     private long mLastRequestTimestamp;
 
     private RttServiceSynchronized mRttServiceSynchronized;
@@ -286,6 +291,8 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
 
             mBackgroundProcessExecGapMs = mContext.getResources().getInteger(
                     R.integer.config_wifiRttBackgroundExecGapMs);
+            mBatchRangingRequestsEnabled = mContext.getResources().getBoolean(
+                    R.bool.config_wifiRttBatchRangingRequestsEnabled);
 
             intentFilter = new IntentFilter();
             intentFilter.addAction(LocationManager.MODE_CHANGED_ACTION);
@@ -589,31 +596,64 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
 
         private void cancelRanging(RttRequestInfo rri) {
             ArrayList<byte[]> macAddresses = new ArrayList<>();
-            for (ResponderConfig peer : rri.request.mRttPeers) {
-                macAddresses.add(peer.macAddress.toByteArray());
+            Set<MacAddress> cancelledPeers = new HashSet<>();
+            for (RttRequestInfo dispatchedRri : getDispatchedRequests(rri)) {
+                for (ResponderConfig peer : dispatchedRri.request.mRttPeers) {
+                    if (cancelledPeers.add(peer.macAddress)) {
+                        macAddresses.add(peer.macAddress.toByteArray());
+                    }
+                }
             }
 
             mRttNative.rangeCancel(rri.cmdId, macAddresses);
         }
 
+        /**
+         * Get the requests dispatched to the HAL in the same command as the given request: the
+         * request itself followed by the requests batched with it.
+         */
+        private List<RttRequestInfo> getDispatchedRequests(RttRequestInfo rri) {
+            if (rri.batchedRequests.isEmpty()) {
+                return Collections.singletonList(rri);
+            }
+            List<RttRequestInfo> dispatchedRequests = new ArrayList<>();
+            dispatchedRequests.add(rri);
+            dispatchedRequests.addAll(rri.batchedRequests);
+            return dispatchedRequests;
+        }
+
+        /**
+         * Remove the requests batched with the given request, e.g. once the results of the
+         * command are delivered or the command failed.
+         */
+        private void clearBatchedRequests(RttRequestInfo rri) {
+            for (RttRequestInfo batchedRri : rri.batchedRequests) {
+                batchedRri.binder.unlinkToDeath(batchedRri.dr, 0);
+            }
+            rri.batchedRequests.clear();
+        }
+
         private void cleanUpOnDisable() {
             if (VDBG) Log.v(TAG, "RttServiceSynchronized.cleanUpOnDisable");
             for (RttRequestInfo rri : mRttRequestQueue) {
-                try {
-                    if (rri.dispatchedToNative) {
-                        // may not be necessary in some cases (e.g. Wi-Fi disable may already clear
-                        // up active RTT), but in other cases will be needed (doze disabling RTT
-                        // but Wi-Fi still up). Doesn't hurt - worst case will fail.
-                        cancelRanging(rri);
+                if (rri.dispatchedToNative) {
+                    // may not be necessary in some cases (e.g. Wi-Fi disable may already clear
+                    // up active RTT), but in other cases will be needed (doze disabling RTT
+                    // but Wi-Fi still up). Doesn't hurt - worst case will fail.
+                    cancelRanging(rri);
+                }
+                for (RttRequestInfo dispatchedRri : getDispatchedRequests(rri)) {
+                    try {
+                        mRttMetrics.recordOverallStatus(
+                                WifiMetricsProto.WifiRttLog.OVERALL_RTT_NOT_AVAILABLE);
+                        dispatchedRri.callback.onRangingFailure(
+                                RangingResultCallback.STATUS_CODE_FAIL_RTT_NOT_AVAILABLE);
+                    } catch (RemoteException e) {
+                        Log.e(TAG, "RttServiceSynchronized.startRanging: disabled, callback "
+                                + "failed -- " + e);
                     }
-                    mRttMetrics.recordOverallStatus(
-                            WifiMetricsProto.WifiRttLog.OVERALL_RTT_NOT_AVAILABLE);
-                    rri.callback.onRangingFailure(
-                            RangingResultCallback.STATUS_CODE_FAIL_RTT_NOT_AVAILABLE);
-                } catch (RemoteException e) {
-                    Log.e(TAG, "RttServiceSynchronized.startRanging: disabled, callback failed -- "
-                            + e);
                 }
+                clearBatchedRequests(rri);
                 rri.binder.unlinkToDeath(rri.dr, 0);
             }
             mRttRequestQueue.clear();
@@ -638,18 +678,28 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
             while (it.hasNext()) {
                 RttRequestInfo rri = it.next();
 
-                boolean match = rri.uid == uid; // original UID will never be 0
-                if (rri.workSource != null && workSource != null) {
-                    rri.workSource.remove(workSource);
-                    if (rri.workSource.isEmpty()) {
-                        match = true;
+                ListIterator<RttRequestInfo> batchedIt = rri.batchedRequests.listIterator();
+                while (batchedIt.hasNext()) {
+                    RttRequestInfo batchedRri = batchedIt.next();
+                    if (isClientRequest(batchedRri, uid, workSource)) {
+                        batchedIt.remove();
+                        batchedRri.binder.unlinkToDeath(batchedRri.dr, 0);
                     }
                 }
 
-                if (match) {
+                if (isClientRequest(rri, uid, workSource)) {
                     if (!rri.dispatchedToNative) {
                         it.remove();
                         rri.binder.unlinkToDeath(rri.dr, 0);
+                    } else if (!rri.batchedRequests.isEmpty()) {
+                        // other requests are batched in the same HAL command: keep it running on
+                        // their behalf, the results of the removed request are simply dropped
+                        RttRequestInfo promotedRri = rri.batchedRequests.remove(0);
+                        promotedRri.cmdId = rri.cmdId;
+                        promotedRri.dispatchedToNative = true;
+                        promotedRri.batchedRequests.addAll(rri.batchedRequests);
+                        it.set(promotedRri);
+                        rri.binder.unlinkToDeath(rri.dr, 0);
                     } else {
                         dispatchedRequestAborted = true;
                         Log.d(TAG, "Client death - cancelling RTT operation in progress: cmdId="
@@ -671,6 +721,22 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
             }
         }
 
+        /**
+         * Returns true if the request belongs to the specified client, see
+         * {@link #cleanUpClientRequests(int, WorkSource)}. The workSource specification is
+         * cleared from the request's workSource.
+         */
+        private boolean isClientRequest(RttRequestInfo rri, int uid, WorkSource workSource) {
+            boolean match = rri.uid == uid; // original UID will never be 0
+            if (rri.workSource != null && workSource != null) {
+                rri.workSource.remove(workSource);
+                if (rri.workSource.isEmpty()) {
+                    match = true;
+                }
+            }
+            return match;
+        }
+
         private void timeoutRangingRequest() {
             if (VDBG) {
                 Log.v(TAG, "RttServiceSynchronized.timeoutRangingRequest mRttRequestQueue="
@@ -687,12 +753,16 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
                 return;
             }
             cancelRanging(rri);
-            try {
-                mRttMetrics.recordOverallStatus(WifiMetricsProto.WifiRttLog.OVERALL_TIMEOUT);
-                rri.callback.onRangingFailure(RangingResultCallback.STATUS_CODE_FAIL);
-            } catch (RemoteException e) {
-                Log.e(TAG, "RttServiceSynchronized.timeoutRangingRequest: callback failed: " + e);
+            for (RttRequestInfo dispatchedRri : getDispatchedRequests(rri)) {
+                try {
+                    mRttMetrics.recordOverallStatus(WifiMetricsProto.WifiRttLog.OVERALL_TIMEOUT);
+                    dispatchedRri.callback.onRangingFailure(RangingResultCallback.STATUS_CODE_FAIL);
+                } catch (RemoteException e) {
+                    Log.e(TAG, "RttServiceSynchronized.timeoutRangingRequest: callback failed: "
+                            + e);
+                }
             }
+            clearBatchedRequests(rri);
             executeNextRangingRequestIfPossible(true);
         }
 
@@ -741,18 +811,20 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
 
             SparseIntArray counts = new SparseIntArray();
 
-            for (RttRequestInfo rri : mRttRequestQueue) {
-                for (int i = 0; i < rri.workSource.size(); ++i) {
-                    int uid = rri.workSource.getUid(i);
-                    counts.put(uid, counts.get(uid) + 1);
-                }
-
-                final List<WorkChain> workChains = rri.workSource.getWorkChains();
-                if (workChains != null) {
-                    for (int i = 0; i < workChains.size(); ++i) {
-                        final int uid = workChains.get(i).getAttributionUid();
+            for (RttRequestInfo queuedRri : mRttRequestQueue) {
+                for (RttRequestInfo rri : getDispatchedRequests(queuedRri)) {
+                    for (int i = 0; i < rri.workSource.size(); ++i) {
+                        int uid = rri.workSource.getUid(i);
                         counts.put(uid, counts.get(uid) + 1);
                     }
+
+                    final List<WorkChain> workChains = rri.workSource.getWorkChains();
+                    if (workChains != null) {
+                        for (int i = 0; i < workChains.size(); ++i) {
+                            final int uid = workChains.get(i).getAttributionUid();
+                            counts.put(uid, counts.get(uid) + 1);
+                        }
+                    }
                 }
             }
 
@@ -851,12 +923,17 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
                 return;
             }
 
+            RangingRequest dispatchedRequest = nextRequest.request;
+            if (mBatchRangingRequestsEnabled) {
+                dispatchedRequest = batchCompatibleRequests(nextRequest);
+            }
+
             nextRequest.cmdId = mNextCommandId++;
             mLastRequestTimestamp = mClock.getWallClockMillis();
-            if (mRttNative.rangeRequest(nextRequest.cmdId, nextRequest.request,
+            if (mRttNative.rangeRequest(nextRequest.cmdId, dispatchedRequest,
                     nextRequest.isCalledFromPrivilegedContext)) {
                 long timeout = HAL_RANGING_TIMEOUT_MS;
-                for (ResponderConfig responderConfig : nextRequest.request.mRttPeers) {
+                for (ResponderConfig responderConfig : dispatchedRequest.mRttPeers) {
                     if (responderConfig.responderType == ResponderConfig.RESPONDER_AWARE) {
                         timeout = HAL_AWARE_RANGING_TIMEOUT_MS;
                         break;
@@ -865,19 +942,90 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
                 mRangingTimeoutMessage.schedule(mClock.getElapsedSinceBootMillis() + timeout);
             } else {
                 Log.w(TAG, "RttServiceSynchronized.startRanging: native rangeRequest call failed");
-                try {
-                    mRttMetrics.recordOverallStatus(
-                            WifiMetricsProto.WifiRttLog.OVERALL_HAL_FAILURE);
-                    nextRequest.callback.onRangingFailure(RangingResultCallback.STATUS_CODE_FAIL);
-                } catch (RemoteException e) {
-                    Log.e(TAG, "RttServiceSynchronized.startRanging: HAL request failed, callback "
-                            + "failed -- " + e);
+                for (RttRequestInfo rri : getDispatchedRequests(nextRequest)) {
+                    try {
+                        mRttMetrics.recordOverallStatus(
+                                WifiMetricsProto.WifiRttLog.OVERALL_HAL_FAILURE);
+                        rri.callback.onRangingFailure(RangingResultCallback.STATUS_CODE_FAIL);
+                    } catch (RemoteException e) {
+                        Log.e(TAG, "RttServiceSynchronized.startRanging: HAL request failed, "
+                                + "callback failed -- " + e);
+                    }
                 }
+                clearBatchedRequests(nextRequest);
                 executeNextRangingRequestIfPossible(true);
             }
             nextRequest.dispatchedToNative = true;
         }
 
+        /**
+         * Move the queued requests which can be executed in the same HAL command as the request
+         * at the top of the queue to its batched requests. A request is compatible if all its
+         * peers have a MAC address (i.e. no PeerHandle translation is pending), it has the same
+         * privilege and burst size, its peers can be added without exceeding
+         * {@link RangingRequest#getMaxPeers()} and it passes the background throttling check
+         * (otherwise it is left in the queue).
+         *
+         * @return the request to dispatch to the HAL: the union of the peers of the batched
+         * requests, identical peers being only ranged once.
+         */
+        private RangingRequest batchCompatibleRequests(RttRequestInfo nextRequest) {
+            Map<MacAddress, ResponderConfig> peers = new LinkedHashMap<>();
+            for (ResponderConfig peer : nextRequest.request.mRttPeers) {
+                peers.putIfAbsent(peer.macAddress, peer);
+            }
+
+            ListIterator<RttRequestInfo> it = mRttRequestQueue.listIterator();
+            while (it.hasNext()) {
+                RttRequestInfo rri = it.next();
+                if (rri == nextRequest || !isBatchable(nextRequest, rri, peers)
+                        || !preExecThrottleCheck(rri.workSource)) {
+                    continue;
+                }
+                it.remove();
+                nextRequest.batchedRequests.add(rri);
+                for (ResponderConfig peer : rri.request.mRttPeers) {
+                    peers.putIfAbsent(peer.macAddress, peer);
+                }
+            }
+
+            if (nextRequest.batchedRequests.isEmpty()) {
+                return nextRequest.request;
+            }
+            if (VDBG) {
+                Log.v(TAG, "batchCompatibleRequests: nextRequest=" + nextRequest + ", peers="
+                        + peers.keySet());
+            }
+            RangingRequest.Builder builder = new RangingRequest.Builder();
+            for (ResponderConfig peer : peers.values()) {
+                builder.addResponder(peer);
+            }
+            return builder.setRttBurstSize(nextRequest.request.mRttBurstSize).build();
+        }
+
+        private boolean isBatchable(RttRequestInfo nextRequest, RttRequestInfo rri,
+                Map<MacAddress, ResponderConfig> peers) {
+            if (rri.dispatchedToNative || rri.peerHandlesTranslated
+                    || rri.isCalledFromPrivilegedContext
+                            != nextRequest.isCalledFromPrivilegedContext
+                    || rri.request.mRttBurstSize != nextRequest.request.mRttBurstSize) {
+                return false;
+            }
+            int numNewPeers = 0;
+            for (ResponderConfig peer : rri.request.mRttPeers) {
+                if (peer.macAddress == null) {
+                    return false;
+                }
+                ResponderConfig batchedPeer = peers.get(peer.macAddress);
+                if (batchedPeer == null) {
+                    numNewPeers++;
+                } else if (!batchedPeer.equals(peer)) {
+                    return false;
+                }
+            }
+            return peers.size() + numNewPeers <= RangingRequest.getMaxPeers();
+        }
+
         /**
          * Perform pre-execution throttling checks:
          * - If all uids in ws are in background then check last execution and block if request is
@@ -1092,51 +1240,80 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
                 return;
             }
 
-            boolean onlyAwareApRanged = topOfQueueRequest.request.mRttPeers.stream().allMatch(
+            for (RttRequestInfo rri : getDispatchedRequests(topOfQueueRequest)) {
+                deliverRangingResults(rri, results);
+            }
+            clearBatchedRequests(topOfQueueRequest);
+
+            executeNextRangingRequestIfPossible(true);
+        }
+
+        /**
+         * Deliver the results of a HAL command to one of the requests it was executing: only the
+         * results for the peers of the request are forwarded and recorded in the metrics.
+         */
+        private void deliverRangingResults(RttRequestInfo rri, List<RangingResult> halResults) {
+            boolean onlyAwareApRanged = rri.request.mRttPeers.stream().allMatch(
                     config -> config.responderType == ResponderConfig.RESPONDER_AWARE);
             boolean permissionGranted = false;
             if (onlyAwareApRanged && SdkLevel.isAtLeastT()) {
                 // Special case: if only aware APs are ranged, then allow this request if the caller
                 // has nearby permission.
                 permissionGranted = mWifiPermissionsUtil.checkNearbyDevicesPermission(
-                        topOfQueueRequest.extras.getParcelable(
+                        rri.extras.getParcelable(
                                 WifiManager.EXTRA_PARAM_KEY_ATTRIBUTION_SOURCE), true,
                         "wifi aware on ranging result");
             }
             if (!permissionGranted) {
                 permissionGranted =
                         mWifiPermissionsUtil.checkCallersLocationPermission(
-                                topOfQueueRequest.callingPackage,
-                                topOfQueueRequest.callingFeatureId,
-                                topOfQueueRequest.uid, /* coarseForTargetSdkLessThanQ */ false,
+                                rri.callingPackage, rri.callingFeatureId,
+                                rri.uid, /* coarseForTargetSdkLessThanQ */ false,
                                 null) && mWifiPermissionsUtil.isLocationModeEnabled();
             }
             try {
                 if (permissionGranted) {
-                    List<RangingResult> finalResults = postProcessResults(topOfQueueRequest.request,
-                            results, topOfQueueRequest.isCalledFromPrivilegedContext);
+                    List<RangingResult> results = getResultsForRequest(rri.request, halResults);
+                    List<RangingResult> finalResults = postProcessResults(rri.request,
+                            results, rri.isCalledFromPrivilegedContext);
                     mRttMetrics.recordOverallStatus(WifiMetricsProto.WifiRttLog.OVERALL_SUCCESS);
-                    mRttMetrics.recordResult(topOfQueueRequest.request, results,
+                    mRttMetrics.recordResult(rri.request, results,
                             (int) (mClock.getWallClockMillis() - mLastRequestTimestamp));
                     if (VDBG) {
                         Log.v(TAG, "RttServiceSynchronized.onRangingResults: finalResults="
                                 + finalResults);
                     }
-                    topOfQueueRequest.callback.onRangingResults(finalResults);
+                    rri.callback.onRangingResults(finalResults);
                 } else {
                     Log.w(TAG, "RttServiceSynchronized.onRangingResults: location permission "
                             + "revoked - not forwarding results");
                     mRttMetrics.recordOverallStatus(
                             WifiMetricsProto.WifiRttLog.OVERALL_LOCATION_PERMISSION_MISSING);
-                    topOfQueueRequest.callback.onRangingFailure(
-                            RangingResultCallback.STATUS_CODE_FAIL);
+                    rri.callback.onRangingFailure(RangingResultCallback.STATUS_CODE_FAIL);
                 }
             } catch (RemoteException e) {
                 Log.e(TAG,
                         "RttServiceSynchronized.onRangingResults: callback exception -- " + e);
             }
+        }
 
-            executeNextRangingRequestIfPossible(true);
+        /**
+         * Returns the results of a HAL command which are for the peers of the given request. The
+         * command may have been executing other requests batched with this one.
+         */
+        private List<RangingResult> getResultsForRequest(RangingRequest request,
+                List<RangingResult> halResults) {
+            Set<MacAddress> peerMacAddresses = new HashSet<>();
+            for (ResponderConfig peer : request.mRttPeers) {
+                peerMacAddresses.add(peer.macAddress);
+            }
+            List<RangingResult> results = new ArrayList<>(request.mRttPeers.size());
+            for (RangingResult result : halResults) {
+                if (result != null && peerMacAddresses.contains(result.getMacAddress())) {
+                    results.add(result);
+                }
+            }
+            return results;
         }
 
         /*
@@ -1247,6 +1424,8 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
         public int cmdId = 0; // uninitialized cmdId value
         public boolean dispatchedToNative = false;
         public boolean peerHandlesTranslated = false;
+        // requests executed in the same HAL command, only set on the request at the top of queue
+        public List<RttRequestInfo> batchedRequests = new ArrayList<>();
 
         @Override
         public String toString() {
@@ -1257,7 +1436,8 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
                     request.toString()).append(", callback=").append(callback).append(
                     ", cmdId=").append(cmdId).append(", peerHandlesTranslated=").append(
                     peerHandlesTranslated).append(", isCalledFromPrivilegedContext=").append(
-                    isCalledFromPrivilegedContext).toString();
+                    isCalledFromPrivilegedContext).append(", batchedRequests=").append(
+                    batchedRequests).toString();
         }
     }
 
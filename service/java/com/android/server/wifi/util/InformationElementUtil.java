@@ -66,45 +66,65 @@ public class InformationElementUtil {
         return parseInformationElements(HexEncoding.decode(data));
     }
 
+    /**
+     * Parses information elements from the raw buffer reported by the driver.
+     *
+     * The buffer is walked twice: once to count the elements, and once to copy them into an array
+     * of the exact size, which avoids growing an intermediate list for every scan result.
+     */
     public static InformationElement[] parseInformationElements(byte[] bytes) {
         if (bytes == null) {
             return new InformationElement[0];
         }
-        ByteBuffer data = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        InformationElement[] infoElements =
+                new InformationElement[walkInformationElements(bytes, null)];
+        walkInformationElements(bytes, infoElements);
+        return infoElements;
+    }
 
-        ArrayList<InformationElement> infoElements = new ArrayList<>();
-        boolean found_ssid = false;
-        while (data.remaining() > 1) {
-            int eid = data.get() & Constants.BYTE_MASK;
+    /**
+     * Walks the information elements of the buffer, and copies them into |out| if not null.
+     *
+     * @return the number of information elements in the buffer.
+     */
+    private static int walkInformationElements(byte[] bytes, InformationElement[] out) {
+        int count = 0;
+        int pos = 0;
+        boolean foundSsid = false;
+        while (bytes.length - pos > 1) {
+            int eid = bytes[pos++] & Constants.BYTE_MASK;
             int eidExt = 0;
-            int elementLength = data.get() & Constants.BYTE_MASK;
+            int elementLength = bytes[pos++] & Constants.BYTE_MASK;
 
-            if (elementLength > data.remaining() || (eid == InformationElement.EID_SSID
-                    && found_ssid)) {
+            if (elementLength > bytes.length - pos || (eid == InformationElement.EID_SSID
+                    && foundSsid)) {
                 // APs often pad the data with bytes that happen to match that of the EID_SSID
                 // marker.  This is not due to a known issue for APs to incorrectly send the SSID
                 // name multiple times.
                 break;
             }
             if (eid == InformationElement.EID_SSID) {
-                found_ssid = true;
+                foundSsid = true;
             } else if (eid == InformationElement.EID_EXTENSION_PRESENT) {
                 if (elementLength == 0) {
                     // Malformed IE, skipping
                     break;
                 }
-                eidExt = data.get() & Constants.BYTE_MASK;
+                eidExt = bytes[pos++] & Constants.BYTE_MASK;
                 elementLength--;
             }
 
-            InformationElement ie = new InformationElement();
-            ie.id = eid;
-            ie.idExt = eidExt;
-            ie.bytes = new byte[elementLength];
-            data.get(ie.bytes);
-            infoElements.add(ie);
+            if (out != null) {
+                InformationElement ie = new InformationElement();
+                ie.id = eid;
+                ie.idExt = eidExt;
+                ie.bytes = Arrays.copyOfRange(bytes, pos, pos + elementLength);
+                out[count] = ie;
+            }
+            count++;
+            pos += elementLength;
         }
-        return infoElements.toArray(new InformationElement[infoElements.size()]);
+        return count;
     }
 
     /**
@@ -1453,6 +1473,7 @@ public class InformationElementUtil {
         public boolean isWPS;
         public boolean isManagementFrameProtectionRequired;
         public boolean isManagementFrameProtectionCapable;
+        private boolean mIsOweSupported;
 
         public Capabilities() {
         }
@@ -1734,15 +1755,38 @@ public class InformationElementUtil {
 
         public void from(InformationElement[] ies, int beaconCap, boolean isOweSupported,
                 int freq) {
+            if (ies == null) {
+                protocol = new ArrayList<>();
+                keyManagement = new ArrayList<>();
+                groupCipher = new ArrayList<>();
+                pairwiseCipher = new ArrayList<>();
+                groupManagementCipher = new ArrayList<>();
+                return;
+            }
+            init(beaconCap, isOweSupported, freq);
+            for (InformationElement ie : ies) {
+                parseElement(ie);
+            }
+        }
+
+        /**
+         * Reset the capabilities from the 16-bit Capability Information field, before the
+         * Information Elements are fed one by one through {@link #parseElement}. This allows
+         * the capabilities to be built in the same traversal as other IE consumers, e.g.
+         * {@link NetworkDetail}.
+         *
+         * @param beaconCap      -- 16-bit Beacon Capability Information field
+         * @param isOweSupported -- Boolean flag to indicate if OWE is supported by the device
+         * @param freq           -- Frequency on which frame/beacon was transmitted.
+         */
+        public void init(int beaconCap, boolean isOweSupported, int freq) {
             protocol = new ArrayList<>();
             keyManagement = new ArrayList<>();
             groupCipher = new ArrayList<>();
             pairwiseCipher = new ArrayList<>();
             groupManagementCipher = new ArrayList<>();
+            mIsOweSupported = isOweSupported;
 
-            if (ies == null) {
-                return;
-            }
             isPrivacy = (beaconCap & NativeScanResult.BSS_CAPABILITY_PRIVACY) != 0;
             if (ScanResult.is60GHz(freq)) {
                 /* In DMG, bits 0 and 1 are parsed together, where ESS=0x3 and IBSS=0x1 */
@@ -1756,54 +1800,59 @@ public class InformationElementUtil {
                 isESS = (beaconCap & NativeScanResult.BSS_CAPABILITY_ESS) != 0;
                 isIBSS = (beaconCap & NativeScanResult.BSS_CAPABILITY_IBSS) != 0;
             }
-            for (InformationElement ie : ies) {
-                WifiNl80211Manager.OemSecurityType oemSecurityType =
-                        WifiNl80211Manager.parseOemSecurityTypeElement(
-                        ie.id, ie.idExt, ie.bytes);
-                if (oemSecurityType != null
-                        && oemSecurityType.protocol != ScanResult.PROTOCOL_NONE) {
-                    protocol.add(oemSecurityType.protocol);
-                    keyManagement.add(oemSecurityType.keyManagement);
-                    pairwiseCipher.add(oemSecurityType.pairwiseCipher);
-                    groupCipher.add(oemSecurityType.groupCipher);
-                }
+        }
 
-                if (ie.id == InformationElement.EID_RSN) {
-                    parseRsnElement(ie);
-                }
+        /**
+         * Parse a single Information Element into the capabilities. Must be called after
+         * {@link #init(int, boolean, int)}.
+         */
+        public void parseElement(InformationElement ie) {
+            WifiNl80211Manager.OemSecurityType oemSecurityType =
+                    WifiNl80211Manager.parseOemSecurityTypeElement(
+                    ie.id, ie.idExt, ie.bytes);
+            if (oemSecurityType != null
+                    && oemSecurityType.protocol != ScanResult.PROTOCOL_NONE) {
+                protocol.add(oemSecurityType.protocol);
+                keyManagement.add(oemSecurityType.keyManagement);
+                pairwiseCipher.add(oemSecurityType.pairwiseCipher);
+                groupCipher.add(oemSecurityType.groupCipher);
+            }
 
-                if (ie.id == InformationElement.EID_VSA) {
-                    if (isWpaOneElement(ie)) {
-                        parseWpaOneElement(ie);
-                    }
-                    if (isWpsElement(ie)) {
-                        // TODO(b/62134557): parse WPS IE to provide finer granularity information.
-                        isWPS = true;
-                    }
-                    if (isOweSupported && isOweElement(ie)) {
-                        /* From RFC 8110: Once the client and AP have finished 802.11 association,
-                           they then complete the Diffie-Hellman key exchange and create a Pairwise
-                           Master Key (PMK) and its associated identifier, PMKID [IEEE802.11].
-                           Upon completion of 802.11 association, the AP initiates the 4-way
-                           handshake to the client using the PMK generated above.  The 4-way
-                           handshake generates a Key-Encrypting Key (KEK), a Key-Confirmation
-                           Key (KCK), and a Message Integrity Code (MIC) to use for protection
-                           of the frames that define the 4-way handshake.
-
-                           We check if OWE is supported here because we are adding the OWE
-                           capabilities to the Open BSS. Non-supporting devices need to see this
-                           open network and ignore this element. Supporting devices need to hide
-                           the Open BSS of OWE in transition mode and connect to the Hidden one.
-                        */
-                        protocol.add(ScanResult.PROTOCOL_RSN);
-                        groupCipher.add(ScanResult.CIPHER_CCMP);
-                        ArrayList<Integer> owePairwiseCipher = new ArrayList<>();
-                        owePairwiseCipher.add(ScanResult.CIPHER_CCMP);
-                        pairwiseCipher.add(owePairwiseCipher);
-                        ArrayList<Integer> oweKeyManagement = new ArrayList<>();
-                        oweKeyManagement.add(ScanResult.KEY_MGMT_OWE_TRANSITION);
-                        keyManagement.add(oweKeyManagement);
-                    }
+            if (ie.id == InformationElement.EID_RSN) {
+                parseRsnElement(ie);
+            }
+
+            if (ie.id == InformationElement.EID_VSA) {
+                if (isWpaOneElement(ie)) {
+                    parseWpaOneElement(ie);
+                }
+                if (isWpsElement(ie)) {
+                    // TODO(b/62134557): parse WPS IE to provide finer granularity information.
+                    isWPS = true;
+                }
+                if (mIsOweSupported && isOweElement(ie)) {
+                    /* From RFC 8110: Once the client and AP have finished 802.11 association,
+                       they then complete the Diffie-Hellman key exchange and create a Pairwise
+                       Master Key (PMK) and its associated identifier, PMKID [IEEE802.11].
+                       Upon completion of 802.11 association, the AP initiates the 4-way
+                       handshake to the client using the PMK generated above.  The 4-way
+                       handshake generates a Key-Encrypting Key (KEK), a Key-Confirmation
+                       Key (KCK), and a Message Integrity Code (MIC) to use for protection
+                       of the frames that define the 4-way handshake.
+
+                       We check if OWE is supported here because we are adding the OWE
+                       capabilities to the Open BSS. Non-supporting devices need to see this
+                       open network and ignore this element. Supporting devices need to hide
+                       the Open BSS of OWE in transition mode and connect to the Hidden one.
+                    */
+                    protocol.add(ScanResult.PROTOCOL_RSN);
+                    groupCipher.add(ScanResult.CIPHER_CCMP);
+                    ArrayList<Integer> owePairwiseCipher = new ArrayList<>();
+                    owePairwiseCipher.add(ScanResult.CIPHER_CCMP);
+                    pairwiseCipher.add(owePairwiseCipher);
+                    ArrayList<Integer> oweKeyManagement = new ArrayList<>();
+                    oweKeyManagement.add(ScanResult.KEY_MGMT_OWE_TRANSITION);
+                    keyManagement.add(oweKeyManagement);
                 }
             }
         }
@@ -0,0 +1,469 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.util;
+
+import static com.android.server.wifi.util.WifiBinaryXmlSerializer.LENGTH_NULL;
+import static com.android.server.wifi.util.WifiBinaryXmlSerializer.NAME_LITERAL;
+import static com.android.server.wifi.util.WifiBinaryXmlSerializer.NAME_NEW;
+import static com.android.server.wifi.util.WifiBinaryXmlSerializer.TOKEN_END_DOCUMENT;
+import static com.android.server.wifi.util.WifiBinaryXmlSerializer.TOKEN_END_TAG;
+import static com.android.server.wifi.util.WifiBinaryXmlSerializer.TOKEN_START_TAG;
+import static com.android.server.wifi.util.WifiBinaryXmlSerializer.TOKEN_TEXT;
+import static com.android.server.wifi.util.WifiBinaryXmlSerializer.TOKEN_VALUE;
+import static com.android.server.wifi.util.WifiBinaryXmlSerializer.TYPE_BOOLEAN;
+import static com.android.server.wifi.util.WifiBinaryXmlSerializer.TYPE_BYTE_ARRAY;
+import static com.android.server.wifi.util.WifiBinaryXmlSerializer.TYPE_INT;
+import static com.android.server.wifi.util.WifiBinaryXmlSerializer.TYPE_LONG;
+import static com.android.server.wifi.util.WifiBinaryXmlSerializer.TYPE_NULL;
+import static com.android.server.wifi.util.WifiBinaryXmlSerializer.TYPE_STRING;
+import static com.android.server.wifi.util.WifiBinaryXmlSerializer.TYPE_STRING_ARRAY;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link XmlPullParser} reading the binary encoding written by {@link WifiBinaryXmlSerializer}.
+ *
+ * The parser reports the same START_TAG, END_TAG, TEXT and END_DOCUMENT events, depths, names and
+ * attributes as a text XML parser would for the equivalent document, without any whitespace
+ * text event. A typed value written by {@link WifiBinaryXmlSerializer#value(String, Object)} is
+ * reported as a START_TAG named after its type, e.g. "int", with only a "name" attribute,
+ * immediately followed by its END_TAG. The value itself is returned by {@link #getTypedValue()}.
+ * Namespaces are not supported.
+ */
+public class WifiBinaryXmlPullParser implements XmlPullParser {
+    private DataInputStream mIn;
+    private final List<String> mNameTable = new ArrayList<>();
+    private final List<String> mTagStack = new ArrayList<>();
+    private int mEventType;
+    private int mDepth;
+    private String mName;
+    private String mText;
+    private String[] mAttributes = new String[0];
+    private boolean mHasTypedValue;
+    private Object mTypedValue;
+
+    /**
+     * Returns whether the parser is on the start tag of a typed value, see
+     * {@link #getTypedValue()}.
+     */
+    public boolean hasTypedValue() {
+        return mEventType == START_TAG && mHasTypedValue;
+    }
+
+    /**
+     * Returns the value of the typed value tag the parser is on.
+     */
+    public Object getTypedValue() throws XmlPullParserException {
+        if (!hasTypedValue()) {
+            throw new XmlPullParserException("Parser is not on a typed value", this, null);
+        }
+        return mTypedValue;
+    }
+
+    @Override
+    public void setInput(InputStream inputStream, String inputEncoding) {
+        mIn = new DataInputStream(inputStream);
+        mNameTable.clear();
+        mTagStack.clear();
+        mEventType = START_DOCUMENT;
+        mDepth = 0;
+        mName = null;
+        mText = null;
+        mAttributes = new String[0];
+        mHasTypedValue = false;
+        mTypedValue = null;
+    }
+
+    @Override
+    public void setInput(Reader in) {
+        throw new UnsupportedOperationException("Binary input requires an InputStream");
+    }
+
+    @Override
+    public int next() throws XmlPullParserException, IOException {
+        if (mEventType == END_DOCUMENT) {
+            return END_DOCUMENT;
+        }
+        if (mEventType == END_TAG) {
+            mDepth--;
+        }
+        mName = null;
+        mText = null;
+        mAttributes = new String[0];
+        if (mHasTypedValue) {
+            // A typed value has no content, its end tag follows its start tag.
+            mHasTypedValue = false;
+            mTypedValue = null;
+            mName = mTagStack.remove(mTagStack.size() - 1);
+            mEventType = END_TAG;
+            return mEventType;
+        }
+        int token = mIn.read();
+        switch (token) {
+            case TOKEN_START_TAG:
+                mName = readName();
+                int numAttributes = mIn.readUnsignedShort();
+                mAttributes = new String[2 * numAttributes];
+                for (int i = 0; i < numAttributes; i++) {
+                    mAttributes[2 * i] = readName();
+                    mAttributes[2 * i + 1] = readString();
+                }
+                mTagStack.add(mName);
+                mDepth++;
+                mEventType = START_TAG;
+                break;
+            case TOKEN_END_TAG:
+                if (mTagStack.isEmpty()) {
+                    throw new XmlPullParserException("Unbalanced end tag");
+                }
+                mName = mTagStack.remove(mTagStack.size() - 1);
+                mEventType = END_TAG;
+                break;
+            case TOKEN_TEXT:
+                mText = readString();
+                mEventType = TEXT;
+                break;
+            case TOKEN_VALUE:
+                if (mIn.readBoolean()) {
+                    mAttributes = new String[] {"name", readName()};
+                }
+                readTypedValue();
+                mHasTypedValue = true;
+                mTagStack.add(mName);
+                mDepth++;
+                mEventType = START_TAG;
+                break;
+            case TOKEN_END_DOCUMENT:
+            case -1:
+                if (!mTagStack.isEmpty()) {
+                    throw new XmlPullParserException("Unexpected end of document in tag "
+                            + mTagStack.get(mTagStack.size() - 1));
+                }
+                mEventType = END_DOCUMENT;
+                break;
+            default:
+                throw new XmlPullParserException("Unknown token " + token);
+        }
+        return mEventType;
+    }
+
+    @Override
+    public int nextToken() throws XmlPullParserException, IOException {
+        return next();
+    }
+
+    @Override
+    public int nextTag() throws XmlPullParserException, IOException {
+        int eventType = next();
+        if (eventType == TEXT && isWhitespace()) {
+            eventType = next();
+        }
+        if (eventType != START_TAG && eventType != END_TAG) {
+            throw new XmlPullParserException("Expected start or end tag", this, null);
+        }
+        return eventType;
+    }
+
+    @Override
+    public String nextText() throws XmlPullParserException, IOException {
+        if (mEventType != START_TAG) {
+            throw new XmlPullParserException("Parser must be on a start tag", this, null);
+        }
+        int eventType = next();
+        if (eventType == TEXT) {
+            String text = getText();
+            if (next() != END_TAG) {
+                throw new XmlPullParserException("Expected end tag", this, null);
+            }
+            return text;
+        } else if (eventType == END_TAG) {
+            return "";
+        }
+        throw new XmlPullParserException("Expected text or end tag", this, null);
+    }
+
+    @Override
+    public void require(int type, String namespace, String name) throws XmlPullParserException {
+        if (type != mEventType || (name != null && !name.equals(getName()))) {
+            throw new XmlPullParserException("Expected " + TYPES[type] + " " + name, this, null);
+        }
+    }
+
+    @Override
+    public int getEventType() {
+        return mEventType;
+    }
+
+    @Override
+    public int getDepth() {
+        return mDepth;
+    }
+
+    @Override
+    public String getName() {
+        return mName;
+    }
+
+    @Override
+    public String getText() {
+        return mText;
+    }
+
+    @Override
+    public char[] getTextCharacters(int[] holderForStartAndLength) {
+        if (mText == null) {
+            holderForStartAndLength[0] = -1;
+            holderForStartAndLength[1] = -1;
+            return null;
+        }
+        holderForStartAndLength[0] = 0;
+        holderForStartAndLength[1] = mText.length();
+        return mText.toCharArray();
+    }
+
+    @Override
+    public boolean isWhitespace() throws XmlPullParserException {
+        if (mEventType != TEXT) {
+            throw new XmlPullParserException("Parser is not on a text event", this, null);
+        }
+        return mText.trim().isEmpty();
+    }
+
+    @Override
+    public boolean isEmptyElementTag() {
+        return false;
+    }
+
+    @Override
+    public int getAttributeCount() {
+        return mEventType == START_TAG ? mAttributes.length / 2 : -1;
+    }
+
+    @Override
+    public String getAttributeName(int index) {
+        checkAttributeIndex(index);
+        return mAttributes[2 * index];
+    }
+
+    @Override
+    public String getAttributeValue(int index) {
+        checkAttributeIndex(index);
+        return mAttributes[2 * index + 1];
+    }
+
+    @Override
+    public String getAttributeValue(String namespace, String name) {
+        for (int i = 0; i < mAttributes.length; i += 2) {
+            if (mAttributes[i].equals(name)) {
+                return mAttributes[i + 1];
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String getAttributeNamespace(int index) {
+        checkAttributeIndex(index);
+        return NO_NAMESPACE;
+    }
+
+    @Override
+    public String getAttributePrefix(int index) {
+        checkAttributeIndex(index);
+        return null;
+    }
+
+    @Override
+    public String getAttributeType(int index) {
+        checkAttributeIndex(index);
+        return "CDATA";
+    }
+
+    @Override
+    public boolean isAttributeDefault(int index) {
+        checkAttributeIndex(index);
+        return false;
+    }
+
+    @Override
+    public String getNamespace() {
+        return NO_NAMESPACE;
+    }
+
+    @Override
+    public String getNamespace(String prefix) {
+        return null;
+    }
+
+    @Override
+    public int getNamespaceCount(int depth) {
+        return 0;
+    }
+
+    @Override
+    public String getNamespacePrefix(int pos) {
+        throw new IndexOutOfBoundsException("No namespace at " + pos);
+    }
+
+    @Override
+    public String getNamespaceUri(int pos) {
+        throw new IndexOutOfBoundsException("No namespace at " + pos);
+    }
+
+    @Override
+    public String getPrefix() {
+        return null;
+    }
+
+    @Override
+    public String getPositionDescription() {
+        return TYPES[mEventType] + " " + (mName != null ? mName : "") + " @depth " + mDepth;
+    }
+
+    @Override
+    public int getLineNumber() {
+        return -1;
+    }
+
+    @Override
+    public int getColumnNumber() {
+        return -1;
+    }
+
+    @Override
+    public String getInputEncoding() {
+        return null;
+    }
+
+    @Override
+    public void defineEntityReplacementText(String entityName, String replacementText) {
+        // The binary encoding has no entity references, ignore.
+    }
+
+    @Override
+    public void setFeature(String name, boolean state) {
+        // No features are supported, ignore.
+    }
+
+    @Override
+    public boolean getFeature(String name) {
+        return false;
+    }
+
+    @Override
+    public void setProperty(String name, Object value) {
+        // No properties are supported, ignore.
+    }
+
+    @Override
+    public Object getProperty(String name) {
+        return null;
+    }
+
+    private void checkAttributeIndex(int index) {
+        if (index < 0 || index >= mAttributes.length / 2) {
+            throw new IndexOutOfBoundsException("Invalid attribute index " + index);
+        }
+    }
+
+    private String readName() throws IOException, XmlPullParserException {
+        int index = mIn.readUnsignedShort();
+        if (index == NAME_NEW) {
+            String name = readString();
+            mNameTable.add(name);
+            return name;
+        } else if (index == NAME_LITERAL) {
+            return readString();
+        } else if (index >= mNameTable.size()) {
+            throw new XmlPullParserException("Invalid name reference " + index);
+        }
+        return mNameTable.get(index);
+    }
+
+    private void readTypedValue() throws IOException, XmlPullParserException {
+        int type = mIn.readUnsignedByte();
+        switch (type) {
+            case TYPE_NULL:
+                mName = "null";
+                mTypedValue = null;
+                break;
+            case TYPE_STRING:
+                mName = "string";
+                mTypedValue = readString();
+                break;
+            case TYPE_INT:
+                mName = "int";
+                mTypedValue = mIn.readInt();
+                break;
+            case TYPE_LONG:
+                mName = "long";
+                mTypedValue = mIn.readLong();
+                break;
+            case TYPE_BOOLEAN:
+                mName = "boolean";
+                mTypedValue = mIn.readBoolean();
+                break;
+            case TYPE_BYTE_ARRAY:
+                mName = "byte-array";
+                mTypedValue = readBytes(mIn.readInt());
+                break;
+            case TYPE_STRING_ARRAY:
+                mName = "string-array";
+                int count = mIn.readInt();
+                // Each string takes at least the 4 bytes of its length.
+                if (count < 0 || count > mIn.available() / 4) {
+                    throw new EOFException("Invalid string array length " + count);
+                }
+                String[] strings = new String[count];
+                for (int i = 0; i < count; i++) {
+                    strings[i] = readString();
+                }
+                mTypedValue = strings;
+                break;
+            default:
+                throw new XmlPullParserException("Unknown value type " + type);
+        }
+    }
+
+    private String readString() throws IOException {
+        int length = mIn.readInt();
+        if (length == LENGTH_NULL) {
+            return null;
+        }
+        return new String(readBytes(length), StandardCharsets.UTF_8);
+    }
+
+    private byte[] readBytes(int length) throws IOException {
+        // The input is always fully buffered, a longer array indicates corrupted data.
+        if (length < 0 || length > mIn.available()) {
+            throw new EOFException("Invalid length " + length);
+        }
+        byte[] bytes = new byte[length];
+        mIn.readFully(bytes);
+        return bytes;
+    }
+}
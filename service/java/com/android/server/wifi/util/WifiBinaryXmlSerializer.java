@@ -0,0 +1,344 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.util;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlSerializer;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link XmlSerializer} writing a compact binary encoding of the XML events, to be read back
+ * using {@link WifiBinaryXmlPullParser}.
+ *
+ * Each event is written as a one byte token followed by its payload. Tag and attribute names are
+ * written once in full and then referenced through an index in a name table built while writing.
+ * Attribute values and text are written as length-prefixed UTF-8 strings.
+ *
+ * Values written through {@link XmlUtil#writeNextValue(XmlSerializer, String, Object)} which
+ * have one of the types accepted by {@link #isTypedValue(Object)} are written as a single value
+ * token holding a type tag and the value in its binary form, e.g. an int as 4 bytes instead of
+ * its decimal string, and are read back through
+ * {@link XmlUtil#readCurrentValue(XmlPullParser, String[])} without being converted to and from
+ * strings. Other values are written as the XML tags of {@link XmlUtilHelper}.
+ *
+ * Namespaces, comments and other XML constructs not used by the Wi-Fi store data are dropped.
+ * Only output to an {@link OutputStream} is supported.
+ */
+public class WifiBinaryXmlSerializer implements XmlSerializer {
+    static final int TOKEN_START_TAG = 1;
+    static final int TOKEN_END_TAG = 2;
+    static final int TOKEN_TEXT = 3;
+    static final int TOKEN_END_DOCUMENT = 4;
+    static final int TOKEN_VALUE = 5;
+
+    static final int TYPE_NULL = 0;
+    static final int TYPE_STRING = 1;
+    static final int TYPE_INT = 2;
+    static final int TYPE_LONG = 3;
+    static final int TYPE_BOOLEAN = 4;
+    static final int TYPE_BYTE_ARRAY = 5;
+    static final int TYPE_STRING_ARRAY = 6;
+
+    /** Name reference indicating that a new name follows and is added to the name table. */
+    static final int NAME_NEW = 0xFFFF;
+    /** Name reference indicating that a name follows which is not added to the name table. */
+    static final int NAME_LITERAL = 0xFFFE;
+    /** Length of a null string. */
+    static final int LENGTH_NULL = -1;
+
+    private DataOutputStream mOut;
+    private final Map<String, Integer> mNameTable = new HashMap<>();
+    private final List<String> mTagStack = new ArrayList<>();
+    // Start tag being written, its attributes are buffered until the tag is complete.
+    private String mPendingTag;
+    private final List<String> mPendingAttributes = new ArrayList<>();
+
+    /**
+     * Returns whether the value can be written using {@link #value(String, Object)}.
+     */
+    public static boolean isTypedValue(Object value) {
+        return value == null || value instanceof String || value instanceof Integer
+                || value instanceof Long || value instanceof Boolean || value instanceof byte[]
+                || value instanceof String[];
+    }
+
+    /**
+     * Write a value with its type, read back by {@link WifiBinaryXmlPullParser} as a value tag
+     * holding the same value.
+     *
+     * @param name  name of the value, may be null.
+     * @param value value to be written, must be accepted by {@link #isTypedValue(Object)}.
+     */
+    public XmlSerializer value(String name, Object value) throws IOException {
+        flushPendingTag();
+        mOut.writeByte(TOKEN_VALUE);
+        mOut.writeBoolean(name != null);
+        if (name != null) {
+            writeName(name);
+        }
+        if (value == null) {
+            mOut.writeByte(TYPE_NULL);
+        } else if (value instanceof String) {
+            mOut.writeByte(TYPE_STRING);
+            writeString((String) value);
+        } else if (value instanceof Integer) {
+            mOut.writeByte(TYPE_INT);
+            mOut.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            mOut.writeByte(TYPE_LONG);
+            mOut.writeLong((Long) value);
+        } else if (value instanceof Boolean) {
+            mOut.writeByte(TYPE_BOOLEAN);
+            mOut.writeBoolean((Boolean) value);
+        } else if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            mOut.writeByte(TYPE_BYTE_ARRAY);
+            mOut.writeInt(bytes.length);
+            mOut.write(bytes);
+        } else if (value instanceof String[]) {
+            String[] strings = (String[]) value;
+            mOut.writeByte(TYPE_STRING_ARRAY);
+            mOut.writeInt(strings.length);
+            for (String string : strings) {
+                writeString(string);
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported value type " + value.getClass());
+        }
+        return this;
+    }
+
+    @Override
+    public void setOutput(OutputStream os, String encoding) throws IOException {
+        mOut = new DataOutputStream(os);
+        mNameTable.clear();
+        mTagStack.clear();
+        mPendingTag = null;
+        mPendingAttributes.clear();
+    }
+
+    @Override
+    public void setOutput(Writer writer) {
+        throw new UnsupportedOperationException("Binary output requires an OutputStream");
+    }
+
+    @Override
+    public void startDocument(String encoding, Boolean standalone) {
+        // Nothing to write.
+    }
+
+    @Override
+    public void endDocument() throws IOException {
+        flushPendingTag();
+        mOut.writeByte(TOKEN_END_DOCUMENT);
+        mOut.flush();
+    }
+
+    @Override
+    public XmlSerializer startTag(String namespace, String name) throws IOException {
+        flushPendingTag();
+        mPendingTag = name;
+        mTagStack.add(name);
+        return this;
+    }
+
+    @Override
+    public XmlSerializer attribute(String namespace, String name, String value) {
+        if (mPendingTag == null) {
+            throw new IllegalStateException("Attribute " + name + " written outside of a tag");
+        }
+        mPendingAttributes.add(name);
+        mPendingAttributes.add(value);
+        return this;
+    }
+
+    @Override
+    public XmlSerializer endTag(String namespace, String name) throws IOException {
+        flushPendingTag();
+        if (mTagStack.isEmpty() || !mTagStack.remove(mTagStack.size() - 1).equals(name)) {
+            throw new IllegalStateException("Unbalanced end tag " + name);
+        }
+        mOut.writeByte(TOKEN_END_TAG);
+        return this;
+    }
+
+    @Override
+    public XmlSerializer text(String text) throws IOException {
+        flushPendingTag();
+        // An empty text does not generate any event when parsed back as XML.
+        if (text != null && !text.isEmpty()) {
+            mOut.writeByte(TOKEN_TEXT);
+            writeString(text);
+        }
+        return this;
+    }
+
+    @Override
+    public XmlSerializer text(char[] buf, int start, int len) throws IOException {
+        return text(new String(buf, start, len));
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushPendingTag();
+        mOut.flush();
+    }
+
+    @Override
+    public int getDepth() {
+        return mTagStack.size();
+    }
+
+    @Override
+    public String getName() {
+        return mTagStack.isEmpty() ? null : mTagStack.get(mTagStack.size() - 1);
+    }
+
+    @Override
+    public String getNamespace() {
+        return null;
+    }
+
+    @Override
+    public void setFeature(String name, boolean state) {
+        // No features are supported, ignore.
+    }
+
+    @Override
+    public boolean getFeature(String name) {
+        return false;
+    }
+
+    @Override
+    public void setProperty(String name, Object value) {
+        // No properties are supported, ignore.
+    }
+
+    @Override
+    public Object getProperty(String name) {
+        return null;
+    }
+
+    @Override
+    public void setPrefix(String prefix, String namespace) {
+        // Namespaces are dropped.
+    }
+
+    @Override
+    public String getPrefix(String namespace, boolean generatePrefix) {
+        return null;
+    }
+
+    @Override
+    public void cdsect(String text) throws IOException {
+        text(text);
+    }
+
+    @Override
+    public void entityRef(String text) throws IOException {
+        // The binary encoding has no entities, write the character the reference stands for.
+        switch (text) {
+            case "lt":
+                text("<");
+                break;
+            case "gt":
+                text(">");
+                break;
+            case "amp":
+                text("&");
+                break;
+            case "apos":
+                text("'");
+                break;
+            case "quot":
+                text("\"");
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown entity " + text);
+        }
+    }
+
+    @Override
+    public void processingInstruction(String text) {
+        // Processing instructions are dropped.
+    }
+
+    @Override
+    public void comment(String text) {
+        // Comments are dropped.
+    }
+
+    @Override
+    public void docdecl(String text) {
+        // Document type declarations are dropped.
+    }
+
+    @Override
+    public void ignorableWhitespace(String text) {
+        // Whitespace is dropped.
+    }
+
+    private void flushPendingTag() throws IOException {
+        if (mPendingTag == null) {
+            return;
+        }
+        mOut.writeByte(TOKEN_START_TAG);
+        writeName(mPendingTag);
+        int numAttributes = mPendingAttributes.size() / 2;
+        mOut.writeShort(numAttributes);
+        for (int i = 0; i < numAttributes; i++) {
+            writeName(mPendingAttributes.get(2 * i));
+            writeString(mPendingAttributes.get(2 * i + 1));
+        }
+        mPendingTag = null;
+        mPendingAttributes.clear();
+    }
+
+    private void writeName(String name) throws IOException {
+        Integer index = mNameTable.get(name);
+        if (index != null) {
+            mOut.writeShort(index);
+            return;
+        }
+        if (mNameTable.size() < NAME_LITERAL) {
+            mNameTable.put(name, mNameTable.size());
+            mOut.writeShort(NAME_NEW);
+        } else {
+            mOut.writeShort(NAME_LITERAL);
+        }
+        writeString(name);
+    }
+
+    private void writeString(String value) throws IOException {
+        if (value == null) {
+            mOut.writeInt(LENGTH_NULL);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        mOut.writeInt(bytes.length);
+        mOut.write(bytes);
+    }
+}
@@ -213,6 +213,7 @@ public class XmlUtil {
      * Read the current value in the XML stream using core XmlUtils and stores the retrieved
      * value name in the string provided. This method reads the value contained in current start
      * tag.
+     * Typed values of the binary format are returned as is, see {@link WifiBinaryXmlPullParser}.
      * Note: Because there could be genuine null values being read from the XML, this method raises
      * an exception to indicate errors.
      *
@@ -224,6 +225,15 @@ public class XmlUtil {
      */
     public static Object readCurrentValue(XmlPullParser in, String[] valueName)
             throws XmlPullParserException, IOException {
+        if (in instanceof WifiBinaryXmlPullParser) {
+            WifiBinaryXmlPullParser binaryIn = (WifiBinaryXmlPullParser) in;
+            if (binaryIn.hasTypedValue()) {
+                valueName[0] = binaryIn.getAttributeValue(null, "name");
+                Object value = binaryIn.getTypedValue();
+                gotoEndTag(in);
+                return value;
+            }
+        }
         Object value = XmlUtilHelper.readValueXml(in, valueName);
         // XmlUtils.readValue does not always move the stream to the end of the tag. So, move
         // it to the end tag before returning from here.
@@ -303,6 +313,8 @@ public class XmlUtil {
 
     /**
      * Write the value with the provided name in the XML stream using core XmlUtils.
+     * The binary format writes the supported value types as typed values instead, see
+     * {@link WifiBinaryXmlSerializer#isTypedValue(Object)}.
      *
      * @param out   XmlSerializer instance pointing to the XML stream.
      * @param name  name of the value.
@@ -310,6 +322,11 @@ public class XmlUtil {
      */
     public static void writeNextValue(XmlSerializer out, String name, Object value)
             throws XmlPullParserException, IOException {
+        if (out instanceof WifiBinaryXmlSerializer
+                && WifiBinaryXmlSerializer.isTypedValue(value)) {
+            ((WifiBinaryXmlSerializer) out).value(name, value);
+            return;
+        }
         XmlUtilHelper.writeValueXml(value, name, out);
     }
 
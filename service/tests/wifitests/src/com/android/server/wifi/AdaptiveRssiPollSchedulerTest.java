@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.when;
+
+import android.net.wifi.WifiInfo;
+import android.net.wifi.WifiManager;
+
+import androidx.test.filters.SmallTest;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+/**
+ * Unit tests for {@link AdaptiveRssiPollScheduler}.
+ */
+@SmallTest
+public class AdaptiveRssiPollSchedulerTest extends WifiBaseTest {
+    private static final int TEST_BASE_INTERVAL_MILLIS = 3000;
+    private static final int TEST_MAX_INTERVAL_MILLIS = 24000;
+    private static final int TEST_STABLE_RSSI = -50;
+
+    @Mock WifiGlobals mWifiGlobals;
+    @Mock WifiInfo mWifiInfo;
+    private AdaptiveRssiPollScheduler mScheduler;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        when(mWifiGlobals.getPollRssiIntervalMillis()).thenReturn(TEST_BASE_INTERVAL_MILLIS);
+        when(mWifiGlobals.getAdaptivePollRssiMaxIntervalMillis())
+                .thenReturn(TEST_MAX_INTERVAL_MILLIS);
+        when(mWifiInfo.getRssi()).thenReturn(TEST_STABLE_RSSI);
+        mScheduler = new AdaptiveRssiPollScheduler(mWifiGlobals);
+    }
+
+    private int poll(int rssi) {
+        return poll(rssi, WifiManager.DEVICE_MOBILITY_STATE_STATIONARY);
+    }
+
+    private int poll(int rssi, int mobilityState) {
+        when(mWifiInfo.getRssi()).thenReturn(rssi);
+        return mScheduler.getNextPollIntervalMillis(mWifiInfo, mobilityState);
+    }
+
+    /**
+     * Fill the RSSI window with stable samples and verify that the interval is widened up to the
+     * maximum interval.
+     */
+    private void pollUntilMaxInterval() {
+        for (int i = 1; i < AdaptiveRssiPollScheduler.RSSI_WINDOW_SIZE; i++) {
+            assertEquals(TEST_BASE_INTERVAL_MILLIS, poll(TEST_STABLE_RSSI));
+        }
+        assertEquals(TEST_BASE_INTERVAL_MILLIS * 2, poll(TEST_STABLE_RSSI));
+        assertEquals(TEST_BASE_INTERVAL_MILLIS * 4, poll(TEST_STABLE_RSSI + 1));
+        assertEquals(TEST_MAX_INTERVAL_MILLIS, poll(TEST_STABLE_RSSI - 1));
+        assertEquals(TEST_MAX_INTERVAL_MILLIS, poll(TEST_STABLE_RSSI));
+    }
+
+    /**
+     * Verify that the interval is widened up to the maximum interval while the link is stable.
+     */
+    @Test
+    public void widenIntervalOnStableLink() {
+        pollUntilMaxInterval();
+    }
+
+    /**
+     * Verify that the interval goes back to the base interval when the RSSI degrades.
+     */
+    @Test
+    public void resetIntervalOnRssiDegradation() {
+        pollUntilMaxInterval();
+        assertEquals(TEST_BASE_INTERVAL_MILLIS, poll(TEST_STABLE_RSSI
+                - AdaptiveRssiPollScheduler.RSSI_DEGRADATION_DB));
+    }
+
+    /**
+     * Verify that the interval goes back to the base interval when the traffic is active.
+     */
+    @Test
+    public void resetIntervalOnActiveTraffic() {
+        pollUntilMaxInterval();
+        when(mWifiInfo.getSuccessfulRxPacketsPerSecond())
+                .thenReturn(AdaptiveRssiPollScheduler.MAX_IDLE_PACKETS_PER_SECOND + 1);
+        assertEquals(TEST_BASE_INTERVAL_MILLIS, poll(TEST_STABLE_RSSI));
+    }
+
+    /**
+     * Verify that the interval goes back to the base interval when the device moves fast.
+     */
+    @Test
+    public void resetIntervalOnHighMobility() {
+        pollUntilMaxInterval();
+        assertEquals(TEST_BASE_INTERVAL_MILLIS,
+                poll(TEST_STABLE_RSSI, WifiManager.DEVICE_MOBILITY_STATE_HIGH_MVMT));
+    }
+
+    /**
+     * Verify that the interval is never widened with a weak RSSI.
+     */
+    @Test
+    public void keepBaseIntervalOnWeakRssi() {
+        int weakRssi = AdaptiveRssiPollScheduler.MIN_STABLE_RSSI_DBM - 1;
+        for (int i = 0; i < AdaptiveRssiPollScheduler.RSSI_WINDOW_SIZE * 2; i++) {
+            assertEquals(TEST_BASE_INTERVAL_MILLIS, poll(weakRssi));
+        }
+    }
+
+    /**
+     * Verify that the history of the link is cleared on reset.
+     */
+    @Test
+    public void resetClearsHistory() {
+        pollUntilMaxInterval();
+        mScheduler.reset();
+        assertEquals(TEST_BASE_INTERVAL_MILLIS, poll(TEST_STABLE_RSSI));
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.net.wifi.ScanResult;
+import android.net.wifi.WifiConfiguration;
+import android.net.wifi.WifiSsid;
+import android.util.Pair;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.server.wifi.hotspot2.ANQPNetworkKey;
+import com.android.server.wifi.hotspot2.NetworkDetail;
+import com.android.server.wifi.hotspot2.PasspointManager;
+import com.android.server.wifi.hotspot2.PasspointMatch;
+import com.android.server.wifi.hotspot2.PasspointProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Unit tests for {@link AvailableNetworksAggregator}.
+ */
+@SmallTest
+public class AvailableNetworksAggregatorTest extends WifiBaseTest {
+    private static final int TEST_ANQP_DOMAIN_ID = 1;
+
+    @Mock private WifiConfigManager mWifiConfigManager;
+    @Mock private WifiNetworkSelector mWifiNetworkSelector;
+    @Mock private PasspointManager mPasspointManager;
+
+    private AvailableNetworksAggregator mAggregator;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        mAggregator = new AvailableNetworksAggregator();
+    }
+
+    private ScanDetail buildMockScanDetail(String ssid, String bssid, boolean isOpen,
+            boolean isSaved, boolean isWeakRssi, String countryCode) {
+        ScanDetail mockScanDetail = mock(ScanDetail.class);
+        NetworkDetail mockNetworkDetail = mock(NetworkDetail.class);
+        ScanResult scanResult = new ScanResult();
+        scanResult.SSID = ssid;
+        scanResult.setWifiSsid(WifiSsid.fromUtf8Text(ssid));
+        scanResult.BSSID = bssid;
+        scanResult.capabilities = isOpen ? "" : "PSK";
+        when(mockScanDetail.getNetworkDetail()).thenReturn(mockNetworkDetail);
+        when(mockScanDetail.getScanResult()).thenReturn(scanResult);
+        when(mockNetworkDetail.getCountryCode()).thenReturn(countryCode);
+        when(mWifiNetworkSelector.isSignalTooWeak(eq(scanResult))).thenReturn(isWeakRssi);
+        if (isSaved) {
+            when(mWifiConfigManager.getSavedNetworkForScanDetail(eq(mockScanDetail)))
+                    .thenReturn(mock(WifiConfiguration.class));
+        }
+        return mockScanDetail;
+    }
+
+    private ScanDetail buildMockScanDetailPasspoint(String ssid, String bssid,
+            NetworkDetail.HSRelease hsRelease, PasspointProvider provider) {
+        ScanDetail mockScanDetail = mock(ScanDetail.class);
+        NetworkDetail mockNetworkDetail = mock(NetworkDetail.class);
+        ScanResult scanResult = new ScanResult();
+        scanResult.SSID = ssid;
+        scanResult.setWifiSsid(WifiSsid.fromUtf8Text(ssid));
+        scanResult.BSSID = bssid;
+        scanResult.capabilities = "PSK";
+        when(mockScanDetail.getNetworkDetail()).thenReturn(mockNetworkDetail);
+        when(mockScanDetail.getScanResult()).thenReturn(scanResult);
+        when(mockNetworkDetail.getHSRelease()).thenReturn(hsRelease);
+        // APs of the same SSID and ANQP domain belong to the same ESS.
+        when(mockNetworkDetail.getAnqpDomainID()).thenReturn(TEST_ANQP_DOMAIN_ID);
+        when(mockNetworkDetail.isInterworking()).thenReturn(true);
+        List<Pair<PasspointProvider, PasspointMatch>> matchedProviders = new ArrayList<>();
+        if (provider != null) {
+            matchedProviders.add(Pair.create(provider, null));
+        }
+        when(mPasspointManager.matchProvider(eq(scanResult), eq(false)))
+                .thenReturn(matchedProviders);
+        return mockScanDetail;
+    }
+
+    private void aggregate(List<ScanDetail> scanDetails) {
+        mAggregator.aggregate(scanDetails, mWifiConfigManager, mWifiNetworkSelector,
+                mPasspointManager);
+    }
+
+    /**
+     * Verify the SSID and BSSID counts, including the union of the open and saved SSIDs, and that
+     * weak APs are only excluded from them.
+     */
+    @Test
+    public void aggregateCountsOpenAndSavedNetworks() {
+        aggregate(Arrays.asList(
+                buildMockScanDetail("open", "aa:bb:cc:dd:ee:01", true, false, false, "US"),
+                buildMockScanDetail("open", "aa:bb:cc:dd:ee:02", true, false, false, "us"),
+                buildMockScanDetail("saved", "aa:bb:cc:dd:ee:03", false, true, false, null),
+                buildMockScanDetail("both", "aa:bb:cc:dd:ee:04", true, true, false, "US"),
+                buildMockScanDetail("other", "aa:bb:cc:dd:ee:05", false, false, false, null),
+                buildMockScanDetail("weak", "aa:bb:cc:dd:ee:06", true, true, true, null)));
+
+        assertEquals(4, mAggregator.getSsids());
+        assertEquals(5, mAggregator.getBssids());
+        assertEquals(2, mAggregator.getOpenSsids());
+        assertEquals(3, mAggregator.getOpenBssids());
+        assertEquals(2, mAggregator.getSavedSsids());
+        assertEquals(2, mAggregator.getSavedBssids());
+        assertEquals(3, mAggregator.getOpenOrSavedSsids());
+        assertEquals(4, mAggregator.getOpenOrSavedBssids());
+        assertFalse(mAggregator.hasCountryCodeConflict());
+        assertEquals("US", mAggregator.getCountryCode());
+        assertEquals(3, mAggregator.getCountryCodeCount());
+    }
+
+    /**
+     * Verify the Passpoint AP, unique ESS and provider counts.
+     */
+    @Test
+    public void aggregateCountsPasspointNetworks() {
+        PasspointProvider provider = mock(PasspointProvider.class);
+        aggregate(Arrays.asList(
+                buildMockScanDetailPasspoint("ess1", "aa:bb:cc:dd:ee:01",
+                        NetworkDetail.HSRelease.R1, provider),
+                buildMockScanDetailPasspoint("ess1", "aa:bb:cc:dd:ee:02",
+                        NetworkDetail.HSRelease.R1, provider),
+                buildMockScanDetailPasspoint("ess2", "aa:bb:cc:dd:ee:03",
+                        NetworkDetail.HSRelease.R2, null),
+                buildMockScanDetailPasspoint("ess3", "invalid",
+                        NetworkDetail.HSRelease.R3, null)));
+
+        assertEquals(2, mAggregator.getPasspointAps(NetworkDetail.HSRelease.R1));
+        assertEquals(1, mAggregator.getPasspointAps(NetworkDetail.HSRelease.R2));
+        assertEquals(1, mAggregator.getPasspointAps(NetworkDetail.HSRelease.R3));
+        Map<ANQPNetworkKey, Integer> r1UniqueEss =
+                mAggregator.getPasspointUniqueEss(NetworkDetail.HSRelease.R1);
+        assertEquals(1, r1UniqueEss.size());
+        assertEquals(Integer.valueOf(2), r1UniqueEss.values().iterator().next());
+        assertEquals(1, mAggregator.getPasspointUniqueEss(NetworkDetail.HSRelease.R2).size());
+        // The ESS of an AP with an invalid BSSID isn't counted.
+        assertTrue(mAggregator.getPasspointUniqueEss(NetworkDetail.HSRelease.R3).isEmpty());
+        assertEquals(1, mAggregator.getSavedPasspointProviderProfiles());
+        assertEquals(2, mAggregator.getSavedPasspointProviderBssids());
+    }
+
+    /**
+     * Verify that a country code conflict is reported.
+     */
+    @Test
+    public void aggregateDetectsCountryCodeConflict() {
+        aggregate(Arrays.asList(
+                buildMockScanDetail("a", "aa:bb:cc:dd:ee:01", true, false, false, "US"),
+                buildMockScanDetail("b", "aa:bb:cc:dd:ee:02", true, false, false, "CA"),
+                buildMockScanDetail("c", "aa:bb:cc:dd:ee:03", true, false, false, "US")));
+
+        assertTrue(mAggregator.hasCountryCodeConflict());
+        assertNull(mAggregator.getCountryCode());
+        assertEquals(0, mAggregator.getCountryCodeCount());
+    }
+
+    /**
+     * Verify that reusing the aggregator doesn't carry over the counts of the previous scan.
+     */
+    @Test
+    public void aggregateResetsPreviousCounts() {
+        PasspointProvider provider = mock(PasspointProvider.class);
+        aggregate(Arrays.asList(
+                buildMockScanDetail("open", "aa:bb:cc:dd:ee:01", true, true, false, "US"),
+                buildMockScanDetail("other", "aa:bb:cc:dd:ee:02", false, false, false, "CA"),
+                buildMockScanDetailPasspoint("ess1", "aa:bb:cc:dd:ee:03",
+                        NetworkDetail.HSRelease.R2, provider)));
+        assertEquals(3, mAggregator.getSsids());
+
+        aggregate(Collections.emptyList());
+
+        assertEquals(0, mAggregator.getSsids());
+        assertEquals(0, mAggregator.getBssids());
+        assertEquals(0, mAggregator.getOpenOrSavedSsids());
+        assertEquals(0, mAggregator.getSavedPasspointProviderProfiles());
+        assertEquals(0, mAggregator.getPasspointAps(NetworkDetail.HSRelease.R2));
+        assertTrue(mAggregator.getPasspointUniqueEss(NetworkDetail.HSRelease.R2).isEmpty());
+        assertFalse(mAggregator.hasCountryCodeConflict());
+        assertEquals(0, mAggregator.getCountryCodeCount());
+    }
+}
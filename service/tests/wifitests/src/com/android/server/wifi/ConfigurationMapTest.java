@@ -21,8 +21,13 @@ import static com.android.dx.mockito.inline.extended.ExtendedMockito.mockitoSess
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.anyInt;
+import static org.mockito.Mockito.clearInvocations;
 import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import android.content.pm.UserInfo;
@@ -427,4 +432,106 @@ public class ConfigurationMapTest extends WifiBaseTest {
         mConfigs.put(config);
         assertNull(mConfigs.getByScanResultForCurrentUser(scanResult));
     }
+
+    /**
+     * Verifies profile key lookups and removals against a large number of saved networks,
+     * including a lookup after a network's profile key was changed in place.
+     */
+    @Test
+    public void testProfileKeyIndexWithManyNetworks() {
+        final int numNetworks = 600;
+        List<WifiConfiguration> configs = new ArrayList<>();
+        for (int i = 0; i < numNetworks; i++) {
+            WifiConfiguration config = WifiConfigurationTestUtil.createPskNetwork(
+                    "\"test_ssid_" + i + "\"");
+            config.networkId = i;
+            configs.add(config);
+        }
+        addNetworks(configs);
+
+        for (WifiConfiguration config : configs) {
+            assertEquals(config, mConfigs.getByConfigKeyForCurrentUser(config.getProfileKey()));
+        }
+
+        // Remove every other network and verify all the lookups no longer resolve.
+        for (int i = 0; i < numNetworks; i += 2) {
+            WifiConfiguration config = configs.get(i);
+            ScanResult scanResult = createScanResultForNetwork(config);
+            assertEquals(config, mConfigs.remove(config.networkId));
+            assertNull(mConfigs.getByConfigKeyForCurrentUser(config.getProfileKey()));
+            assertNull(mConfigs.getByScanResultForCurrentUser(scanResult));
+        }
+        for (int i = 1; i < numNetworks; i += 2) {
+            WifiConfiguration config = configs.get(i);
+            assertEquals(config, mConfigs.getByConfigKeyForCurrentUser(config.getProfileKey()));
+            assertEquals(config, mConfigs.getByScanResultForCurrentUser(
+                    createScanResultForNetwork(config)));
+        }
+        assertEquals(numNetworks / 2, mConfigs.sizeForCurrentUser());
+
+        // Change the profile key in place and put the network again to re-index it. The new key
+        // must resolve while the stale one must not.
+        WifiConfiguration config = configs.get(1);
+        String oldKey = config.getProfileKey();
+        config.SSID = "\"renamed_ssid\"";
+        assertEquals(config, mConfigs.put(config));
+        assertNull(mConfigs.getByConfigKeyForCurrentUser(oldKey));
+        assertEquals(config, mConfigs.getByConfigKeyForCurrentUser(config.getProfileKey()));
+        assertEquals(config, mConfigs.getByScanResultForCurrentUser(
+                createScanResultForNetwork(config)));
+        assertEquals(numNetworks / 2, mConfigs.sizeForCurrentUser());
+    }
+
+    /**
+     * Verifies that a profile key lookup which misses doesn't compute the profile key of any
+     * network.
+     */
+    @Test
+    public void testProfileKeyLookupMissDoesNotScanNetworks() {
+        List<WifiConfiguration> configs = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            WifiConfiguration config = spy(WifiConfigurationTestUtil.createPskNetwork(
+                    "\"test_ssid_" + i + "\""));
+            config.networkId = i;
+            configs.add(config);
+        }
+        addNetworks(configs);
+        for (WifiConfiguration config : configs) {
+            clearInvocations(config);
+        }
+
+        assertNull(mConfigs.getByConfigKeyForCurrentUser("\"unknown_ssid\"WPA_PSK"));
+        for (WifiConfiguration config : configs) {
+            verify(config, never()).getProfileKey();
+        }
+    }
+
+    /**
+     * Verifies that networks are indexed by default gateway MAC address, ignoring case, and that
+     * the index follows in place updates and removals.
+     */
+    @Test
+    public void testGetNetworkIdsByDefaultGwMacAddress() {
+        final String gwMacAddress = "0A:1B:2C:3D:4E:5F";
+        WifiConfiguration config1 = WifiConfigurationTestUtil.createPskNetwork();
+        config1.networkId = 1;
+        config1.defaultGwMacAddress = gwMacAddress;
+        WifiConfiguration config2 = WifiConfigurationTestUtil.createPskNetwork();
+        config2.networkId = 2;
+        mConfigs.put(config1);
+        mConfigs.put(config2);
+
+        assertEquals(Set.of(1), mConfigs.getNetworkIdsByDefaultGwMacAddressForCurrentUser(
+                gwMacAddress.toLowerCase()));
+
+        config2.defaultGwMacAddress = gwMacAddress.toLowerCase();
+        mConfigs.updateDefaultGwMacAddress(config2);
+        assertEquals(Set.of(1, 2),
+                mConfigs.getNetworkIdsByDefaultGwMacAddressForCurrentUser(gwMacAddress));
+
+        mConfigs.remove(config1.networkId);
+        assertEquals(Set.of(2),
+                mConfigs.getNetworkIdsByDefaultGwMacAddressForCurrentUser(gwMacAddress));
+        assertTrue(mConfigs.getNetworkIdsByDefaultGwMacAddressForCurrentUser(null).isEmpty());
+    }
 }
@@ -44,6 +44,8 @@ import androidx.test.filters.SmallTest;
 
 import com.android.internal.util.FastXmlSerializer;
 import com.android.modules.utils.build.SdkLevel;
+import com.android.server.wifi.util.WifiBinaryXmlPullParser;
+import com.android.server.wifi.util.WifiBinaryXmlSerializer;
 import com.android.server.wifi.util.WifiConfigStoreEncryptionUtil;
 import com.android.server.wifi.util.XmlUtilTest;
 
@@ -541,7 +543,13 @@ public class NetworkListStoreDataTest extends WifiBaseTest {
      * @throws Exception
      */
     private byte[] serializeData() throws Exception {
-        final XmlSerializer out = new FastXmlSerializer();
+        return serializeData(new FastXmlSerializer());
+    }
+
+    /**
+     * Helper function for serializing the data using the provided serializer.
+     */
+    private byte[] serializeData(XmlSerializer out) throws Exception {
         final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
         out.setOutput(outputStream, StandardCharsets.UTF_8.name());
         mNetworkListSharedStoreData.serializeData(out, mock(WifiConfigStoreEncryptionUtil.class));
@@ -557,7 +565,14 @@ public class NetworkListStoreDataTest extends WifiBaseTest {
      * @throws Exception
      */
     private List<WifiConfiguration> deserializeData(byte[] data) throws Exception {
-        final XmlPullParser in = Xml.newPullParser();
+        return deserializeData(data, Xml.newPullParser());
+    }
+
+    /**
+     * Helper function for parsing the data using the provided parser.
+     */
+    private List<WifiConfiguration> deserializeData(byte[] data, XmlPullParser in)
+            throws Exception {
         final ByteArrayInputStream inputStream = new ByteArrayInputStream(data);
         in.setInput(inputStream, StandardCharsets.UTF_8.name());
         mNetworkListSharedStoreData.deserializeData(in, in.getDepth(),
@@ -701,6 +716,19 @@ public class NetworkListStoreDataTest extends WifiBaseTest {
                 networkList, deserializeData(xmlData));
     }
 
+    /**
+     * Verify that the shared configurations are read back unchanged from the binary format,
+     * without reaching any method unsupported by the binary serializer or parser.
+     */
+    @Test
+    public void serializeDeserializeSharedConfigurationsInBinaryFormat() throws Exception {
+        List<WifiConfiguration> networkList = getTestNetworksConfig(true /* shared */);
+        mNetworkListSharedStoreData.setConfigurations(networkList);
+        byte[] data = serializeData(new WifiBinaryXmlSerializer());
+        WifiConfigurationTestUtil.assertConfigurationsEqualForConfigStore(
+                networkList, deserializeData(data, new WifiBinaryXmlPullParser()));
+    }
+
     /**
      * Verify that we ignore any unknown tags when parsing a <Network> block.
      */
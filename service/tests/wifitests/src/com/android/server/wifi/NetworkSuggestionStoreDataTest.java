@@ -36,6 +36,8 @@ import androidx.test.filters.SmallTest;
 import com.android.internal.util.FastXmlSerializer;
 import com.android.server.wifi.WifiNetworkSuggestionsManager.ExtendedWifiNetworkSuggestion;
 import com.android.server.wifi.WifiNetworkSuggestionsManager.PerAppInfo;
+import com.android.server.wifi.util.WifiBinaryXmlPullParser;
+import com.android.server.wifi.util.WifiBinaryXmlSerializer;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -258,7 +260,13 @@ public class NetworkSuggestionStoreDataTest extends WifiBaseTest {
      * Helper function for serializing configuration data to a XML block.
      */
     private byte[] serializeData() throws Exception {
-        final XmlSerializer out = new FastXmlSerializer();
+        return serializeData(new FastXmlSerializer());
+    }
+
+    /**
+     * Helper function for serializing the data using the provided serializer.
+     */
+    private byte[] serializeData(XmlSerializer out) throws Exception {
         final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
         out.setOutput(outputStream, StandardCharsets.UTF_8.name());
         mNetworkSuggestionStoreData.serializeData(out, null);
@@ -270,7 +278,13 @@ public class NetworkSuggestionStoreDataTest extends WifiBaseTest {
      * Helper function for parsing configuration data from a XML block.
      */
     private void deserializeData(byte[] data) throws Exception {
-        final XmlPullParser in = Xml.newPullParser();
+        deserializeData(data, Xml.newPullParser());
+    }
+
+    /**
+     * Helper function for parsing the data using the provided parser.
+     */
+    private void deserializeData(byte[] data, XmlPullParser in) throws Exception {
         final ByteArrayInputStream inputStream = new ByteArrayInputStream(data);
         in.setInput(inputStream, StandardCharsets.UTF_8.name());
         mNetworkSuggestionStoreData.deserializeData(in, in.getDepth(),
@@ -398,6 +412,40 @@ public class NetworkSuggestionStoreDataTest extends WifiBaseTest {
         assertSerializeDeserialize(networkSuggestionsMap);
     }
 
+    /**
+     * Serialize/Deserialize an enterprise and a Passpoint network suggestion in the binary format,
+     * without reaching any method unsupported by the binary serializer or parser.
+     */
+    @Test
+    public void serializeDeserializeNetworkSuggestionsInBinaryFormat() throws Exception {
+        Map<String, PerAppInfo> networkSuggestionsMap = new HashMap<>();
+
+        PerAppInfo appInfo = new PerAppInfo(TEST_UID_1, TEST_PACKAGE_NAME_1, TEST_FEATURE_ID);
+        WifiConfiguration configuration = WifiConfigurationTestUtil.createEapNetwork();
+        configuration.enterpriseConfig =
+                WifiConfigurationTestUtil.createPEAPWifiEnterpriseConfigWithGTCPhase2();
+        WifiNetworkSuggestion networkSuggestion =
+                new WifiNetworkSuggestion(configuration, null, false, false, true, true,
+                        TEST_PRIORITY_GROUP);
+        WifiNetworkSuggestion.Builder builder = new WifiNetworkSuggestion.Builder();
+        builder.setPasspointConfig(
+                createTestConfigWithUserCredential(TEST_FQDN, TEST_FRIENDLY_NAME));
+        WifiNetworkSuggestion passpointSuggestion = builder.build();
+        appInfo.hasUserApproved = true;
+        ExtendedWifiNetworkSuggestion ewns1 =
+                ExtendedWifiNetworkSuggestion.fromWns(networkSuggestion, appInfo, true);
+        ewns1.connectChoice = USER_CONNECT_CHOICE;
+        ewns1.connectChoiceRssi = TEST_RSSI;
+        appInfo.extNetworkSuggestions.put(ewns1.hashCode(), ewns1);
+        ExtendedWifiNetworkSuggestion ewns2 =
+                ExtendedWifiNetworkSuggestion.fromWns(passpointSuggestion, appInfo, true);
+        appInfo.extNetworkSuggestions.put(ewns2.hashCode(), ewns2);
+        networkSuggestionsMap.put(TEST_PACKAGE_NAME_1, appInfo);
+
+        assertSerializeDeserialize(networkSuggestionsMap, new WifiBinaryXmlSerializer(),
+                new WifiBinaryXmlPullParser());
+    }
+
     /**
      * Deserialize corrupt data and ensure that we gracefully handle any errors in the data.
      */
@@ -504,11 +552,18 @@ public class NetworkSuggestionStoreDataTest extends WifiBaseTest {
 
     private Map<String, PerAppInfo> assertSerializeDeserialize(
             Map<String, PerAppInfo> networkSuggestionsMap) throws Exception {
+        return assertSerializeDeserialize(networkSuggestionsMap, new FastXmlSerializer(),
+                Xml.newPullParser());
+    }
+
+    private Map<String, PerAppInfo> assertSerializeDeserialize(
+            Map<String, PerAppInfo> networkSuggestionsMap, XmlSerializer out, XmlPullParser in)
+            throws Exception {
         // Setup the data to serialize.
         when(mDataSource.toSerialize()).thenReturn(networkSuggestionsMap);
 
         // Serialize/deserialize data.
-        deserializeData(serializeData());
+        deserializeData(serializeData(out), in);
 
         // Verify the deserialized data.
         ArgumentCaptor<HashMap> deserializedNetworkSuggestionsMap =
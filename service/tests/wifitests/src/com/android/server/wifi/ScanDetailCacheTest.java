@@ -93,6 +93,99 @@ public class ScanDetailCacheTest {
         assertEquals(s4, mScanDetailCache.getScanDetail(TEST_BSSID_4));
     }
 
+    /**
+     * Verify that trimming evicts the oldest entries and keeps the most recent entry.
+     */
+    @Test
+    public void testTrimRemovesOldestEntries() {
+        ScanDetail[] scanDetails = new ScanDetail[TEST_MAX_SIZE + 1];
+        for (int i = 0; i < scanDetails.length; i++) {
+            setClockTime(1000 * (i + 1));
+            scanDetails[i] = createScanDetailForNetwork(mWifiConfiguration,
+                    String.format("0a:08:5c:67:89:%02x", i), TEST_RSSI, TEST_FREQUENCY);
+            mScanDetailCache.put(scanDetails[i]);
+        }
+
+        // The cache was trimmed down to |TEST_TRIM_SIZE| before the last entry was added.
+        assertEquals(TEST_TRIM_SIZE + 1, mScanDetailCache.size());
+        for (int i = 0; i < TEST_MAX_SIZE - TEST_TRIM_SIZE; i++) {
+            assertNull(mScanDetailCache.getScanDetail(scanDetails[i].getBSSIDString()));
+        }
+        for (int i = TEST_MAX_SIZE - TEST_TRIM_SIZE; i < scanDetails.length; i++) {
+            assertEquals(scanDetails[i],
+                    mScanDetailCache.getScanDetail(scanDetails[i].getBSSIDString()));
+        }
+        assertEquals(scanDetails[TEST_MAX_SIZE].getScanResult(),
+                mScanDetailCache.getMostRecentScanResult());
+    }
+
+    /**
+     * Verify that the most recent scan result is updated when entries are replaced or removed.
+     */
+    @Test
+    public void testMostRecentScanResultUpdatedOnReplaceAndRemove() {
+        setClockTime(1000);
+        ScanDetail s1 = createScanDetailForNetwork(mWifiConfiguration, TEST_BSSID_1,
+                TEST_RSSI, TEST_FREQUENCY);
+        setClockTime(2000);
+        ScanDetail s2 = createScanDetailForNetwork(mWifiConfiguration, TEST_BSSID_2,
+                TEST_RSSI, TEST_FREQUENCY);
+        mScanDetailCache.put(s1);
+        mScanDetailCache.put(s2);
+        assertEquals(s2.getScanResult(), mScanDetailCache.getMostRecentScanResult());
+
+        // Replace s1 with a newer scan of the same BSSID.
+        setClockTime(3000);
+        ScanDetail s1Newer = createScanDetailForNetwork(mWifiConfiguration, TEST_BSSID_1,
+                TEST_RSSI, TEST_FREQUENCY);
+        mScanDetailCache.put(s1Newer);
+        assertEquals(2, mScanDetailCache.size());
+        assertEquals(s1Newer.getScanResult(), mScanDetailCache.getMostRecentScanResult());
+
+        mScanDetailCache.remove(TEST_BSSID_1);
+        assertEquals(s2.getScanResult(), mScanDetailCache.getMostRecentScanResult());
+        mScanDetailCache.remove(TEST_BSSID_2);
+        assertNull(mScanDetailCache.getMostRecentScanResult());
+    }
+
+    /**
+     * Verify that the BSSID listener is notified of added, removed and evicted BSSIDs, but not of
+     * replaced ScanDetails.
+     */
+    @Test
+    public void testBssidListenerNotifiedOfAddedAndRemovedBssids() {
+        ScanDetailCache.BssidListener listener = mock(ScanDetailCache.BssidListener.class);
+        mScanDetailCache = new ScanDetailCache(mWifiConfiguration, TEST_MAX_SIZE, TEST_TRIM_SIZE,
+                listener);
+        String[] bssids = new String[TEST_MAX_SIZE + 1];
+        for (int i = 0; i < bssids.length; i++) {
+            setClockTime(1000 * (i + 1));
+            bssids[i] = String.format("0a:08:5c:67:89:%02x", i);
+            mScanDetailCache.put(createScanDetailForNetwork(mWifiConfiguration, bssids[i],
+                    TEST_RSSI, TEST_FREQUENCY));
+            verify(listener).onBssidAdded(bssids[i]);
+        }
+        // The oldest entries were evicted when the last entry was added.
+        for (int i = 0; i < TEST_MAX_SIZE - TEST_TRIM_SIZE; i++) {
+            verify(listener).onBssidRemoved(bssids[i]);
+        }
+
+        // Replacing the ScanDetail of a cached BSSID doesn't notify the listener.
+        setClockTime(10000);
+        String lastBssid = bssids[TEST_MAX_SIZE];
+        mScanDetailCache.put(createScanDetailForNetwork(mWifiConfiguration, lastBssid,
+                TEST_RSSI_2, TEST_FREQUENCY));
+        verify(listener, times(1)).onBssidAdded(lastBssid);
+        verify(listener, never()).onBssidRemoved(lastBssid);
+
+        mScanDetailCache.remove(lastBssid);
+        verify(listener).onBssidRemoved(lastBssid);
+        // Removing a BSSID which isn't cached doesn't notify the listener.
+        mScanDetailCache.remove(lastBssid);
+        verify(listener, times(1)).onBssidRemoved(lastBssid);
+        verifyNoMoreInteractions(listener);
+    }
+
     private void setClockTime(long millis) {
         when(mClock.getUptimeSinceBootMillis()).thenReturn(millis);
         when(mClock.getWallClockMillis()).thenReturn(millis);
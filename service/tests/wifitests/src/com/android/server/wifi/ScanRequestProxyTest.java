@@ -350,6 +350,74 @@ public class ScanRequestProxyTest extends WifiBaseTest {
         verifyScanMetricsDataWasSet();
     }
 
+    /**
+     * Verify that the scan results are published as an immutable snapshot with a generation that
+     * changes only when new results arrive.
+     */
+    @Test
+    public void testScanResultsSnapshotGeneration() {
+        long initialGeneration = mScanRequestProxy.getScanResultsGeneration();
+        testStartScanSuccess();
+        mGlobalScanListenerArgumentCaptor.getValue().onResults(mTestScanDatas1);
+        validateScanResultsAvailableBroadcastSent(true);
+
+        long generation = mScanRequestProxy.getScanResultsGeneration();
+        assertNotEquals(initialGeneration, generation);
+        List<ScanResult> scanResults = mScanRequestProxy.getScanResults();
+        // Same snapshot is returned until new results arrive.
+        assertSame(scanResults, mScanRequestProxy.getScanResults());
+        assertEquals(generation, mScanRequestProxy.getScanResultsGeneration());
+        assertThrows(UnsupportedOperationException.class, () -> scanResults.clear());
+
+        mGlobalScanListenerArgumentCaptor.getValue().onResults(mTestScanDatas2);
+        validateScanResultsAvailableBroadcastSent(true);
+        assertNotEquals(generation, mScanRequestProxy.getScanResultsGeneration());
+        ScanTestUtil.assertScanResultsEqualsAnyOrder(
+                mTestScanDatas2[0].getResults(),
+                mScanRequestProxy.getScanResults().stream().toArray(ScanResult[]::new));
+        // The previous snapshot is unaffected.
+        ScanTestUtil.assertScanResultsEqualsAnyOrder(
+                mTestScanDatas1[0].getResults(), scanResults.stream().toArray(ScanResult[]::new));
+
+        verifyScanMetricsDataWasSet();
+    }
+
+    /**
+     * Verify that the "network in range" queries are answered from the last scan results and
+     * reset when new scan results arrive.
+     */
+    @Test
+    public void testSecurityTypeNetworkInRange() {
+        ScanResult[] results = mTestScanDatas1[0].getResults();
+        results[0].capabilities = "[RSN-PSK-CCMP][ESS]";
+        results[1].capabilities = "[RSN-SAE-CCMP][ESS]";
+        results[2].capabilities = "[RSN-PSK+SAE-CCMP][ESS]";
+        results[3].capabilities = "[ESS]";
+        String ssid = results[0].getWifiSsid().toString();
+
+        testStartScanSuccess();
+        mGlobalScanListenerArgumentCaptor.getValue().onResults(mTestScanDatas1);
+        validateScanResultsAvailableBroadcastSent(true);
+
+        assertTrue(mScanRequestProxy.isWpa2PersonalOnlyNetworkInRange(ssid));
+        assertTrue(mScanRequestProxy.isWpa3PersonalOnlyNetworkInRange(ssid));
+        assertTrue(mScanRequestProxy.isWpa2Wpa3PersonalTransitionNetworkInRange(ssid));
+        assertTrue(mScanRequestProxy.isOpenOnlyNetworkInRange(ssid));
+        assertFalse(mScanRequestProxy.isOweOnlyNetworkInRange(ssid));
+        assertFalse(mScanRequestProxy.isWpa2EnterpriseOnlyNetworkInRange(ssid));
+        assertFalse(mScanRequestProxy.isWpa3EnterpriseOnlyNetworkInRange(ssid));
+        assertFalse(mScanRequestProxy.isWpa2PersonalOnlyNetworkInRange("\"unknown\""));
+
+        // New scan results replace the index.
+        mGlobalScanListenerArgumentCaptor.getValue().onResults(mTestScanDatas2);
+        validateScanResultsAvailableBroadcastSent(true);
+        assertFalse(mScanRequestProxy.isWpa2PersonalOnlyNetworkInRange(ssid));
+        assertFalse(mScanRequestProxy.isWpa3PersonalOnlyNetworkInRange(ssid));
+        assertTrue(mScanRequestProxy.isOpenOnlyNetworkInRange(ssid));
+
+        verifyScanMetricsDataWasSet();
+    }
+
     /**
      * Verify a successful scan request and processing of scan failure.
      */
@@ -43,6 +43,8 @@ import com.android.internal.util.FastXmlSerializer;
 import com.android.modules.utils.build.SdkLevel;
 import com.android.server.wifi.util.InformationElementUtil;
 import com.android.server.wifi.util.SettingsMigrationDataHolder;
+import com.android.server.wifi.util.WifiBinaryXmlPullParser;
+import com.android.server.wifi.util.WifiBinaryXmlSerializer;
 import com.android.server.wifi.util.WifiConfigStoreEncryptionUtil;
 
 import org.junit.After;
@@ -311,7 +313,13 @@ public class SoftApStoreDataTest extends WifiBaseTest {
      * @throws Exception
      */
     private byte[] serializeData() throws Exception {
-        final XmlSerializer out = new FastXmlSerializer();
+        return serializeData(new FastXmlSerializer());
+    }
+
+    /**
+     * Helper function for serializing the data using the provided serializer.
+     */
+    private byte[] serializeData(XmlSerializer out) throws Exception {
         final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
         out.setOutput(outputStream, StandardCharsets.UTF_8.name());
         mSoftApStoreData.serializeData(out, mock(WifiConfigStoreEncryptionUtil.class));
@@ -326,7 +334,13 @@ public class SoftApStoreDataTest extends WifiBaseTest {
      * @throws Exception
      */
     private void deserializeData(byte[] data) throws Exception {
-        final XmlPullParser in = Xml.newPullParser();
+        deserializeData(data, Xml.newPullParser());
+    }
+
+    /**
+     * Helper function for parsing the data using the provided parser.
+     */
+    private void deserializeData(byte[] data, XmlPullParser in) throws Exception {
         final ByteArrayInputStream inputStream = new ByteArrayInputStream(data);
         in.setInput(inputStream, StandardCharsets.UTF_8.name());
         mSoftApStoreData.deserializeData(in, in.getDepth(),
@@ -510,6 +524,33 @@ public class SoftApStoreDataTest extends WifiBaseTest {
         }
     }
 
+    /**
+     * Verify that the store data is read back unchanged from the binary format, without reaching
+     * any method unsupported by the binary serializer or parser.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void serializeDeserializeSoftApInBinaryFormat() throws Exception {
+        if (SdkLevel.isAtLeastT()) {
+            deserializeData(TEST_CONFIG_STRING_WITH_ALL_CONFIG_LAST_VERSION.getBytes());
+        } else if (SdkLevel.isAtLeastS()) {
+            deserializeData(TEST_CONFIG_STRING_WITH_ALL_CONFIG_IN_S.getBytes());
+        } else {
+            deserializeData(TEST_CONFIG_STRING_WITH_ALL_CONFIG_IN_R.getBytes());
+        }
+        ArgumentCaptor<SoftApConfiguration> softapConfigCaptor =
+                ArgumentCaptor.forClass(SoftApConfiguration.class);
+        verify(mDataSource).fromDeserialized(softapConfigCaptor.capture());
+        SoftApConfiguration softApConfig = softapConfigCaptor.getValue();
+
+        when(mDataSource.toSerialize()).thenReturn(softApConfig);
+        deserializeData(serializeData(new WifiBinaryXmlSerializer()),
+                new WifiBinaryXmlPullParser());
+        verify(mDataSource, times(2)).fromDeserialized(softapConfigCaptor.capture());
+        assertEquals(softApConfig, softapConfigCaptor.getValue());
+    }
+
     /**
      * Verify that the store data is deserialized correctly using the predefined test XML data.
      *
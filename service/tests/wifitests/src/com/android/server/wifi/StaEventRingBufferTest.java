@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.server.wifi.proto.nano.WifiMetricsProto.ConfigInfo;
+import com.android.server.wifi.proto.nano.WifiMetricsProto.LinkProbeStats;
+import com.android.server.wifi.proto.nano.WifiMetricsProto.StaEvent;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link StaEventRingBuffer}.
+ */
+@SmallTest
+public class StaEventRingBufferTest extends WifiBaseTest {
+    private static final int CAPACITY = 4;
+    private static final String TEST_IFACE_NAME = "wlan0";
+
+    private StaEventRingBuffer mBuffer;
+
+    @Before
+    public void setUp() throws Exception {
+        mBuffer = new StaEventRingBuffer(CAPACITY);
+    }
+
+    private static StaEvent createStaEvent(int type) {
+        StaEvent event = new StaEvent();
+        event.type = type;
+        event.reason = 3;
+        event.status = 17;
+        event.localGen = true;
+        event.lastRssi = -60;
+        event.lastLinkSpeed = 433;
+        event.lastFreq = 5180;
+        event.supplicantStateChangesBitmask = 0x24;
+        event.startTimeMillis = 123456789L + type;
+        event.frameworkDisconnectReason = StaEvent.DISCONNECT_API;
+        event.associationTimedOut = true;
+        event.authFailureReason = StaEvent.AUTH_FAILURE_WRONG_PSWD;
+        event.lastScore = 60;
+        event.lastWifiUsabilityScore = 55;
+        event.lastPredictionHorizonSec = 15;
+        event.linkProbeWasSuccess = true;
+        event.linkProbeSuccessElapsedTimeMs = 40;
+        event.linkProbeFailureReason = LinkProbeStats.LINK_PROBE_FAILURE_REASON_NO_ACK;
+        event.mobileTxBytes = 1000L;
+        event.mobileRxBytes = 2000L;
+        event.totalTxBytes = 3000L;
+        event.totalRxBytes = 4000L;
+        event.screenOn = true;
+        event.isCellularDataAvailable = true;
+        event.isAdaptiveConnectivityEnabled = true;
+        event.interfaceName = TEST_IFACE_NAME;
+        event.interfaceRole = 1;
+        return event;
+    }
+
+    private static ConfigInfo createConfigInfo() {
+        ConfigInfo info = new ConfigInfo();
+        info.allowedKeyManagement = 2;
+        info.allowedProtocols = 3;
+        info.allowedAuthAlgorithms = 1;
+        info.allowedPairwiseCiphers = 4;
+        info.allowedGroupCiphers = 8;
+        info.hiddenSsid = true;
+        info.isPasspoint = true;
+        info.isEphemeral = true;
+        info.hasEverConnected = true;
+        info.scanRssi = -70;
+        info.scanFreq = 2437;
+        return info;
+    }
+
+    /**
+     * Verify that an event is copied into the buffer and built back with the same fields.
+     */
+    @Test
+    public void addAndGetRoundTrip() {
+        StaEvent event = createStaEvent(StaEvent.TYPE_NETWORK_CONNECTION_EVENT);
+        event.configInfo = createConfigInfo();
+        mBuffer.add(event, 1000L);
+
+        assertEquals(1, mBuffer.size());
+        StaEvent built = mBuffer.get(0);
+        assertNotSame(event, built);
+        assertNotSame(event.configInfo, built.configInfo);
+        assertArrayEquals(StaEvent.toByteArray(event), StaEvent.toByteArray(built));
+        assertEquals(1000L, mBuffer.getWallClockMillis(0));
+    }
+
+    /**
+     * Verify that the added event isn't retained, so that the caller can reuse it.
+     */
+    @Test
+    public void addedEventCanBeReused() {
+        StaEvent event = createStaEvent(StaEvent.TYPE_NETWORK_CONNECTION_EVENT);
+        event.configInfo = createConfigInfo();
+        mBuffer.add(event, 1000L);
+        byte[] expected = StaEvent.toByteArray(event);
+
+        event.clear();
+        event.type = StaEvent.TYPE_NETWORK_DISCONNECTION_EVENT;
+        event.interfaceName = TEST_IFACE_NAME;
+        mBuffer.add(event, 2000L);
+
+        assertArrayEquals(expected, StaEvent.toByteArray(mBuffer.get(0)));
+        StaEvent second = mBuffer.get(1);
+        assertEquals(StaEvent.TYPE_NETWORK_DISCONNECTION_EVENT, second.type);
+        assertNull(second.configInfo);
+    }
+
+    /**
+     * Verify that the oldest events are overwritten once the buffer is full.
+     */
+    @Test
+    public void oldestEventsOverwrittenWhenFull() {
+        int numEvents = CAPACITY * 2 + 1;
+        for (int i = 0; i < numEvents; i++) {
+            mBuffer.add(createStaEvent(i), i);
+        }
+
+        assertEquals(CAPACITY, mBuffer.size());
+        for (int i = 0; i < CAPACITY; i++) {
+            int expectedType = numEvents - CAPACITY + i;
+            assertEquals(expectedType, mBuffer.get(i).type);
+            assertEquals(expectedType, mBuffer.getWallClockMillis(i));
+        }
+    }
+
+    /**
+     * Verify that the buffer is empty after being cleared, and can be filled again.
+     */
+    @Test
+    public void clearRemovesAllEvents() {
+        for (int i = 0; i < CAPACITY + 1; i++) {
+            mBuffer.add(createStaEvent(i), i);
+        }
+        mBuffer.clear();
+        assertEquals(0, mBuffer.size());
+
+        mBuffer.add(createStaEvent(StaEvent.TYPE_WIFI_ENABLED), 5L);
+        assertEquals(1, mBuffer.size());
+        assertEquals(StaEvent.TYPE_WIFI_ENABLED, mBuffer.get(0).type);
+    }
+
+    /**
+     * Verify that reading outside of the stored events throws.
+     */
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getOutOfBoundsThrows() {
+        mBuffer.add(createStaEvent(StaEvent.TYPE_WIFI_ENABLED), 0L);
+        mBuffer.get(1);
+    }
+}
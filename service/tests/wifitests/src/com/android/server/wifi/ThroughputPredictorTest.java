@@ -23,6 +23,7 @@ import static com.android.server.wifi.util.InformationElementUtil.BssLoad.MIN_CH
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.validateMockitoUsage;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import android.content.Context;
@@ -40,6 +41,9 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.mockito.Spy;
 
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
 /**
  * Unit tests for {@link com.android.server.wifi.ThroughputPredictor}.
  */
@@ -439,4 +443,54 @@ public class ThroughputPredictorTest extends WifiBaseTest {
         assertEquals(2881, mThroughputPredictor.predictRxThroughput(mConnectionCap,
                 -10, 5180, INVALID));
     }
+
+    @Test
+    public void verifyPredictionCacheReusedForCoChannelBss() {
+        int predicted1 = mThroughputPredictor.predictThroughput(mDeviceCapabilities,
+                ScanResult.WIFI_STANDARD_11AC, ScanResult.CHANNEL_WIDTH_80MHZ, 0, 5180, 2,
+                MIN_CHANNEL_UTILIZATION, 50, false);
+        int predicted2 = mThroughputPredictor.predictThroughput(mDeviceCapabilities,
+                ScanResult.WIFI_STANDARD_11AC, ScanResult.CHANNEL_WIDTH_80MHZ, 0, 5200, 2,
+                MIN_CHANNEL_UTILIZATION, 50, false);
+
+        assertEquals(866, predicted1);
+        assertEquals(predicted1, predicted2);
+        // The overlay is only read once.
+        verify(mResource).getBoolean(
+                R.bool.config_wifiFrameworkMaxNumSpatialStreamDeviceOverrideEnable);
+        StringWriter sw = new StringWriter();
+        mThroughputPredictor.dump(null, new PrintWriter(sw), null);
+        assertTrue(sw.toString().contains("hits=1 lookups=2 hitRate=50%"));
+    }
+
+    @Test
+    public void verifyPredictionCacheFollowsDeviceCapabilities() {
+        assertEquals(866, mThroughputPredictor.predictThroughput(mDeviceCapabilities,
+                ScanResult.WIFI_STANDARD_11AC, ScanResult.CHANNEL_WIDTH_80MHZ, 0, 5180, 2,
+                MIN_CHANNEL_UTILIZATION, 50, false));
+
+        when(mDeviceCapabilities.getMaxNumberTxSpatialStreams()).thenReturn(1);
+        when(mDeviceCapabilities.getMaxNumberRxSpatialStreams()).thenReturn(1);
+        assertEquals(433, mThroughputPredictor.predictThroughput(mDeviceCapabilities,
+                ScanResult.WIFI_STANDARD_11AC, ScanResult.CHANNEL_WIDTH_80MHZ, 0, 5180, 2,
+                MIN_CHANNEL_UTILIZATION, 50, false));
+    }
+
+    @Test
+    public void verifyPredictionCacheInvalidatedOnOverlayReload() {
+        assertEquals(866, mThroughputPredictor.predictThroughput(mDeviceCapabilities,
+                ScanResult.WIFI_STANDARD_11AC, ScanResult.CHANNEL_WIDTH_80MHZ, 0, 5180, 2,
+                MIN_CHANNEL_UTILIZATION, 50, false));
+
+        // Reloading the overlay provides a new Resources instance.
+        MockResources reloadedResources = new MockResources();
+        reloadedResources.setBoolean(
+                R.bool.config_wifiFrameworkMaxNumSpatialStreamDeviceOverrideEnable, true);
+        reloadedResources.setInteger(
+                R.integer.config_wifiFrameworkMaxNumSpatialStreamDeviceOverrideValue, 1);
+        when(mContext.getResources()).thenReturn(reloadedResources);
+        assertEquals(433, mThroughputPredictor.predictThroughput(mDeviceCapabilities,
+                ScanResult.WIFI_STANDARD_11AC, ScanResult.CHANNEL_WIDTH_80MHZ, 0, 5180, 2,
+                MIN_CHANNEL_UTILIZATION, 50, false));
+    }
 }
@@ -1070,6 +1070,21 @@ public class WifiCarrierInfoManagerTest extends WifiBaseTest {
         assertFalse(mWifiCarrierInfoManager.isSimReady(DATA_SUBID));
     }
 
+    /**
+     * Verify the registered listeners are notified when the active subscriptions change.
+     */
+    @Test
+    public void testOnActiveSubscriptionsChangedListener() {
+        WifiCarrierInfoManager.OnActiveSubscriptionsChangedListener listener =
+                mock(WifiCarrierInfoManager.OnActiveSubscriptionsChangedListener.class);
+        mWifiCarrierInfoManager.addOnActiveSubscriptionsChangedListener(listener);
+
+        mListenerArgumentCaptor.getValue().onSubscriptionsChanged();
+        mLooper.dispatchAll();
+
+        verify(listener).onActiveSubscriptionsChanged();
+    }
+
     /**
      * Verify SIM is considered not present when SIM state is not ready
      */
@@ -27,6 +27,7 @@ import static com.android.server.wifi.util.InformationElementUtil.BssLoad.INVALI
 import static com.android.server.wifi.util.InformationElementUtil.BssLoad.MAX_CHANNEL_UTILIZATION;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.mockito.Mockito.*;
 import static org.mockito.Mockito.validateMockitoUsage;
 
@@ -169,6 +170,38 @@ public class WifiChannelUtilizationTest extends WifiBaseTest {
                 mWifiChannelUtilization.getUtilizationRatio(freq));
     }
 
+    /**
+     * Verify that the cached channel stats are not changed when the link layer stats they were
+     * read from are recycled and filled again.
+     */
+    @Test
+    public void verifyTwoReadChanStatsWithRecycledLinkLayerStats() throws Exception {
+        WifiLinkLayerStats llstats = new WifiLinkLayerStats();
+        int freq = 5180;
+        ChannelStats cs = llstats.obtainChannelStats();
+        cs.frequency = freq;
+        cs.radioOnTimeMs = RADIO_ON_TIME_DIFF_MIN_MS;
+        cs.ccaBusyTimeMs = 20;
+        llstats.channelStatsMap.put(freq, cs);
+        long currentTimeStamp = 1 + DEFAULT_CACHE_UPDATE_INTERVAL_MIN_MS;
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(currentTimeStamp);
+        mWifiChannelUtilization.refreshChannelStatsAndChannelUtilization(llstats, freq);
+
+        llstats.reset();
+        ChannelStats recycledCs = llstats.obtainChannelStats();
+        assertSame(cs, recycledCs);
+        recycledCs.frequency = freq;
+        recycledCs.radioOnTimeMs = RADIO_ON_TIME_DIFF_MIN_MS * 2 + 1;
+        recycledCs.ccaBusyTimeMs = 30;
+        llstats.channelStatsMap.put(freq, recycledCs);
+        currentTimeStamp = 1 + DEFAULT_CACHE_UPDATE_INTERVAL_MIN_MS * 2;
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(currentTimeStamp);
+        mWifiChannelUtilization.refreshChannelStatsAndChannelUtilization(llstats, freq);
+
+        assertEquals((30 - 20) * MAX_CHANNEL_UTILIZATION / (RADIO_ON_TIME_DIFF_MIN_MS + 1),
+                mWifiChannelUtilization.getUtilizationRatio(freq));
+    }
+
     @Test
     public void verifyTwoReadChanStatsWithSmallTimeGap() throws Exception {
         WifiLinkLayerStats llstats1 = new WifiLinkLayerStats();
@@ -358,6 +358,43 @@ public class WifiConfigStoreTest extends WifiBaseTest {
         verify(mWifiMetrics).noteWifiConfigStoreWriteDuration(anyInt());
     }
 
+    /**
+     * Tests that buffered writes are performed on the I/O handler and that writes posted while
+     * one is still pending are coalesced.
+     */
+    @Test
+    public void testBufferedWriteOnIoHandler() throws Exception {
+        TestLooper ioLooper = new TestLooper();
+        mWifiConfigStore = new WifiConfigStore(mContext, new Handler(mLooper.getLooper()),
+                new Handler(ioLooper.getLooper()), mClock, mWifiMetrics,
+                Arrays.asList(mSharedStore, mSharedSoftApStore));
+        mWifiConfigStore.registerStoreData(mSharedStoreData);
+        mWifiConfigStore.registerStoreData(mUserStoreData);
+        mWifiConfigStore.switchUserStoresAndRead(mUserStores);
+
+        mSharedStoreData.setData("abcds");
+        mWifiConfigStore.write(false);
+        mAlarmManager.dispatch(WifiConfigStore.BUFFERED_WRITE_ALARM_TAG);
+        mLooper.dispatchAll();
+        assertFalse(mSharedStore.isStoreWritten());
+
+        // Second write before the first one is performed, the data should be coalesced.
+        mSharedStoreData.setData(TEST_SHARE_DATA);
+        mWifiConfigStore.write(false);
+        mAlarmManager.dispatch(WifiConfigStore.BUFFERED_WRITE_ALARM_TAG);
+        mLooper.dispatchAll();
+        assertFalse(mSharedStore.isStoreWritten());
+
+        assertEquals(1, ioLooper.dispatchAll());
+        assertTrue(mSharedStore.isStoreWritten());
+        assertTrue(mUserStore.isStoreWritten());
+        verify(mWifiMetrics).noteWifiConfigStoreWriteDuration(anyInt());
+        verify(mWifiMetrics, times(2)).noteWifiConfigStoreSerialization(anyInt(), anyInt());
+
+        mWifiConfigStore.read();
+        assertEquals(TEST_SHARE_DATA, mSharedStoreData.getData());
+    }
+
     /**
      * Tests the force write after a buffered write.
      * Expected behaviour: The force write should override the previous buffered write and stop the
@@ -805,6 +842,59 @@ public class WifiConfigStoreTest extends WifiBaseTest {
         verify(userStoreNetworkSuggestionsData, never()).serializeData(any(), any());
     }
 
+    /**
+     * Verify that store data written in the binary format is read back correctly.
+     */
+    @Test
+    public void testWriteAndReadBinaryFormat() throws Exception {
+        mWifiConfigStore.setBinaryFormatEnabled(true);
+        mWifiConfigStore.registerStoreData(mSharedStoreData);
+        mSharedStoreData.setData(TEST_SHARE_DATA);
+
+        mWifiConfigStore.write(true);
+        byte[] storeBytes = mSharedStore.getStoreBytes();
+        assertEquals("WCSB", new String(storeBytes, 0, 4, StandardCharsets.US_ASCII));
+        assertTrue(mSharedStore.isStoreWritten());
+
+        mSharedStoreData.resetData();
+        mWifiConfigStore.read();
+        assertEquals(TEST_SHARE_DATA, mSharedStoreData.getData());
+    }
+
+    /**
+     * Verify that an XML store file is migrated to the binary format on the next write even if
+     * none of the store data has new data to serialize, and vice versa.
+     */
+    @Test
+    public void testStoreFileMigratedBetweenXmlAndBinaryFormat() throws Exception {
+        mWifiConfigStore.registerStoreData(mSharedStoreData);
+        mSharedStoreData.setData(TEST_SHARE_DATA);
+        mWifiConfigStore.write(true);
+        assertEquals('<', mSharedStore.getStoreBytes()[0]);
+
+        mWifiConfigStore.setBinaryFormatEnabled(true);
+        mWifiConfigStore.read();
+        assertEquals(TEST_SHARE_DATA, mSharedStoreData.getData());
+        mSharedStoreData.setHasAnyNewData(false);
+        mWifiConfigStore.write(true);
+        assertEquals("WCSB", new String(mSharedStore.getStoreBytes(), 0, 4,
+                StandardCharsets.US_ASCII));
+
+        // Only migrated once.
+        byte[] binaryBytes = mSharedStore.getStoreBytes();
+        mSharedStore.storeRawDataToWrite(null);
+        mWifiConfigStore.write(true);
+        assertNull(mSharedStore.getStoreBytes());
+
+        // Migrate back to XML.
+        mSharedStore.storeRawDataToWrite(binaryBytes);
+        mWifiConfigStore.setBinaryFormatEnabled(false);
+        mWifiConfigStore.read();
+        assertEquals(TEST_SHARE_DATA, mSharedStoreData.getData());
+        mWifiConfigStore.write(true);
+        assertEquals('<', mSharedStore.getStoreBytes()[0]);
+    }
+
     /**
      * Verify that we gracefully skip unknown section when reading an user store file.
      */
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import androidx.test.filters.SmallTest;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link WifiLinkLayerStatsHolder}.
+ */
+@SmallTest
+public class WifiLinkLayerStatsHolderTest extends WifiBaseTest {
+    private WifiLinkLayerStatsHolder mHolder;
+
+    @Before
+    public void setUp() throws Exception {
+        mHolder = new WifiLinkLayerStatsHolder();
+    }
+
+    /**
+     * Verify that the two slots are returned alternately.
+     */
+    @Test
+    public void obtainAlternatesSlots() {
+        WifiLinkLayerStats first = mHolder.obtain(null);
+        WifiLinkLayerStats second = mHolder.obtain(first);
+        assertNotNull(first);
+        assertNotNull(second);
+        assertNotSame(first, second);
+        assertSame(first, mHolder.obtain(second));
+        assertSame(second, mHolder.obtain(null));
+    }
+
+    /**
+     * Verify that the stats still in use are never returned.
+     */
+    @Test
+    public void obtainNeverReturnsStatsInUse() {
+        WifiLinkLayerStats first = mHolder.obtain(null);
+        WifiLinkLayerStats second = mHolder.obtain(null);
+        // The next slot is the first one, which is still in use.
+        assertSame(second, mHolder.obtain(first));
+        assertSame(first, mHolder.obtain(second));
+    }
+
+    /**
+     * Verify that stats which don't come from the holder don't change the order of the slots.
+     */
+    @Test
+    public void obtainWithStatsNotFromHolder() {
+        WifiLinkLayerStats first = mHolder.obtain(null);
+        WifiLinkLayerStats second = mHolder.obtain(new WifiLinkLayerStats());
+        assertNotSame(first, second);
+        assertSame(first, mHolder.obtain(new WifiLinkLayerStats()));
+    }
+}
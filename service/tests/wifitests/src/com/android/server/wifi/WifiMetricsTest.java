@@ -6540,6 +6540,50 @@ public class WifiMetricsTest extends WifiBaseTest {
         assertEquals(0, mDecodedProto.passpointDeauthImminentScope.length);
     }
 
+    /**
+     * Verify that the intervals chosen between the RSSI polls are reported in a histogram.
+     */
+    @Test
+    public void testRssiPollIntervalHistogram() throws Exception {
+        mWifiMetrics.incrementRssiPollIntervalHistogram(3000);
+        mWifiMetrics.incrementRssiPollIntervalHistogram(6000);
+        mWifiMetrics.incrementRssiPollIntervalHistogram(3000);
+
+        dumpProtoAndDeserialize();
+
+        Int32Count[] expectedHistogram = {
+                buildInt32Count(3000, 2),
+                buildInt32Count(6000, 1),
+        };
+        assertKeyCountsEqual(expectedHistogram, mDecodedProto.rssiPollIntervalHistogram);
+
+        // dump again, the histogram should be reset
+        dumpProtoAndDeserialize();
+        assertEquals(0, mDecodedProto.rssiPollIntervalHistogram.length);
+    }
+
+    /**
+     * Verify that the ANQP cache counters are reported as the counts since the last dump.
+     */
+    @Test
+    public void testAnqpCacheCounters() throws Exception {
+        when(mPpm.getAnqpCacheHitCount()).thenReturn(5L);
+        when(mPpm.getAnqpCacheMissCount()).thenReturn(3L);
+        when(mPpm.getAnqpCacheEvictionCount()).thenReturn(1L);
+
+        dumpProtoAndDeserialize();
+        assertEquals(5, mDecodedProto.numAnqpCacheHits);
+        assertEquals(3, mDecodedProto.numAnqpCacheMisses);
+        assertEquals(1, mDecodedProto.numAnqpCacheEvictions);
+
+        // dump again, only the lookups and evictions since the last dump should be reported
+        when(mPpm.getAnqpCacheHitCount()).thenReturn(7L);
+        dumpProtoAndDeserialize();
+        assertEquals(2, mDecodedProto.numAnqpCacheHits);
+        assertEquals(0, mDecodedProto.numAnqpCacheMisses);
+        assertEquals(0, mDecodedProto.numAnqpCacheEvictions);
+    }
+
     @Test
     public void testWifiStatsHealthStatWrite() throws Exception {
         WifiInfo wifiInfo = mock(WifiInfo.class);
@@ -947,6 +947,42 @@ public class WifiNativeTest extends WifiBaseTest {
         }
     }
 
+    /**
+     * Verifies that getScanResults() returns the same scan results in the same order when a
+     * dense scan is converted in parallel.
+     */
+    @Test
+    public void testGetScanResultsConvertedInParallel() throws Exception {
+        List<NativeScanResult> mockScanResults = new ArrayList<>();
+        for (int i = 0; i < 450; i++) {
+            NativeScanResult nativeScanResult = createMockNativeScanResult();
+            nativeScanResult.bssid = new byte[] {(byte) 0x12, (byte) 0xef, (byte) 0xa1,
+                    (byte) 0x2c, (byte) (i >> 8), (byte) i};
+            nativeScanResult.tsf = i;
+            // Invalid BSSIDs are dropped without affecting the order of the other results.
+            if (i % 100 == 7) {
+                nativeScanResult.bssid = new byte[] {(byte) 0x12};
+            }
+            mockScanResults.add(nativeScanResult);
+        }
+        when(mWificondControl.getScanResults(anyString(), anyInt())).thenReturn(mockScanResults);
+        ArrayList<ScanDetail> serialScanResults = mWifiNative.getScanResults(WIFI_IFACE_NAME);
+
+        mResources.setInteger(R.integer.config_wifiParallelScanResultConversionThreshold, 100);
+        ArrayList<ScanDetail> parallelScanResults = mWifiNative.getScanResults(WIFI_IFACE_NAME);
+
+        assertEquals(445, serialScanResults.size());
+        assertEquals(serialScanResults.size(), parallelScanResults.size());
+        for (int i = 0; i < serialScanResults.size(); i++) {
+            ScanResult serial = serialScanResults.get(i).getScanResult();
+            ScanResult parallel = parallelScanResults.get(i).getScanResult();
+            assertEquals(serial.BSSID, parallel.BSSID);
+            assertEquals(serial.timestamp, parallel.timestamp);
+            assertEquals(serial.capabilities, parallel.capabilities);
+            assertEquals(WIFI_IFACE_NAME, parallel.ifaceName);
+        }
+    }
+
     /**
      * Verifies that connectToNetwork() calls underlying WificondControl and SupplicantStaIfaceHal.
      */
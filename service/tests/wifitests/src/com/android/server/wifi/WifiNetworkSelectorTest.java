@@ -41,7 +41,9 @@ import android.net.wifi.SupplicantState;
 import android.net.wifi.WifiConfiguration;
 import android.net.wifi.WifiInfo;
 import android.net.wifi.WifiSsid;
+import android.os.HandlerThread;
 import android.os.SystemClock;
+import android.os.test.TestLooper;
 import android.util.ArraySet;
 import android.util.LocalLog;
 
@@ -770,6 +772,53 @@ public class WifiNetworkSelectorTest extends WifiBaseTest {
         assertTrue(mWifiNetworkSelector.getConnectableScanDetails().isEmpty());
     }
 
+    /**
+     * Verify that a dense scan is filtered in a single pass preserving the scan order, and that
+     * the nominators get an unmodifiable view of the filtered scan results.
+     */
+    @Test
+    public void filterDenseScanSharesUnmodifiableResultsWithNominators() {
+        int numBss = 500;
+        String[] ssids = new String[numBss];
+        String[] bssids = new String[numBss];
+        int[] freqs = new int[numBss];
+        String[] caps = new String[numBss];
+        int[] levels = new int[numBss];
+        HashSet<String> blocklist = new HashSet<>();
+        for (int i = 0; i < numBss; i++) {
+            ssids[i] = "\"test" + (i % 20) + "\"";
+            bssids[i] = String.format("6c:f3:7f:ae:%02x:%02x", i >> 8, i & 0xff);
+            freqs[i] = 5180;
+            caps[i] = "[WPA2-PSK][ESS]";
+            // Every 5th BSS is too weak and every 50th BSS is blocklisted.
+            levels[i] = (i % 5 == 0) ? mThresholdMinimumRssi5G - 1 : mThresholdQualifiedRssi5G;
+            if (i % 50 == 1) {
+                blocklist.add(bssids[i]);
+            }
+        }
+        List<ScanDetail> scanDetails = WifiNetworkSelectorTestUtil.buildScanDetails(ssids, bssids,
+                freqs, caps, levels, mClock);
+        mWifiNetworkSelector.registerNetworkNominator(mNetworkNominator);
+
+        mWifiNetworkSelector.getCandidatesFromScan(scanDetails, blocklist,
+                Arrays.asList(new ClientModeManagerState(TEST_IFACE_NAME, false, true, mWifiInfo)),
+                false, true, true, Collections.emptySet(), false);
+
+        ArgumentCaptor<List<ScanDetail>> filteredCaptor = ArgumentCaptor.forClass(List.class);
+        verify(mNetworkNominator).nominateNetworks(filteredCaptor.capture(), anyBoolean(),
+                anyBoolean(), anyBoolean(), any(), any());
+        verify(mWifiMetrics).incrementNetworkSelectionFilteredBssidCount(blocklist.size());
+        List<ScanDetail> filtered = filteredCaptor.getValue();
+        List<ScanDetail> expected = new ArrayList<>();
+        for (int i = 0; i < numBss; i++) {
+            if (i % 5 != 0 && i % 50 != 1) {
+                expected.add(scanDetails.get(i));
+            }
+        }
+        assertEquals(expected, filtered);
+        assertThrows(UnsupportedOperationException.class, () -> filtered.remove(0));
+    }
+
     /**
      * Admin allowlist restricted SSID is filtered out for network selection.
      *
@@ -1997,6 +2046,41 @@ public class WifiNetworkSelectorTest extends WifiBaseTest {
         verify(mWifiMetrics, atLeastOnce()).setNetworkSelectorExperimentId(eq(expid));
     }
 
+    /**
+     * Tests that the experimental scorers are run after the network selection when asynchronous
+     * shadow scoring is enabled, and that their metrics are still recorded.
+     */
+    @Test
+    public void testCandidateScorerMetricsAsyncShadowScoring() {
+        TestLooper looper = new TestLooper();
+        HandlerThread handlerThread = mock(HandlerThread.class);
+        when(handlerThread.getLooper()).thenReturn(looper.getLooper());
+        when(mWifiInjector.getWifiHandlerThread()).thenReturn(handlerThread);
+        doReturn(true).when(mResource).getBoolean(
+                R.bool.config_wifiNetworkSelectionAsyncShadowScoringEnabled);
+        mWifiNetworkSelector.registerCandidateScorer(mCompatibilityScorer);
+        mWifiNetworkSelector.registerCandidateScorer(NULL_SCORER);
+
+        // add a second NetworkNominator that returns the second network in the scan list
+        mWifiNetworkSelector.registerNetworkNominator(
+                new PlaceholderNominator(1, PLACEHOLDER_NOMINATOR_ID_2));
+
+        int compatibilityExpId = experimentIdFromIdentifier(mCompatibilityScorer.getIdentifier());
+        mScoringParams.update("expid=" + compatibilityExpId);
+
+        testLowRssiNoActiveStream();
+
+        int nullScorerId = experimentIdFromIdentifier(NULL_SCORER.getIdentifier());
+        verify(mWifiMetrics, never()).logNetworkSelectionDecision(anyInt(), anyInt(),
+                anyBoolean(), anyInt());
+
+        looper.dispatchAll();
+        // Wanted 2 times since testLowRssiNoActiveStream() calls
+        // WifiNetworkSelector.selectNetwork() twice
+        verify(mWifiMetrics, times(2)).logNetworkSelectionDecision(nullScorerId,
+                compatibilityExpId, false, 2);
+    }
+
     /**
      * Tests that metrics are recorded for two scorers.
      */
@@ -40,6 +40,7 @@ import static org.junit.Assume.assumeTrue;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyBoolean;
 import static org.mockito.Mockito.anyInt;
+import static org.mockito.Mockito.anyList;
 import static org.mockito.Mockito.anyLong;
 import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.argThat;
@@ -1376,6 +1377,46 @@ public class WifiNetworkSuggestionsManagerTest extends WifiBaseTest {
                 .getNetworkSuggestionsForScanDetail(scanDetail).isEmpty());
     }
 
+    /**
+     * Verify that the lookup of network suggestions matching the provided scan detail is kept
+     * up to date when suggestions with and without BSSID for the same network are removed.
+     */
+    @Test
+    public void testGetNetworkSuggestionsForScanDetailAfterPartialRemoval() {
+        WifiConfiguration wifiConfiguration = WifiConfigurationTestUtil.createOpenNetwork();
+        ScanDetail scanDetail = createScanDetailForNetwork(wifiConfiguration);
+        WifiConfiguration wifiConfigurationWithBssid = new WifiConfiguration(wifiConfiguration);
+        wifiConfigurationWithBssid.BSSID = scanDetail.getBSSIDString();
+        WifiNetworkSuggestion networkSuggestion = createWifiNetworkSuggestion(
+                wifiConfiguration, null, false, false, true, true, DEFAULT_PRIORITY_GROUP);
+        WifiNetworkSuggestion networkSuggestionWithBssid = createWifiNetworkSuggestion(
+                wifiConfigurationWithBssid, null, false, false, true, true,
+                DEFAULT_PRIORITY_GROUP);
+
+        assertEquals(WifiManager.STATUS_NETWORK_SUGGESTIONS_SUCCESS,
+                mWifiNetworkSuggestionsManager.add(
+                        List.of(networkSuggestion, networkSuggestionWithBssid), TEST_UID_1,
+                        TEST_PACKAGE_1, TEST_FEATURE));
+        mWifiNetworkSuggestionsManager.setHasUserApprovedForApp(true, TEST_UID_1, TEST_PACKAGE_1);
+        assertSuggestionsEquals(Set.of(networkSuggestion, networkSuggestionWithBssid),
+                mWifiNetworkSuggestionsManager.getNetworkSuggestionsForScanDetail(scanDetail));
+
+        // remove the suggestion with no BSSID & ensure the other one is still found.
+        assertEquals(WifiManager.STATUS_NETWORK_SUGGESTIONS_SUCCESS,
+                mWifiNetworkSuggestionsManager.remove(List.of(networkSuggestion), TEST_UID_1,
+                        TEST_PACKAGE_1, WifiManager.ACTION_REMOVE_SUGGESTION_DISCONNECT));
+        assertSuggestionsEquals(Set.of(networkSuggestionWithBssid),
+                mWifiNetworkSuggestionsManager.getNetworkSuggestionsForScanDetail(scanDetail));
+
+        // remove the suggestion with BSSID & ensure lookup fails.
+        assertEquals(WifiManager.STATUS_NETWORK_SUGGESTIONS_SUCCESS,
+                mWifiNetworkSuggestionsManager.remove(List.of(networkSuggestionWithBssid),
+                        TEST_UID_1, TEST_PACKAGE_1,
+                        WifiManager.ACTION_REMOVE_SUGGESTION_DISCONNECT));
+        assertTrue(mWifiNetworkSuggestionsManager
+                .getNetworkSuggestionsForScanDetail(scanDetail).isEmpty());
+    }
+
     /**
      * Verify failure to lookup any network suggestion matching the provided scan detail.
      */
@@ -3977,8 +4018,9 @@ public class WifiNetworkSuggestionsManagerTest extends WifiBaseTest {
                 add(nonPasspointScanResult);
                 add(null);
                 }};
-        when(mPasspointManager.getMatchingScanResults(eq(mockPasspoint), eq(allSrList)))
-                .thenReturn(ppSrList);
+        when(mPasspointManager.getMatchingScanResults(
+                eq(Collections.singletonList(mockPasspoint)), eq(allSrList)))
+                .thenReturn(Collections.singletonMap(mockPasspoint, ppSrList));
         ScanResultMatchInfo mockMatchInfo = mock(ScanResultMatchInfo.class);
         ScanResultMatchInfo nonPasspointMi = new ScanResultMatchInfo();
         nonPasspointMi.networkSsid = nonPasspointSuggestion.wifiConfiguration.SSID;
@@ -3995,12 +4037,44 @@ public class WifiNetworkSuggestionsManagerTest extends WifiBaseTest {
             Map<WifiNetworkSuggestion, List<ScanResult>> result =
                     mWifiNetworkSuggestionsManager.getMatchingScanResults(suggestions, allSrList);
             assertEquals(2, result.size());
+            assertEquals(ppSrList, result.get(passpointSuggestion));
             assertEquals(1, result.get(nonPasspointSuggestion).size());
         } finally {
             session.finishMocking();
         }
     }
 
+    /**
+     * Verify that the ScanResults are matched to each suggestion, in order, when there are many
+     * suggestions and scan results.
+     */
+    @Test
+    public void getMatchingScanResultsTestWithDenseSuggestionsAndScanResults() {
+        List<WifiNetworkSuggestion> suggestions = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            suggestions.add(createWifiNetworkSuggestion(
+                    WifiConfigurationTestUtil.createPskNetwork("\"ssid" + i + "\""),
+                    null, false, false, true, true, DEFAULT_PRIORITY_GROUP));
+        }
+        // Two BSSes for each of the first 250 suggestions.
+        List<ScanResult> scanResults = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            scanResults.add(createScanDetailForNetwork(
+                    suggestions.get(i % 250).wifiConfiguration).getScanResult());
+        }
+
+        Map<WifiNetworkSuggestion, List<ScanResult>> result =
+                mWifiNetworkSuggestionsManager.getMatchingScanResults(suggestions, scanResults);
+        assertEquals(1000, result.size());
+        for (int i = 0; i < 1000; i++) {
+            List<ScanResult> expected = i < 250
+                    ? Arrays.asList(scanResults.get(i), scanResults.get(i + 250))
+                    : Collections.emptyList();
+            assertEquals(expected, result.get(suggestions.get(i)));
+        }
+        verify(mPasspointManager, never()).getMatchingScanResults(anyList(), anyList());
+    }
+
     /**
      * Verify that the wifi configuration doesn't match anything
      */
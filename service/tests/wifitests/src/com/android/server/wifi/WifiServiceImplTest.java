@@ -399,6 +399,7 @@ public class WifiServiceImplTest extends WifiBaseTest {
     @Mock WifiP2pConnection mWifiP2pConnection;
     @Mock SimRequiredNotifier mSimRequiredNotifier;
     @Mock WifiGlobals mWifiGlobals;
+    @Mock ThroughputPredictor mThroughputPredictor;
     @Mock AdaptiveConnectivityEnabledSettingObserver mAdaptiveConnectivityEnabledSettingObserver;
     @Mock MakeBeforeBreakManager mMakeBeforeBreakManager;
     @Mock WifiCarrierInfoManager mWifiCarrierInfoManager;
@@ -522,6 +523,7 @@ public class WifiServiceImplTest extends WifiBaseTest {
         when(mWifiInjector.getWifiP2pConnection()).thenReturn(mWifiP2pConnection);
         when(mWifiInjector.getSimRequiredNotifier()).thenReturn(mSimRequiredNotifier);
         when(mWifiInjector.getWifiGlobals()).thenReturn(mWifiGlobals);
+        when(mWifiInjector.getThroughputPredictor()).thenReturn(mThroughputPredictor);
         when(mWifiInjector.getAdaptiveConnectivityEnabledSettingObserver())
                 .thenReturn(mAdaptiveConnectivityEnabledSettingObserver);
         when(mClientModeManager.syncStartSubscriptionProvisioning(anyInt(),
@@ -3051,10 +3053,10 @@ public class WifiServiceImplTest extends WifiBaseTest {
     }
 
     /**
-     * Ensure that we handle scan results failure when posting the runnable to handler fails.
+     * Ensure that scan results are returned without posting to the Wi-Fi thread.
      */
     @Test
-    public void testGetScanResultsFailureInRunWithScissors() {
+    public void testGetScanResultsDoesNotRequireWifiThread() {
         mWifiServiceImpl = makeWifiServiceImplWithMockRunnerWhichTimesOut();
 
         ScanResult[] scanResults =
@@ -3070,9 +3072,10 @@ public class WifiServiceImplTest extends WifiBaseTest {
         List<ScanResult> retrievedScanResultList = mWifiServiceImpl.getScanResults(packageName,
                 featureId);
         mLooper.stopAutoDispatchAndIgnoreExceptions();
-        verify(mScanRequestProxy, never()).getScanResults();
+        verify(mScanRequestProxy).getScanResults();
 
-        assertTrue(retrievedScanResultList.isEmpty());
+        ScanTestUtil.assertScanResultsEquals(scanResults,
+                retrievedScanResultList.toArray(new ScanResult[retrievedScanResultList.size()]));
     }
 
     /**
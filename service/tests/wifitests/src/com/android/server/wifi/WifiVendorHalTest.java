@@ -25,6 +25,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assume.assumeTrue;
 import static org.mockito.ArgumentMatchers.argThat;
@@ -117,7 +118,9 @@ import androidx.test.filters.SmallTest;
 import com.android.modules.utils.build.SdkLevel;
 import com.android.server.wifi.HalDeviceManager.InterfaceDestroyedListener;
 import com.android.server.wifi.WifiLinkLayerStats.ChannelStats;
+import com.android.server.wifi.WifiLinkLayerStats.PeerInfo;
 import com.android.server.wifi.WifiLinkLayerStats.RadioStat;
+import com.android.server.wifi.WifiLinkLayerStats.RateStat;
 import com.android.server.wifi.WifiNative.RoamingCapabilities;
 import com.android.server.wifi.WifiNative.RxFateReport;
 import com.android.server.wifi.WifiNative.TxFateReport;
@@ -1268,6 +1271,113 @@ public class WifiVendorHalTest extends WifiBaseTest {
         assertEquals(1, converted.numRadios);
     }
 
+    /**
+     * Test that the link layer stats V1_5 with multiple radios, many peers and many rates are
+     * converted correctly when filled repeatedly into the same recycled WifiLinkLayerStats, and
+     * that the per-radio, per-peer, per-rate and per-channel objects are reused instead of being
+     * allocated on every conversion.
+     */
+    @Test
+    public void testLinkLayerStatsRecycledWithManyPeersAndRates_1_5() throws Exception {
+        when(mResources.getBoolean(R.bool.config_wifiLinkLayerAllRadiosStatsAggregationEnabled))
+                .thenReturn(true);
+        Random r = new Random(1775968256);
+        WifiLinkLayerStats reuse = new WifiLinkLayerStats();
+        android.hardware.wifi.V1_5.StaLinkLayerStats stats =
+                createMultiRadioStats_1_5(r, 2, 16, 32);
+        WifiLinkLayerStats converted =
+                WifiVendorHal.frameworkFromHalLinkLayerStats_1_5(stats, reuse);
+        assertSame(reuse, converted);
+        PeerInfo[] peerInfo = converted.peerInfo;
+        RateStat firstRateStat = converted.peerInfo[0].rateStats[0];
+        RadioStat[] radioStats = converted.radioStats;
+        ChannelStats channelStats = converted.channelStatsMap.get(TEST_FREQUENCIES[0]);
+        int[] txTimePerLevel = converted.tx_time_per_level;
+
+        for (int i = 0; i < 100; i++) {
+            stats = createMultiRadioStats_1_5(r, 2, 16, 32);
+            converted = WifiVendorHal.frameworkFromHalLinkLayerStats_1_5(stats, reuse);
+
+            assertSame(reuse, converted);
+            verifyIFaceStats(stats.iface.V1_0, converted);
+            verifyIFaceStats_1_5(stats.iface, converted);
+            verifyPerRadioStats(stats.radios, converted);
+            verifyTwoRadioStatsAggregation_1_5(stats.radios, converted);
+            assertEquals(stats.timeStampInMs, converted.timeStampInMs);
+            assertEquals(2, converted.numRadios);
+            assertSame(peerInfo, converted.peerInfo);
+            assertSame(firstRateStat, converted.peerInfo[0].rateStats[0]);
+            assertSame(radioStats, converted.radioStats);
+            assertSame(txTimePerLevel, converted.tx_time_per_level);
+            assertTrue(isChannelStatsReused(channelStats, converted));
+        }
+
+        // Fewer radios and channels: no stale entry is left from the previous conversion.
+        stats = createMultiRadioStats_1_5(r, 1, 1, 1);
+        stats.radios.get(0).V1_3.channelStats.remove(0);
+        converted = WifiVendorHal.frameworkFromHalLinkLayerStats_1_5(stats, reuse);
+        verifyIFaceStats_1_5(stats.iface, converted);
+        verifyPerRadioStats(stats.radios, converted);
+        verifyRadioStats_1_5(stats.radios.get(0), converted);
+        assertNull(converted.channelStatsMap.get(TEST_FREQUENCIES[0]));
+        assertEquals(1, converted.peerInfo.length);
+        assertEquals(1, converted.peerInfo[0].rateStats.length);
+        assertEquals(1, converted.numRadios);
+    }
+
+    private static boolean isChannelStatsReused(ChannelStats channelStats,
+            WifiLinkLayerStats wifiLinkLayerStats) {
+        if (wifiLinkLayerStats.channelStatsMap.indexOfValue(channelStats) >= 0) return true;
+        for (RadioStat radio : wifiLinkLayerStats.radioStats) {
+            if (radio.channelStatsMap.indexOfValue(channelStats) >= 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Create link layer stats V1_5 with the given number of radios, peers and rates per peer,
+     * populated with non-negative random values.
+     */
+    private static android.hardware.wifi.V1_5.StaLinkLayerStats createMultiRadioStats_1_5(
+            Random r, int numRadios, int numPeers, int numRates) {
+        android.hardware.wifi.V1_5.StaLinkLayerStats stats =
+                new android.hardware.wifi.V1_5.StaLinkLayerStats();
+        randomizePacketStats(r, stats.iface.V1_0.wmeBePktStats);
+        randomizePacketStats(r, stats.iface.V1_0.wmeBkPktStats);
+        randomizePacketStats(r, stats.iface.V1_0.wmeViPktStats);
+        randomizePacketStats(r, stats.iface.V1_0.wmeVoPktStats);
+        randomizeContentionTimeStats(r, stats.iface.wmeBeContentionTimeStats);
+        randomizeContentionTimeStats(r, stats.iface.wmeBkContentionTimeStats);
+        randomizeContentionTimeStats(r, stats.iface.wmeViContentionTimeStats);
+        randomizeContentionTimeStats(r, stats.iface.wmeVoContentionTimeStats);
+        for (int i = 0; i < numPeers; i++) {
+            randomizePeerInfoStats(r, stats.iface.peers);
+            StaPeerInfo peer = stats.iface.peers.get(i);
+            StaRateStat rateStat = peer.rateStats.get(0);
+            for (int j = 1; j < numRates; j++) {
+                StaRateStat rateStatCopy = new StaRateStat();
+                rateStatCopy.rateInfo.preamble = rateStat.rateInfo.preamble;
+                rateStatCopy.rateInfo.nss = rateStat.rateInfo.nss;
+                rateStatCopy.rateInfo.bw = rateStat.rateInfo.bw;
+                rateStatCopy.rateInfo.rateMcsIdx = j;
+                rateStatCopy.rateInfo.bitRateInKbps = r.nextInt() & 0x7FFFFFFF;
+                rateStatCopy.txMpdu = r.nextInt() & 0x7FFFFFFF;
+                rateStatCopy.rxMpdu = r.nextInt() & 0x7FFFFFFF;
+                rateStatCopy.mpduLost = r.nextInt() & 0x7FFFFFFF;
+                rateStatCopy.retries = r.nextInt() & 0x7FFFFFFF;
+                peer.rateStats.add(rateStatCopy);
+            }
+        }
+        for (int i = 0; i < numRadios; i++) {
+            android.hardware.wifi.V1_5.StaLinkLayerRadioStats rstat =
+                    new android.hardware.wifi.V1_5.StaLinkLayerRadioStats();
+            randomizeRadioStats_1_5(r, rstat);
+            stats.radios.add(rstat);
+        }
+        stats.timeStampInMs = r.nextLong() & 0xFFFFFFFFFFL;
+        return stats;
+    }
+
     private void verifyIFaceStats(StaLinkLayerIfaceStats iface,
             WifiLinkLayerStats wifiLinkLayerStats) {
         assertEquals(iface.beaconRx, wifiLinkLayerStats.beacon_rx);
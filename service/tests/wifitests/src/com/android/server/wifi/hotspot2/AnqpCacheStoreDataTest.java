@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.hotspot2;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.util.Xml;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.internal.util.FastXmlSerializer;
+import com.android.server.wifi.Clock;
+import com.android.server.wifi.WifiBaseTest;
+import com.android.server.wifi.WifiConfigStore;
+import com.android.server.wifi.hotspot2.anqp.ANQPElement;
+import com.android.server.wifi.hotspot2.anqp.ANQPParser;
+import com.android.server.wifi.hotspot2.anqp.Constants;
+import com.android.server.wifi.hotspot2.anqp.DomainNameElement;
+import com.android.server.wifi.util.WifiConfigStoreEncryptionUtil;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlSerializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Unit tests for {@link com.android.server.wifi.hotspot2.AnqpCacheStoreData}.
+ */
+@SmallTest
+public class AnqpCacheStoreDataTest extends WifiBaseTest {
+    private static final ANQPNetworkKey TEST_KEY = new ANQPNetworkKey("test", 0L, 0L, 1);
+    private static final String TEST_DOMAIN_NAME = "test.com";
+    private static final long TEST_REMAINING_LIFETIME_MILLISECONDS = 1_000_000L;
+    private static final long TEST_AGE_MILLISECONDS = 100_000L;
+
+    @Mock AnqpCacheStoreData.DataSource mDataSource;
+    @Mock Clock mClock;
+    AnqpCacheStoreData mAnqpCacheStoreData;
+
+    /** Sets up test. */
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        mAnqpCacheStoreData = new AnqpCacheStoreData(mDataSource, mClock);
+    }
+
+    /**
+     * Helper function for serializing store data to a XML block.
+     *
+     * @return byte[]
+     * @throws Exception
+     */
+    private byte[] serializeData() throws Exception {
+        final XmlSerializer out = new FastXmlSerializer();
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        out.setOutput(outputStream, StandardCharsets.UTF_8.name());
+        mAnqpCacheStoreData.serializeData(out, mock(WifiConfigStoreEncryptionUtil.class));
+        out.flush();
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Helper function for deserializing store data from a XML block.
+     *
+     * @param data The XML block data bytes
+     * @throws Exception
+     */
+    private void deserializeData(byte[] data) throws Exception {
+        final XmlPullParser in = Xml.newPullParser();
+        final ByteArrayInputStream inputStream = new ByteArrayInputStream(data);
+        in.setInput(inputStream, StandardCharsets.UTF_8.name());
+        mAnqpCacheStoreData.deserializeData(in, in.getDepth(),
+                WifiConfigStore.ENCRYPT_CREDENTIALS_CONFIG_STORE_DATA_VERSION,
+                mock(WifiConfigStoreEncryptionUtil.class));
+    }
+
+    /**
+     * Helper function for creating the payload of a Domain Name ANQP element.
+     */
+    private static byte[] createDomainNamePayload(String domain) {
+        byte[] domainBytes = domain.getBytes(StandardCharsets.ISO_8859_1);
+        byte[] payload = new byte[domainBytes.length + 1];
+        payload[0] = (byte) domainBytes.length;
+        System.arraycopy(domainBytes, 0, payload, 1, domainBytes.length);
+        return payload;
+    }
+
+    /**
+     * Helper function for setting up the data source with an entry which expires after
+     * {@link #TEST_REMAINING_LIFETIME_MILLISECONDS}.
+     */
+    private void setupAnqpEntry(ANQPElement element) {
+        Map<Constants.ANQPElementType, ANQPElement> anqpElements = new HashMap<>();
+        anqpElements.put(element.getID(), element);
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(0L);
+        Map<ANQPNetworkKey, ANQPData> entries = new HashMap<>();
+        entries.put(TEST_KEY,
+                new ANQPData(mClock, anqpElements, TEST_REMAINING_LIFETIME_MILLISECONDS));
+        when(mDataSource.getAnqpEntries()).thenReturn(entries);
+    }
+
+    /**
+     * Verify that the serialization and deserialization of the ANQP entries works as expected,
+     * and that the time elapsed since the serialization is deducted from their lifetime.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void serializeAndDeserializeAnqpEntries() throws Exception {
+        setupAnqpEntry(ANQPParser.parseElementPayload(Constants.ANQPElementType.ANQPDomName,
+                createDomainNamePayload(TEST_DOMAIN_NAME)));
+        when(mClock.getWallClockMillis()).thenReturn(0L);
+        byte[] data = serializeData();
+
+        // Deserialize the data after a reboot.
+        long elapsedSinceBoot = 5_000L;
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(elapsedSinceBoot);
+        when(mClock.getWallClockMillis()).thenReturn(TEST_AGE_MILLISECONDS);
+        deserializeData(data);
+
+        ArgumentCaptor<Map<Constants.ANQPElementType, ANQPElement>> elementsCaptor =
+                ArgumentCaptor.forClass(Map.class);
+        verify(mDataSource).restoreAnqpEntry(eq(TEST_KEY), elementsCaptor.capture(),
+                eq(elapsedSinceBoot + TEST_REMAINING_LIFETIME_MILLISECONDS
+                        - TEST_AGE_MILLISECONDS));
+        assertEquals(new DomainNameElement(Arrays.asList(TEST_DOMAIN_NAME)),
+                elementsCaptor.getValue().get(Constants.ANQPElementType.ANQPDomName));
+    }
+
+    /**
+     * Verify that an entry which expired since the serialization is not restored.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void deserializeExpiredAnqpEntry() throws Exception {
+        setupAnqpEntry(ANQPParser.parseElementPayload(Constants.ANQPElementType.ANQPDomName,
+                createDomainNamePayload(TEST_DOMAIN_NAME)));
+        when(mClock.getWallClockMillis()).thenReturn(0L);
+        byte[] data = serializeData();
+
+        when(mClock.getWallClockMillis()).thenReturn(TEST_REMAINING_LIFETIME_MILLISECONDS);
+        deserializeData(data);
+        verify(mDataSource, never()).restoreAnqpEntry(any(), anyMap(), anyLong());
+    }
+
+    /**
+     * Verify that an entry with an ANQP element which was not parsed from a payload, and so
+     * can't be restored, is not persisted.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void serializeAnqpEntryWithoutPayload() throws Exception {
+        setupAnqpEntry(new DomainNameElement(Arrays.asList(TEST_DOMAIN_NAME)));
+        byte[] data = serializeData();
+
+        deserializeData(data);
+        verify(mDataSource, never()).restoreAnqpEntry(any(), anyMap(), anyLong());
+    }
+
+    /**
+     * Verify that deserialization of an empty store data doesn't cause any exception and no
+     * entry is restored.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void deserializeEmptyStoreData() throws Exception {
+        deserializeData(new byte[0]);
+        verify(mDataSource, never()).restoreAnqpEntry(any(), anyMap(), anyLong());
+    }
+
+    /**
+     * Verify that AnqpCacheStoreData is written to
+     * {@link WifiConfigStore#STORE_FILE_NAME_SHARED_GENERAL}.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void getStoreFileId() throws Exception {
+        assertEquals(WifiConfigStore.STORE_FILE_SHARED_GENERAL,
+                mAnqpCacheStoreData.getStoreFileId());
+    }
+}
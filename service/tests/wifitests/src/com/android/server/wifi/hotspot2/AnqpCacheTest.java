@@ -16,6 +16,7 @@
 
 package com.android.server.wifi.hotspot2;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
@@ -119,6 +120,110 @@ public class AnqpCacheTest extends WifiBaseTest {
         assertNull(mCache.getEntry(ENTRY_KEY));
     }
 
+    /**
+     * Verify that an entry updated before it expires is not removed by the sweep.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void sweepKeepUpdatedEntry() throws Exception {
+        mCache.addEntry(ENTRY_KEY, null);
+
+        // Update the entry before it expires, which extends its lifetime.
+        when(mClock.getElapsedSinceBootMillis())
+                .thenReturn(ANQPData.DATA_LIFETIME_MILLISECONDS / 2);
+        mCache.addOrUpdateEntry(ENTRY_KEY, new HashMap<>());
+
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(ANQPData.DATA_LIFETIME_MILLISECONDS);
+        mCache.sweep();
+        assertNotNull(mCache.getEntry(ENTRY_KEY));
+
+        when(mClock.getElapsedSinceBootMillis())
+                .thenReturn(ANQPData.DATA_LIFETIME_MILLISECONDS * 3 / 2);
+        mCache.sweep();
+        assertNull(mCache.getEntry(ENTRY_KEY));
+    }
+
+    /**
+     * Verify that the least recently used entry is evicted when the cache is full.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void evictLeastRecentlyUsedEntry() throws Exception {
+        for (int i = 0; i < AnqpCache.CACHE_MAX_SIZE; i++) {
+            mCache.addEntry(new ANQPNetworkKey("test", i, 0L, 0), null);
+        }
+        // Use the first entry so that the second one is the least recently used.
+        ANQPNetworkKey firstKey = new ANQPNetworkKey("test", 0L, 0L, 0);
+        assertNotNull(mCache.getEntry(firstKey));
+
+        mCache.addEntry(ENTRY_KEY, null);
+        assertEquals(1, mCache.getEvictionCount());
+        assertNotNull(mCache.getEntry(firstKey));
+        assertNotNull(mCache.getEntry(ENTRY_KEY));
+        assertNull(mCache.getEntry(new ANQPNetworkKey("test", 1L, 0L, 0)));
+    }
+
+    /**
+     * Verify that the lookups are counted as hits or misses.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void countHitsAndMisses() throws Exception {
+        assertNull(mCache.getEntry(ENTRY_KEY));
+        mCache.addEntry(ENTRY_KEY, null);
+        assertNotNull(mCache.getEntry(ENTRY_KEY));
+        assertNotNull(mCache.getEntry(ENTRY_KEY));
+
+        assertEquals(2, mCache.getHitCount());
+        assertEquals(1, mCache.getMissCount());
+        assertEquals(0, mCache.getEvictionCount());
+    }
+
+    /**
+     * Verify that the snapshot only contains the entries which are not expired and resets the
+     * changed state of the cache.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void getSnapshot() throws Exception {
+        assertFalse(mCache.hasChangedSinceSnapshot());
+        mCache.addEntry(ENTRY_KEY, null);
+        mCache.restoreEntry(new ANQPNetworkKey("expired", 0L, 0L, 1), null, 1L);
+        assertTrue(mCache.hasChangedSinceSnapshot());
+
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(1L);
+        Map<ANQPNetworkKey, ANQPData> snapshot = mCache.getSnapshot();
+        assertEquals(1, snapshot.size());
+        assertNotNull(snapshot.get(ENTRY_KEY));
+        assertFalse(mCache.hasChangedSinceSnapshot());
+    }
+
+    /**
+     * Verify that a restored entry expires at the given time and does not replace an existing
+     * entry.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void restoreEntry() throws Exception {
+        ANQPNetworkKey restoredKey = new ANQPNetworkKey("restored", 0L, 0L, 1);
+        long expiryTime = AnqpCache.CACHE_SWEEP_INTERVAL_MILLISECONDS * 2;
+        mCache.restoreEntry(restoredKey, null, expiryTime);
+        mCache.addEntry(ENTRY_KEY, null);
+        ANQPData data = mCache.getEntry(ENTRY_KEY);
+        mCache.restoreEntry(ENTRY_KEY, null, expiryTime);
+        assertTrue(data == mCache.getEntry(ENTRY_KEY));
+
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(expiryTime);
+        mCache.sweep();
+        assertNull(mCache.getEntry(restoredKey));
+        assertNotNull(mCache.getEntry(ENTRY_KEY));
+    }
+
     /**
      * Verify the expectation for the flush function (all entries will be removed).
      *
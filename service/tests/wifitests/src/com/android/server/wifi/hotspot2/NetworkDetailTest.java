@@ -26,6 +26,7 @@ import android.net.wifi.ScanResult.InformationElement;
 import android.text.TextUtils;
 
 import com.android.server.wifi.WifiBaseTest;
+import com.android.server.wifi.util.InformationElementUtil;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -181,6 +182,68 @@ public class NetworkDetailTest extends WifiBaseTest {
         assertTrue(networkDetail.getAffiliatedMloLinks().isEmpty());
     }
 
+    /**
+     * Verify that the elements of the groups excluded from the decode mask are skipped.
+     */
+    @Test
+    public void verifyDecodeMaskSkipsMultiLinkIe() throws Exception {
+        InformationElement[] ies = new InformationElement[1];
+        ies[0] = new InformationElement();
+        ies[0].id = InformationElement.EID_EXTENSION_PRESENT;
+        ies[0].idExt = InformationElement.EID_EXT_MULTI_LINK;
+        ies[0].bytes = new byte[] {
+                (byte) 0x10,  (byte) 0x00,                              // Control
+                (byte) 0x08,  (byte) 0x02, (byte) 0x34, (byte) 0x56,    // Common Info
+                (byte) 0x78,  (byte) 0x9A, (byte) 0xBC, (byte) 0x01
+        };
+
+        NetworkDetail networkDetail = new NetworkDetail(TEST_BSSID, ies,
+                Collections.emptyList(), 5745,
+                NetworkDetail.DECODE_ALL & ~NetworkDetail.DECODE_MLO, null);
+        assertNull(networkDetail.getMldMacAddress());
+
+        networkDetail = new NetworkDetail(TEST_BSSID, ies, Collections.emptyList(), 5745,
+                NetworkDetail.DECODE_MLO, null);
+        assertEquals(TEST_AP_MLD_MAC_ADDRESS, networkDetail.getMldMacAddress().toString());
+    }
+
+    /**
+     * Verify that the capabilities built in the same traversal as the NetworkDetail match the
+     * capabilities built from a separate traversal.
+     */
+    @Test
+    public void verifySinglePassCapabilitiesMatchSeparatePass() throws Exception {
+        InformationElement[] ies = new InformationElement[2];
+        ies[0] = new InformationElement();
+        ies[0].id = InformationElement.EID_SSID;
+        ies[0].bytes = "TestSsid".getBytes();
+        // RSN IE: CCMP group/pairwise, PSK AKM
+        ies[1] = new InformationElement();
+        ies[1].id = InformationElement.EID_RSN;
+        ies[1].bytes = new byte[] {
+                (byte) 0x01, (byte) 0x00,                               // Version
+                (byte) 0x00, (byte) 0x0F, (byte) 0xAC, (byte) 0x04,     // Group cipher
+                (byte) 0x01, (byte) 0x00,                               // Pairwise count
+                (byte) 0x00, (byte) 0x0F, (byte) 0xAC, (byte) 0x04,     // Pairwise cipher
+                (byte) 0x01, (byte) 0x00,                               // AKM count
+                (byte) 0x00, (byte) 0x0F, (byte) 0xAC, (byte) 0x02      // PSK
+        };
+        int beaconCap = 0x0011;
+
+        InformationElementUtil.Capabilities expected = new InformationElementUtil.Capabilities();
+        expected.from(ies, beaconCap, false, 5745);
+
+        InformationElementUtil.Capabilities capabilities =
+                new InformationElementUtil.Capabilities();
+        capabilities.init(beaconCap, false, 5745);
+        NetworkDetail networkDetail = new NetworkDetail(TEST_BSSID, ies,
+                Collections.emptyList(), 5745, NetworkDetail.DECODE_ALL, capabilities);
+
+        assertEquals("TestSsid", networkDetail.getSSID());
+        assertEquals(expected.generateCapabilitiesString(),
+                capabilities.generateCapabilitiesString());
+    }
+
     @Test
     public void  verifySameTextFormat() throws Exception {
         long[] testBssids = {0x11ab0d0f7890L, 0x1, 0x3300, 0x0, 0xffffffffffffL};
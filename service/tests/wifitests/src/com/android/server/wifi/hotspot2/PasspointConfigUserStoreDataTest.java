@@ -40,6 +40,8 @@ import com.android.server.wifi.WifiBaseTest;
 import com.android.server.wifi.WifiCarrierInfoManager;
 import com.android.server.wifi.WifiConfigStore;
 import com.android.server.wifi.WifiKeyStore;
+import com.android.server.wifi.util.WifiBinaryXmlPullParser;
+import com.android.server.wifi.util.WifiBinaryXmlSerializer;
 import com.android.server.wifi.util.WifiConfigStoreEncryptionUtil;
 
 import org.junit.Before;
@@ -220,7 +222,13 @@ public class PasspointConfigUserStoreDataTest extends WifiBaseTest {
      * @throws Exception
      */
     private byte[] serializeData() throws Exception {
-        final XmlSerializer out = new FastXmlSerializer();
+        return serializeData(new FastXmlSerializer());
+    }
+
+    /**
+     * Helper function for serializing the data using the provided serializer.
+     */
+    private byte[] serializeData(XmlSerializer out) throws Exception {
         final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
         out.setOutput(outputStream, StandardCharsets.UTF_8.name());
         mConfigStoreData.serializeData(out, mock(WifiConfigStoreEncryptionUtil.class));
@@ -235,7 +243,13 @@ public class PasspointConfigUserStoreDataTest extends WifiBaseTest {
      * @throws Exception
      */
     private void deserializeData(byte[] data) throws Exception {
-        final XmlPullParser in = Xml.newPullParser();
+        deserializeData(data, Xml.newPullParser());
+    }
+
+    /**
+     * Helper function for parsing the data using the provided parser.
+     */
+    private void deserializeData(byte[] data, XmlPullParser in) throws Exception {
         final ByteArrayInputStream inputStream = new ByteArrayInputStream(data);
         in.setInput(inputStream, StandardCharsets.UTF_8.name());
         mConfigStoreData.deserializeData(in, in.getDepth(),
@@ -251,6 +265,23 @@ public class PasspointConfigUserStoreDataTest extends WifiBaseTest {
      */
     @Test
     public void serializeAndDeserializeUserStoreData() throws Exception {
+        verifySerializeAndDeserializeUserStoreData(new FastXmlSerializer(), Xml.newPullParser());
+    }
+
+    /**
+     * Verify that the user store data is read back unchanged from the binary format, without
+     * reaching any method unsupported by the binary serializer or parser.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void serializeAndDeserializeUserStoreDataInBinaryFormat() throws Exception {
+        verifySerializeAndDeserializeUserStoreData(new WifiBinaryXmlSerializer(),
+                new WifiBinaryXmlPullParser());
+    }
+
+    private void verifySerializeAndDeserializeUserStoreData(XmlSerializer out, XmlPullParser in)
+            throws Exception {
         // Setup expected data.
         List<PasspointProvider> providerList = new ArrayList<>();
         PasspointProvider provider1 = new PasspointProvider(createFullPasspointConfiguration(),
@@ -273,11 +304,11 @@ public class PasspointConfigUserStoreDataTest extends WifiBaseTest {
 
         // Serialize data for user store.
         when(mDataSource.getProviders()).thenReturn(providerList);
-        byte[] data = serializeData();
+        byte[] data = serializeData(out);
 
         // Deserialize data for user store and verify the content.
         ArgumentCaptor<ArrayList> providersCaptor = ArgumentCaptor.forClass(ArrayList.class);
-        deserializeData(data);
+        deserializeData(data, in);
         verify(mDataSource).setProviders(providersCaptor.capture());
         assertEquals(providerList, providersCaptor.getValue());
     }
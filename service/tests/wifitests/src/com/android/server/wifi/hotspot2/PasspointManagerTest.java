@@ -90,6 +90,7 @@ import com.android.server.wifi.WifiCarrierInfoManager;
 import com.android.server.wifi.WifiConfigManager;
 import com.android.server.wifi.WifiConfigStore;
 import com.android.server.wifi.WifiConfigurationTestUtil;
+import com.android.server.wifi.WifiGlobals;
 import com.android.server.wifi.WifiInjector;
 import com.android.server.wifi.WifiKeyStore;
 import com.android.server.wifi.WifiMetrics;
@@ -1136,6 +1137,28 @@ public class PasspointManagerTest extends WifiBaseTest {
         verify(mAnqpCache).sweep();
     }
 
+    /**
+     * Verify that sweepCache triggers a store write for the new ANQP entries when the ANQP
+     * cache persistence is enabled, at most once per interval.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void sweepCacheSavesNewAnqpEntries() throws Exception {
+        WifiGlobals wifiGlobals = mock(WifiGlobals.class);
+        when(mWifiInjector.getWifiGlobals()).thenReturn(wifiGlobals);
+        when(wifiGlobals.isAnqpCachePersistenceEnabled()).thenReturn(true);
+        when(mAnqpCache.hasChangedSinceSnapshot()).thenReturn(true);
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(1_000_000L);
+        reset(mWifiConfigManager);
+
+        mManager.sweepCache();
+        verify(mWifiConfigManager).saveToStore(false);
+
+        mManager.sweepCache();
+        verify(mWifiConfigManager).saveToStore(anyBoolean());
+    }
+
     /**
      * Verify that an empty map will be returned if ANQP elements are not cached for the given AP.
      *
@@ -1165,10 +1188,26 @@ public class PasspointManagerTest extends WifiBaseTest {
     }
 
     /**
-     * Verify that if the Carrier ID is updated during match, the config should be persisted.
+     * Verify that if the Carrier ID is updated when the active subscriptions change, the config
+     * should be persisted.
+     */
+    @Test
+    public void updateCarrierIdOnActiveSubscriptionsChangedWithFullImsiSimCredential() {
+        PasspointProvider provider = addTestProvider(TEST_FQDN + 0, TEST_FRIENDLY_NAME,
+                TEST_PACKAGE, false, null);
+        when(provider.tryUpdateCarrierId()).thenReturn(true);
+        reset(mWifiConfigManager);
+
+        mSubscriptionsCaptor.getValue().onSubscriptionsChanged();
+
+        verify(mWifiConfigManager).saveToStore(eq(true));
+    }
+
+    /**
+     * Verify that the Carrier ID is not updated while matching the providers.
      */
     @Test
-    public void getAllMatchingProvidersUpdatedConfigWithFullImsiSimCredential() {
+    public void getAllMatchingProvidersDoesNotUpdateCarrierId() {
         // static mocking
         MockitoSession session =
                 com.android.dx.mockito.inline.extended.ExtendedMockito.mockitoSession().mockStatic(
@@ -1191,12 +1230,59 @@ public class PasspointManagerTest extends WifiBaseTest {
             List<Pair<PasspointProvider, PasspointMatch>> matchedProviders =
                     mManager.getAllMatchedProviders(createTestScanResult());
 
-            verify(mWifiConfigManager).saveToStore(eq(true));
+            assertEquals(1, matchedProviders.size());
+            verify(provider, never()).tryUpdateCarrierId();
+            verify(mWifiConfigManager, never()).saveToStore(anyBoolean());
+        } finally {
+            session.finishMocking();
+        }
+    }
 
+    /**
+     * Verify that an AP is only matched against the providers which could match it.
+     */
+    @Test
+    public void getAllMatchingProvidersOnlyMatchesCandidateProviders() {
+        // static mocking
+        MockitoSession session =
+                com.android.dx.mockito.inline.extended.ExtendedMockito.mockitoSession().mockStatic(
+                        InformationElementUtil.class).startMocking();
+        try {
+            PasspointProvider provider1 = addTestProvider(TEST_FQDN + 0, TEST_FRIENDLY_NAME,
+                    TEST_PACKAGE, false, null);
+            PasspointProvider provider2 = addTestProvider(TEST_FQDN + 1, TEST_FRIENDLY_NAME,
+                    TEST_PACKAGE, false, null);
+            PasspointProviderMatchIndex.Keys keys1 = new PasspointProviderMatchIndex.Keys();
+            keys1.addDomain("example.com");
+            PasspointProviderMatchIndex.Keys keys2 = new PasspointProviderMatchIndex.Keys();
+            keys2.addDomain("other.com");
+            when(provider1.getMatchIndexKeys()).thenReturn(keys1);
+            when(provider2.getMatchIndexKeys()).thenReturn(keys2);
+            // Re-index the providers with their keys.
+            mUserDataSource.setProviders(Arrays.asList(provider1, provider2));
+
+            Map<ANQPElementType, ANQPElement> anqpElementMap = new HashMap<>();
+            anqpElementMap.put(ANQPElementType.ANQPDomName,
+                    new DomainNameElement(Arrays.asList("www.example.com")));
+            ANQPData entry = new ANQPData(mClock, anqpElementMap);
+            InformationElementUtil.Vsa vsa = new InformationElementUtil.Vsa();
+            vsa.anqpDomainID = TEST_ANQP_DOMAIN_ID2;
+            when(mAnqpCache.getEntry(TEST_ANQP_KEY2)).thenReturn(entry);
+            when(InformationElementUtil.getHS2VendorSpecificIE(isNull())).thenReturn(vsa);
+            when(provider1.match(anyMap(), isNull(), any(ScanResult.class)))
+                    .thenReturn(PasspointMatch.HomeProvider);
+
+            List<Pair<PasspointProvider, PasspointMatch>> matchedProviders =
+                    mManager.getAllMatchedProviders(createTestScanResult());
+
+            assertEquals(1, matchedProviders.size());
+            assertEquals(provider1, matchedProviders.get(0).first);
+            verify(provider2, never()).match(any(), any(), any());
         } finally {
             session.finishMocking();
         }
     }
+
     /**
      * Verify that an expected map of FQDN and a list of ScanResult will be returned when provided
      * scanResults are matched to installed Passpoint profiles.
@@ -2552,6 +2638,45 @@ public class PasspointManagerTest extends WifiBaseTest {
         assertEquals(0, testResults.size());
     }
 
+    /**
+     * Verify that the ScanResults matched by each of several passpoint configurations are
+     * returned, with a single provider built per configuration.
+     */
+    @Test
+    public void getMatchingScanResultsTestWithMultipleConfigurations() {
+        PasspointConfiguration config1 = mock(PasspointConfiguration.class);
+        PasspointConfiguration config2 = mock(PasspointConfiguration.class);
+        PasspointProvider mockProvider1 = mock(PasspointProvider.class);
+        PasspointProvider mockProvider2 = mock(PasspointProvider.class);
+        when(mObjectFactory.makePasspointProvider(config1, null,
+                mWifiCarrierInfoManager, 0, 0, null, false, mClock))
+                .thenReturn(mockProvider1);
+        when(mObjectFactory.makePasspointProvider(config2, null,
+                mWifiCarrierInfoManager, 0, 0, null, false, mClock))
+                .thenReturn(mockProvider2);
+        ScanResult scanResult1 = mock(ScanResult.class);
+        ScanResult scanResult2 = mock(ScanResult.class);
+        List<ScanResult> scanResults = Arrays.asList(scanResult1, scanResult2);
+        when(mockProvider1.match(anyMap(), any(RoamingConsortium.class), any(ScanResult.class)))
+                .thenReturn(PasspointMatch.None);
+        when(mockProvider1.match(anyMap(), any(RoamingConsortium.class), eq(scanResult1)))
+                .thenReturn(PasspointMatch.HomeProvider);
+        when(mockProvider2.match(anyMap(), any(RoamingConsortium.class), any(ScanResult.class)))
+                .thenReturn(PasspointMatch.None);
+        when(mockProvider2.match(anyMap(), any(RoamingConsortium.class), eq(scanResult2)))
+                .thenReturn(PasspointMatch.RoamingProvider);
+
+        Map<PasspointConfiguration, List<ScanResult>> testResults =
+                mManager.getMatchingScanResults(Arrays.asList(config1, config2, config1),
+                        scanResults);
+
+        assertEquals(2, testResults.size());
+        assertEquals(Collections.singletonList(scanResult1), testResults.get(config1));
+        assertEquals(Collections.singletonList(scanResult2), testResults.get(config2));
+        verify(mObjectFactory).makePasspointProvider(config1, null,
+                mWifiCarrierInfoManager, 0, 0, null, false, mClock);
+    }
+
     /**
      * Verify that no ANQP queries are requested when not allowed (i.e. by WifiMetrics) when
      * there is a cache miss.
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.hotspot2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.server.wifi.WifiBaseTest;
+import com.android.server.wifi.hotspot2.anqp.ANQPElement;
+import com.android.server.wifi.hotspot2.anqp.Constants.ANQPElementType;
+import com.android.server.wifi.hotspot2.anqp.DomainNameElement;
+import com.android.server.wifi.hotspot2.anqp.NAIRealmData;
+import com.android.server.wifi.hotspot2.anqp.NAIRealmElement;
+import com.android.server.wifi.hotspot2.anqp.RoamingConsortiumElement;
+import com.android.server.wifi.util.InformationElementUtil.RoamingConsortium;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Unit tests for {@link PasspointProviderMatchIndex}.
+ */
+@SmallTest
+public class PasspointProviderMatchIndexTest extends WifiBaseTest {
+    private static final int NUM_PROVIDERS = 200;
+    private static final long TEST_OI_BASE = 0x1234560000L;
+
+    private PasspointProviderMatchIndex mIndex;
+    private List<PasspointProvider> mProviders;
+
+    @Before
+    public void setUp() throws Exception {
+        mIndex = new PasspointProviderMatchIndex();
+        mProviders = new ArrayList<>();
+        for (int i = 0; i < NUM_PROVIDERS; i++) {
+            PasspointProviderMatchIndex.Keys keys = new PasspointProviderMatchIndex.Keys();
+            keys.addDomain("Provider" + i + ".com");
+            keys.addOis(new long[] {TEST_OI_BASE + i});
+            PasspointProvider provider = mock(PasspointProvider.class);
+            when(provider.getMatchIndexKeys()).thenReturn(keys);
+            mProviders.add(provider);
+            mIndex.addProvider(provider);
+        }
+    }
+
+    private static Map<ANQPElementType, ANQPElement> createAnqpElements(ANQPElement element) {
+        Map<ANQPElementType, ANQPElement> anqpElements = new HashMap<>();
+        anqpElements.put(element.getID(), element);
+        return anqpElements;
+    }
+
+    /**
+     * Verify that only the provider with a domain matching the advertised domain, or one of its
+     * parent domains, is a candidate.
+     */
+    @Test
+    public void getCandidateProvidersWithDomainName() {
+        Set<PasspointProvider> candidates = mIndex.getCandidateProviders(
+                createAnqpElements(new DomainNameElement(Arrays.asList("www.provider7.com"))),
+                null);
+        assertEquals(Collections.singleton(mProviders.get(7)), candidates);
+    }
+
+    /**
+     * Verify that a provider is a candidate for an AP advertising its NAI realm.
+     */
+    @Test
+    public void getCandidateProvidersWithNaiRealm() {
+        NAIRealmData realmData = new NAIRealmData(
+                Arrays.asList("provider42.com"), new ArrayList<>());
+        Set<PasspointProvider> candidates = mIndex.getCandidateProviders(
+                createAnqpElements(new NAIRealmElement(Arrays.asList(realmData))), null);
+        assertEquals(Collections.singleton(mProviders.get(42)), candidates);
+    }
+
+    /**
+     * Verify that the providers are candidates for an AP advertising their OIs, either in the
+     * ANQP Roaming Consortium element or in the Roaming Consortium information element.
+     */
+    @Test
+    public void getCandidateProvidersWithRoamingConsortium() {
+        RoamingConsortium roamingConsortium = mock(RoamingConsortium.class);
+        when(roamingConsortium.getRoamingConsortiums())
+                .thenReturn(new long[] {TEST_OI_BASE + 3});
+        Set<PasspointProvider> candidates = mIndex.getCandidateProviders(
+                createAnqpElements(new RoamingConsortiumElement(
+                        Arrays.asList(TEST_OI_BASE + 100))), roamingConsortium);
+        assertEquals(2, candidates.size());
+        assertTrue(candidates.contains(mProviders.get(3)));
+        assertTrue(candidates.contains(mProviders.get(100)));
+    }
+
+    /**
+     * Verify that a provider without index keys is always a candidate.
+     */
+    @Test
+    public void getCandidateProvidersWithUnindexedProvider() {
+        PasspointProvider provider = mock(PasspointProvider.class);
+        mIndex.addProvider(provider);
+
+        assertEquals(Collections.singleton(provider), mIndex.getCandidateProviders(null, null));
+        assertEquals(Collections.singleton(provider), mIndex.getCandidateProviders(
+                createAnqpElements(new DomainNameElement(Arrays.asList("unknown.com"))),
+                null));
+    }
+
+    /**
+     * Verify that a removed provider is no longer a candidate.
+     */
+    @Test
+    public void getCandidateProvidersAfterRemoval() {
+        Map<ANQPElementType, ANQPElement> anqpElements =
+                createAnqpElements(new DomainNameElement(Arrays.asList("provider7.com")));
+        mIndex.removeProvider(mProviders.get(7));
+        assertTrue(mIndex.getCandidateProviders(anqpElements, null).isEmpty());
+
+        mIndex.addProvider(mProviders.get(7));
+        mIndex.clear();
+        assertTrue(mIndex.getCandidateProviders(anqpElements, null).isEmpty());
+    }
+}
@@ -16,6 +16,7 @@
 
 package com.android.server.wifi.hotspot2.anqp;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 import android.net.wifi.WifiSsid;
@@ -414,6 +415,28 @@ public class ANQPParserTest extends WifiBaseTest {
                 Constants.ANQPElementType.ANQPVendorSpec, ByteBuffer.wrap(data)));
     }
 
+    /**
+     * Verify that the payload kept for a vendor specific element is the one of the contained
+     * Hotspot 2.0 element, so that it can be parsed again with the type of the element.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void parseVendorSpecificElementPayloadKeepsHS20Payload() throws Exception {
+        byte[] hsFriendlyNameBytes = getHSFriendlyNamePayload(
+                new String[] {"en"}, new String[] {"test"});
+        byte[] data = getVendorSpecificPayload(
+                ANQPParser.VENDOR_SPECIFIC_HS20_OI, ANQPParser.VENDOR_SPECIFIC_HS20_TYPE,
+                Constants.HS_FRIENDLY_NAME, hsFriendlyNameBytes);
+
+        ANQPElement element = ANQPParser.parseElementPayload(
+                Constants.ANQPElementType.ANQPVendorSpec, data);
+        assertEquals(Constants.ANQPElementType.HSFriendlyName, element.getID());
+        assertArrayEquals(hsFriendlyNameBytes, element.getPayload());
+        assertEquals(element,
+                ANQPParser.parseElementPayload(element.getID(), element.getPayload()));
+    }
+
     /**
      * Verify that an expected HSFriendlyNameElement will be returned when parsing a buffer that
      * contained a Hotspot 2.0 Friendly Name ANQP element.
@@ -1452,10 +1452,173 @@ public class RttServiceImplTest extends WifiBaseTest {
                 mockCallback3, mAlarmManager.getAlarmManager());
     }
 
+    /**
+     * Validate that, when batching is enabled, the compatible queued requests are executed in a
+     * single HAL command with the identical peers ranged once, and that the results are
+     * demultiplexed to each request.
+     */
+    @Test
+    public void testRangingBatchCompatibleRequests() throws Exception {
+        restartWithBatchingEnabled();
+
+        RangingRequest request0 = RttTestUtils.getDummyRangingRequest((byte) 0);
+        // requests 1 and 2 only share their Aware peer
+        RangingRequest request1 = RttTestUtils.getDummyRangingRequest((byte) 1);
+        RangingRequest request2 = RttTestUtils.getDummyRangingRequest((byte) 2);
+        // request 3 has a different burst size: can't be batched
+        RangingRequest request3 = RttTestUtils.getDummyRangingRequestMcOnly((byte) 3);
+
+        IRttCallback mockCallback2 = mock(IRttCallback.class);
+        IRttCallback mockCallback3 = mock(IRttCallback.class);
+
+        // (1) request 0 is executed, the other requests are queued
+        mDut.startRanging(mockIbinder, mPackageName, mFeatureId, null, request0,
+                mockCallback, mExtras);
+        mMockLooper.dispatchAll();
+        verify(mockNative).rangeRequest(mIntCaptor.capture(), eq(request0), eq(true));
+
+        mDut.startRanging(mockIbinder, mPackageName, mFeatureId, null, request1,
+                mockCallback, mExtras);
+        mDut.startRanging(mockIbinder, mPackageName, mFeatureId, null, request2,
+                mockCallback2, mExtras);
+        mDut.startRanging(mockIbinder, mPackageName, mFeatureId, null, request3,
+                mockCallback3, mExtras);
+        mMockLooper.dispatchAll();
+
+        // (2) results of request 0: requests 1 and 2 are executed in the same HAL command
+        mDut.onRangingResults(mIntCaptor.getValue(),
+                RttTestUtils.getDummyRangingResults(request0).first);
+        mMockLooper.dispatchAll();
+        verify(mockCallback).onRangingResults(any());
+
+        ArgumentCaptor<RangingRequest> requestCaptor =
+                ArgumentCaptor.forClass(RangingRequest.class);
+        verify(mockNative, times(2)).rangeRequest(mIntCaptor.capture(), requestCaptor.capture(),
+                eq(true));
+        RangingRequest batchedRequest = requestCaptor.getValue();
+        assertEquals(request1.mRttPeers.size() + request2.mRttPeers.size() - 1,
+                batchedRequest.mRttPeers.size());
+        assertEquals(request1.mRttBurstSize, batchedRequest.mRttBurstSize);
+
+        // (3) results of the batched command: dispatched to the callbacks of requests 1 and 2
+        mDut.onRangingResults(mIntCaptor.getValue(),
+                RttTestUtils.getDummyRangingResults(batchedRequest).first);
+        mMockLooper.dispatchAll();
+
+        verify(mockCallback, times(2)).onRangingResults(mListCaptor.capture());
+        validateRangingResultsForRequest(request1, mListCaptor.getValue());
+        verify(mockCallback2).onRangingResults(mListCaptor.capture());
+        validateRangingResultsForRequest(request2, mListCaptor.getValue());
+        // the metrics of each request only include the results for its own peers
+        verify(mockMetrics).recordResult(eq(request1), mListCaptor.capture(), anyInt());
+        validateResultsArePeersOfRequest(request1, mListCaptor.getValue());
+        verify(mockMetrics).recordResult(eq(request2), mListCaptor.capture(), anyInt());
+        validateResultsArePeersOfRequest(request2, mListCaptor.getValue());
+
+        // (4) request 3 is executed on its own
+        verify(mockNative).rangeRequest(mIntCaptor.capture(), eq(request3), eq(true));
+        mDut.onRangingResults(mIntCaptor.getValue(),
+                RttTestUtils.getDummyRangingResults(request3).first);
+        mMockLooper.dispatchAll();
+        verify(mockCallback3).onRangingResults(mListCaptor.capture());
+        validateRangingResultsForRequest(request3, mListCaptor.getValue());
+    }
+
+    /**
+     * Validate that, when batching is enabled, a request from a background app which is
+     * throttled isn't batched with the request being executed.
+     */
+    @Test
+    public void testRangingBatchThrottledRequestNotBatched() throws Exception {
+        restartWithBatchingEnabled();
+
+        final WorkSource wsReq1 = new WorkSource(10);
+        final WorkSource wsReq2 = new WorkSource(20);
+
+        RangingRequest request0 = RttTestUtils.getDummyRangingRequest((byte) 0);
+        RangingRequest request1 = RttTestUtils.getDummyRangingRequest((byte) 1);
+        RangingRequest request2 = RttTestUtils.getDummyRangingRequest((byte) 2);
+
+        IRttCallback mockCallback2 = mock(IRttCallback.class);
+
+        ClockAnswer clock = new ClockAnswer();
+        doAnswer(clock).when(mockClock).getElapsedSinceBootMillis();
+        when(mockActivityManager.getUidImportance(anyInt())).thenReturn(
+                ActivityManager.RunningAppProcessInfo.IMPORTANCE_GONE); // far background
+
+        // (1) request 0 from {20} is executed, the other requests are queued
+        clock.time = 100;
+        mDut.startRanging(mockIbinder, mPackageName, mFeatureId, wsReq2, request0,
+                mockCallback, mExtras);
+        mMockLooper.dispatchAll();
+        verify(mockNative).rangeRequest(mIntCaptor.capture(), eq(request0), eq(true));
+
+        mDut.startRanging(mockIbinder, mPackageName, mFeatureId, wsReq1, request1,
+                mockCallback, mExtras);
+        mDut.startRanging(mockIbinder, mPackageName, mFeatureId, wsReq2, request2,
+                mockCallback2, mExtras);
+        mMockLooper.dispatchAll();
+
+        // (2) results of request 0: request 1 from {10} is executed alone since {20} is throttled
+        clock.time = 100 + BACKGROUND_PROCESS_EXEC_GAP_MS / 2;
+        mDut.onRangingResults(mIntCaptor.getValue(),
+                RttTestUtils.getDummyRangingResults(request0).first);
+        mMockLooper.dispatchAll();
+        verify(mockNative).rangeRequest(mIntCaptor.capture(), eq(request1), eq(true));
+
+        // (3) results of request 1: request 2 is rejected (throttled)
+        mDut.onRangingResults(mIntCaptor.getValue(),
+                RttTestUtils.getDummyRangingResults(request1).first);
+        mMockLooper.dispatchAll();
+
+        verify(mockCallback, times(2)).onRangingResults(any());
+        verify(mockCallback2).onRangingFailure(RangingResultCallback.STATUS_CODE_FAIL);
+        verify(mockNative, never()).rangeRequest(anyInt(), eq(request2), anyBoolean());
+        verify(mockMetrics).recordOverallStatus(WifiMetricsProto.WifiRttLog.OVERALL_THROTTLE);
+    }
+
     /*
      * Utilities
      */
 
+    /**
+     * Restart the service with the batching of the compatible ranging requests enabled.
+     */
+    private void restartWithBatchingEnabled() {
+        mMockResources.setBoolean(R.bool.config_wifiRttBatchRangingRequestsEnabled, true);
+        mDut.start(mMockLooper.getLooper(), mockClock, mockAwareManager, mockNative,
+                mockMetrics, mockPermissionUtil, mWifiSettingsConfigStore);
+        mMockLooper.dispatchAll();
+    }
+
+    /**
+     * Validate that the results contain a successful result for each peer of the request.
+     */
+    private void validateRangingResultsForRequest(RangingRequest request,
+            List<RangingResult> results) {
+        assertEquals(request.mRttPeers.size(), results.size());
+        for (int i = 0; i < results.size(); ++i) {
+            assertEquals(RangingResult.STATUS_SUCCESS, results.get(i).getStatus());
+            assertEquals(request.mRttPeers.get(i).macAddress, results.get(i).getMacAddress());
+        }
+    }
+
+    /**
+     * Validate that there is exactly one result for each peer of the request, in any order.
+     */
+    private void validateResultsArePeersOfRequest(RangingRequest request,
+            List<RangingResult> results) {
+        List<MacAddress> peerMacAddresses = new ArrayList<>();
+        for (ResponderConfig peer : request.mRttPeers) {
+            peerMacAddresses.add(peer.macAddress);
+        }
+        List<MacAddress> resultMacAddresses = new ArrayList<>();
+        for (RangingResult result : results) {
+            resultMacAddresses.add(result.getMacAddress());
+        }
+        assertTrue(compareListContentsNoOrdering(peerMacAddresses, resultMacAddresses));
+    }
+
     /**
      * Simulate power state change due to doze. Changes the power manager return values and
      * dispatches a broadcast.
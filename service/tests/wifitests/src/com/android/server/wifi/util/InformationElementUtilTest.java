@@ -19,6 +19,7 @@ package com.android.server.wifi.util;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import android.net.wifi.ScanResult;
@@ -278,6 +279,58 @@ public class InformationElementUtilTest extends WifiBaseTest {
                 invalidLengthTagWithSSIDBytes[2], results[0].bytes[0]);
     }
 
+    /*
+     * Test parseInformationElements with every truncation of a buffer holding three elements, and
+     * with malformed trailing bytes after them.
+     * Expect the pass counting the elements and the pass copying them to stop at the same byte, so
+     * that the returned array holds exactly the complete elements before the truncated or
+     * malformed bytes, without any null entry.
+     *
+     * @throws java.io.IOException
+     */
+    @Test
+    public void parseInformationElements_truncatedOrMalformedTrailingBytes() throws IOException {
+        byte[] extensionIe = new byte[] {(byte) 0xFF, (byte) 0x02, (byte) 0x01, (byte) 0x40};
+        byte[][] ies = new byte[][] {getTestSsidIEBytes(), TEST_BSS_LOAD_BYTES_IE, extensionIe};
+        byte[] bytes = concatenateByteArrays(ies);
+        for (int length = 0; length <= bytes.length; length++) {
+            int expectedCount = 0;
+            int end = 0;
+            for (byte[] ie : ies) {
+                end += ie.length;
+                if (end <= length) {
+                    expectedCount++;
+                }
+            }
+            verifyParsedInformationElements(Arrays.copyOf(bytes, length), ies, expectedCount);
+        }
+
+        byte[][] malformedTails = new byte[][] {
+                // Second SSID, i.e. padding.
+                {(byte) 0x00, (byte) 0x02, (byte) 0x61, (byte) 0x62},
+                // Extension IE without extension id.
+                {(byte) 0xFF, (byte) 0x00},
+                // Length beyond the end of the buffer.
+                {(byte) 0x01, (byte) 0x08, (byte) 0x08},
+                // Single trailing byte.
+                {(byte) 0x01}};
+        for (byte[] tail : malformedTails) {
+            verifyParsedInformationElements(
+                    concatenateByteArrays(bytes, tail), ies, ies.length);
+        }
+    }
+
+    private static void verifyParsedInformationElements(byte[] bytes, byte[][] ies,
+            int expectedCount) {
+        InformationElement[] results = InformationElementUtil.parseInformationElements(bytes);
+        assertEquals("Unexpected number of IEs parsed from " + bytes.length + " bytes",
+                expectedCount, results.length);
+        for (int i = 0; i < expectedCount; i++) {
+            assertNotNull("IE " + i + " not copied", results[i]);
+            assertEquals(ies[i][0] & 0xFF, results[i].id);
+        }
+    }
+
     /**
      * Test parseInformationElement with an element that uses extension IE
      */
@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.net.wifi.WifiConfiguration;
+import android.util.Pair;
+import android.util.Xml;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.internal.util.FastXmlSerializer;
+import com.android.server.wifi.WifiBaseTest;
+import com.android.server.wifi.WifiConfigurationTestUtil;
+import com.android.server.wifi.util.XmlUtil.WifiConfigurationXmlUtil;
+
+import org.junit.Test;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlSerializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+/**
+ * Unit tests for {@link com.android.server.wifi.util.WifiBinaryXmlSerializer} and
+ * {@link com.android.server.wifi.util.WifiBinaryXmlPullParser}.
+ */
+@SmallTest
+public class WifiBinaryXmlSerializerTest extends WifiBaseTest {
+    private static final String TEST_DOC_HEADER = "WifiConfigStoreData";
+
+    /**
+     * Verify that the parser reports the same events, depths, names and attributes as the XML
+     * parser for the same document written without typed values.
+     */
+    @Test
+    public void testEventsMatchXmlParser() throws Exception {
+        WifiBinaryXmlSerializer binaryOut = new WifiBinaryXmlSerializer();
+        ByteArrayOutputStream binaryStream = new ByteArrayOutputStream();
+        binaryOut.setOutput(binaryStream, StandardCharsets.UTF_8.name());
+        FastXmlSerializer xmlOut = new FastXmlSerializer();
+        ByteArrayOutputStream xmlStream = new ByteArrayOutputStream();
+        xmlOut.setOutput(xmlStream, StandardCharsets.UTF_8.name());
+        for (XmlSerializer out : new XmlSerializer[] {binaryOut, xmlOut}) {
+            XmlUtil.writeDocumentStart(out, TEST_DOC_HEADER);
+            out.startTag(null, "int");
+            out.attribute(null, "name", "Version");
+            out.attribute(null, "value", "3");
+            out.endTag(null, "int");
+            out.startTag(null, "Section");
+            out.startTag(null, "string");
+            out.attribute(null, "name", "Text");
+            out.text("a \"quoted\" <value> é");
+            out.endTag(null, "string");
+            out.startTag(null, "int");
+            out.attribute(null, "name", "Version");
+            out.attribute(null, "value", "4");
+            out.endTag(null, "int");
+            out.endTag(null, "Section");
+            XmlUtil.writeDocumentEnd(out, TEST_DOC_HEADER);
+        }
+
+        XmlPullParser binaryIn = new WifiBinaryXmlPullParser();
+        binaryIn.setInput(new ByteArrayInputStream(binaryStream.toByteArray()), null);
+        XmlPullParser xmlIn = Xml.newPullParser();
+        xmlIn.setInput(new ByteArrayInputStream(xmlStream.toByteArray()),
+                StandardCharsets.UTF_8.name());
+        while (true) {
+            int xmlEvent = xmlIn.next();
+            if (xmlEvent == XmlPullParser.TEXT && xmlIn.isWhitespace()) {
+                continue;
+            }
+            int binaryEvent = binaryIn.next();
+            assertEquals(xmlEvent, binaryEvent);
+            assertEquals(xmlIn.getDepth(), binaryIn.getDepth());
+            assertEquals(xmlIn.getName(), binaryIn.getName());
+            assertEquals(xmlIn.getText(), binaryIn.getText());
+            assertEquals(xmlIn.getAttributeCount(), binaryIn.getAttributeCount());
+            for (int i = 0; i < xmlIn.getAttributeCount(); i++) {
+                assertEquals(xmlIn.getAttributeName(i), binaryIn.getAttributeName(i));
+                assertEquals(xmlIn.getAttributeValue(i), binaryIn.getAttributeValue(i));
+            }
+            if (xmlEvent == XmlPullParser.END_DOCUMENT) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Verify that a {@link WifiConfiguration} serialized for the config store is read back
+     * unchanged and that the binary encoding is smaller than the XML one.
+     */
+    @Test
+    public void testWifiConfigurationRoundTrip() throws Exception {
+        WifiConfiguration configuration = WifiConfigurationTestUtil.createPskNetwork();
+        configuration.setIpConfiguration(
+                WifiConfigurationTestUtil.createStaticIpConfigurationWithStaticProxy());
+
+        WifiBinaryXmlSerializer out = new WifiBinaryXmlSerializer();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        out.setOutput(outputStream, StandardCharsets.UTF_8.name());
+        XmlUtil.writeDocumentStart(out, TEST_DOC_HEADER);
+        WifiConfigurationXmlUtil.writeToXmlForConfigStore(out, configuration, null);
+        XmlUtil.writeDocumentEnd(out, TEST_DOC_HEADER);
+        byte[] binaryBytes = outputStream.toByteArray();
+
+        FastXmlSerializer xmlOut = new FastXmlSerializer();
+        ByteArrayOutputStream xmlStream = new ByteArrayOutputStream();
+        xmlOut.setOutput(xmlStream, StandardCharsets.UTF_8.name());
+        XmlUtil.writeDocumentStart(xmlOut, TEST_DOC_HEADER);
+        WifiConfigurationXmlUtil.writeToXmlForConfigStore(xmlOut, configuration, null);
+        XmlUtil.writeDocumentEnd(xmlOut, TEST_DOC_HEADER);
+        assertTrue(binaryBytes.length < xmlStream.size());
+
+        XmlPullParser in = new WifiBinaryXmlPullParser();
+        in.setInput(new ByteArrayInputStream(binaryBytes), null);
+        XmlUtil.gotoDocumentStart(in, TEST_DOC_HEADER);
+        Pair<String, WifiConfiguration> retrieved =
+                WifiConfigurationXmlUtil.parseFromXml(in, in.getDepth(), false, null, false);
+        assertEquals(retrieved.first, retrieved.second.getKey());
+        WifiConfigurationTestUtil.assertConfigurationEqualForConfigStore(
+                configuration, retrieved.second);
+    }
+
+    /**
+     * Verify that typed values are read back with their type, and that the values of other types
+     * are still read back from their XML tags.
+     */
+    @Test
+    public void testValuesRoundTrip() throws Exception {
+        WifiBinaryXmlSerializer out = new WifiBinaryXmlSerializer();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        out.setOutput(outputStream, StandardCharsets.UTF_8.name());
+        XmlUtil.writeDocumentStart(out, TEST_DOC_HEADER);
+        XmlUtil.writeNextValue(out, "String", "a \"quoted\" <value> é");
+        XmlUtil.writeNextValue(out, "EmptyString", "");
+        XmlUtil.writeNextValue(out, "Int", -3);
+        XmlUtil.writeNextValue(out, "Long", Long.MAX_VALUE);
+        XmlUtil.writeNextValue(out, "Boolean", true);
+        XmlUtil.writeNextValue(out, "ByteArray", new byte[] {0, 1, (byte) 0xff});
+        XmlUtil.writeNextValue(out, "StringArray", new String[] {"a", "", "b"});
+        XmlUtil.writeNextValue(out, "IntArray", new int[] {1, 2});
+        XmlUtil.writeNextValue(out, "Map", Collections.singletonMap("key", "value"));
+        XmlUtil.writeDocumentEnd(out, TEST_DOC_HEADER);
+
+        XmlPullParser in = new WifiBinaryXmlPullParser();
+        in.setInput(new ByteArrayInputStream(outputStream.toByteArray()), null);
+        XmlUtil.gotoDocumentStart(in, TEST_DOC_HEADER);
+        assertEquals("a \"quoted\" <value> é", XmlUtil.readNextValueWithName(in, "String"));
+        assertEquals("", XmlUtil.readNextValueWithName(in, "EmptyString"));
+        assertEquals(-3, XmlUtil.readNextValueWithName(in, "Int"));
+        assertEquals(Long.MAX_VALUE, XmlUtil.readNextValueWithName(in, "Long"));
+        assertEquals(true, XmlUtil.readNextValueWithName(in, "Boolean"));
+        assertArrayEquals(new byte[] {0, 1, (byte) 0xff},
+                (byte[]) XmlUtil.readNextValueWithName(in, "ByteArray"));
+        assertArrayEquals(new String[] {"a", "", "b"},
+                (String[]) XmlUtil.readNextValueWithName(in, "StringArray"));
+        assertArrayEquals(new int[] {1, 2}, (int[]) XmlUtil.readNextValueWithName(in, "IntArray"));
+        assertEquals(Collections.singletonMap("key", "value"),
+                XmlUtil.readNextValueWithName(in, "Map"));
+        assertEquals(XmlPullParser.END_TAG, in.next());
+        assertEquals(XmlPullParser.END_DOCUMENT, in.next());
+    }
+
+    /**
+     * Verify that a typed value is reported as a tag named after its type, with only a name
+     * attribute, immediately followed by its end tag.
+     */
+    @Test
+    public void testTypedValueEvents() throws Exception {
+        WifiBinaryXmlSerializer out = new WifiBinaryXmlSerializer();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        out.setOutput(outputStream, StandardCharsets.UTF_8.name());
+        XmlUtil.writeDocumentStart(out, TEST_DOC_HEADER);
+        XmlUtil.writeNextValue(out, "Version", 3);
+        XmlUtil.writeDocumentEnd(out, TEST_DOC_HEADER);
+
+        WifiBinaryXmlPullParser in = new WifiBinaryXmlPullParser();
+        in.setInput(new ByteArrayInputStream(outputStream.toByteArray()), null);
+        XmlUtil.gotoDocumentStart(in, TEST_DOC_HEADER);
+        assertEquals(XmlPullParser.START_TAG, in.next());
+        assertEquals("int", in.getName());
+        assertEquals(2, in.getDepth());
+        assertEquals(1, in.getAttributeCount());
+        assertEquals("Version", in.getAttributeValue(null, "name"));
+        assertTrue(in.hasTypedValue());
+        assertEquals(3, in.getTypedValue());
+        assertEquals(XmlPullParser.END_TAG, in.next());
+        assertEquals("int", in.getName());
+        assertEquals(2, in.getDepth());
+        assertFalse(in.hasTypedValue());
+        assertEquals(XmlPullParser.END_TAG, in.next());
+        assertEquals(TEST_DOC_HEADER, in.getName());
+        assertEquals(1, in.getDepth());
+    }
+
+    /**
+     * Verify that null values are preserved.
+     */
+    @Test
+    public void testNullValue() throws Exception {
+        WifiBinaryXmlSerializer out = new WifiBinaryXmlSerializer();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        out.setOutput(outputStream, StandardCharsets.UTF_8.name());
+        XmlUtil.writeDocumentStart(out, TEST_DOC_HEADER);
+        XmlUtil.writeNextValue(out, "Null", null);
+        XmlUtil.writeDocumentEnd(out, TEST_DOC_HEADER);
+
+        XmlPullParser in = new WifiBinaryXmlPullParser();
+        in.setInput(new ByteArrayInputStream(outputStream.toByteArray()), null);
+        XmlUtil.gotoDocumentStart(in, TEST_DOC_HEADER);
+        assertNull(XmlUtil.readNextValueWithName(in, "Null"));
+    }
+
+    /**
+     * Verify that truncated data is reported as an error instead of being silently accepted.
+     */
+    @Test
+    public void testTruncatedData() throws Exception {
+        WifiBinaryXmlSerializer out = new WifiBinaryXmlSerializer();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        out.setOutput(outputStream, StandardCharsets.UTF_8.name());
+        XmlUtil.writeDocumentStart(out, TEST_DOC_HEADER);
+        XmlUtil.writeNextValue(out, "Text", "some text value");
+        XmlUtil.writeDocumentEnd(out, TEST_DOC_HEADER);
+        byte[] bytes = outputStream.toByteArray();
+
+        XmlPullParser in = new WifiBinaryXmlPullParser();
+        in.setInput(new ByteArrayInputStream(bytes, 0, bytes.length - 8), null);
+        XmlUtil.gotoDocumentStart(in, TEST_DOC_HEADER);
+        try {
+            XmlUtil.readNextValueWithName(in, "Text");
+            throw new AssertionError("Truncated data accepted");
+        } catch (EOFException | XmlPullParserException e) {
+            // Expected.
+        }
+    }
+}